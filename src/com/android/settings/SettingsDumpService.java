@@ -37,6 +37,9 @@ import androidx.annotation.VisibleForTesting;
 import com.android.settings.applications.ProcStatsData;
 import com.android.settings.datausage.lib.DataUsageLib;
 import com.android.settings.fuelgauge.batterytip.AnomalyConfigJobService;
+import com.android.settings.slices.SliceBackgroundWorker;
+import com.android.settings.slices.SlicesDatabaseAccessor;
+import com.android.settings.slices.SlicesDatabaseHelper;
 import com.android.settingslib.net.DataUsageController;
 
 import org.json.JSONArray;
@@ -61,6 +64,8 @@ public class SettingsDumpService extends Service {
     @VisibleForTesting
     static final String KEY_ANOMALY_DETECTION = "anomaly_detection";
     @VisibleForTesting
+    static final String KEY_SLICES = "slices";
+    @VisibleForTesting
     static final Intent BROWSER_INTENT =
             new Intent("android.intent.action.VIEW", Uri.parse("http://"));
 
@@ -80,6 +85,7 @@ public class SettingsDumpService extends Service {
             dump.put(KEY_MEMORY, dumpMemory());
             dump.put(KEY_DEFAULT_BROWSER_APP, dumpDefaultBrowser());
             dump.put(KEY_ANOMALY_DETECTION, dumpAnomalyDetection());
+            dump.put(KEY_SLICES, dumpSlices());
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -87,6 +93,15 @@ public class SettingsDumpService extends Service {
         writer.println(dump);
     }
 
+    @VisibleForTesting
+    JSONObject dumpSlices() throws JSONException {
+        final JSONObject obj = new JSONObject();
+        obj.put("indexing", SlicesDatabaseHelper.getInstance(this).dumpIndexingStats());
+        obj.put("cache", SlicesDatabaseAccessor.dumpCacheStats());
+        obj.put("workers", SliceBackgroundWorker.dumpUpdateStats());
+        return obj;
+    }
+
     private JSONObject dumpMemory() throws JSONException {
         JSONObject obj = new JSONObject();
         ProcStatsData statsManager = new ProcStatsData(this, false);
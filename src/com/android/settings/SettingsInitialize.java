@@ -40,6 +40,7 @@ import androidx.annotation.VisibleForTesting;
 import androidx.window.embedding.SplitController;
 
 import com.android.settings.Settings.CreateShortcutActivity;
+import com.android.settings.fuelgauge.batteryusage.BatteryHistorySnapshotJobService;
 import com.android.settings.homepage.DeepLinkHomepageActivity;
 import com.android.settings.search.SearchStateReceiver;
 import com.android.settingslib.utils.ThreadUtils;
@@ -69,6 +70,7 @@ public class SettingsInitialize extends BroadcastReceiver {
         webviewSettingSetup(context, pm, userInfo);
         ThreadUtils.postOnBackgroundThread(() -> refreshExistingShortcuts(context));
         enableTwoPaneDeepLinkActivityIfNecessary(pm, context);
+        BatteryHistorySnapshotJobService.scheduleSnapshot(context);
     }
 
     private void managedProfileSetup(Context context, final PackageManager pm, Intent broadcast,
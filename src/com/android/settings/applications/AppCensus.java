@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.UserInfo;
+import android.os.UserHandle;
+import android.util.Log;
+import android.util.SparseArray;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * A snapshot of the apps installed for each user, shared by the {@link AppCounter}s and the
+ * {@link AppLister}s so that the pages counting and listing several kinds of apps run a single
+ * package manager scan per user.
+ *
+ * <p>There is one census per process, scanning with the package manager of the application
+ * context so that it doesn't hold on to any page. The snapshot is dropped when a package is
+ * added, changed or removed.
+ */
+class AppCensus {
+    private static final String TAG = "AppCensus";
+
+    // Lists smaller than this are evaluated on the calling thread.
+    @VisibleForTesting
+    static final int MIN_APPS_PER_THREAD = 32;
+    private static final int PREDICATE_THREADS = 4;
+    private static final long EXECUTOR_KEEP_ALIVE_SECONDS = 30;
+
+    private static AppCensus sInstance;
+    private static ExecutorService sPredicateExecutor;
+
+    private final PackageManager mPm;
+    // Installed apps of each user, keyed by the user id.
+    private final SparseArray<UserApps> mUserApps = new SparseArray<>();
+    private final BroadcastReceiver mPackageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            invalidate();
+        }
+    };
+    private boolean mIsPackageReceiverRegistered;
+    private int mGeneration;
+
+    private static class UserApps {
+        final int flags;
+        final List<ApplicationInfo> apps;
+
+        UserApps(int flags, List<ApplicationInfo> apps) {
+            this.flags = flags;
+            this.apps = apps;
+        }
+    }
+
+    /** Returns the census of the process, creating it if needed. */
+    static synchronized AppCensus getInstance(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            if (appContext == null) {
+                appContext = context;
+            }
+            sInstance = new AppCensus(appContext.getPackageManager());
+            sInstance.registerPackageReceiver(appContext);
+        }
+        return sInstance;
+    }
+
+    /** Returns the census of the process, or null if no page has created it yet. */
+    static synchronized AppCensus peekInstance() {
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    static synchronized void setInstance(AppCensus census) {
+        sInstance = census;
+    }
+
+    AppCensus(PackageManager packageManager) {
+        mPm = packageManager;
+    }
+
+    /** Registers the receiver dropping the snapshot when packages are changed. */
+    @VisibleForTesting
+    synchronized void registerPackageReceiver(Context context) {
+        if (mIsPackageReceiverRegistered) {
+            return;
+        }
+        final IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        // The census outlives the pages, so the receiver is kept for the whole process.
+        context.registerReceiverAsUser(mPackageReceiver, UserHandle.ALL, filter,
+                null /* broadcastPermission */, null /* scheduler */);
+        mIsPackageReceiverRegistered = true;
+    }
+
+    /** Drops the snapshot. */
+    synchronized void invalidate() {
+        mUserApps.clear();
+        mGeneration++;
+    }
+
+    /**
+     * Returns the installed apps of the users that match the predicate. The predicate may be
+     * evaluated concurrently for large lists of apps.
+     */
+    List<UserAppInfo> getApps(List<UserInfo> users, Predicate<ApplicationInfo> predicate) {
+        final List<UserAppInfo> result = new ArrayList<>();
+        for (UserInfo user : users) {
+            final List<ApplicationInfo> apps = getInstalledApps(user);
+            final boolean[] matches = evaluate(apps, predicate);
+            for (int i = 0; i < matches.length; i++) {
+                if (matches[i]) {
+                    result.add(new UserAppInfo(user, apps.get(i)));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the number of installed apps of the users that match the predicate. */
+    int countApps(List<UserInfo> users, Predicate<ApplicationInfo> predicate) {
+        int count = 0;
+        for (UserInfo user : users) {
+            for (boolean match : evaluate(getInstalledApps(user), predicate)) {
+                if (match) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private List<ApplicationInfo> getInstalledApps(UserInfo user) {
+        final int flags = PackageManager.GET_DISABLED_COMPONENTS
+                | PackageManager.GET_DISABLED_UNTIL_USED_COMPONENTS
+                | (user.isAdmin() ? PackageManager.MATCH_ANY_USER : 0);
+        final int generation;
+        synchronized (this) {
+            final UserApps userApps = mUserApps.get(user.id);
+            if (userApps != null && userApps.flags == flags) {
+                return userApps.apps;
+            }
+            generation = mGeneration;
+        }
+        final List<ApplicationInfo> apps = mPm.getInstalledApplicationsAsUser(flags, user.id);
+        synchronized (this) {
+            // Don't keep the apps if a package was changed during the scan.
+            if (mIsPackageReceiverRegistered && generation == mGeneration) {
+                mUserApps.put(user.id, new UserApps(flags, apps));
+            }
+        }
+        return apps;
+    }
+
+    private static boolean[] evaluate(List<ApplicationInfo> apps,
+            Predicate<ApplicationInfo> predicate) {
+        final int size = apps.size();
+        final boolean[] matches = new boolean[size];
+        final int threads = Math.min(PREDICATE_THREADS, size / MIN_APPS_PER_THREAD);
+        if (threads <= 1) {
+            evaluate(apps, predicate, matches, 0, size);
+            return matches;
+        }
+        final List<Future<?>> futures = new ArrayList<>(threads);
+        final int chunkSize = (size + threads - 1) / threads;
+        for (int start = chunkSize; start < size; start += chunkSize) {
+            final int chunkStart = start;
+            final int chunkEnd = Math.min(start + chunkSize, size);
+            futures.add(getPredicateExecutor().submit(
+                    () -> evaluate(apps, predicate, matches, chunkStart, chunkEnd)));
+        }
+        // Evaluate the first chunk on the calling thread.
+        evaluate(apps, predicate, matches, 0, chunkSize);
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (InterruptedException | ExecutionException e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                // Evaluate the chunk again on the calling thread rather than leave it out, so
+                // that an error of the predicate is thrown to the caller.
+                Log.w(TAG, "Failed to evaluate the apps concurrently", e);
+                futures.get(i).cancel(false /* mayInterruptIfRunning */);
+                final int chunkStart = (i + 1) * chunkSize;
+                evaluate(apps, predicate, matches, chunkStart,
+                        Math.min(chunkStart + chunkSize, size));
+            }
+        }
+        return matches;
+    }
+
+    private static void evaluate(List<ApplicationInfo> apps, Predicate<ApplicationInfo> predicate,
+            boolean[] matches, int start, int end) {
+        for (int i = start; i < end; i++) {
+            matches[i] = predicate.test(apps.get(i));
+        }
+    }
+
+    private static synchronized ExecutorService getPredicateExecutor() {
+        if (sPredicateExecutor == null) {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    PREDICATE_THREADS, PREDICATE_THREADS,
+                    EXECUTOR_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+            executor.allowCoreThreadTimeOut(true);
+            sPredicateExecutor = executor;
+        }
+        return sPredicateExecutor;
+    }
+}
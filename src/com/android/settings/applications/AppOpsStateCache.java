@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import android.app.AppOpsManager;
+import android.app.AppOpsManager.PackageOps;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.IPackageManager;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.RemoteException;
+import android.os.UserHandle;
+import android.os.UserManager;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+import android.util.SparseIntArray;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A process-wide matrix of the app op modes and the app op permission states of the packages,
+ * shared by the {@link AppStateAppOpsBridge}s of the special app access pages.
+ *
+ * <p>The modes of an op are loaded once, then kept up to date by watching the op. The packages
+ * requesting and holding the permissions are loaded once per user, and dropped when a permission
+ * is granted or revoked. Both are dropped when a package is added, changed or removed.
+ */
+class AppOpsStateCache {
+    // The loads of the modes of an op are redone at most this many times when the op changes
+    // during the load, after which the last load is used without being kept.
+    private static final int MAX_MODE_LOADS = 3;
+
+    private static final Map<IPackageManager, AppOpsStateCache> sInstances = new WeakHashMap<>();
+
+    private final Context mContext;
+    private final IPackageManager mIPackageManager;
+    private final AppOpsManager mAppOpsManager;
+    // The modes of each op, keyed by the op, the user id and the package name.
+    private final SparseArray<SparseArray<ArrayMap<String, Integer>>> mModes =
+            new SparseArray<>();
+    // The packages requesting the permissions, keyed by the permissions and the user id.
+    private final ArrayMap<String, SparseArray<ArrayMap<String, PackageInfo>>> mPermissionStates =
+            new ArrayMap<>();
+    private final SparseBooleanArray mWatchedOps = new SparseBooleanArray();
+    // The number of changes of each op, telling whether a load of its modes is stale.
+    private final SparseIntArray mModeChanges = new SparseIntArray();
+    private final BroadcastReceiver mPackageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            invalidate();
+        }
+    };
+    private final PackageManager.OnPermissionsChangedListener mPermissionsChangedListener =
+            uid -> invalidatePermissionStates();
+    private int mGeneration;
+    private int mPermissionGeneration;
+
+    /** Returns the cache of the app op states of the packages of the package manager. */
+    static synchronized AppOpsStateCache getInstance(Context context,
+            IPackageManager packageManager) {
+        AppOpsStateCache cache = sInstances.get(packageManager);
+        if (cache == null) {
+            final Context appContext = context.getApplicationContext();
+            cache = new AppOpsStateCache(appContext != null ? appContext : context,
+                    packageManager);
+            sInstances.put(packageManager, cache);
+        }
+        return cache;
+    }
+
+    @VisibleForTesting
+    AppOpsStateCache(Context context, IPackageManager packageManager) {
+        mContext = context;
+        mIPackageManager = packageManager;
+        mAppOpsManager = (AppOpsManager) context.getSystemService(Context.APP_OPS_SERVICE);
+        final IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        // The cache outlives the pages, so the receiver is kept for the whole process.
+        context.registerReceiverAsUser(mPackageReceiver, UserHandle.ALL, filter,
+                null /* broadcastPermission */, null /* scheduler */);
+        context.getPackageManager().addOnPermissionsChangeListener(mPermissionsChangedListener);
+    }
+
+    /** Drops the loaded modes and permission states. */
+    synchronized void invalidate() {
+        mModes.clear();
+        mGeneration++;
+        invalidatePermissionStates();
+    }
+
+    /** Drops the loaded permission states. */
+    @VisibleForTesting
+    synchronized void invalidatePermissionStates() {
+        mPermissionStates.clear();
+        mPermissionGeneration++;
+    }
+
+    /**
+     * Returns the mode of the first of the ops set for the package, or
+     * {@link AppOpsManager#MODE_DEFAULT} if none of them is set.
+     */
+    int getMode(int[] ops, int userId, String packageName) {
+        for (int op : ops) {
+            final SparseArray<ArrayMap<String, Integer>> modes = getModes(op);
+            synchronized (this) {
+                final ArrayMap<String, Integer> userModes =
+                        modes != null ? modes.get(userId) : null;
+                final Integer mode = userModes != null ? userModes.get(packageName) : null;
+                if (mode != null) {
+                    return mode;
+                }
+            }
+        }
+        return AppOpsManager.MODE_DEFAULT;
+    }
+
+    /**
+     * Returns the packages of the user requesting one of the permissions, mapped to their package
+     * info if they hold one of the permissions or to null otherwise. The returned map is shared
+     * and must not be modified.
+     *
+     * @throws RemoteException if the package manager is dead
+     */
+    ArrayMap<String, PackageInfo> getPermissionStates(String[] permissions, int userId)
+            throws RemoteException {
+        final String key = Arrays.toString(permissions);
+        final int generation;
+        synchronized (this) {
+            final SparseArray<ArrayMap<String, PackageInfo>> states = mPermissionStates.get(key);
+            final ArrayMap<String, PackageInfo> userStates =
+                    states != null ? states.get(userId) : null;
+            if (userStates != null) {
+                return userStates;
+            }
+            generation = mPermissionGeneration;
+        }
+        final ArrayMap<String, PackageInfo> userStates = loadPermissionStates(permissions, userId);
+        synchronized (this) {
+            // Don't keep the states if a package or a permission was changed during the load.
+            if (generation == mPermissionGeneration) {
+                SparseArray<ArrayMap<String, PackageInfo>> states = mPermissionStates.get(key);
+                if (states == null) {
+                    states = new SparseArray<>();
+                    mPermissionStates.put(key, states);
+                }
+                states.put(userId, userStates);
+            }
+        }
+        return userStates;
+    }
+
+    private ArrayMap<String, PackageInfo> loadPermissionStates(String[] permissions, int userId)
+            throws RemoteException {
+        final ArraySet<String> packages = new ArraySet<>();
+        for (String permission : permissions) {
+            final String[] requestingPackages =
+                    mIPackageManager.getAppOpPermissionPackages(permission);
+            if (requestingPackages != null) {
+                packages.addAll(Arrays.asList(requestingPackages));
+            }
+        }
+        final ArrayMap<String, PackageInfo> userStates = new ArrayMap<>();
+        if (packages.isEmpty()) {
+            return userStates;
+        }
+        for (String packageName : packages) {
+            if (mIPackageManager.isPackageAvailable(packageName, userId)) {
+                userStates.put(packageName, null);
+            }
+        }
+        @SuppressWarnings("unchecked") final List<PackageInfo> packageInfos =
+                mIPackageManager.getPackagesHoldingPermissions(permissions, 0, userId).getList();
+        final int packageInfoCount = packageInfos != null ? packageInfos.size() : 0;
+        for (int i = 0; i < packageInfoCount; i++) {
+            final PackageInfo packageInfo = packageInfos.get(i);
+            if (userStates.containsKey(packageInfo.packageName)) {
+                userStates.put(packageInfo.packageName, packageInfo);
+            }
+        }
+        return userStates;
+    }
+
+    /**
+     * Returns the modes of the op, loading them if needed. The returned modes are only read
+     * while holding the lock of the cache, as they are updated when the op changes.
+     */
+    private SparseArray<ArrayMap<String, Integer>> getModes(int op) {
+        SparseArray<ArrayMap<String, Integer>> modes = null;
+        for (int i = 0; i < MAX_MODE_LOADS; i++) {
+            final int generation;
+            final int changes;
+            synchronized (this) {
+                final SparseArray<ArrayMap<String, Integer>> loadedModes = mModes.get(op);
+                if (loadedModes != null) {
+                    return loadedModes;
+                }
+                // Watch the op before loading it, so no change is missed.
+                if (!mWatchedOps.get(op)) {
+                    mAppOpsManager.startWatchingMode(op, null /* packageName */,
+                            (opStr, packageName) -> updateMode(op, packageName));
+                    mWatchedOps.put(op, true);
+                }
+                generation = mGeneration;
+                changes = mModeChanges.get(op);
+            }
+            modes = loadModes(op);
+            synchronized (this) {
+                // A change of the op during the load may or may not be in the loaded modes, so
+                // load them again.
+                if (generation == mGeneration && changes == mModeChanges.get(op)) {
+                    if (mModes.get(op) == null) {
+                        mModes.put(op, modes);
+                    }
+                    return mModes.get(op);
+                }
+            }
+        }
+        return modes;
+    }
+
+    private SparseArray<ArrayMap<String, Integer>> loadModes(int op) {
+        final SparseArray<ArrayMap<String, Integer>> modes = new SparseArray<>();
+        final List<PackageOps> packageOps = mAppOpsManager.getPackagesForOps(new int[]{op});
+        final int packageOpsCount = packageOps != null ? packageOps.size() : 0;
+        for (int i = 0; i < packageOpsCount; i++) {
+            final PackageOps packageOp = packageOps.get(i);
+            if (packageOp.getOps().isEmpty()) {
+                continue;
+            }
+            final int userId = UserHandle.getUserId(packageOp.getUid());
+            ArrayMap<String, Integer> userModes = modes.get(userId);
+            if (userModes == null) {
+                userModes = new ArrayMap<>();
+                modes.put(userId, userModes);
+            }
+            userModes.put(packageOp.getPackageName(), packageOp.getOps().get(0).getMode());
+        }
+        return modes;
+    }
+
+    @VisibleForTesting
+    void updateMode(int op, String packageName) {
+        synchronized (this) {
+            mModeChanges.put(op, mModeChanges.get(op) + 1);
+            if (mModes.get(op) == null) {
+                // The op isn't loaded yet, it is read when it is needed. A load in progress is
+                // redone, as it may have read the mode before the change.
+                return;
+            }
+        }
+        final PackageManager packageManager = mContext.getPackageManager();
+        for (UserHandle profile : UserManager.get(mContext).getUserProfiles()) {
+            final int userId = profile.getIdentifier();
+            Integer mode = null;
+            try {
+                final int uid = packageManager.getPackageUidAsUser(packageName, userId);
+                final List<PackageOps> ops =
+                        mAppOpsManager.getOpsForPackage(uid, packageName, new int[]{op});
+                if (ops != null && !ops.isEmpty() && !ops.get(0).getOps().isEmpty()) {
+                    mode = ops.get(0).getOps().get(0).getMode();
+                }
+            } catch (PackageManager.NameNotFoundException e) {
+                // The package isn't installed for the user, drop its mode.
+            }
+            synchronized (this) {
+                final SparseArray<ArrayMap<String, Integer>> modes = mModes.get(op);
+                if (modes == null) {
+                    return;
+                }
+                ArrayMap<String, Integer> userModes = modes.get(userId);
+                if (mode != null) {
+                    if (userModes == null) {
+                        userModes = new ArrayMap<>();
+                        modes.put(userId, userModes);
+                    }
+                    userModes.put(packageName, mode);
+                } else if (userModes != null) {
+                    userModes.remove(packageName);
+                }
+            }
+        }
+    }
+}
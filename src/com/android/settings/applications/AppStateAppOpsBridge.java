@@ -34,11 +34,8 @@ import androidx.annotation.VisibleForTesting;
 import com.android.settingslib.applications.ApplicationsState;
 import com.android.settingslib.applications.ApplicationsState.AppEntry;
 
-import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 /*
  * Connects app ops info to the ApplicationsState. Makes use of AppOpsManager to
@@ -52,6 +49,7 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
     private final UserManager mUserManager;
     private final List<UserHandle> mProfiles;
     private final AppOpsManager mAppOpsManager;
+    private final AppOpsStateCache mAppOpsStateCache;
     private final Context mContext;
     private final int[] mAppOpsOpCodes;
     private final String[] mPermissions;
@@ -83,20 +81,11 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
         mUserManager = UserManager.get(context);
         mProfiles = mUserManager.getUserProfiles();
         mAppOpsManager = (AppOpsManager) context.getSystemService(Context.APP_OPS_SERVICE);
+        mAppOpsStateCache = AppOpsStateCache.getInstance(context, packageManager);
         mAppOpsOpCodes = appOpsOpCodes;
         mPermissions = permissions;
     }
 
-    private boolean isThisUserAProfileOfCurrentUser(final int userId) {
-        final int profilesMax = mProfiles.size();
-        for (int i = 0; i < profilesMax; i++) {
-            if (mProfiles.get(i).getIdentifier() == userId) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     protected abstract void updateExtraInfo(AppEntry app, String pkg, int uid);
 
     private boolean doesAnyPermissionMatch(String permissionToMatch, String[] permissions) {
@@ -132,7 +121,8 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
                     }
                 }
             }
-            // Check app op state.
+            // Check app op state. The mode is read from the service as the caller may have just
+            // changed it, before the shared app op states are notified.
             List<PackageOps> ops = mAppOpsManager.getOpsForPackage(uid, pkg, mAppOpsOpCodes);
             if (ops != null && ops.size() > 0 && ops.get(0).getOps().size() > 0) {
                 permissionState.appOpMode = ops.get(0).getOps().get(0).getMode();
@@ -172,36 +162,32 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
      */
     private SparseArray<ArrayMap<String, PermissionState>> getEntries() {
         try {
-            Set<String> packagesSet = new HashSet<>();
-            for (String permission : mPermissions) {
-                String[] pkgs = mIPackageManager.getAppOpPermissionPackages(permission);
-                if (pkgs != null) {
-                    packagesSet.addAll(Arrays.asList(pkgs));
-                }
-            }
-
-            if (packagesSet.isEmpty()) {
-                // No packages are requesting permission as specified by mPermissions.
-                return null;
-            }
-
             // Create a sparse array that maps profileIds to an ArrayMap that maps package names to
             // an associated PermissionState object
             SparseArray<ArrayMap<String, PermissionState>> entries = new SparseArray<>();
+            boolean hasRequestingPackages = false;
             for (final UserHandle profile : mProfiles) {
-                final ArrayMap<String, PermissionState> entriesForProfile = new ArrayMap<>();
                 final int profileId = profile.getIdentifier();
+                final ArrayMap<String, PackageInfo> permissionStates =
+                        mAppOpsStateCache.getPermissionStates(mPermissions, profileId);
+                final int permissionStateCount = permissionStates.size();
+                final ArrayMap<String, PermissionState> entriesForProfile =
+                        new ArrayMap<>(permissionStateCount);
                 entries.put(profileId, entriesForProfile);
-                for (final String packageName : packagesSet) {
-                    final boolean isAvailable = mIPackageManager.isPackageAvailable(packageName,
-                            profileId);
-                    if (!shouldIgnorePackage(packageName) && isAvailable) {
+                for (int i = 0; i < permissionStateCount; i++) {
+                    final String packageName = permissionStates.keyAt(i);
+                    hasRequestingPackages = true;
+                    if (!shouldIgnorePackage(packageName)) {
                         final PermissionState newEntry = new PermissionState(packageName, profile);
                         entriesForProfile.put(packageName, newEntry);
                     }
                 }
             }
 
+            if (!hasRequestingPackages) {
+                // No packages are requesting permission as specified by mPermissions.
+                return null;
+            }
             return entries;
         } catch (RemoteException e) {
             Log.w(TAG, "PackageManager is dead. Can't get list of packages requesting "
@@ -227,15 +213,13 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
                 if (entriesForProfile == null) {
                     continue;
                 }
-                @SuppressWarnings("unchecked") final List<PackageInfo> packageInfos =
-                        mIPackageManager
-                                .getPackagesHoldingPermissions(mPermissions, 0,
-                                        profileId).getList();
-                final int packageInfoCount = packageInfos != null ? packageInfos.size() : 0;
-                for (int i = 0; i < packageInfoCount; i++) {
-                    final PackageInfo packageInfo = packageInfos.get(i);
-                    final PermissionState pe = entriesForProfile.get(packageInfo.packageName);
-                    if (pe != null) {
+                final ArrayMap<String, PackageInfo> permissionStates =
+                        mAppOpsStateCache.getPermissionStates(mPermissions, profileId);
+                final int entryCount = entriesForProfile.size();
+                for (int i = 0; i < entryCount; i++) {
+                    final PermissionState pe = entriesForProfile.valueAt(i);
+                    final PackageInfo packageInfo = permissionStates.get(pe.packageName);
+                    if (packageInfo != null) {
                         pe.packageInfo = packageInfo;
                         pe.staticPermissionGranted = true;
                     }
@@ -258,34 +242,15 @@ public abstract class AppStateAppOpsBridge extends AppStateBaseBridge {
         }
 
         // Find out which packages have been granted permission from AppOps.
-        final List<AppOpsManager.PackageOps> packageOps = mAppOpsManager.getPackagesForOps(
-                mAppOpsOpCodes);
-        final int packageOpsCount = packageOps != null ? packageOps.size() : 0;
-        for (int i = 0; i < packageOpsCount; i++) {
-            final AppOpsManager.PackageOps packageOp = packageOps.get(i);
-            final int userId = UserHandle.getUserId(packageOp.getUid());
-            if (!isThisUserAProfileOfCurrentUser(userId)) {
-                // This AppOp does not belong to any of this user's profiles.
-                continue;
-            }
-
-            final ArrayMap<String, PermissionState> entriesForProfile = entries.get(userId);
-            if (entriesForProfile == null) {
-                continue;
-            }
-            final PermissionState pe = entriesForProfile.get(packageOp.getPackageName());
-            if (pe == null) {
-                Log.w(TAG, "AppOp permission exists for package " + packageOp.getPackageName()
-                        + " of user " + userId + " but package doesn't exist or did not request "
-                        + Arrays.toString(mPermissions) + " access");
-                continue;
-            }
-
-            if (packageOp.getOps().size() < 1) {
-                Log.w(TAG, "No AppOps permission exists for package " + packageOp.getPackageName());
-                continue;
+        final int profileCount = entries.size();
+        for (int i = 0; i < profileCount; i++) {
+            final int userId = entries.keyAt(i);
+            final ArrayMap<String, PermissionState> entriesForProfile = entries.valueAt(i);
+            final int entryCount = entriesForProfile.size();
+            for (int j = 0; j < entryCount; j++) {
+                final PermissionState pe = entriesForProfile.valueAt(j);
+                pe.appOpMode = mAppOpsStateCache.getMode(mAppOpsOpCodes, userId, pe.packageName);
             }
-            pe.appOpMode = packageOp.getOps().get(0).getMode();
         }
     }
 
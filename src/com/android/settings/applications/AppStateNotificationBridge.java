@@ -141,33 +141,32 @@ public class AppStateNotificationBridge extends AppStateBaseBridge {
 
         long now = System.currentTimeMillis();
         long startTime = now - (DateUtils.DAY_IN_MILLIS * DAYS_TO_CHECK);
-        for (int userId : mUserIds) {
-            UsageEvents events = null;
-            try {
-                events = mUsageStatsManager.queryEventsForUser(
-                        startTime, now, userId, mContext.getPackageName());
-            } catch (RemoteException e) {
-                e.printStackTrace();
-            }
-            if (events != null) {
-                UsageEvents.Event event = new UsageEvents.Event();
-                while (events.hasNextEvent()) {
-                    events.getNextEvent(event);
-                    NotificationsSentState stats =
-                            aggregatedStats.get(getKey(userId, event.getPackageName()));
-                    if (stats == null) {
-                        stats = new NotificationsSentState();
-                        aggregatedStats.put(getKey(userId, event.getPackageName()), stats);
-                    }
-
-                    if (event.getEventType() == UsageEvents.Event.NOTIFICATION_INTERRUPTION) {
-                        if (event.getTimeStamp() > stats.lastSent) {
-                            stats.lastSent = event.getTimeStamp();
+        synchronized (NotificationsSentHistory.LOCK) {
+            for (int userId : mUserIds) {
+                // Only read the events since the last load, the older ones are aggregated in the
+                // history of the user.
+                NotificationsSentHistory history = new NotificationsSentHistory(mContext, userId);
+                history.load(startTime, now);
+                UsageEvents events = null;
+                try {
+                    events = mUsageStatsManager.queryEventsForUser(
+                            history.getHighWaterMark(), now, userId, mContext.getPackageName());
+                } catch (RemoteException e) {
+                    e.printStackTrace();
+                }
+                if (events != null) {
+                    UsageEvents.Event event = new UsageEvents.Event();
+                    while (events.hasNextEvent()) {
+                        events.getNextEvent(event);
+                        if (event.getEventType() == UsageEvents.Event.NOTIFICATION_INTERRUPTION) {
+                            history.addNotificationSent(event.getPackageName(),
+                                    event.getTimeStamp());
                         }
-                        stats.sentCount++;
                     }
-
+                    history.setHighWaterMark(now);
+                    history.save();
                 }
+                history.putSentStates(userId, aggregatedStats);
             }
         }
         return aggregatedStats;
@@ -93,6 +93,8 @@ public class ApplicationFeatureProviderImpl implements ApplicationFeatureProvide
 
     @Override
     public void listPolicyInstalledApps(ListOfAppsCallback callback) {
+        // Create the shared census so that the lister reuses the installed apps.
+        AppCensus.getInstance(mContext);
         final CurrentUserPolicyInstalledAppLister lister =
                 new CurrentUserPolicyInstalledAppLister(mPm, mUm, callback);
         lister.execute();
@@ -114,6 +116,8 @@ public class ApplicationFeatureProviderImpl implements ApplicationFeatureProvide
     @Override
     public void listAppsWithAdminGrantedPermissions(String[] permissions,
             ListOfAppsCallback callback) {
+        // Create the shared census so that the lister reuses the installed apps.
+        AppCensus.getInstance(mContext);
         final CurrentUserAppWithAdminGrantedPermissionsLister lister =
                 new CurrentUserAppWithAdminGrantedPermissionsLister(permissions, mPm, mPms, mDpm,
                         mUm, callback);
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import android.content.Context;
+import android.text.format.DateUtils;
+import android.util.ArrayMap;
+import android.util.AtomicFile;
+import android.util.Log;
+import android.util.SparseIntArray;
+
+import com.android.settings.applications.AppStateNotificationBridge.NotificationsSentState;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * A rolling aggregate of the notifications sent by the packages of a user, persisted with the
+ * timestamp of the last consumed usage event so a load only has to read the newer events.
+ *
+ * <p>The sent counts are kept in hourly buckets, the buckets leaving the time window are dropped
+ * when the history is loaded. Callers should hold {@link #LOCK} while using the history, as the
+ * file of a user is shared by all the bridges.
+ */
+class NotificationsSentHistory {
+
+    private static final String TAG = "NotificationsSentHistory";
+    private static final String FILE_NAME_PREFIX = "notifications_sent_";
+    private static final int VERSION = 2;
+    private static final long BUCKET_MILLIS = DateUtils.HOUR_IN_MILLIS;
+
+    static final Object LOCK = new Object();
+
+    private final AtomicFile mFile;
+    private final ArrayMap<String, PackageHistory> mPackages = new ArrayMap<>();
+    private long mHighWaterMark;
+
+    private static class PackageHistory {
+        long lastSent;
+        // Sent counts keyed by the index of the hour since the epoch.
+        final SparseIntArray sentCounts = new SparseIntArray();
+    }
+
+    NotificationsSentHistory(Context context, int userId) {
+        mFile = new AtomicFile(new File(context.getCacheDir(), FILE_NAME_PREFIX + userId));
+    }
+
+    /**
+     * Loads the persisted history and drops the buckets before the start time. The history is
+     * reset if it is missing or its high-water mark isn't between the start time and now.
+     */
+    void load(long startTime, long now) {
+        mPackages.clear();
+        mHighWaterMark = startTime;
+        if (!mFile.getBaseFile().exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(mFile.openRead()))) {
+            if (in.readInt() != VERSION) {
+                return;
+            }
+            final long highWaterMark = in.readLong();
+            if (highWaterMark < startTime || highWaterMark > now) {
+                return;
+            }
+            final int firstBucket = getBucket(startTime);
+            final int packageCount = in.readInt();
+            for (int i = 0; i < packageCount; i++) {
+                final String packageName = in.readUTF();
+                final PackageHistory history = new PackageHistory();
+                history.lastSent = in.readLong();
+                final int bucketCount = in.readInt();
+                for (int j = 0; j < bucketCount; j++) {
+                    final int bucket = in.readInt();
+                    final int sentCount = in.readInt();
+                    if (bucket >= firstBucket) {
+                        history.sentCounts.append(bucket, sentCount);
+                    }
+                }
+                if (history.sentCounts.size() > 0) {
+                    mPackages.put(packageName, history);
+                }
+            }
+            mHighWaterMark = highWaterMark;
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Failed to read notifications sent history", e);
+            mPackages.clear();
+            mHighWaterMark = startTime;
+        }
+    }
+
+    /** Saves the history. */
+    void save() {
+        FileOutputStream out = null;
+        try {
+            out = mFile.startWrite();
+            final DataOutputStream dataOut =
+                    new DataOutputStream(new BufferedOutputStream(out));
+            dataOut.writeInt(VERSION);
+            dataOut.writeLong(mHighWaterMark);
+            final int packageCount = mPackages.size();
+            dataOut.writeInt(packageCount);
+            for (int i = 0; i < packageCount; i++) {
+                final PackageHistory history = mPackages.valueAt(i);
+                dataOut.writeUTF(mPackages.keyAt(i));
+                dataOut.writeLong(history.lastSent);
+                final int bucketCount = history.sentCounts.size();
+                dataOut.writeInt(bucketCount);
+                for (int j = 0; j < bucketCount; j++) {
+                    dataOut.writeInt(history.sentCounts.keyAt(j));
+                    dataOut.writeInt(history.sentCounts.valueAt(j));
+                }
+            }
+            dataOut.flush();
+            mFile.finishWrite(out);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write notifications sent history", e);
+            mFile.failWrite(out);
+        }
+    }
+
+    /** Returns the time up to which the usage events are consumed. */
+    long getHighWaterMark() {
+        return mHighWaterMark;
+    }
+
+    void setHighWaterMark(long highWaterMark) {
+        mHighWaterMark = highWaterMark;
+    }
+
+    /** Adds a notification sent by the package. */
+    void addNotificationSent(String packageName, long timestamp) {
+        PackageHistory history = mPackages.get(packageName);
+        if (history == null) {
+            history = new PackageHistory();
+            mPackages.put(packageName, history);
+        }
+        if (timestamp > history.lastSent) {
+            history.lastSent = timestamp;
+        }
+        final int bucket = getBucket(timestamp);
+        history.sentCounts.put(bucket, history.sentCounts.get(bucket) + 1);
+    }
+
+    /** Puts the notifications sent state of each package of the user into the map. */
+    void putSentStates(int userId, Map<String, NotificationsSentState> states) {
+        final int packageCount = mPackages.size();
+        for (int i = 0; i < packageCount; i++) {
+            final PackageHistory history = mPackages.valueAt(i);
+            final NotificationsSentState stats = new NotificationsSentState();
+            stats.lastSent = history.lastSent;
+            for (int j = 0; j < history.sentCounts.size(); j++) {
+                stats.sentCount += history.sentCounts.valueAt(j);
+            }
+            states.put(AppStateNotificationBridge.getKey(userId, mPackages.keyAt(i)), stats);
+        }
+    }
+
+    private static int getBucket(long timestamp) {
+        return (int) (timestamp / BUCKET_MILLIS);
+    }
+}
@@ -43,6 +43,8 @@ import android.text.format.Formatter;
 import android.util.Log;
 import android.util.SparseArray;
 
+import androidx.annotation.VisibleForTesting;
+
 import com.android.settings.R;
 import com.android.settingslib.Utils;
 import com.android.settingslib.applications.InterestingConfigChanges;
@@ -125,7 +127,7 @@ public class RunningState {
     final SparseArray<MergedItem> mOtherUserBackgroundItems = new SparseArray<MergedItem>();
 
     static class AppProcessInfo {
-        final ActivityManager.RunningAppProcessInfo info;
+        ActivityManager.RunningAppProcessInfo info;
         boolean hasServices;
         boolean hasForegroundServices;
 
@@ -134,8 +136,18 @@ public class RunningState {
         }
     }
 
-    // Temporary structure used when updating above information.
+    // Temporary structures used when updating above information, kept
+    // across updates so that a refresh doesn't allocate them again.
     final SparseArray<AppProcessInfo> mTmpAppProcesses = new SparseArray<AppProcessInfo>();
+    final ArrayList<AppProcessInfo> mAppProcessInfoPool = new ArrayList<AppProcessInfo>();
+    final ArrayList<ProcessItem> mTmpSortedProcesses = new ArrayList<ProcessItem>();
+    int[] mTmpPids;
+
+    // The info of the services, organized by user id and component.  Services
+    // are started and stopped all the time, so the info is kept until a
+    // package is changed rather than retrieved again on each restart.
+    final SparseArray<HashMap<ComponentName, ServiceInfo>> mServiceInfos
+            = new SparseArray<HashMap<ComponentName, ServiceInfo>>();
 
     int mSequence = 0;
 
@@ -325,6 +337,15 @@ public class RunningState {
     private final UserManagerBroadcastReceiver mUmBroadcastReceiver =
             new UserManagerBroadcastReceiver();
 
+    private final BroadcastReceiver mPackageBroadcastReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            synchronized (mServiceInfos) {
+                mServiceInfos.clear();
+            }
+        }
+    };
+
     // ----- DATA STRUCTURES -----
 
     static interface OnRefreshUiListener {
@@ -495,7 +516,8 @@ public class RunningState {
             }
         }
 
-        boolean updateService(Context context, ActivityManager.RunningServiceInfo service) {
+        boolean updateService(Context context, ActivityManager.RunningServiceInfo service,
+                RunningState state) {
             final PackageManager pm = context.getPackageManager();
 
             boolean changed = false;
@@ -505,8 +527,7 @@ public class RunningState {
                 si = new ServiceItem(mUserId);
                 si.mRunningService = service;
                 try {
-                    si.mServiceInfo = ActivityThread.getPackageManager().getServiceInfo(
-                            service.service, PackageManager.MATCH_ANY_USER,
+                    si.mServiceInfo = state.getServiceInfo(service.service,
                             UserHandle.getUserId(service.uid));
 
                     if (si.mServiceInfo == null) {
@@ -793,6 +814,13 @@ public class RunningState {
         mBackgroundThread.start();
         mBackgroundHandler = new BackgroundHandler(mBackgroundThread.getLooper());
         mUmBroadcastReceiver.register(mApplicationContext);
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        mApplicationContext.registerReceiverAsUser(mPackageBroadcastReceiver, UserHandle.ALL,
+                filter, null, null);
     }
 
     void resume(OnRefreshUiListener listener) {
@@ -868,6 +896,121 @@ public class RunningState {
         mRunningProcesses.clear();
         mProcessItems.clear();
         mAllProcessItems.clear();
+        synchronized (mServiceInfos) {
+            mServiceInfos.clear();
+        }
+    }
+
+    ServiceInfo getServiceInfo(ComponentName component, int userId) throws RemoteException {
+        synchronized (mServiceInfos) {
+            HashMap<ComponentName, ServiceInfo> infos = mServiceInfos.get(userId);
+            ServiceInfo info = infos != null ? infos.get(component) : null;
+            if (info != null) {
+                return info;
+            }
+        }
+        ServiceInfo info = ActivityThread.getPackageManager().getServiceInfo(
+                component, PackageManager.MATCH_ANY_USER, userId);
+        if (info != null) {
+            synchronized (mServiceInfos) {
+                HashMap<ComponentName, ServiceInfo> infos = mServiceInfos.get(userId);
+                if (infos == null) {
+                    infos = new HashMap<ComponentName, ServiceInfo>();
+                    mServiceInfos.put(userId, infos);
+                }
+                infos.put(component, info);
+            }
+        }
+        return info;
+    }
+
+    private AppProcessInfo obtainAppProcessInfo(ActivityManager.RunningAppProcessInfo pi) {
+        final int N = mAppProcessInfoPool.size();
+        if (N == 0) {
+            return new AppProcessInfo(pi);
+        }
+        AppProcessInfo ainfo = mAppProcessInfoPool.remove(N - 1);
+        ainfo.info = pi;
+        ainfo.hasServices = false;
+        ainfo.hasForegroundServices = false;
+        return ainfo;
+    }
+
+    private static MergedItem obtainMergedItem(ProcessItem proc) {
+        if (proc.mMergedItem == null) {
+            proc.mMergedItem = new MergedItem(proc.mUserId);
+            proc.mMergedItem.mProcess = proc;
+        }
+        return proc.mMergedItem;
+    }
+
+    /**
+     * Returns the item of a background process. The item of the process is only reused if it
+     * already was a background item, as the items of the other categories are published in
+     * {@link #mMergedItems} and can't be modified from here.
+     */
+    @VisibleForTesting
+    static MergedItem obtainBackgroundItem(ProcessItem proc, List<MergedItem> backgroundItems) {
+        final MergedItem mergedItem = proc.mMergedItem;
+        if (mergedItem != null && mergedItem.mProcess == proc
+                && backgroundItems.contains(mergedItem)) {
+            return mergedItem;
+        }
+        proc.mMergedItem = new MergedItem(proc.mUserId);
+        proc.mMergedItem.mProcess = proc;
+        return proc.mMergedItem;
+    }
+
+    /**
+     * Returns the item of a service process, whose dependent processes are the process items
+     * from {@code start} to {@code end}. The item of an unchanged process is kept; the UI may be
+     * reading it, so a changed one is built again rather than modified in place.
+     */
+    @VisibleForTesting
+    static MergedItem obtainServiceMergedItem(ProcessItem pi, List<ProcessItem> processItems,
+            int start, int end) {
+        MergedItem mergedItem = null;
+        boolean haveAllMerged = true;
+        for (ServiceItem si : pi.mServices.values()) {
+            if (si.mMergedItem != null) {
+                if (mergedItem != null && mergedItem != si.mMergedItem) {
+                    haveAllMerged = false;
+                }
+                mergedItem = si.mMergedItem;
+            } else {
+                haveAllMerged = false;
+            }
+        }
+        if (haveAllMerged && mergedItem != null && mergedItem.mProcess == pi
+                && mergedItem.mServices.size() == pi.mServices.size()
+                && hasOtherProcesses(mergedItem, processItems, start, end)) {
+            return mergedItem;
+        }
+
+        // Whoops, we need to build a new MergedItem!
+        mergedItem = new MergedItem(pi.mUserId);
+        for (ServiceItem si : pi.mServices.values()) {
+            mergedItem.mServices.add(si);
+            si.mMergedItem = mergedItem;
+        }
+        mergedItem.mProcess = pi;
+        for (int mpi = start; mpi < end; mpi++) {
+            mergedItem.mOtherProcesses.add(processItems.get(mpi));
+        }
+        return mergedItem;
+    }
+
+    private static boolean hasOtherProcesses(MergedItem mergedItem,
+            List<ProcessItem> processItems, int start, int end) {
+        if (mergedItem.mOtherProcesses.size() != Math.max(end - start, 0)) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (mergedItem.mOtherProcesses.get(i - start) != processItems.get(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     private void addOtherUserItem(Context context, ArrayList<MergedItem> newMergedItems,
@@ -938,10 +1081,15 @@ public class RunningState {
         List<ActivityManager.RunningAppProcessInfo> processes
                 = am.getRunningAppProcesses();
         final int NP = processes != null ? processes.size() : 0;
+        for (int i = 0; i < mTmpAppProcesses.size(); i++) {
+            AppProcessInfo ainfo = mTmpAppProcesses.valueAt(i);
+            ainfo.info = null;
+            mAppProcessInfoPool.add(ainfo);
+        }
         mTmpAppProcesses.clear();
         for (int i = 0; i < NP; i++) {
             ActivityManager.RunningAppProcessInfo pi = processes.get(i);
-            mTmpAppProcesses.put(pi.pid, new AppProcessInfo(pi));
+            mTmpAppProcesses.put(pi.pid, obtainAppProcessInfo(pi));
         }
 
         // Initial iteration through running services to collect per-process
@@ -1025,7 +1173,7 @@ public class RunningState {
                 proc.mDependentProcesses.clear();
                 proc.mCurSeq = mSequence;
             }
-            changed |= proc.updateService(context, si);
+            changed |= proc.updateService(context, si, this);
         }
 
         // Now update the map of other processes that are running (but
@@ -1162,7 +1310,8 @@ public class RunningState {
 
         if (changed) {
             // First determine an order for the services.
-            ArrayList<ProcessItem> sortedProcesses = new ArrayList<ProcessItem>();
+            ArrayList<ProcessItem> sortedProcesses = mTmpSortedProcesses;
+            sortedProcesses.clear();
             for (int i = 0; i < mServiceProcessesByName.size(); i++) {
                 for (ProcessItem pi : mServiceProcessesByName.valueAt(i).values()) {
                     pi.mIsSystem = false;
@@ -1205,37 +1354,15 @@ public class RunningState {
                 }
 
                 // Now add the services running in it.
-                MergedItem mergedItem = null;
-                boolean haveAllMerged = false;
                 boolean needDivider = false;
                 for (ServiceItem si : pi.mServices.values()) {
                     si.mNeedDivider = needDivider;
                     needDivider = true;
                     newItems.add(si);
-                    if (si.mMergedItem != null) {
-                        if (mergedItem != null && mergedItem != si.mMergedItem) {
-                            haveAllMerged = false;
-                        }
-                        mergedItem = si.mMergedItem;
-                    } else {
-                        haveAllMerged = false;
-                    }
                 }
 
-                if (!haveAllMerged || mergedItem == null
-                        || mergedItem.mServices.size() != pi.mServices.size()) {
-                    // Whoops, we need to build a new MergedItem!
-                    mergedItem = new MergedItem(pi.mUserId);
-                    for (ServiceItem si : pi.mServices.values()) {
-                        mergedItem.mServices.add(si);
-                        si.mMergedItem = mergedItem;
-                    }
-                    mergedItem.mProcess = pi;
-                    mergedItem.mOtherProcesses.clear();
-                    for (int mpi = firstProc; mpi < (mProcessItems.size() - 1); mpi++) {
-                        mergedItem.mOtherProcesses.add(mProcessItems.get(mpi));
-                    }
-                }
+                final MergedItem mergedItem = obtainServiceMergedItem(pi, mProcessItems,
+                        firstProc, mProcessItems.size() - 1);
 
                 mergedItem.update(context, false);
                 if (mergedItem.mUserId != mMyUserId) {
@@ -1251,11 +1378,7 @@ public class RunningState {
             for (int i = 0; i < NHP; i++) {
                 ProcessItem proc = mInterestingProcesses.get(i);
                 if (proc.mClient == null && proc.mServices.size() <= 0) {
-                    if (proc.mMergedItem == null) {
-                        proc.mMergedItem = new MergedItem(proc.mUserId);
-                        proc.mMergedItem.mProcess = proc;
-                    }
-                    proc.mMergedItem.update(context, false);
+                    obtainMergedItem(proc).update(context, false);
                     if (proc.mMergedItem.mUserId != mMyUserId) {
                         addOtherUserItem(context, newMergedItems, mOtherUserMergedItems,
                                 proc.mMergedItem);
@@ -1320,7 +1443,10 @@ public class RunningState {
         boolean diffUsers = false;
         try {
             final int numProc = mAllProcessItems.size();
-            int[] pids = new int[numProc];
+            if (mTmpPids == null || mTmpPids.length != numProc) {
+                mTmpPids = new int[numProc];
+            }
+            int[] pids = mTmpPids;
             for (int i = 0; i < numProc; i++) {
                 pids[i] = mAllProcessItems.get(i).mPid;
             }
@@ -1337,8 +1463,7 @@ public class RunningState {
                     backgroundProcessMemory += proc.mSize;
                     MergedItem mergedItem;
                     if (newBackgroundItems != null) {
-                        mergedItem = proc.mMergedItem = new MergedItem(proc.mUserId);
-                        proc.mMergedItem.mProcess = proc;
+                        mergedItem = obtainBackgroundItem(proc, mBackgroundItems);
                         diffUsers |= mergedItem.mUserId != mMyUserId;
                         newBackgroundItems.add(mergedItem);
                     } else {
@@ -1350,8 +1475,7 @@ public class RunningState {
                                 diffUsers |= mergedItem.mUserId != mMyUserId;
                                 newBackgroundItems.add(mergedItem);
                             }
-                            mergedItem = proc.mMergedItem = new MergedItem(proc.mUserId);
-                            proc.mMergedItem.mProcess = proc;
+                            mergedItem = obtainBackgroundItem(proc, mBackgroundItems);
                             diffUsers |= mergedItem.mUserId != mMyUserId;
                             newBackgroundItems.add(mergedItem);
                         } else {
@@ -114,7 +114,12 @@ public class AppBatteryPreferenceController extends BasePreferenceController
             return;
         }
 
-        loadBatteryDiffEntries();
+        // The diff entries come from the battery history, which is only recorded for the chart.
+        if (mIsChartGraphEnabled) {
+            loadBatteryDiffEntries();
+        } else {
+            mBatteryDiffEntriesLoaded = true;
+        }
     }
 
     @Override
@@ -305,13 +310,9 @@ public class AppBatteryPreferenceController extends BasePreferenceController
 
     private void closeBatteryUsageStats() {
         if (mBatteryUsageStats != null) {
-            try {
-                mBatteryUsageStats.close();
-            } catch (Exception e) {
-                Log.e(TAG, "BatteryUsageStats.close() failed", e);
-            } finally {
-                mBatteryUsageStats = null;
-            }
+            // The stats may be shared with other pages, so give them back to the loader.
+            BatteryUsageStatsLoader.release(mBatteryUsageStats);
+            mBatteryUsageStats = null;
         }
     }
 }
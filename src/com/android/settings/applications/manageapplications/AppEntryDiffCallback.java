@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications.manageapplications;
+
+import android.graphics.drawable.Drawable;
+import android.util.LongSparseArray;
+
+import androidx.recyclerview.widget.DiffUtil;
+
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A DiffCallback to calculate the difference between the old and the new {@link AppEntry} list of
+ * the app list. The entries are mutable and shared between the lists, so the contents are compared
+ * with the snapshot of the old list taken by {@link #getContents(List)}.
+ */
+class AppEntryDiffCallback extends DiffUtil.Callback {
+
+    private final List<AppEntry> mOldEntries;
+    private final List<AppEntry> mNewEntries;
+    private final LongSparseArray<Content> mOldContents;
+
+    AppEntryDiffCallback(List<AppEntry> oldEntries, List<AppEntry> newEntries,
+            LongSparseArray<Content> oldContents) {
+        mOldEntries = oldEntries;
+        mNewEntries = newEntries;
+        mOldContents = oldContents;
+    }
+
+    @Override
+    public int getOldListSize() {
+        return mOldEntries.size();
+    }
+
+    @Override
+    public int getNewListSize() {
+        return mNewEntries.size();
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldEntryPosition, int newEntryPosition) {
+        return mOldEntries.get(oldEntryPosition).id == mNewEntries.get(newEntryPosition).id;
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldEntryPosition, int newEntryPosition) {
+        final AppEntry newEntry = mNewEntries.get(newEntryPosition);
+        return getContent(newEntry).equals(mOldContents.get(newEntry.id));
+    }
+
+    /** Returns the snapshot of the displayed contents of the entries, keyed by the entry id. */
+    static LongSparseArray<Content> getContents(List<AppEntry> entries) {
+        final int size = entries.size();
+        final LongSparseArray<Content> contents = new LongSparseArray<>(size);
+        for (int i = 0; i < size; i++) {
+            final AppEntry entry = entries.get(i);
+            contents.put(entry.id, getContent(entry));
+        }
+        return contents;
+    }
+
+    /** Returns the snapshot of the fields of the entry displayed in the app list. */
+    static Content getContent(AppEntry entry) {
+        return new Content(entry);
+    }
+
+    /** The fields of an entry displayed in the app list. */
+    static final class Content {
+        private final String mLabel;
+        private final String mLabelDescription;
+        private final Drawable mIcon;
+        private final String mSizeStr;
+        private final String mInternalSizeStr;
+        private final String mExternalSizeStr;
+        private final boolean mEnabled;
+        // The summary and the switch are derived from the extra info. The bridges replace the
+        // extra info of an entry when it is updated rather than changing it.
+        private final Object mExtraInfo;
+
+        private Content(AppEntry entry) {
+            mLabel = entry.label;
+            mLabelDescription = entry.labelDescription;
+            mIcon = entry.icon;
+            mSizeStr = entry.sizeStr;
+            mInternalSizeStr = entry.internalSizeStr;
+            mExternalSizeStr = entry.externalSizeStr;
+            mEnabled = entry.info != null && entry.info.enabled;
+            mExtraInfo = entry.extraInfo;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Content)) {
+                return false;
+            }
+            final Content other = (Content) o;
+            return mEnabled == other.mEnabled
+                    && Objects.equals(mLabel, other.mLabel)
+                    && Objects.equals(mLabelDescription, other.mLabelDescription)
+                    && Objects.equals(mIcon, other.mIcon)
+                    && Objects.equals(mSizeStr, other.mSizeStr)
+                    && Objects.equals(mInternalSizeStr, other.mInternalSizeStr)
+                    && Objects.equals(mExternalSizeStr, other.mExternalSizeStr)
+                    && Objects.equals(mExtraInfo, other.mExtraInfo);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mLabel, mLabelDescription, mIcon, mSizeStr, mInternalSizeStr,
+                    mExternalSizeStr, mEnabled, mExtraInfo);
+        }
+    }
+}
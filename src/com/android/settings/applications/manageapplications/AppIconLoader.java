@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications.manageapplications;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.LongSparseArray;
+import android.util.LruCache;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import com.android.settingslib.applications.AppUtils;
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+import com.android.settingslib.utils.ThreadUtils;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the icons of the app list in the background.
+ *
+ * <p>A single load runs for an entry however many holders are waiting for it, and it is
+ * cancelled once no holder is waiting for it and it isn't prefetched anymore. The icons are
+ * rendered into bitmaps of the exact size of the icon view, which are taken from a pool. Only the
+ * bitmaps which were never displayed go back to the pool, as a view may still be drawing the
+ * others.
+ */
+class AppIconLoader {
+    private static final int LOADER_THREADS = 2;
+    private static final long EXECUTOR_KEEP_ALIVE_SECONDS = 30;
+    // Enough icons for a few screens of the list.
+    private static final int MAX_CACHED_ICONS = 48;
+    private static final int MAX_POOLED_BITMAPS = 8;
+
+    private static ExecutorService sLoaderExecutor;
+
+    private final Context mContext;
+    private final ExecutorService mExecutor;
+    // The in-flight loads, keyed by the entry id.
+    private final LongSparseArray<IconRequest> mRequests = new LongSparseArray<>();
+    // The entry each holder is waiting for.
+    private final ArrayMap<ApplicationViewHolder, AppEntry> mTargets = new ArrayMap<>();
+    // The rendered bitmap each holder displays.
+    private final ArrayMap<ApplicationViewHolder, Bitmap> mDisplayed = new ArrayMap<>();
+    // The rendered bitmaps which were displayed at some point, and can't be pooled anymore.
+    private final ArraySet<Bitmap> mShownBitmaps = new ArraySet<>();
+    private final ArraySet<Bitmap> mCachedBitmaps = new ArraySet<>();
+    private final LruCache<Long, CachedIcon> mIcons =
+            new LruCache<Long, CachedIcon>(MAX_CACHED_ICONS) {
+                @Override
+                protected void entryRemoved(boolean evicted, Long key, CachedIcon oldValue,
+                        CachedIcon newValue) {
+                    if (newValue == null || oldValue.bitmap != newValue.bitmap) {
+                        mCachedBitmaps.remove(oldValue.bitmap);
+                        releaseIfUnused(oldValue.bitmap);
+                    }
+                }
+            };
+    private final ArrayDeque<Bitmap> mBitmapPool = new ArrayDeque<>(MAX_POOLED_BITMAPS);
+    private int mIconSize;
+    private boolean mReleased;
+
+    private static class CachedIcon {
+        final Bitmap bitmap;
+        // The apk the icon was loaded from, which changes when the package is updated.
+        final String source;
+
+        CachedIcon(Bitmap bitmap, String source) {
+            this.bitmap = bitmap;
+            this.source = source;
+        }
+    }
+
+    private static class IconRequest {
+        final AppEntry entry;
+        Future<?> future;
+        int targetCount;
+
+        IconRequest(AppEntry entry) {
+            this.entry = entry;
+        }
+    }
+
+    AppIconLoader(Context context) {
+        this(context, getLoaderExecutor());
+    }
+
+    @VisibleForTesting
+    AppIconLoader(Context context, ExecutorService executor) {
+        mContext = context;
+        mExecutor = executor;
+    }
+
+    /** Shows the icon of the entry in the holder, loading it if it isn't cached. */
+    @MainThread
+    void loadIcon(ApplicationViewHolder holder, AppEntry entry) {
+        if (mIconSize == 0) {
+            mIconSize = holder.getIconSize();
+        }
+        final AppEntry target = mTargets.get(holder);
+        if (target != null && target.id == entry.id) {
+            // The holder is already waiting for the icon.
+            return;
+        }
+        cancel(holder);
+        if (entry.mounted) {
+            final Drawable cachedIcon = AppUtils.getIconFromCache(entry);
+            if (cachedIcon != null) {
+                setIcon(holder, cachedIcon);
+                return;
+            }
+            final Bitmap bitmap = getCachedBitmap(entry);
+            if (bitmap != null) {
+                setIcon(holder, bitmap);
+                return;
+            }
+        }
+        // Don't leave the icon of the previous entry while the icon is loading.
+        setIcon(holder, mContext.getPackageManager().getDefaultActivityIcon());
+        mTargets.put(holder, entry);
+        requestIcon(entry).targetCount++;
+    }
+
+    /** Stops waiting for the icon of the holder, as it is recycled. */
+    @MainThread
+    void cancel(ApplicationViewHolder holder) {
+        final AppEntry entry = mTargets.remove(holder);
+        if (entry == null) {
+            return;
+        }
+        final IconRequest request = mRequests.get(entry.id);
+        if (request != null && --request.targetCount == 0) {
+            cancelRequest(request);
+        }
+    }
+
+    /**
+     * Loads the icons of the entries about to be shown. The prefetched loads of the entries
+     * which aren't in the list anymore are cancelled.
+     */
+    @MainThread
+    void prefetch(List<AppEntry> entries) {
+        if (mIconSize == 0) {
+            return;
+        }
+        final ArraySet<Long> prefetchedIds = new ArraySet<>(entries.size());
+        for (AppEntry entry : entries) {
+            prefetchedIds.add(entry.id);
+        }
+        for (int i = mRequests.size() - 1; i >= 0; i--) {
+            final IconRequest request = mRequests.valueAt(i);
+            if (request.targetCount == 0 && !prefetchedIds.contains(request.entry.id)) {
+                cancelRequest(request);
+            }
+        }
+        for (AppEntry entry : entries) {
+            if (!entry.mounted || (AppUtils.getIconFromCache(entry) == null
+                    && getCachedBitmap(entry) == null)) {
+                requestIcon(entry);
+            }
+        }
+    }
+
+    /** Cancels all the loads and drops the cached icons, as the list is destroyed. */
+    @MainThread
+    void release() {
+        mReleased = true;
+        for (int i = mRequests.size() - 1; i >= 0; i--) {
+            mRequests.valueAt(i).future.cancel(false /* mayInterruptIfRunning */);
+        }
+        mRequests.clear();
+        mTargets.clear();
+        mDisplayed.clear();
+        mShownBitmaps.clear();
+        mIcons.evictAll();
+        synchronized (mBitmapPool) {
+            mBitmapPool.clear();
+        }
+    }
+
+    private Bitmap getCachedBitmap(AppEntry entry) {
+        final CachedIcon cachedIcon = mIcons.get(entry.id);
+        if (cachedIcon == null) {
+            return null;
+        }
+        if (!TextUtils.equals(cachedIcon.source, getIconSource(entry))) {
+            // The package was updated since the icon was loaded.
+            mIcons.remove(entry.id);
+            return null;
+        }
+        return cachedIcon.bitmap;
+    }
+
+    private static String getIconSource(AppEntry entry) {
+        return entry.info.sourceDir + ":" + entry.info.icon;
+    }
+
+    private IconRequest requestIcon(AppEntry entry) {
+        IconRequest request = mRequests.get(entry.id);
+        if (request == null) {
+            final IconRequest newRequest = new IconRequest(entry);
+            final int iconSize = mIconSize;
+            newRequest.future = mExecutor.submit(() -> {
+                final Drawable icon = AppUtils.getIcon(mContext, entry);
+                final Bitmap bitmap = icon != null ? render(icon, iconSize) : null;
+                ThreadUtils.postOnMainThread(() -> onIconLoaded(newRequest, icon, bitmap));
+            });
+            mRequests.put(entry.id, newRequest);
+            request = newRequest;
+        }
+        return request;
+    }
+
+    private void cancelRequest(IconRequest request) {
+        request.future.cancel(false /* mayInterruptIfRunning */);
+        mRequests.remove(request.entry.id);
+    }
+
+    @MainThread
+    private void onIconLoaded(IconRequest request, Drawable icon, Bitmap bitmap) {
+        if (mRequests.get(request.entry.id) != request) {
+            // The load was cancelled while it was running.
+            if (bitmap != null) {
+                releaseIfUnused(bitmap);
+            }
+            return;
+        }
+        mRequests.remove(request.entry.id);
+        if (bitmap != null) {
+            mCachedBitmaps.add(bitmap);
+            mIcons.put(request.entry.id, new CachedIcon(bitmap, getIconSource(request.entry)));
+        }
+        for (int i = mTargets.size() - 1; i >= 0; i--) {
+            if (mTargets.valueAt(i).id != request.entry.id) {
+                continue;
+            }
+            final ApplicationViewHolder holder = mTargets.keyAt(i);
+            mTargets.removeAt(i);
+            if (bitmap != null) {
+                setIcon(holder, bitmap);
+            } else if (icon != null) {
+                setIcon(holder, icon);
+            }
+        }
+    }
+
+    private void setIcon(ApplicationViewHolder holder, Bitmap bitmap) {
+        holder.setIcon(new BitmapDrawable(mContext.getResources(), bitmap));
+        mShownBitmaps.add(bitmap);
+        final Bitmap previous = mDisplayed.put(holder, bitmap);
+        if (previous != null && previous != bitmap) {
+            releaseIfUnused(previous);
+        }
+    }
+
+    private void setIcon(ApplicationViewHolder holder, Drawable icon) {
+        holder.setIcon(icon);
+        final Bitmap previous = mDisplayed.remove(holder);
+        if (previous != null) {
+            releaseIfUnused(previous);
+        }
+    }
+
+    private void releaseIfUnused(Bitmap bitmap) {
+        if (mCachedBitmaps.contains(bitmap) || mDisplayed.containsValue(bitmap)) {
+            return;
+        }
+        if (mShownBitmaps.remove(bitmap) || mReleased) {
+            // A view may still draw the bitmap, so leave it to the garbage collector.
+            return;
+        }
+        synchronized (mBitmapPool) {
+            if (mBitmapPool.size() < MAX_POOLED_BITMAPS) {
+                mBitmapPool.add(bitmap);
+            }
+        }
+    }
+
+    @WorkerThread
+    private Bitmap render(Drawable icon, int iconSize) {
+        final Drawable.ConstantState state = icon.getConstantState();
+        if (state == null) {
+            return null;
+        }
+        // The icon is shared with the icon cache, so draw a copy of it.
+        final Drawable drawable = state.newDrawable(mContext.getResources());
+        final Bitmap bitmap = obtainBitmap(iconSize);
+        bitmap.eraseColor(Color.TRANSPARENT);
+        drawable.setBounds(0, 0, iconSize, iconSize);
+        drawable.draw(new Canvas(bitmap));
+        return bitmap;
+    }
+
+    private Bitmap obtainBitmap(int iconSize) {
+        synchronized (mBitmapPool) {
+            final Bitmap bitmap = mBitmapPool.poll();
+            if (bitmap != null && bitmap.getWidth() == iconSize) {
+                return bitmap;
+            }
+        }
+        return Bitmap.createBitmap(iconSize, iconSize, Bitmap.Config.ARGB_8888);
+    }
+
+    private static synchronized ExecutorService getLoaderExecutor() {
+        if (sLoaderExecutor == null) {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    LOADER_THREADS, LOADER_THREADS,
+                    EXECUTOR_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+            executor.allowCoreThreadTimeOut(true);
+            sLoaderExecutor = executor;
+        }
+        return sLoaderExecutor;
+    }
+}
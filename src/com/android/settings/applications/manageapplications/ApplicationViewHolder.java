@@ -135,6 +135,13 @@ public class ApplicationViewHolder extends RecyclerView.ViewHolder {
         mAppIcon.setImageDrawable(icon);
     }
 
+    /** Returns the size of the icon view, in pixels. */
+    int getIconSize() {
+        final ViewGroup.LayoutParams params = mAppIcon.getLayoutParams();
+        return params != null && params.width > 0 ? params.width
+                : itemView.getResources().getDimensionPixelSize(R.dimen.secondary_app_icon_size);
+    }
+
     void updateDisableView(ApplicationInfo info) {
         if ((info.flags & ApplicationInfo.FLAG_INSTALLED) == 0) {
             mDisabled.setVisibility(View.VISIBLE);
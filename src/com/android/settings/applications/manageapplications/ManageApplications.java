@@ -45,7 +45,6 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageItemInfo;
-import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
@@ -60,6 +59,7 @@ import android.text.TextUtils;
 import android.util.ArraySet;
 import android.util.IconDrawableFactory;
 import android.util.Log;
+import android.util.LongSparseArray;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -78,7 +78,9 @@ import androidx.annotation.VisibleForTesting;
 import androidx.annotation.WorkerThread;
 import androidx.coordinatorlayout.widget.CoordinatorLayout;
 import androidx.core.view.ViewCompat;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.ListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.android.internal.compat.IPlatformCompat;
@@ -150,6 +152,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -1081,6 +1084,8 @@ public class ManageApplications extends InstrumentedFragment
         private static final int VIEW_TYPE_APP = 0;
         private static final int VIEW_TYPE_EXTRA_VIEW = 1;
         private static final int VIEW_TYPE_APP_HEADER = 2;
+        // The number of entries past the bound one whose icons are loaded ahead of the scroll.
+        private static final int ICON_PREFETCH_COUNT = 6;
 
         private final ApplicationsState mState;
         private final ApplicationsState.Session mSession;
@@ -1089,6 +1094,7 @@ public class ManageApplications extends InstrumentedFragment
         private final AppStateBaseBridge mExtraInfoBridge;
         private final LoadingViewController mLoadingViewController;
         private final IconDrawableFactory mIconDrawableFactory;
+        private final AppIconLoader mIconLoader;
 
         private AppFilterItem mAppFilter;
         private ArrayList<ApplicationsState.AppEntry> mEntries;
@@ -1102,10 +1108,27 @@ public class ManageApplications extends InstrumentedFragment
         private SearchFilter mSearchFilter;
         private PowerAllowlistBackend mBackend;
 
+        // The filter of the list is kept until the app filter, the composite filter or the
+        // visibility of the system apps is changed.
+        private AppFilter mFilter;
+        private AppFilterItem mFilterAppFilter;
+        private AppFilter mFilterCompositeFilter;
+        private boolean mFilterShowSystem;
+        private Comparator<AppEntry> mComparator;
+        // The filter and the comparator of the last completed rebuild, used to re-filter and
+        // re-position a changed entry without rebuilding the whole list.
+        private AppFilter mEntriesFilter;
+        private Comparator<AppEntry> mEntriesComparator;
+        // The snapshot of the displayed contents of the entries, used to find the changed items
+        // when the list is rebuilt.
+        private LongSparseArray<AppEntryDiffCallback.Content> mEntryContents;
+
         // This is to remember and restore the last scroll position when this
         // fragment is paused. We need this special handling because app entries are added gradually
         // when we rebuild the list after the user made some changes, like uninstalling an app.
         private int mLastIndex = -1;
+        // The last bound position, telling the direction of the scroll to prefetch the icons.
+        private int mLastBoundPosition;
 
         @VisibleForTesting
         OnScrollListener mOnScrollListener;
@@ -1125,6 +1148,7 @@ public class ManageApplications extends InstrumentedFragment
             );
             mContext = manageApplications.getActivity();
             mIconDrawableFactory = IconDrawableFactory.newInstance(mContext);
+            mIconLoader = new AppIconLoader(mContext);
             mAppFilter = appFilter;
             mBackend = PowerAllowlistBackend.getInstance(mContext);
             if (mManageApplications.mListType == LIST_TYPE_NOTIFICATION) {
@@ -1244,6 +1268,7 @@ public class ManageApplications extends InstrumentedFragment
 
         public void release() {
             mSession.onDestroy();
+            mIconLoader.release();
             if (mExtraInfoBridge != null) {
                 mExtraInfoBridge.release();
             }
@@ -1293,7 +1318,6 @@ public class ManageApplications extends InstrumentedFragment
                 }
                 return;
             }
-            ApplicationsState.AppFilter filterObj;
             Comparator<AppEntry> comparatorObj;
             boolean emulated = Environment.isExternalStorageEmulated();
             if (emulated) {
@@ -1301,19 +1325,6 @@ public class ManageApplications extends InstrumentedFragment
             } else {
                 mWhichSize = SIZE_INTERNAL;
             }
-            filterObj = mAppFilter.getFilter();
-            if (mCompositeFilter != null) {
-                filterObj = new CompoundFilter(filterObj, mCompositeFilter);
-            }
-            if (!mManageApplications.mShowSystem) {
-                if (LIST_TYPES_WITH_INSTANT.contains(mManageApplications.mListType)) {
-                    filterObj = new CompoundFilter(filterObj,
-                            ApplicationsState.FILTER_DOWNLOADED_AND_LAUNCHER_AND_INSTANT);
-                } else {
-                    filterObj = new CompoundFilter(filterObj,
-                            ApplicationsState.FILTER_DOWNLOADED_AND_LAUNCHER);
-                }
-            }
             if (mLastSortMode == R.id.sort_order_size) {
                 switch (mWhichSize) {
                     case SIZE_INTERNAL:
@@ -1333,14 +1344,41 @@ public class ManageApplications extends InstrumentedFragment
             } else {
                 comparatorObj = ApplicationsState.ALPHA_COMPARATOR;
             }
+            mComparator = comparatorObj;
 
-            final AppFilter finalFilterObj = new CompoundFilter(filterObj,
-                    ApplicationsState.FILTER_NOT_HIDE);
+            final AppFilter finalFilterObj = getFilter();
             ThreadUtils.postOnBackgroundThread(() -> {
                 mSession.rebuild(finalFilterObj, comparatorObj, false);
             });
         }
 
+        private AppFilter getFilter() {
+            final boolean showSystem = mManageApplications.mShowSystem;
+            if (mFilter != null && mFilterAppFilter == mAppFilter
+                    && mFilterCompositeFilter == mCompositeFilter
+                    && mFilterShowSystem == showSystem) {
+                return mFilter;
+            }
+            AppFilter filterObj = mAppFilter.getFilter();
+            if (mCompositeFilter != null) {
+                filterObj = new CompoundFilter(filterObj, mCompositeFilter);
+            }
+            if (!showSystem) {
+                if (LIST_TYPES_WITH_INSTANT.contains(mManageApplications.mListType)) {
+                    filterObj = new CompoundFilter(filterObj,
+                            ApplicationsState.FILTER_DOWNLOADED_AND_LAUNCHER_AND_INSTANT);
+                } else {
+                    filterObj = new CompoundFilter(filterObj,
+                            ApplicationsState.FILTER_DOWNLOADED_AND_LAUNCHER);
+                }
+            }
+            mFilter = new CompoundFilter(filterObj, ApplicationsState.FILTER_NOT_HIDE);
+            mFilterAppFilter = mAppFilter;
+            mFilterCompositeFilter = mCompositeFilter;
+            mFilterShowSystem = showSystem;
+            return mFilter;
+        }
+
         private void logAppBatteryUsage(int filterType) {
             switch (filterType) {
                 case FILTER_APPS_BATTERY_UNRESTRICTED:
@@ -1419,9 +1457,12 @@ public class ManageApplications extends InstrumentedFragment
                     || filterType == FILTER_APPS_POWER_ALLOWLIST_ALL) {
                 entries = removeDuplicateIgnoringUser(entries);
             }
+            final ArrayList<AppEntry> oldEntries = mEntries;
             mEntries = entries;
             mOriginalEntries = entries;
-            notifyDataSetChanged();
+            mEntriesFilter = mFilter;
+            mEntriesComparator = mComparator;
+            notifyEntriesChanged(oldEntries, entries);
             if (getItemCount() == 0) {
                 mLoadingViewController.showEmpty(false /* animate */);
             } else {
@@ -1451,6 +1492,85 @@ public class ManageApplications extends InstrumentedFragment
             mManageApplications.setHasInstant(mState.haveInstantApps());
         }
 
+        private void notifyEntriesChanged(List<AppEntry> oldEntries, List<AppEntry> newEntries) {
+            final LongSparseArray<AppEntryDiffCallback.Content> oldContents = mEntryContents;
+            mEntryContents = AppEntryDiffCallback.getContents(newEntries);
+            // The header of the list is added or removed with the first or the last entry.
+            if (oldEntries == null || oldContents == null || oldEntries.isEmpty()
+                    || newEntries.isEmpty()) {
+                notifyDataSetChanged();
+                return;
+            }
+            final DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(
+                    new AppEntryDiffCallback(oldEntries, newEntries, oldContents));
+            final int headerCount = getItemCount() - getApplicationCount();
+            diffResult.dispatchUpdatesTo(new ListUpdateCallback() {
+                @Override
+                public void onInserted(int position, int count) {
+                    notifyItemRangeInserted(position + headerCount, count);
+                }
+
+                @Override
+                public void onRemoved(int position, int count) {
+                    notifyItemRangeRemoved(position + headerCount, count);
+                }
+
+                @Override
+                public void onMoved(int fromPosition, int toPosition) {
+                    notifyItemMoved(fromPosition + headerCount, toPosition + headerCount);
+                }
+
+                @Override
+                public void onChanged(int position, int count, Object payload) {
+                    notifyItemRangeChanged(position + headerCount, count, payload);
+                }
+            });
+        }
+
+        /**
+         * Moves the entry at the index to its sorted position, or removes it if it doesn't pass
+         * the filter anymore, without rebuilding the whole list.
+         *
+         * @return false if the list can't be updated incrementally and needs a rebuild
+         */
+        @VisibleForTesting
+        boolean updateEntryPosition(int index) {
+            final int filterType = mAppFilter.getFilterType();
+            if (mEntriesFilter == null || mEntriesComparator == null
+                    || mEntries != mOriginalEntries
+                    || mManageApplications.mListType == LIST_TYPE_APPS_LOCALE
+                    || filterType == FILTER_APPS_POWER_ALLOWLIST
+                    || filterType == FILTER_APPS_POWER_ALLOWLIST_ALL) {
+                return false;
+            }
+            // The list may still be referenced by the session, so update a copy of it.
+            final ArrayList<AppEntry> entries = new ArrayList<>(mEntries);
+            final AppEntry entry = entries.remove(index);
+            if (!mEntriesFilter.filterApp(entry)) {
+                if (entries.isEmpty()) {
+                    return false;
+                }
+                mEntries = entries;
+                mOriginalEntries = entries;
+                mEntryContents.remove(entry.id);
+                notifyItemRemoved(index);
+                return true;
+            }
+            int newIndex = Collections.binarySearch(entries, entry, mEntriesComparator);
+            if (newIndex < 0) {
+                newIndex = -newIndex - 1;
+            }
+            entries.add(newIndex, entry);
+            mEntries = entries;
+            mOriginalEntries = entries;
+            mEntryContents.put(entry.id, AppEntryDiffCallback.getContent(entry));
+            if (newIndex != index) {
+                notifyItemMoved(index, newIndex);
+            }
+            notifyItemChanged(newIndex);
+            return true;
+        }
+
         @VisibleForTesting
         void updateLoading() {
             final boolean appLoaded = mHasReceivedLoadEntries && mSession.getAllApps().size() != 0;
@@ -1495,24 +1615,32 @@ public class ManageApplications extends InstrumentedFragment
             if (mEntries == null) {
                 return;
             }
+            final boolean isCurrentPackage =
+                    TextUtils.equals(mManageApplications.mCurrentPkgName, packageName);
+            final ArrayList<AppEntry> changedEntries = new ArrayList<>();
             final int size = mEntries.size();
             for (int i = 0; i < size; i++) {
                 final AppEntry entry = mEntries.get(i);
                 final ApplicationInfo info = entry.info;
-                if (info == null && !TextUtils.equals(packageName, info.packageName)) {
+                if (info == null || !TextUtils.equals(packageName, info.packageName)) {
                     continue;
                 }
-                if (TextUtils.equals(mManageApplications.mCurrentPkgName, info.packageName)) {
-                    // We got the size information for the last app the
-                    // user viewed, and are sorting by size...  they may
-                    // have cleared data, so we immediately want to resort
-                    // the list with the new size to reflect it to the user.
-                    rebuild();
-                    return;
+                if (isCurrentPackage && mLastSortMode == R.id.sort_order_size) {
+                    changedEntries.add(entry);
                 } else {
                     mOnScrollListener.postNotifyItemChange(i);
                 }
             }
+            // We got the size information for the last app the user viewed, and are sorting by
+            // size... they may have cleared data, so we immediately want to move the entry to
+            // reflect the new size to the user.
+            for (AppEntry entry : changedEntries) {
+                final int index = mEntries.indexOf(entry);
+                if (index >= 0 && !updateEntryPosition(index)) {
+                    rebuild();
+                    return;
+                }
+            }
         }
 
         @Override
@@ -1616,20 +1744,30 @@ public class ManageApplications extends InstrumentedFragment
             holder.setEnabled(isEnabled(position));
 
             holder.itemView.setOnClickListener(mManageApplications);
+            prefetchIcons(applicationPosition);
+        }
+
+        @Override
+        public void onViewRecycled(@NonNull ApplicationViewHolder holder) {
+            mIconLoader.cancel(holder);
         }
 
         private void updateIcon(ApplicationViewHolder holder, AppEntry entry) {
-            final Drawable cachedIcon = AppUtils.getIconFromCache(entry);
-            if (cachedIcon != null && entry.mounted) {
-                holder.setIcon(cachedIcon);
-            } else {
-                ThreadUtils.postOnBackgroundThread(() -> {
-                    final Drawable icon = AppUtils.getIcon(mContext, entry);
-                    if (icon != null) {
-                        ThreadUtils.postOnMainThread(() -> holder.setIcon(icon));
-                    }
-                });
+            mIconLoader.loadIcon(holder, entry);
+        }
+
+        private void prefetchIcons(int applicationPosition) {
+            final int step = applicationPosition >= mLastBoundPosition ? 1 : -1;
+            mLastBoundPosition = applicationPosition;
+            final List<AppEntry> entries = new ArrayList<>(ICON_PREFETCH_COUNT);
+            for (int i = 1; i <= ICON_PREFETCH_COUNT; i++) {
+                final int index = applicationPosition + i * step;
+                if (index < 0 || index >= mEntries.size()) {
+                    break;
+                }
+                entries.add(mEntries.get(index));
             }
+            mIconLoader.prefetch(entries);
         }
 
         private void updateSummary(ApplicationViewHolder holder, AppEntry entry) {
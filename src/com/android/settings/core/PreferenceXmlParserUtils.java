@@ -20,12 +20,14 @@ import android.annotation.NonNull;
 import android.annotation.Nullable;
 import android.annotation.XmlRes;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.content.res.TypedArray;
 import android.content.res.XmlResourceParser;
 import android.os.Bundle;
 import android.text.TextUtils;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.util.LruCache;
 import android.util.TypedValue;
 import android.util.Xml;
 
@@ -43,6 +45,7 @@ import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * Utility class to parse elements of XML preferences
@@ -108,6 +111,19 @@ public class PreferenceXmlParserUtils {
 
     private static final String ENTRIES_SEPARATOR = "|";
 
+    // Max number of preference metadata bundles kept in the cache.
+    private static final int METADATA_CACHE_SIZE = 4096;
+
+    // Parsed metadata (key: xml res id, flags and configuration, value: metadata of each
+    // preference).
+    private static final LruCache<MetadataKey, List<Bundle>> sMetadataCache =
+            new LruCache<MetadataKey, List<Bundle>>(METADATA_CACHE_SIZE) {
+                @Override
+                protected int sizeOf(MetadataKey key, List<Bundle> value) {
+                    return Math.max(1, value.size());
+                }
+            };
+
     /**
      * Call {@link #extractMetadata(Context, int, int)} with {@link #METADATA_KEY} instead.
      */
@@ -179,11 +195,79 @@ public class PreferenceXmlParserUtils {
     @NonNull
     public static List<Bundle> extractMetadata(Context context, @XmlRes int xmlResId, int flags)
             throws IOException, XmlPullParserException {
-        final List<Bundle> metadata = new ArrayList<>();
         if (xmlResId <= 0) {
             Log.d(TAG, xmlResId + " is invalid.");
-            return metadata;
+            return new ArrayList<>();
+        }
+        final Configuration config = context.getResources().getConfiguration();
+        if (config == null) {
+            return parseMetadata(context, xmlResId, flags);
+        }
+        final MetadataKey cacheKey = new MetadataKey(xmlResId, flags, config);
+        List<Bundle> metadata;
+        synchronized (sMetadataCache) {
+            metadata = sMetadataCache.get(cacheKey);
+        }
+        if (metadata == null) {
+            metadata = parseMetadata(context, xmlResId, flags);
+            synchronized (sMetadataCache) {
+                sMetadataCache.put(cacheKey, metadata);
+            }
         }
+        // Callers may modify the returned bundles, hand out copies.
+        final List<Bundle> result = new ArrayList<>(metadata.size());
+        for (Bundle bundle : metadata) {
+            result.add(new Bundle(bundle));
+        }
+        return result;
+    }
+
+    /** Clears the cached metadata of all preference xml. */
+    @VisibleForTesting
+    public static void clearMetadataCache() {
+        synchronized (sMetadataCache) {
+            sMetadataCache.evictAll();
+        }
+    }
+
+    /**
+     * Key of the metadata cache. The metadata of the same xml differs by the configuration the
+     * resources are resolved with, except for the window bounds which no resource depends on.
+     */
+    private static final class MetadataKey {
+        private final int mXmlResId;
+        private final int mFlags;
+        private final Configuration mConfig;
+
+        MetadataKey(@XmlRes int xmlResId, int flags, Configuration config) {
+            mXmlResId = xmlResId;
+            mFlags = flags;
+            mConfig = new Configuration(config);
+            mConfig.windowConfiguration.setToDefaults();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof MetadataKey)) {
+                return false;
+            }
+            final MetadataKey other = (MetadataKey) o;
+            return mXmlResId == other.mXmlResId && mFlags == other.mFlags
+                    && mConfig.equals(other.mConfig);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mXmlResId, mFlags, mConfig);
+        }
+    }
+
+    private static List<Bundle> parseMetadata(Context context, @XmlRes int xmlResId, int flags)
+            throws IOException, XmlPullParserException {
+        final List<Bundle> metadata = new ArrayList<>();
         final XmlResourceParser parser = context.getResources().getXml(xmlResId);
 
         int type;
@@ -56,6 +56,11 @@ public class CategoryManager {
 
     private List<DashboardCategory> mCategories;
 
+    private final TileSnapshotStore mTileSnapshotStore;
+
+    // Package change sequence number of the last saved tile snapshot.
+    private int mSnapshotSequenceNumber = -1;
+
     public static CategoryManager get(Context context) {
         if (sInstance == null) {
             sInstance = new CategoryManager(context);
@@ -64,10 +69,16 @@ public class CategoryManager {
     }
 
     CategoryManager(Context context) {
+        this(context, new TileSnapshotStore(context));
+    }
+
+    @VisibleForTesting
+    CategoryManager(Context context, TileSnapshotStore tileSnapshotStore) {
         mTileByComponentCache = new ArrayMap<>();
         mCategoryByKeyMap = new ArrayMap<>();
         mInterestingConfigChanges = new InterestingConfigChanges();
         mInterestingConfigChanges.applyNewConfig(context.getResources());
+        mTileSnapshotStore = tileSnapshotStore;
     }
 
     public synchronized DashboardCategory getTilesByCategory(Context context, String categoryKey) {
@@ -146,13 +157,22 @@ public class CategoryManager {
                 mTileByComponentCache.clear();
             }
             mCategoryByKeyMap.clear();
-            mCategories = TileUtils.getCategories(context, mTileByComponentCache);
-            for (DashboardCategory category : mCategories) {
-                mCategoryByKeyMap.put(category.key, category);
+            if (!firstLoading || forceClearCache || !loadTileSnapshot()) {
+                final int sequenceNumber = mTileSnapshotStore.getPackageSequenceNumber();
+                mCategories = TileUtils.getCategories(context, mTileByComponentCache);
+                for (DashboardCategory category : mCategories) {
+                    mCategoryByKeyMap.put(category.key, category);
+                }
+                backwardCompatCleanupForCategory(mTileByComponentCache, mCategoryByKeyMap);
+                sortCategories(context, mCategoryByKeyMap);
+                filterDuplicateTiles(mCategoryByKeyMap);
+                // Only save the snapshot when packages or config changed since the last one.
+                if (forceClearCache || sequenceNumber != mSnapshotSequenceNumber) {
+                    mTileSnapshotStore.save(mCategories, mCategoryByKeyMap.values(),
+                            sequenceNumber);
+                    mSnapshotSequenceNumber = sequenceNumber;
+                }
             }
-            backwardCompatCleanupForCategory(mTileByComponentCache, mCategoryByKeyMap);
-            sortCategories(context, mCategoryByKeyMap);
-            filterDuplicateTiles(mCategoryByKeyMap);
             if (firstLoading) {
                 logTiles(context);
 
@@ -173,6 +193,27 @@ public class CategoryManager {
         }
     }
 
+    /**
+     * Restores the categories from the tile snapshot, which is already sorted and filtered.
+     * Returns false if there is no valid snapshot.
+     */
+    private boolean loadTileSnapshot() {
+        final TileSnapshotStore.Snapshot snapshot = mTileSnapshotStore.load();
+        if (snapshot == null) {
+            return false;
+        }
+        mCategories = snapshot.categories;
+        for (DashboardCategory category : mCategories) {
+            mCategoryByKeyMap.put(category.key, category);
+        }
+        for (DashboardCategory category : snapshot.extraCategories) {
+            mCategoryByKeyMap.put(category.key, category);
+        }
+        mSnapshotSequenceNumber = snapshot.sequenceNumber;
+        Log.d(TAG, "Categories restored from tile snapshot");
+        return true;
+    }
+
     @VisibleForTesting
     synchronized void backwardCompatCleanupForCategory(
             Map<Pair<String, String>, Tile> tileByComponentCache,
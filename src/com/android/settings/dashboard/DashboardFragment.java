@@ -20,6 +20,7 @@ import android.app.settings.SettingsEnums;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.ArrayMap;
 import android.util.Log;
@@ -67,6 +68,7 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
         BasePreferenceController.UiBlockListener {
     public static final String CATEGORY = "category";
     private static final String TAG = "DashboardFragment";
+    // Page-level deadline shared by all pending observers of a single refresh.
     private static final long TIMEOUT_MILLIS = 50L;
 
     @VisibleForTesting
@@ -535,14 +537,8 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
 
         // Wait for pending observers to update UI.
         if (!pendingObservers.isEmpty()) {
-            final CountDownLatch mainLatch = new CountDownLatch(1);
-            new Thread(() -> {
-                pendingObservers.forEach(observer ->
-                        awaitObserverLatch(observer.getCountDownLatch()));
-                mainLatch.countDown();
-            }).start();
             Log.d(tag, "Start waiting observers");
-            awaitObserverLatch(mainLatch);
+            awaitObserverLatches(tag, pendingObservers);
             Log.d(tag, "Stop waiting observers");
             pendingObservers.forEach(DynamicDataObserver::updateUi);
         }
@@ -592,11 +588,36 @@ public abstract class DashboardFragment extends SettingsPreferenceFragment
         });
     }
 
-    private void awaitObserverLatch(CountDownLatch latch) {
+    /**
+     * Waits for the observers to resolve their data under a single deadline. The data of all
+     * observers is fetched concurrently on background threads, so the total wait is bounded by
+     * {@link #TIMEOUT_MILLIS} regardless of the number of observers. Observers missing the
+     * deadline keep their placeholders and update the UI once their data arrives.
+     */
+    @VisibleForTesting
+    void awaitObserverLatches(String tag, List<DynamicDataObserver> observers) {
+        final long deadline = SystemClock.elapsedRealtime() + TIMEOUT_MILLIS;
+        int timedOut = 0;
+        for (DynamicDataObserver observer : observers) {
+            final long remaining = Math.max(0L, deadline - SystemClock.elapsedRealtime());
+            if (!awaitObserverLatch(observer.getCountDownLatch(), remaining)) {
+                timedOut++;
+                continue;
+            }
+            Log.d(tag, "observer resolved in " + observer.getResolvedLatencyMillis()
+                    + "ms, uri: " + observer.getUri());
+        }
+        if (timedOut > 0) {
+            Log.d(tag, timedOut + " of " + observers.size()
+                    + " observers missed the deadline, updating later");
+        }
+    }
+
+    private boolean awaitObserverLatch(CountDownLatch latch, long timeoutMillis) {
         try {
-            latch.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            return latch.await(timeoutMillis, TimeUnit.MILLISECONDS);
         } catch (InterruptedException e) {
-            // Do nothing
+            return false;
         }
     }
 }
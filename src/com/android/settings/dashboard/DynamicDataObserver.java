@@ -19,6 +19,7 @@ import android.database.ContentObserver;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 
 import com.android.settingslib.utils.ThreadUtils;
 
@@ -32,10 +33,13 @@ public abstract class DynamicDataObserver extends ContentObserver {
     private Runnable mUpdateRunnable;
     private CountDownLatch mCountDownLatch;
     private boolean mUpdateDelegated;
+    private final long mCreatedAtMillis;
+    private long mResolvedLatencyMillis = -1;
 
     protected DynamicDataObserver() {
         super(new Handler(Looper.getMainLooper()));
         mCountDownLatch = new CountDownLatch(1);
+        mCreatedAtMillis = SystemClock.elapsedRealtime();
         // Load data for the first time
         onDataChanged();
     }
@@ -59,6 +63,14 @@ public abstract class DynamicDataObserver extends ContentObserver {
         return mCountDownLatch;
     }
 
+    /**
+     * Returns the time in milliseconds it took to resolve the first data, or -1 if the data is
+     * not resolved yet.
+     */
+    public synchronized long getResolvedLatencyMillis() {
+        return mResolvedLatencyMillis;
+    }
+
     @Override
     public void onChange(boolean selfChange) {
         onDataChanged();
@@ -69,6 +81,9 @@ public abstract class DynamicDataObserver extends ContentObserver {
             ThreadUtils.postOnMainThread(runnable);
         } else {
             mUpdateRunnable = runnable;
+            if (mResolvedLatencyMillis < 0) {
+                mResolvedLatencyMillis = SystemClock.elapsedRealtime() - mCreatedAtMillis;
+            }
             mCountDownLatch.countDown();
         }
     }
@@ -0,0 +1,368 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard;
+
+import static com.android.settingslib.drawer.TileUtils.EXTRA_SETTINGS_ACTION;
+import static com.android.settingslib.drawer.TileUtils.IA_SETTINGS_ACTION;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ChangedPackages;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.os.Build;
+import android.os.Parcel;
+import android.os.SystemProperties;
+import android.os.UserHandle;
+import android.os.UserManager;
+import android.provider.Settings;
+import android.text.TextUtils;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import com.android.settingslib.drawer.DashboardCategory;
+import com.android.settingslib.drawer.Tile;
+import com.android.settingslib.utils.ThreadUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persists the injected dashboard tiles across process restarts, so that {@link CategoryManager}
+ * doesn't have to query the package manager for every injected tile on cold start.
+ *
+ * <p>A snapshot is only reused while the build, the locales and the user profiles are unchanged,
+ * no package or component changed since the snapshot was taken in the same boot, and each package
+ * which injected tiles or may inject tiles is still at the version the snapshot was taken at.
+ */
+public class TileSnapshotStore {
+
+    private static final String TAG = "TileSnapshotStore";
+    private static final String FILE_NAME = "dashboard_tile_snapshot";
+    private static final String PROPERTY_ENABLED = "debug.settings.tile_snapshot";
+    private static final int VERSION = 3;
+
+    private final Context mContext;
+    private final AtomicFile mFile;
+
+    /** The loaded tile snapshot. */
+    public static class Snapshot {
+        /** Categories as returned by the tile query. */
+        public final List<DashboardCategory> categories;
+        /** Categories that only exist after the backward compat cleanup. */
+        public final List<DashboardCategory> extraCategories;
+        /** The package change sequence number the snapshot was taken at. */
+        public final int sequenceNumber;
+
+        Snapshot(List<DashboardCategory> categories, List<DashboardCategory> extraCategories,
+                int sequenceNumber) {
+            this.categories = categories;
+            this.extraCategories = extraCategories;
+            this.sequenceNumber = sequenceNumber;
+        }
+    }
+
+    public TileSnapshotStore(Context context) {
+        mContext = context.getApplicationContext();
+        mFile = new AtomicFile(new File(mContext.getCacheDir(), FILE_NAME));
+    }
+
+    /** Returns whether the snapshot is enabled. */
+    public boolean isEnabled() {
+        return SystemProperties.getBoolean(PROPERTY_ENABLED, true);
+    }
+
+    /** Returns the current package change sequence number of this boot session. */
+    public int getPackageSequenceNumber() {
+        final ChangedPackages changedPackages = getChangedPackages(0);
+        return changedPackages == null ? 0 : changedPackages.getSequenceNumber();
+    }
+
+    /**
+     * Loads the snapshot, or returns null if it is missing or no longer valid.
+     */
+    @Nullable
+    public Snapshot load() {
+        if (!isEnabled() || !mFile.getBaseFile().exists()) {
+            return null;
+        }
+        final int sequenceNumber = getPackageSequenceNumber();
+        final byte[] tileData;
+        try (DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(mFile.readFully()))) {
+            if (in.readInt() != VERSION
+                    || !TextUtils.equals(in.readUTF(), Build.FINGERPRINT)
+                    || !TextUtils.equals(in.readUTF(), getLocales())
+                    || hasChangedSession(in.readInt(), in.readInt(), in.readUTF(),
+                            sequenceNumber)) {
+                Log.d(TAG, "Tile snapshot is outdated");
+                return null;
+            }
+            final int packageCount = in.readInt();
+            final Map<String, String> packageVersions = new ArrayMap<>(packageCount);
+            for (int i = 0; i < packageCount; i++) {
+                packageVersions.put(in.readUTF(), in.readUTF());
+            }
+            if (hasChangedPackageVersions(packageVersions)) {
+                return null;
+            }
+            tileData = new byte[in.readInt()];
+            in.readFully(tileData);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Failed to read tile snapshot", e);
+            return null;
+        }
+        final Parcel parcel = Parcel.obtain();
+        try {
+            parcel.unmarshall(tileData, 0, tileData.length);
+            parcel.setDataPosition(0);
+            final List<DashboardCategory> categories =
+                    parcel.createTypedArrayList(DashboardCategory.CREATOR);
+            final List<DashboardCategory> extraCategories =
+                    parcel.createTypedArrayList(DashboardCategory.CREATOR);
+            return new Snapshot(categories, extraCategories, sequenceNumber);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Failed to parse tile snapshot", e);
+            return null;
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    /**
+     * Saves the snapshot in the background.
+     *
+     * @param categories the categories as returned by the tile query
+     * @param allCategories all categories including the ones created by the backward compat
+     *                      cleanup
+     * @param sequenceNumber the package change sequence number before the tiles were queried
+     */
+    public void save(List<DashboardCategory> categories,
+            Collection<DashboardCategory> allCategories, int sequenceNumber) {
+        if (!isEnabled()) {
+            return;
+        }
+        final List<DashboardCategory> extraCategories = new ArrayList<>(allCategories);
+        extraCategories.removeAll(categories);
+
+        // Marshall on the calling thread as the tiles may be mutated later.
+        final Set<String> tilePackages = getTilePackages(categories);
+        final String profiles = getProfiles();
+        final Parcel parcel = Parcel.obtain();
+        final byte[] tileData;
+        try {
+            parcel.writeTypedList(categories);
+            parcel.writeTypedList(extraCategories);
+            tileData = parcel.marshall();
+        } finally {
+            parcel.recycle();
+        }
+        ThreadUtils.postOnBackgroundThread(() -> {
+            // Read before checking for changes, so that any later change invalidates the snapshot.
+            final int bootCount = getBootCount();
+            final int savedSequenceNumber = getPackageSequenceNumber();
+            final Map<String, String> packageVersions = getPackageVersions(tilePackages);
+            // The versions are read after the tile query, skip tiles which may be outdated.
+            if (!hasRelevantPackageChanges(sequenceNumber, tilePackages)) {
+                write(bootCount, savedSequenceNumber, profiles, packageVersions, tileData);
+            }
+        });
+    }
+
+    /** Deletes the snapshot. */
+    public void clear() {
+        mFile.delete();
+    }
+
+    private synchronized void write(int bootCount, int sequenceNumber, String profiles,
+            Map<String, String> packageVersions, byte[] tileData) {
+        FileOutputStream out = null;
+        try {
+            out = mFile.startWrite();
+            final DataOutputStream dataOut = new DataOutputStream(out);
+            dataOut.writeInt(VERSION);
+            dataOut.writeUTF(Build.FINGERPRINT);
+            dataOut.writeUTF(getLocales());
+            dataOut.writeInt(bootCount);
+            dataOut.writeInt(sequenceNumber);
+            dataOut.writeUTF(profiles);
+            dataOut.writeInt(packageVersions.size());
+            for (Map.Entry<String, String> entry : packageVersions.entrySet()) {
+                dataOut.writeUTF(entry.getKey());
+                dataOut.writeUTF(entry.getValue());
+            }
+            dataOut.writeInt(tileData.length);
+            dataOut.write(tileData);
+            dataOut.flush();
+            mFile.finishWrite(out);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write tile snapshot", e);
+            mFile.failWrite(out);
+        }
+    }
+
+    /**
+     * Returns whether the snapshot was taken in another boot, before a package or component
+     * change, or for other user profiles. The package change sequence number is only meaningful
+     * within a boot, and also changes when a component is enabled or disabled.
+     */
+    @VisibleForTesting
+    boolean hasChangedSession(int bootCount, int sequenceNumber, String profiles,
+            int currentSequenceNumber) {
+        return bootCount != getBootCount()
+                || sequenceNumber != currentSequenceNumber
+                || !TextUtils.equals(profiles, getProfiles());
+    }
+
+    /**
+     * Returns whether any package changed since the tiles were queried may add, update or remove
+     * an injected tile.
+     */
+    @VisibleForTesting
+    boolean hasRelevantPackageChanges(int sequenceNumber, Set<String> tilePackages) {
+        final ChangedPackages changedPackages = getChangedPackages(sequenceNumber);
+        if (changedPackages == null) {
+            return false;
+        }
+        final Set<String> injectingPackages = getInjectingPackages();
+        for (String packageName : changedPackages.getPackageNames()) {
+            if (tilePackages.contains(packageName)
+                    || injectingPackages.contains(packageName)) {
+                Log.d(TAG, "Tile snapshot is invalidated by " + packageName);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether any package of the snapshot was updated or removed, or a package which
+     * wasn't part of the snapshot now injects tiles.
+     */
+    @VisibleForTesting
+    boolean hasChangedPackageVersions(Map<String, String> packageVersions) {
+        final Set<String> packages = new ArraySet<>(packageVersions.keySet());
+        packages.addAll(getInjectingPackages());
+        for (String packageName : packages) {
+            if (!TextUtils.equals(packageVersions.get(packageName),
+                    getPackageVersion(packageName))) {
+                Log.d(TAG, "Tile snapshot is invalidated by " + packageName);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the versions of the packages the snapshot depends on: the packages of the tiles,
+     * the packages declaring tile injection and Settings itself.
+     */
+    @WorkerThread
+    private Map<String, String> getPackageVersions(Set<String> tilePackages) {
+        final Set<String> packages = new ArraySet<>(tilePackages);
+        packages.addAll(getInjectingPackages());
+        final Map<String, String> packageVersions = new ArrayMap<>(packages.size());
+        for (String packageName : packages) {
+            packageVersions.put(packageName, getPackageVersion(packageName));
+        }
+        return packageVersions;
+    }
+
+    private Set<String> getTilePackages(List<DashboardCategory> categories) {
+        final Set<String> tilePackages = new ArraySet<>();
+        for (DashboardCategory category : categories) {
+            for (Tile tile : category.getTiles()) {
+                tilePackages.add(tile.getPackageName());
+            }
+        }
+        tilePackages.add(mContext.getPackageName());
+        return tilePackages;
+    }
+
+    /** Returns the packages declaring activities or providers which inject tiles. */
+    @VisibleForTesting
+    Set<String> getInjectingPackages() {
+        final PackageManager pm = mContext.getPackageManager();
+        final Set<String> packages = new ArraySet<>();
+        for (String action : new String[]{EXTRA_SETTINGS_ACTION, IA_SETTINGS_ACTION}) {
+            for (ResolveInfo info : pm.queryIntentActivities(new Intent(action), 0)) {
+                packages.add(info.activityInfo.packageName);
+            }
+        }
+        for (ResolveInfo info : pm.queryIntentContentProviders(
+                new Intent(EXTRA_SETTINGS_ACTION), 0)) {
+            packages.add(info.providerInfo.packageName);
+        }
+        return packages;
+    }
+
+    /** Returns the version of the installed package, or an empty string if it isn't installed. */
+    @VisibleForTesting
+    String getPackageVersion(String packageName) {
+        try {
+            final PackageInfo info = mContext.getPackageManager().getPackageInfo(packageName, 0);
+            return info.getLongVersionCode() + ":" + info.lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return "";
+        }
+    }
+
+    @VisibleForTesting
+    @Nullable
+    ChangedPackages getChangedPackages(int sequenceNumber) {
+        return mContext.getPackageManager().getChangedPackages(sequenceNumber);
+    }
+
+    @VisibleForTesting
+    int getBootCount() {
+        return Settings.Global.getInt(mContext.getContentResolver(), Settings.Global.BOOT_COUNT,
+                -1);
+    }
+
+    /** Returns the user profiles the tiles are queried for, as a list of user ids. */
+    @VisibleForTesting
+    String getProfiles() {
+        final StringBuilder profiles = new StringBuilder();
+        for (UserHandle user : UserManager.get(mContext).getUserProfiles()) {
+            if (profiles.length() > 0) {
+                profiles.append(',');
+            }
+            profiles.append(user.getIdentifier());
+        }
+        return profiles.toString();
+    }
+
+    private String getLocales() {
+        return mContext.getResources().getConfiguration().getLocales().toLanguageTags();
+    }
+}
@@ -44,6 +44,7 @@ public class BatteryInfoLoader extends AsyncLoaderCompat<BatteryInfo>{
 
     @Override
     public BatteryInfo loadInBackground() {
-        return mBatteryUtils.getBatteryInfo(LOG_TAG);
+        // The header doesn't draw the battery history.
+        return mBatteryUtils.getBatteryInfo(LOG_TAG, /* includeBatteryHistory= */ false);
     }
 }
@@ -394,12 +394,24 @@ public class BatteryUtils {
 
     @WorkerThread
     public BatteryInfo getBatteryInfo(final String tag) {
+        return getBatteryInfo(tag, /* includeBatteryHistory= */ true);
+    }
+
+    /**
+     * Gets the {@link BatteryInfo}, the battery history is only loaded if
+     * {@code includeBatteryHistory} is true.
+     */
+    @WorkerThread
+    public BatteryInfo getBatteryInfo(final String tag, boolean includeBatteryHistory) {
         final BatteryStatsManager systemService = mContext.getSystemService(
                 BatteryStatsManager.class);
         BatteryUsageStats batteryUsageStats;
         try {
-            batteryUsageStats = systemService.getBatteryUsageStats(
-                    new BatteryUsageStatsQuery.Builder().includeBatteryHistory().build());
+            final BatteryUsageStatsQuery.Builder builder = new BatteryUsageStatsQuery.Builder();
+            if (includeBatteryHistory) {
+                builder.includeBatteryHistory();
+            }
+            batteryUsageStats = systemService.getBatteryUsageStats(builder.build());
         } catch (RuntimeException e) {
             Log.e(TAG, "getBatteryInfo() error from getBatteryUsageStats()", e);
             // Use default BatteryUsageStats.
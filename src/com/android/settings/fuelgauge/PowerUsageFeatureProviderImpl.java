@@ -27,6 +27,8 @@ import android.util.SparseIntArray;
 import com.android.internal.util.ArrayUtils;
 import com.android.settings.R;
 import com.android.settings.fuelgauge.batteryusage.BatteryHistEntry;
+import com.android.settings.fuelgauge.batteryusage.BatteryHistorySnapshotJobService;
+import com.android.settings.fuelgauge.batteryusage.BatteryHistoryStore;
 import com.android.settingslib.fuelgauge.Estimate;
 
 import java.util.Map;
@@ -167,18 +169,20 @@ public class PowerUsageFeatureProviderImpl implements PowerUsageFeatureProvider
 
     @Override
     public Map<Long, Map<String, BatteryHistEntry>> getBatteryHistory(Context context) {
-        return null;
+        BatteryHistorySnapshotJobService.scheduleSnapshot(context);
+        return BatteryHistoryStore.getHistory(context);
     }
 
     @Override
     public Map<Long, Map<String, BatteryHistEntry>> getBatteryHistorySinceLastFullCharge(
             Context context) {
-        return null;
+        BatteryHistorySnapshotJobService.scheduleSnapshot(context);
+        return BatteryHistoryStore.getHistorySinceLastFullCharge(context);
     }
 
     @Override
     public Uri getBatteryHistoryUri() {
-        return null;
+        return BatteryHistoryStore.BATTERY_STATE_URI;
     }
 
     @Override
@@ -33,7 +33,9 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
     private static final String TAG = "BatteryDatabaseHelper";
 
     private static final String DATABASE_NAME = "battery_settings.db";
-    private static final int DATABASE_VERSION = 5;
+    private static final int DATABASE_VERSION = 6;
+    // The version which only misses the anomaly indexes.
+    private static final int DATABASE_VERSION_WITHOUT_INDEXES = 5;
 
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({State.NEW,
@@ -98,6 +100,17 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
                     + AnomalyColumns.ANOMALY_STATE + "," + AnomalyColumns.TIME_STAMP_MS + ")"
                     + ")";
 
+    // Serves the anomaly queries of a state after a timestamp.
+    private static final String CREATE_ANOMALY_STATE_INDEX =
+            "CREATE INDEX IF NOT EXISTS anomaly_state_time_stamp_index ON "
+                    + Tables.TABLE_ANOMALY + "(" + AnomalyColumns.ANOMALY_STATE + ","
+                    + AnomalyColumns.TIME_STAMP_MS + ")";
+
+    // Serves the clean up of the anomalies before a timestamp.
+    private static final String CREATE_ANOMALY_TIME_STAMP_INDEX =
+            "CREATE INDEX IF NOT EXISTS anomaly_time_stamp_index ON "
+                    + Tables.TABLE_ANOMALY + "(" + AnomalyColumns.TIME_STAMP_MS + ")";
+
 
     public interface ActionColumns {
         /**
@@ -145,6 +158,8 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
 
     private AnomalyDatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // Lets the queries read without waiting for the anomaly writes.
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
@@ -154,7 +169,10 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        if (oldVersion < DATABASE_VERSION) {
+        if (oldVersion == DATABASE_VERSION_WITHOUT_INDEXES) {
+            // Keeps the recorded anomalies and actions, only adds the indexes.
+            createIndexes(db);
+        } else if (oldVersion < DATABASE_VERSION) {
             Log.w(TAG, "Detected schema version '" + oldVersion + "'. " +
                     "Index needs to be rebuilt for schema version '" + newVersion + "'.");
             // We need to drop the tables and recreate them
@@ -178,9 +196,15 @@ public class AnomalyDatabaseHelper extends SQLiteOpenHelper {
     private void bootstrapDB(SQLiteDatabase db) {
         db.execSQL(CREATE_ANOMALY_TABLE);
         db.execSQL(CREATE_ACTION_TABLE);
+        createIndexes(db);
         Log.i(TAG, "Bootstrapped database");
     }
 
+    private void createIndexes(SQLiteDatabase db) {
+        db.execSQL(CREATE_ANOMALY_STATE_INDEX);
+        db.execSQL(CREATE_ANOMALY_TIME_STAMP_INDEX);
+    }
+
     private void dropTables(SQLiteDatabase db) {
         db.execSQL("DROP TABLE IF EXISTS " + Tables.TABLE_ANOMALY);
         db.execSQL("DROP TABLE IF EXISTS " + Tables.TABLE_ACTION);
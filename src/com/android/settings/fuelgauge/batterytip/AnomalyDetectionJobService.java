@@ -103,12 +103,21 @@ public class AnomalyDetectionJobService extends JobService {
             final MetricsFeatureProvider metricsFeatureProvider = FeatureFactory
                     .getFactory(this).getMetricsFeatureProvider();
 
-            for (JobWorkItem item = dequeueWork(params); item != null; item = dequeueWork(params)) {
-                saveAnomalyToDatabase(context, userManager,
-                        batteryDatabaseManager, batteryUtils, policy, powerAllowlistBackend,
-                        contentResolver, powerUsageFeatureProvider, metricsFeatureProvider,
-                        item.getIntent().getExtras());
-
+            // Saves a burst of anomalies in one transaction, and completes the work items only
+            // after they are committed. Only the inserts are batched: the transaction is opened
+            // after the loop, so the binder calls and the standby changes don't hold it.
+            final List<JobWorkItem> items = new ArrayList<>();
+            batteryDatabaseManager.runInBatch(() -> {
+                for (JobWorkItem item = dequeueWork(params); item != null;
+                        item = dequeueWork(params)) {
+                    saveAnomalyToDatabase(context, userManager,
+                            batteryDatabaseManager, batteryUtils, policy, powerAllowlistBackend,
+                            contentResolver, powerUsageFeatureProvider, metricsFeatureProvider,
+                            item.getIntent().getExtras());
+                    items.add(item);
+                }
+            });
+            for (JobWorkItem item : items) {
                 completeWork(params, item);
             }
         });
@@ -33,6 +33,7 @@ import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.text.TextUtils;
 import android.util.ArrayMap;
+import android.util.Log;
 import android.util.SparseLongArray;
 
 import androidx.annotation.VisibleForTesting;
@@ -47,14 +48,23 @@ import java.util.Map;
 /**
  * Database manager for battery data. Now it only contains anomaly data stored in {@link AppInfo}.
  *
- * This manager may be accessed by multi-threads. All the database related methods are synchronized
- * so each operation won't be interfered by other threads.
+ * This manager may be accessed by multi-threads. The database is in write-ahead logging mode, so
+ * queries don't wait for writers. Writes are queued and the writes queued by concurrent threads
+ * are committed together in a single transaction.
  */
 public class BatteryDatabaseManager {
+    private static final String TAG = "BatteryDatabaseManager";
+
     private static BatteryDatabaseManager sSingleton;
 
     private AnomalyDatabaseHelper mDatabaseHelper;
 
+    // Writes waiting to be committed, guarded by itself.
+    private final List<PendingWrite> mPendingWrites = new ArrayList<>();
+    private boolean mIsWriting;
+    // The writes queued by runInBatch() on each thread.
+    private final ThreadLocal<List<PendingWrite>> mBatch = new ThreadLocal<>();
+
     private BatteryDatabaseManager(Context context) {
         mDatabaseHelper = AnomalyDatabaseHelper.getInstance(context);
     }
@@ -81,24 +91,24 @@ public class BatteryDatabaseManager {
      * @param timestampMs  the time when it is happened
      * @return {@code true} if insert operation succeed
      */
-    public synchronized boolean insertAnomaly(int uid, String packageName, int type,
+    public boolean insertAnomaly(int uid, String packageName, int type,
             int anomalyState,
             long timestampMs) {
-        final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
-        ContentValues values = new ContentValues();
+        final ContentValues values = new ContentValues();
         values.put(UID, uid);
         values.put(PACKAGE_NAME, packageName);
         values.put(ANOMALY_TYPE, type);
         values.put(ANOMALY_STATE, anomalyState);
         values.put(TIME_STAMP_MS, timestampMs);
 
-        return db.insertWithOnConflict(TABLE_ANOMALY, null, values, CONFLICT_IGNORE) != -1;
+        return write(db ->
+                db.insertWithOnConflict(TABLE_ANOMALY, null, values, CONFLICT_IGNORE) != -1);
     }
 
     /**
      * Query all the anomalies that happened after {@code timestampMsAfter} and with {@code state}.
      */
-    public synchronized List<AppInfo> queryAllAnomalies(long timestampMsAfter, int state) {
+    public List<AppInfo> queryAllAnomalies(long timestampMsAfter, int state) {
         final List<AppInfo> appInfos = new ArrayList<>();
         final SQLiteDatabase db = mDatabaseHelper.getReadableDatabase();
         final String[] projection = {PACKAGE_NAME, ANOMALY_TYPE, UID};
@@ -131,10 +141,9 @@ public class BatteryDatabaseManager {
         return appInfos;
     }
 
-    public synchronized void deleteAllAnomaliesBeforeTimeStamp(long timestampMs) {
-        final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
-        db.delete(TABLE_ANOMALY, TIME_STAMP_MS + " < ?",
-                new String[]{String.valueOf(timestampMs)});
+    public void deleteAllAnomaliesBeforeTimeStamp(long timestampMs) {
+        write(db -> db.delete(TABLE_ANOMALY, TIME_STAMP_MS + " < ?",
+                new String[]{String.valueOf(timestampMs)}) != 0);
     }
 
     /**
@@ -143,7 +152,7 @@ public class BatteryDatabaseManager {
      * @param appInfos represents the anomalies
      * @param state    which state to update to
      */
-    public synchronized void updateAnomalies(List<AppInfo> appInfos, int state) {
+    public void updateAnomalies(List<AppInfo> appInfos, int state) {
         if (!appInfos.isEmpty()) {
             final int size = appInfos.size();
             final String[] whereArgs = new String[size];
@@ -151,11 +160,10 @@ public class BatteryDatabaseManager {
                 whereArgs[i] = appInfos.get(i).packageName;
             }
 
-            final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
             final ContentValues values = new ContentValues();
             values.put(ANOMALY_STATE, state);
-            db.update(TABLE_ANOMALY, values, PACKAGE_NAME + " IN (" + TextUtils.join(",",
-                    Collections.nCopies(appInfos.size(), "?")) + ")", whereArgs);
+            write(db -> db.update(TABLE_ANOMALY, values, PACKAGE_NAME + " IN (" + TextUtils.join(
+                    ",", Collections.nCopies(size, "?")) + ")", whereArgs) != 0);
         }
     }
 
@@ -165,7 +173,7 @@ public class BatteryDatabaseManager {
      * @param type of action been performed
      * @return {@link SparseLongArray} where key is uid and value is timestamp
      */
-    public synchronized SparseLongArray queryActionTime(
+    public SparseLongArray queryActionTime(
             @AnomalyDatabaseHelper.ActionType int type) {
         final SparseLongArray timeStamps = new SparseLongArray();
         final SQLiteDatabase db = mDatabaseHelper.getReadableDatabase();
@@ -191,30 +199,175 @@ public class BatteryDatabaseManager {
     /**
      * Insert an action, or update it if already existed
      */
-    public synchronized boolean insertAction(@AnomalyDatabaseHelper.ActionType int type,
+    public boolean insertAction(@AnomalyDatabaseHelper.ActionType int type,
             int uid, String packageName, long timestampMs) {
-        final SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
         final ContentValues values = new ContentValues();
         values.put(ActionColumns.UID, uid);
         values.put(ActionColumns.PACKAGE_NAME, packageName);
         values.put(ActionColumns.ACTION_TYPE, type);
         values.put(ActionColumns.TIME_STAMP_MS, timestampMs);
 
-        return db.insertWithOnConflict(TABLE_ACTION, null, values, CONFLICT_REPLACE) != -1;
+        return write(db ->
+                db.insertWithOnConflict(TABLE_ACTION, null, values, CONFLICT_REPLACE) != -1);
     }
 
     /**
      * Remove an action
      */
-    public synchronized boolean deleteAction(@AnomalyDatabaseHelper.ActionType int type,
+    public boolean deleteAction(@AnomalyDatabaseHelper.ActionType int type,
             int uid, String packageName) {
-        SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
         final String where =
                 ActionColumns.ACTION_TYPE + " = ? AND " + ActionColumns.UID + " = ? AND "
                         + ActionColumns.PACKAGE_NAME + " = ? ";
         final String[] whereArgs = new String[]{String.valueOf(type), String.valueOf(uid),
                 String.valueOf(packageName)};
 
-        return db.delete(TABLE_ACTION, where, whereArgs) != 0;
+        return write(db -> db.delete(TABLE_ACTION, where, whereArgs) != 0);
+    }
+
+    /**
+     * Runs {@code runnable} and commits all the writes it makes on this thread together in a
+     * single transaction once it returns. No transaction is open while {@code runnable} runs, so
+     * it may make slow calls between the writes. The writes return {@code true} as soon as they
+     * are queued, and a write failing when the batch is committed is logged and doesn't fail the
+     * others.
+     */
+    public void runInBatch(Runnable runnable) {
+        final List<PendingWrite> batch = new ArrayList<>();
+        mBatch.set(batch);
+        try {
+            runnable.run();
+        } finally {
+            mBatch.remove();
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        commit(batch);
+        for (PendingWrite write : batch) {
+            if (write.mError != null) {
+                Log.w(TAG, "Failed to apply a batched write", write.mError);
+            }
+        }
+    }
+
+    /**
+     * Queues the write and waits until it is committed, or only queues it during
+     * {@link #runInBatch(Runnable)}.
+     */
+    private boolean write(WriteOperation operation) {
+        final PendingWrite write = new PendingWrite(operation);
+        final List<PendingWrite> batch = mBatch.get();
+        if (batch != null) {
+            batch.add(write);
+            return true;
+        }
+        commit(Collections.singletonList(write));
+        if (write.mError != null) {
+            throw write.mError;
+        }
+        return write.mResult;
+    }
+
+    /**
+     * Queues the writes and waits until they are committed. The first thread finding no commit in
+     * progress commits all the queued writes in one transaction, the others wait for it.
+     */
+    private void commit(List<PendingWrite> writes) {
+        final PendingWrite lastWrite = writes.get(writes.size() - 1);
+        final List<PendingWrite> batch;
+        boolean interrupted = false;
+        synchronized (mPendingWrites) {
+            mPendingWrites.addAll(writes);
+            while (mIsWriting && !lastWrite.mIsDone) {
+                try {
+                    mPendingWrites.wait();
+                } catch (InterruptedException e) {
+                    // The writes are already queued, keep waiting and restore the interrupt after.
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (lastWrite.mIsDone) {
+                return;
+            }
+            mIsWriting = true;
+            batch = new ArrayList<>(mPendingWrites);
+            mPendingWrites.clear();
+        }
+
+        try {
+            applyWrites(mDatabaseHelper.getWritableDatabase(), batch);
+        } finally {
+            synchronized (mPendingWrites) {
+                for (PendingWrite pendingWrite : batch) {
+                    pendingWrite.mIsDone = true;
+                }
+                mIsWriting = false;
+                mPendingWrites.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Applies the writes in one transaction. A failing write rolls the transaction back, so it
+     * gets the error and the other writes are applied again without it.
+     */
+    private static void applyWrites(SQLiteDatabase db, List<PendingWrite> writes) {
+        List<PendingWrite> remainingWrites = writes;
+        while (!remainingWrites.isEmpty()) {
+            PendingWrite failedWrite = null;
+            try {
+                db.beginTransactionNonExclusive();
+                try {
+                    for (PendingWrite write : remainingWrites) {
+                        try {
+                            write.mResult = write.mOperation.apply(db);
+                        } catch (RuntimeException e) {
+                            write.mError = e;
+                            failedWrite = write;
+                            break;
+                        }
+                    }
+                    if (failedWrite == null) {
+                        db.setTransactionSuccessful();
+                    }
+                } finally {
+                    db.endTransaction();
+                }
+            } catch (RuntimeException e) {
+                // The transaction itself failed, so none of the writes were applied.
+                for (PendingWrite write : remainingWrites) {
+                    write.mResult = false;
+                    if (write.mError == null) {
+                        write.mError = e;
+                    }
+                }
+                return;
+            }
+            if (failedWrite == null) {
+                return;
+            }
+            remainingWrites = new ArrayList<>(remainingWrites);
+            remainingWrites.remove(failedWrite);
+        }
+    }
+
+    private interface WriteOperation {
+        /** Applies the write to {@code db} and returns whether it changed anything. */
+        boolean apply(SQLiteDatabase db);
+    }
+
+    private static class PendingWrite {
+        private final WriteOperation mOperation;
+        private boolean mResult;
+        private RuntimeException mError;
+        private boolean mIsDone;
+
+        PendingWrite(WriteOperation operation) {
+            mOperation = operation;
+        }
     }
 }
@@ -18,12 +18,19 @@ package com.android.settings.fuelgauge.batterytip;
 
 import android.content.Context;
 import android.os.BatteryUsageStats;
+import android.os.Parcel;
+import android.os.SystemClock;
+import android.util.ArrayMap;
+import android.util.EventLog;
+import android.util.Log;
 
 import androidx.annotation.VisibleForTesting;
 
+import com.android.settings.EventLogTags;
 import com.android.settings.fuelgauge.BatteryInfo;
 import com.android.settings.fuelgauge.BatteryUtils;
 import com.android.settings.fuelgauge.batterytip.detectors.BatteryDefenderDetector;
+import com.android.settings.fuelgauge.batterytip.detectors.BatteryTipDetector;
 import com.android.settings.fuelgauge.batterytip.detectors.DockDefenderDetector;
 import com.android.settings.fuelgauge.batterytip.detectors.EarlyWarningDetector;
 import com.android.settings.fuelgauge.batterytip.detectors.HighUsageDetector;
@@ -38,6 +45,17 @@ import com.android.settingslib.utils.AsyncLoaderCompat;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Loader to compute and return a battery tip list. It will always return a full length list even
@@ -47,6 +65,16 @@ public class BatteryTipLoader extends AsyncLoaderCompat<List<BatteryTip>> {
     private static final String TAG = "BatteryTipLoader";
 
     private static final boolean USE_FAKE_DATA = false;
+    private static final long DETECTOR_TIMEOUT_MS = 200;
+    private static final long NO_TIMEOUT = -1;
+    private static final long TIP_CACHE_TTL_MS = 60000;
+    private static final int DETECTOR_THREADS = 6;
+    private static final long EXECUTOR_KEEP_ALIVE_SECONDS = 30;
+
+    // Shared by all loads so that refreshing the battery page doesn't spin up new threads.
+    private static ExecutorService sDetectorExecutor;
+    // The latest tip of each detector, used if the detector misses its deadline.
+    private static final Map<Class<?>, CachedTip> sTipCache = new ArrayMap<>();
 
     private BatteryUsageStats mBatteryUsageStats;
     @VisibleForTesting
@@ -63,23 +91,164 @@ public class BatteryTipLoader extends AsyncLoaderCompat<List<BatteryTip>> {
         if (USE_FAKE_DATA) {
             return getFakeData();
         }
-        final List<BatteryTip> tips = new ArrayList<>();
         final BatteryTipPolicy policy = new BatteryTipPolicy(getContext());
         final BatteryInfo batteryInfo = mBatteryUtils.getBatteryInfo(TAG);
         final Context context = getContext();
 
-        tips.add(new LowBatteryDetector(context, policy, batteryInfo).detect());
-        tips.add(new HighUsageDetector(context, policy, mBatteryUsageStats, batteryInfo).detect());
-        tips.add(new SmartBatteryDetector(
-                context, policy, batteryInfo, context.getContentResolver()).detect());
-        tips.add(new EarlyWarningDetector(policy, context).detect());
-        tips.add(new BatteryDefenderDetector(
-                batteryInfo, context.getApplicationContext()).detect());
-        tips.add(new DockDefenderDetector(batteryInfo, context.getApplicationContext()).detect());
+        final List<DetectorTask> tasks = new ArrayList<>();
+        tasks.add(new DetectorTask(
+                new LowBatteryDetector(context, policy, batteryInfo), DETECTOR_TIMEOUT_MS));
+        // The BatteryUsageStats is owned and closed by the page, so the detector reading it
+        // can't be left running after the load.
+        tasks.add(new DetectorTask(
+                new HighUsageDetector(context, policy, mBatteryUsageStats, batteryInfo)));
+        tasks.add(new DetectorTask(new SmartBatteryDetector(
+                context, policy, batteryInfo, context.getContentResolver()),
+                DETECTOR_TIMEOUT_MS));
+        tasks.add(new DetectorTask(
+                new EarlyWarningDetector(policy, context), DETECTOR_TIMEOUT_MS));
+        tasks.add(new DetectorTask(new BatteryDefenderDetector(
+                batteryInfo, context.getApplicationContext()), DETECTOR_TIMEOUT_MS));
+        tasks.add(new DetectorTask(new DockDefenderDetector(
+                batteryInfo, context.getApplicationContext()), DETECTOR_TIMEOUT_MS));
+        final List<BatteryTip> tips = runDetectors(tasks);
         Collections.sort(tips);
         return tips;
     }
 
+    /**
+     * Runs the detectors concurrently and returns their tips in the same order. A detector which
+     * misses its deadline is replaced by its recently cached tip. Without a cached tip, the loader
+     * keeps waiting for it, since the returned list should always be full length. A detector
+     * without deadline is always waited for.
+     */
+    @VisibleForTesting
+    static List<BatteryTip> runDetectors(List<DetectorTask> tasks) {
+        return runDetectors(tasks, getDetectorExecutor());
+    }
+
+    @VisibleForTesting
+    static List<BatteryTip> runDetectors(List<DetectorTask> tasks, Executor executor) {
+        final long startTime = System.currentTimeMillis();
+        final long submitTime = SystemClock.elapsedRealtime();
+        final List<Future<BatteryTip>> futures = new ArrayList<>(tasks.size());
+        for (DetectorTask task : tasks) {
+            final FutureTask<BatteryTip> future = new FutureTask<>(task);
+            executor.execute(future);
+            futures.add(future);
+        }
+
+        final List<BatteryTip> tips = new ArrayList<>(tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            final DetectorTask task = tasks.get(i);
+            final Future<BatteryTip> future = futures.get(i);
+            final BatteryTip cachedTip = task.mTimeoutMs == NO_TIMEOUT
+                    ? null : getCachedTip(task.getDetectorClass());
+            if (cachedTip == null) {
+                tips.add(getUninterruptibly(future));
+                continue;
+            }
+            BatteryTip tip;
+            try {
+                tip = future.get(Math.max(0,
+                        submitTime + task.mTimeoutMs - SystemClock.elapsedRealtime()),
+                        TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // Let it finish in the background, its tip is cached for the next load.
+                Log.w(TAG, "Timeout running " + task.getName() + ", use the cached tip");
+                tip = cachedTip;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                tip = cachedTip;
+            } catch (ExecutionException e) {
+                Log.w(TAG, "Failed to run " + task.getName() + ", use the cached tip",
+                        e.getCause());
+                tip = cachedTip;
+            }
+            tips.add(tip);
+        }
+        BatteryUtils.logRuntime(TAG, "time for runDetectors", startTime);
+        return tips;
+    }
+
+    /**
+     * Waits for the tip of a detector which has no cached tip to fall back to. A detector failure
+     * is rethrown as is, like when the detectors ran on the loader thread.
+     */
+    private static BatteryTip getUninterruptibly(Future<BatteryTip> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @VisibleForTesting
+    static void clearTipCache() {
+        synchronized (sTipCache) {
+            sTipCache.clear();
+        }
+    }
+
+    private static BatteryTip getCachedTip(Class<?> detectorClass) {
+        synchronized (sTipCache) {
+            final CachedTip cachedTip = sTipCache.get(detectorClass);
+            if (cachedTip == null
+                    || SystemClock.elapsedRealtime() - cachedTip.mTimestamp >= TIP_CACHE_TTL_MS) {
+                return null;
+            }
+            // Each load gets its own copy, as the tips are updated by the tip controllers.
+            return copyTip(cachedTip.mTip);
+        }
+    }
+
+    private static void putCachedTip(Class<?> detectorClass, BatteryTip tip) {
+        final CachedTip cachedTip = new CachedTip(copyTip(tip), SystemClock.elapsedRealtime());
+        synchronized (sTipCache) {
+            sTipCache.put(detectorClass, cachedTip);
+        }
+    }
+
+    private static BatteryTip copyTip(BatteryTip tip) {
+        final Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeParcelable(tip, 0 /* flags */);
+            parcel.setDataPosition(0);
+            return parcel.readParcelable(BatteryTip.class.getClassLoader());
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    private static synchronized ExecutorService getDetectorExecutor() {
+        if (sDetectorExecutor == null) {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    DETECTOR_THREADS, DETECTOR_THREADS,
+                    EXECUTOR_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+            executor.allowCoreThreadTimeOut(true);
+            sDetectorExecutor = executor;
+        }
+        return sDetectorExecutor;
+    }
+
     @Override
     protected void onDiscardResult(List<BatteryTip> result) {
     }
@@ -93,4 +262,53 @@ public class BatteryTipLoader extends AsyncLoaderCompat<List<BatteryTip>> {
         return tips;
     }
 
+    /** Runs a detector, caches its tip and logs its latency. */
+    @VisibleForTesting
+    static class DetectorTask implements Callable<BatteryTip> {
+        private final BatteryTipDetector mDetector;
+        private final long mTimeoutMs;
+
+        /**
+         * Creates a task which always finishes before {@link #runDetectors} returns, for a
+         * detector reading data which may be released once the load is done.
+         */
+        DetectorTask(BatteryTipDetector detector) {
+            this(detector, NO_TIMEOUT);
+        }
+
+        DetectorTask(BatteryTipDetector detector, long timeoutMs) {
+            mDetector = detector;
+            mTimeoutMs = timeoutMs;
+        }
+
+        @Override
+        public BatteryTip call() {
+            final long startTime = SystemClock.elapsedRealtime();
+            final BatteryTip tip = mDetector.detect();
+            final long latency = SystemClock.elapsedRealtime() - startTime;
+            putCachedTip(getDetectorClass(), tip);
+            Log.d(TAG, getName() + " detected in " + latency + "ms");
+            EventLog.writeEvent(EventLogTags.BATTERY_TIP_DETECTOR_LATENCY, getName(), latency);
+            return tip;
+        }
+
+        private Class<?> getDetectorClass() {
+            return mDetector.getClass();
+        }
+
+        private String getName() {
+            return mDetector.getClass().getSimpleName();
+        }
+    }
+
+    /** The tip detected recently by a detector. */
+    private static class CachedTip {
+        private final BatteryTip mTip;
+        private final long mTimestamp;
+
+        CachedTip(BatteryTip tip, long timestamp) {
+            mTip = tip;
+            mTimestamp = timestamp;
+        }
+    }
 }
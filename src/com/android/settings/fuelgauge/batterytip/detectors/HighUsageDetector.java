@@ -32,6 +32,7 @@ import com.android.settings.fuelgauge.batterytip.BatteryTipPolicy;
 import com.android.settings.fuelgauge.batterytip.HighUsageDataParser;
 import com.android.settings.fuelgauge.batterytip.tips.BatteryTip;
 import com.android.settings.fuelgauge.batterytip.tips.HighUsageTip;
+import com.android.settings.fuelgauge.batteryusage.BatteryUsageStatsAdapter;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -74,15 +75,12 @@ public class HighUsageDetector implements BatteryTipDetector {
         if (mPolicy.highUsageEnabled && mDischarging) {
             parseBatteryData();
             if (mDataParser.isDeviceHeavilyUsed() || mPolicy.testHighUsageTip) {
-                final double totalPower = mBatteryUsageStats.getConsumedPower();
-                final int dischargeAmount = mBatteryUsageStats.getDischargePercentage();
-                final List<UidBatteryConsumer> uidBatteryConsumers =
-                        mBatteryUsageStats.getUidBatteryConsumers();
-                // Sort by descending power
-                uidBatteryConsumers.sort(
-                        (consumer1, consumer2) -> Double.compare(consumer2.getConsumedPower(),
-                                consumer1.getConsumedPower()));
-                for (UidBatteryConsumer consumer : uidBatteryConsumers) {
+                final BatteryUsageStatsAdapter adapter =
+                        BatteryUsageStatsAdapter.of(mBatteryUsageStats);
+                final double totalPower = adapter.getConsumedPower();
+                final int dischargeAmount = adapter.getDischargePercentage();
+                // Already sorted by descending power
+                for (UidBatteryConsumer consumer : adapter.getUidBatteryConsumers()) {
                     final double percent = mBatteryUtils.calculateBatteryPercent(
                             consumer.getConsumedPower(), totalPower, dischargeAmount);
                     if ((percent + 0.5f < 1f)
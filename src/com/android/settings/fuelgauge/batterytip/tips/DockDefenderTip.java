@@ -46,6 +46,7 @@ public class DockDefenderTip extends BatteryTip {
 
     private DockDefenderTip(Parcel in) {
         super(in);
+        mMode = in.readInt();
     }
 
     public int getMode() {
@@ -151,6 +152,12 @@ public class DockDefenderTip extends BatteryTip {
 
     }
 
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        super.writeToParcel(dest, flags);
+        dest.writeInt(mMode);
+    }
+
     private CardPreference castToCardPreferenceSafely(Preference preference) {
         return preference instanceof CardPreference ? (CardPreference) preference : null;
     }
@@ -325,8 +325,8 @@ public class BatteryAppListPreferenceController extends AbstractPreferenceContro
         final SparseArray<BatteryEntry> batteryEntryList = new SparseArray<>();
 
         final ArrayList<BatteryEntry> results = new ArrayList<>();
-        final List<UidBatteryConsumer> uidBatteryConsumers =
-                mBatteryUsageStats.getUidBatteryConsumers();
+        final List<UidBatteryConsumer> uidBatteryConsumers = new ArrayList<>(
+                BatteryUsageStatsAdapter.of(mBatteryUsageStats).getUidBatteryConsumers());
 
         // Sort to have all apps with "real" UIDs first, followed by apps that are supposed
         // to be combined with the real ones.
@@ -84,6 +84,9 @@ public class BatteryChartPreferenceController extends AbstractPreferenceControll
 
     @VisibleForTesting
     Map<Integer, Map<Integer, BatteryDiffData>> mBatteryUsageMap;
+    // Whether the labels and icons of mBatteryUsageMap are loaded to show the app list.
+    @VisibleForTesting
+    boolean mIsAppListLoaded = true;
 
     @VisibleForTesting
     Context mPrefContext;
@@ -270,7 +273,10 @@ public class BatteryChartPreferenceController extends AbstractPreferenceControll
                 mPrefContext,
                 SettingsEnums.ACTION_BATTERY_USAGE_EXPAND_ITEM,
                 isExpanded);
-        refreshExpandUi();
+        // The expanded state is applied when the app list is loaded.
+        if (mIsAppListLoaded) {
+            refreshExpandUi();
+        }
     }
 
     void setBatteryHistoryMap(
@@ -281,9 +287,23 @@ public class BatteryChartPreferenceController extends AbstractPreferenceControll
         animateBatteryChartViewGroup();
         final BatteryLevelData batteryLevelData =
                 DataProcessor.getBatteryLevelData(mContext, mHandler, batteryHistoryMap,
-                        batteryUsageMap -> {
-                            mBatteryUsageMap = batteryUsageMap;
-                            refreshUi();
+                        new DataProcessor.UsageMapAsyncResponse() {
+                            @Override
+                            public void onBatteryUsageMapPartiallyLoaded(
+                                    Map<Integer, Map<Integer, BatteryDiffData>> batteryUsageMap) {
+                                // Refreshes the charts, the app list waits for the labels.
+                                mBatteryUsageMap = batteryUsageMap;
+                                mIsAppListLoaded = false;
+                                refreshUi();
+                            }
+
+                            @Override
+                            public void onBatteryUsageMapLoaded(
+                                    Map<Integer, Map<Integer, BatteryDiffData>> batteryUsageMap) {
+                                mBatteryUsageMap = batteryUsageMap;
+                                mIsAppListLoaded = true;
+                                refreshUi();
+                            }
                         });
         Log.d(TAG, "getBatteryLevelData: " + batteryLevelData);
         mMetricsFeatureProvider.action(
@@ -392,8 +412,10 @@ public class BatteryChartPreferenceController extends AbstractPreferenceControll
 
         mHandler.post(() -> {
             final long start = System.currentTimeMillis();
-            removeAndCacheAllPrefs();
-            addAllPreferences();
+            if (mIsAppListLoaded) {
+                removeAndCacheAllPrefs();
+                addAllPreferences();
+            }
             refreshCategoryTitle();
             Log.d(TAG, String.format("refreshUi is finished in %d/ms",
                     (System.currentTimeMillis() - start)));
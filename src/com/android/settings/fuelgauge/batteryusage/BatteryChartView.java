@@ -27,7 +27,9 @@ import android.graphics.Color;
 import android.graphics.CornerPathEffect;
 import android.graphics.Paint;
 import android.graphics.Path;
+import android.graphics.RecordingCanvas;
 import android.graphics.Rect;
+import android.graphics.RenderNode;
 import android.os.Bundle;
 import android.util.AttributeSet;
 import android.util.Log;
@@ -50,6 +52,7 @@ import com.android.settings.R;
 import com.android.settingslib.Utils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 
@@ -87,6 +90,16 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
     private AccessibilityNodeProvider mAccessibilityNodeProvider;
     private BatteryChartView.OnSelectListener mOnSelectListener;
 
+    // The geometry below is computed only when the data or the size is changed, and reused to
+    // draw the following frames.
+    private boolean mIsGeometryDirty = true;
+    private float mUnitWidth;
+    private Path[] mTrapezoidPaths;
+    private Rect[] mAxisLabelDisplayAreas = new Rect[0];
+    private boolean[] mAxisLabelVisibilities = new boolean[0];
+    // Records the dividers, percentages and axis labels, which don't depend on the selection.
+    private RenderNode mStaticContentNode;
+
     @VisibleForTesting
     TrapezoidSlot[] mTrapezoidSlots;
     // Records the location to calculate selected index.
@@ -110,16 +123,24 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
     public void setViewModel(BatteryChartViewModel viewModel) {
         if (viewModel == null) {
             mViewModel = null;
+            invalidateGeometry();
             invalidate();
             return;
         }
 
+        if (mViewModel != null && mViewModel.hasSameChartData(viewModel)) {
+            // Only the selection is changed, the geometry is reused.
+            mViewModel = viewModel;
+            invalidate();
+            return;
+        }
         Log.d(TAG, String.format("setViewModel(): size: %d, selectedIndex: %d.",
                 viewModel.size(), viewModel.selectedIndex()));
         mViewModel = viewModel;
         initializeAxisLabelsBounds();
         initializeTrapezoidSlots(viewModel.size() - 1);
         setClickable(hasAnyValidTrapezoid(viewModel));
+        invalidateGeometry();
         requestLayout();
     }
 
@@ -168,18 +189,36 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
         } else {
             mIndent.set(0, 0, 0, 0);
         }
+        invalidateGeometry();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        invalidateGeometry();
     }
 
     @Override
     public void draw(Canvas canvas) {
         super.draw(canvas);
-        // Before mLevels initialized, the count of trapezoids is unknown. Only draws the
-        // horizontal percentages and dividers.
-        drawHorizontalDividers(canvas);
-        if (mViewModel == null) {
-            return;
+        if (mIsGeometryDirty) {
+            updateGeometry();
+        }
+        if (canvas.isHardwareAccelerated()) {
+            // Replays the recorded static content, only the trapezoids are drawn again.
+            if (mStaticContentNode == null) {
+                mStaticContentNode = new RenderNode(TAG);
+            }
+            if (!mStaticContentNode.hasDisplayList()) {
+                mStaticContentNode.setPosition(0, 0, getWidth(), getHeight());
+                final RecordingCanvas recordingCanvas = mStaticContentNode.beginRecording();
+                drawStaticContent(recordingCanvas);
+                mStaticContentNode.endRecording();
+            }
+            canvas.drawRenderNode(mStaticContentNode);
+        } else {
+            drawStaticContent(canvas);
         }
-        drawVerticalDividers(canvas);
         drawTrapezoids(canvas);
     }
 
@@ -291,9 +330,51 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
 
     private void initializeTrapezoidSlots(int count) {
         mTrapezoidSlots = new TrapezoidSlot[count];
+        mTrapezoidPaths = new Path[count];
         for (int index = 0; index < mTrapezoidSlots.length; index++) {
             mTrapezoidSlots[index] = new TrapezoidSlot();
+            mTrapezoidPaths[index] = new Path();
+        }
+    }
+
+    private void invalidateGeometry() {
+        mIsGeometryDirty = true;
+        if (mStaticContentNode != null) {
+            mStaticContentNode.discardDisplayList();
+        }
+    }
+
+    private void updateGeometry() {
+        mIsGeometryDirty = false;
+        if (mViewModel == null) {
+            return;
         }
+        // Updates the trapezoid slots between the vertical dividers.
+        final int width = getWidth() - mIndent.right;
+        final int dividerCount = mTrapezoidSlots.length + 1;
+        final float dividerSpace = dividerCount * mDividerWidth;
+        mUnitWidth = (width - dividerSpace) / (float) mTrapezoidSlots.length;
+        final float trapezoidSlotOffset = mTrapezoidHOffset + mDividerWidth * .5f;
+        float startX = mDividerWidth * .5f;
+        for (int index = 0; index < mTrapezoidSlots.length; index++) {
+            final float nextX = startX + mDividerWidth + mUnitWidth;
+            mTrapezoidSlots[index].mLeft = round(startX + trapezoidSlotOffset);
+            mTrapezoidSlots[index].mRight = round(nextX - trapezoidSlotOffset);
+            startX = nextX;
+        }
+        updateAxisLabels();
+        updateTrapezoidPaths();
+    }
+
+    private void drawStaticContent(Canvas canvas) {
+        // Before mLevels initialized, the count of trapezoids is unknown. Only draws the
+        // horizontal percentages and dividers.
+        drawHorizontalDividers(canvas);
+        if (mViewModel == null) {
+            return;
+        }
+        drawVerticalDividers(canvas);
+        drawAxisLabels(canvas);
     }
 
     private void initializeColors(Context context) {
@@ -360,57 +441,57 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
     }
 
     private void drawVerticalDividers(Canvas canvas) {
-        final int width = getWidth() - mIndent.right;
         final int dividerCount = mTrapezoidSlots.length + 1;
-        final float dividerSpace = dividerCount * mDividerWidth;
-        final float unitWidth = (width - dividerSpace) / (float) mTrapezoidSlots.length;
         final float bottomY = getHeight() - mIndent.bottom;
         final float startY = bottomY - mDividerHeight;
-        final float trapezoidSlotOffset = mTrapezoidHOffset + mDividerWidth * .5f;
         // Draws each vertical dividers.
         float startX = mDividerWidth * .5f;
         for (int index = 0; index < dividerCount; index++) {
             canvas.drawLine(startX, startY, startX, bottomY, mDividerPaint);
-            final float nextX = startX + mDividerWidth + unitWidth;
-            // Updates the trapezoid slots for drawing.
-            if (index < mTrapezoidSlots.length) {
-                mTrapezoidSlots[index].mLeft = round(startX + trapezoidSlotOffset);
-                mTrapezoidSlots[index].mRight = round(nextX - trapezoidSlotOffset);
-            }
-            startX = nextX;
+            startX += mDividerWidth + mUnitWidth;
         }
-        // Draws the axis label slot information.
-        if (mViewModel != null) {
-            final float baselineY = getHeight() - mTextPadding;
-            Rect[] axisLabelDisplayAreas;
-            switch (mViewModel.axisLabelPosition()) {
-                case CENTER_OF_TRAPEZOIDS:
-                    axisLabelDisplayAreas = getAxisLabelDisplayAreas(
-                            /* size= */ mViewModel.size() - 1,
-                            /* baselineX= */ mDividerWidth + unitWidth * .5f,
-                            /* offsetX= */ mDividerWidth + unitWidth,
-                            baselineY,
-                            /* shiftFirstAndLast= */ false);
-                    break;
-                case BETWEEN_TRAPEZOIDS:
-                default:
-                    axisLabelDisplayAreas = getAxisLabelDisplayAreas(
-                            /* size= */ mViewModel.size(),
-                            /* baselineX= */ mDividerWidth * .5f,
-                            /* offsetX= */ mDividerWidth + unitWidth,
-                            baselineY,
-                            /* shiftFirstAndLast= */ true);
-                    break;
-            }
-            drawAxisLabels(canvas, axisLabelDisplayAreas, baselineY);
+    }
+
+    private void updateAxisLabels() {
+        final float baselineY = getHeight() - mTextPadding;
+        switch (mViewModel.axisLabelPosition()) {
+            case CENTER_OF_TRAPEZOIDS:
+                updateAxisLabelDisplayAreas(
+                        /* size= */ mViewModel.size() - 1,
+                        /* baselineX= */ mDividerWidth + mUnitWidth * .5f,
+                        /* offsetX= */ mDividerWidth + mUnitWidth,
+                        baselineY,
+                        /* shiftFirstAndLast= */ false);
+                break;
+            case BETWEEN_TRAPEZOIDS:
+            default:
+                updateAxisLabelDisplayAreas(
+                        /* size= */ mViewModel.size(),
+                        /* baselineX= */ mDividerWidth * .5f,
+                        /* offsetX= */ mDividerWidth + mUnitWidth,
+                        baselineY,
+                        /* shiftFirstAndLast= */ true);
+                break;
         }
+        final int lastIndex = mAxisLabelDisplayAreas.length - 1;
+        Arrays.fill(mAxisLabelVisibilities, false);
+        // Suppose first and last labels are always able to draw.
+        mAxisLabelVisibilities[0] = true;
+        mAxisLabelVisibilities[lastIndex] = true;
+        updateAxisLabelVisibilitiesBetweenStartIndexAndEndIndex(0, lastIndex);
     }
 
-    /** Gets all the axis label texts displaying area positions if they are shown. */
-    private Rect[] getAxisLabelDisplayAreas(final int size, final float baselineX,
+    /** Updates all the axis label texts displaying area positions if they are shown. */
+    private void updateAxisLabelDisplayAreas(final int size, final float baselineX,
             final float offsetX, final float baselineY, final boolean shiftFirstAndLast) {
-        final Rect[] result = new Rect[size];
-        for (int index = 0; index < result.length; index++) {
+        if (mAxisLabelDisplayAreas.length != size) {
+            mAxisLabelDisplayAreas = new Rect[size];
+            mAxisLabelVisibilities = new boolean[size];
+            for (int index = 0; index < size; index++) {
+                mAxisLabelDisplayAreas[index] = new Rect();
+            }
+        }
+        for (int index = 0; index < size; index++) {
             final float width = mAxisLabelsBounds.get(index).width();
             float middle = baselineX + index * offsetX;
             if (shiftFirstAndLast) {
@@ -425,43 +506,45 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
             final float right = left + width;
             final float top = baselineY + mAxisLabelsBounds.get(index).top;
             final float bottom = top + mAxisLabelsBounds.get(index).height();
-            result[index] = new Rect(round(left), round(top), round(right), round(bottom));
+            mAxisLabelDisplayAreas[index].set(
+                    round(left), round(top), round(right), round(bottom));
         }
-        return result;
     }
 
-    private void drawAxisLabels(Canvas canvas, final Rect[] displayAreas, final float baselineY) {
-        final int lastIndex = displayAreas.length - 1;
-        // Suppose first and last labels are always able to draw.
-        drawAxisLabelText(canvas, 0, displayAreas[0], baselineY);
-        drawAxisLabelText(canvas, lastIndex, displayAreas[lastIndex], baselineY);
-        drawAxisLabelsBetweenStartIndexAndEndIndex(canvas, displayAreas, 0, lastIndex, baselineY);
+    private void drawAxisLabels(Canvas canvas) {
+        if (mTextPaint == null) {
+            return;
+        }
+        final float baselineY = getHeight() - mTextPadding;
+        for (int index = 0; index < mAxisLabelDisplayAreas.length; index++) {
+            if (mAxisLabelVisibilities[index]) {
+                drawAxisLabelText(canvas, index, mAxisLabelDisplayAreas[index], baselineY);
+            }
+        }
     }
 
     /**
-     * Recursively draws axis labels between the start index and the end index. If the inner number
-     * can be exactly divided into 2 parts, check and draw the middle index label and then
-     * recursively draw the 2 parts. Otherwise, divide into 3 parts. Check and draw the middle two
-     * labels and then recursively draw the 3 parts. If there are any overlaps, skip drawing and go
-     * back to the uplevel of the recursion.
+     * Recursively shows axis labels between the start index and the end index. If the inner
+     * number can be exactly divided into 2 parts, check and show the middle index label and then
+     * recursively check the 2 parts. Otherwise, divide into 3 parts. Check and show the middle two
+     * labels and then recursively check the 3 parts. If there are any overlaps, skip showing and
+     * go back to the uplevel of the recursion.
      */
-    private void drawAxisLabelsBetweenStartIndexAndEndIndex(Canvas canvas,
-            final Rect[] displayAreas, final int startIndex, final int endIndex,
-            final float baselineY) {
+    private void updateAxisLabelVisibilitiesBetweenStartIndexAndEndIndex(
+            final int startIndex, final int endIndex) {
         if (endIndex - startIndex <= 1) {
             return;
         }
+        final Rect[] displayAreas = mAxisLabelDisplayAreas;
         if ((endIndex - startIndex) % 2 == 0) {
             int middleIndex = (startIndex + endIndex) / 2;
             if (hasOverlap(displayAreas, startIndex, middleIndex)
                     || hasOverlap(displayAreas, middleIndex, endIndex)) {
                 return;
             }
-            drawAxisLabelText(canvas, middleIndex, displayAreas[middleIndex], baselineY);
-            drawAxisLabelsBetweenStartIndexAndEndIndex(
-                    canvas, displayAreas, startIndex, middleIndex, baselineY);
-            drawAxisLabelsBetweenStartIndexAndEndIndex(
-                    canvas, displayAreas, middleIndex, endIndex, baselineY);
+            mAxisLabelVisibilities[middleIndex] = true;
+            updateAxisLabelVisibilitiesBetweenStartIndexAndEndIndex(startIndex, middleIndex);
+            updateAxisLabelVisibilitiesBetweenStartIndexAndEndIndex(middleIndex, endIndex);
         } else {
             int middleIndex1 = startIndex + round((endIndex - startIndex) / 3f);
             int middleIndex2 = startIndex + round((endIndex - startIndex) * 2 / 3f);
@@ -470,14 +553,11 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
                     || hasOverlap(displayAreas, middleIndex2, endIndex)) {
                 return;
             }
-            drawAxisLabelText(canvas, middleIndex1, displayAreas[middleIndex1], baselineY);
-            drawAxisLabelText(canvas, middleIndex2, displayAreas[middleIndex2], baselineY);
-            drawAxisLabelsBetweenStartIndexAndEndIndex(
-                    canvas, displayAreas, startIndex, middleIndex1, baselineY);
-            drawAxisLabelsBetweenStartIndexAndEndIndex(
-                    canvas, displayAreas, middleIndex1, middleIndex2, baselineY);
-            drawAxisLabelsBetweenStartIndexAndEndIndex(
-                    canvas, displayAreas, middleIndex2, endIndex, baselineY);
+            mAxisLabelVisibilities[middleIndex1] = true;
+            mAxisLabelVisibilities[middleIndex2] = true;
+            updateAxisLabelVisibilitiesBetweenStartIndexAndEndIndex(startIndex, middleIndex1);
+            updateAxisLabelVisibilitiesBetweenStartIndexAndEndIndex(middleIndex1, middleIndex2);
+            updateAxisLabelVisibilitiesBetweenStartIndexAndEndIndex(middleIndex2, endIndex);
         }
     }
 
@@ -496,38 +576,24 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
                 mTextPaint);
     }
 
-    private void drawTrapezoids(Canvas canvas) {
-        // Ignores invalid trapezoid data.
-        if (mViewModel == null) {
-            return;
-        }
+    private void updateTrapezoidPaths() {
         final float trapezoidBottom =
                 getHeight() - mIndent.bottom - mDividerHeight - mDividerWidth
                         - mTrapezoidVOffset;
         final float availableSpace =
                 trapezoidBottom - mDividerWidth * .5f - mIndent.top - mTrapezoidVOffset;
         final float unitHeight = availableSpace / 100f;
-        // Draws all trapezoid shapes into the canvas.
-        final Path trapezoidPath = new Path();
-        Path trapezoidCurvePath = null;
         for (int index = 0; index < mTrapezoidSlots.length; index++) {
+            final Path trapezoidPath = mTrapezoidPaths[index];
+            trapezoidPath.reset();
             // Not draws the trapezoid for corner or not initialization cases.
             if (!isValidToDraw(mViewModel, index)) {
                 continue;
             }
-            // Configures the trapezoid paint color.
-            final int trapezoidColor = (mViewModel.selectedIndex() == index
-                    || mViewModel.selectedIndex() == BatteryChartViewModel.SELECTED_INDEX_ALL)
-                    ? mTrapezoidSolidColor : mTrapezoidColor;
-            final boolean isHoverState = mHoveredIndex == index && isValidToDraw(mViewModel,
-                    mHoveredIndex);
-            mTrapezoidPaint.setColor(isHoverState ? mTrapezoidHoverColor : trapezoidColor);
-
             final float leftTop = round(
                     trapezoidBottom - requireNonNull(mViewModel.getLevel(index)) * unitHeight);
             final float rightTop = round(trapezoidBottom
                     - requireNonNull(mViewModel.getLevel(index + 1)) * unitHeight);
-            trapezoidPath.reset();
             trapezoidPath.moveTo(mTrapezoidSlots[index].mLeft, trapezoidBottom);
             trapezoidPath.lineTo(mTrapezoidSlots[index].mLeft, leftTop);
             trapezoidPath.lineTo(mTrapezoidSlots[index].mRight, rightTop);
@@ -535,8 +601,29 @@ public class BatteryChartView extends AppCompatImageView implements View.OnClick
             // A tricky way to make the trapezoid shape drawing the rounded corner.
             trapezoidPath.lineTo(mTrapezoidSlots[index].mLeft, trapezoidBottom);
             trapezoidPath.lineTo(mTrapezoidSlots[index].mLeft, leftTop);
+        }
+    }
+
+    private void drawTrapezoids(Canvas canvas) {
+        // Ignores invalid trapezoid data.
+        if (mViewModel == null) {
+            return;
+        }
+        // Draws all trapezoid shapes into the canvas.
+        for (int index = 0; index < mTrapezoidSlots.length; index++) {
+            // Not draws the trapezoid for corner or not initialization cases.
+            if (!isValidToDraw(mViewModel, index)) {
+                continue;
+            }
+            // Configures the trapezoid paint color.
+            final int trapezoidColor = (mViewModel.selectedIndex() == index
+                    || mViewModel.selectedIndex() == BatteryChartViewModel.SELECTED_INDEX_ALL)
+                    ? mTrapezoidSolidColor : mTrapezoidColor;
+            final boolean isHoverState = mHoveredIndex == index && isValidToDraw(mViewModel,
+                    mHoveredIndex);
+            mTrapezoidPaint.setColor(isHoverState ? mTrapezoidHoverColor : trapezoidColor);
             // Draws the trapezoid shape into canvas.
-            canvas.drawPath(trapezoidPath, mTrapezoidPaint);
+            canvas.drawPath(mTrapezoidPaths[index], mTrapezoidPaint);
         }
     }
 
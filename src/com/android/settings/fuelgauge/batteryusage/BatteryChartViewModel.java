@@ -106,6 +106,17 @@ class BatteryChartViewModel {
         mSelectedIndex = index;
     }
 
+    /** Returns whether the other view model draws the same chart, ignoring the selection. */
+    boolean hasSameChartData(BatteryChartViewModel other) {
+        if (this == other) {
+            return true;
+        }
+        return Objects.equals(mLevels, other.mLevels)
+                && Objects.equals(mTimestamps, other.mTimestamps)
+                && mAxisLabelPosition == other.mAxisLabelPosition
+                && mLabelTextGenerator == other.mLabelTextGenerator;
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash(mLevels, mTimestamps, mSelectedIndex, mAxisLabelPosition);
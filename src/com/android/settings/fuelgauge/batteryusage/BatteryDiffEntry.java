@@ -32,20 +32,17 @@ import com.android.settings.fuelgauge.BatteryUtils;
 import com.android.settingslib.utils.StringUtil;
 
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /** A container class to carry battery data in a specific time slot. */
 public class BatteryDiffEntry {
     private static final String TAG = "BatteryDiffEntry";
 
-    static Locale sCurrentLocale = null;
-    // Caches app label and icon to improve loading performance.
-    static final Map<String, BatteryEntry.NameAndIcon> sResourceCache = new HashMap<>();
-    // Whether a specific item is valid to launch restriction page?
+    // Whether a specific item is valid to launch restriction page? Entries may be loaded from
+    // several threads at the same time.
     @VisibleForTesting(otherwise = VisibleForTesting.PACKAGE_PRIVATE)
-    public static final Map<String, Boolean> sValidForRestriction = new HashMap<>();
+    public static final Map<String, Boolean> sValidForRestriction = new ConcurrentHashMap<>();
 
     /** A comparator for {@link BatteryDiffEntry} based on consumed percentage. */
     public static final Comparator<BatteryDiffEntry> COMPARATOR =
@@ -96,6 +93,11 @@ public class BatteryDiffEntry {
                 ? 0 : (mConsumePower / mTotalConsumePower) * 100.0;
     }
 
+    /** Gets the total consumed power in a specific time slot. */
+    public double getTotalConsumePower() {
+        return mTotalConsumePower;
+    }
+
     /** Gets the percentage of total consumed power. */
     public double getPercentOfTotal() {
         return mPercentOfTotal;
@@ -194,11 +196,16 @@ public class BatteryDiffEntry {
             return;
         }
         // Checks whether we have cached data or not first before fetching.
-        final BatteryEntry.NameAndIcon nameAndIcon = getCache();
+        final BatteryEntry.NameAndIcon nameAndIcon =
+                NameAndIconCache.getInstance().get(getKey());
         if (nameAndIcon != null) {
             mAppLabel = nameAndIcon.mName;
             mAppIcon = nameAndIcon.mIcon;
             mAppIconId = nameAndIcon.mIconId;
+            if (mBatteryHistEntry.mConsumerType == ConvertUtils.CONSUMER_TYPE_UID_BATTERY
+                    && mAppIcon != null) {
+                mAppIcon = getBadgeIconForUser(mAppIcon);
+            }
         }
         final Boolean validForRestriction = sValidForRestriction.get(getKey());
         if (validForRestriction != null) {
@@ -210,9 +217,12 @@ public class BatteryDiffEntry {
         }
         mIsLoaded = true;
 
-        // Configures whether we can launch restriction page or not.
-        updateRestrictionFlagState();
-        sValidForRestriction.put(getKey(), Boolean.valueOf(mValidForRestriction));
+        // Configures whether we can launch restriction page or not, unless another entry of the
+        // same key already did.
+        mValidForRestriction = sValidForRestriction.computeIfAbsent(getKey(), key -> {
+            updateRestrictionFlagState();
+            return mValidForRestriction;
+        });
 
         // Loads application icon and label based on consumer type.
         switch (mBatteryHistEntry.mConsumerType) {
@@ -223,7 +233,8 @@ public class BatteryDiffEntry {
                 if (nameAndIconForUser != null) {
                     mAppIcon = nameAndIconForUser.mIcon;
                     mAppLabel = nameAndIconForUser.mName;
-                    sResourceCache.put(
+                    NameAndIconCache.getInstance().put(
+                            mContext,
                             getKey(),
                             new BatteryEntry.NameAndIcon(mAppLabel, mAppIcon, /*iconId=*/ 0));
                 }
@@ -238,7 +249,8 @@ public class BatteryDiffEntry {
                         mAppIconId = nameAndIconForSystem.mIconId;
                         mAppIcon = mContext.getDrawable(nameAndIconForSystem.mIconId);
                     }
-                    sResourceCache.put(
+                    NameAndIconCache.getInstance().put(
+                            mContext,
                             getKey(),
                             new BatteryEntry.NameAndIcon(mAppLabel, mAppIcon, mAppIconId));
                 }
@@ -249,13 +261,15 @@ public class BatteryDiffEntry {
                 if (mAppIcon == null) {
                     mAppIcon = mContext.getPackageManager().getDefaultActivityIcon();
                 }
+                // Caches the icon without the work profile badge, since the same key is
+                // used by BatteryEntry for the UID.
+                NameAndIconCache.getInstance().put(
+                        mContext,
+                        getKey(),
+                        new BatteryEntry.NameAndIcon(
+                                mAppLabel, getPackageName(), mAppIcon, /*iconId=*/ 0));
                 // Adds badge icon into app icon for work profile.
                 mAppIcon = getBadgeIconForUser(mAppIcon);
-                if (mAppLabel != null || mAppIcon != null) {
-                    sResourceCache.put(
-                            getKey(),
-                            new BatteryEntry.NameAndIcon(mAppLabel, mAppIcon, /*iconId=*/ 0));
-                }
                 break;
         }
     }
@@ -294,17 +308,6 @@ public class BatteryDiffEntry {
         }
     }
 
-    private BatteryEntry.NameAndIcon getCache() {
-        final Locale locale = Locale.getDefault();
-        if (sCurrentLocale != locale) {
-            Log.d(TAG, String.format("clearCache() locale is changed from %s to %s",
-                    sCurrentLocale, locale));
-            sCurrentLocale = locale;
-            clearCache();
-        }
-        return sResourceCache.get(getKey());
-    }
-
     private void loadNameAndIconForUid() {
         final String packageName = getPackageName();
         final PackageManager packageManager = mContext.getPackageManager();
@@ -341,8 +344,6 @@ public class BatteryDiffEntry {
                 BatteryEntry.loadNameAndIcon(
                         mContext, uid, /*handler=*/ null, /*batteryEntry=*/ null,
                         packageName, mAppLabel, mAppIcon);
-        // Clears BatteryEntry internal cache since we will have another one.
-        BatteryEntry.clearUidCache();
         if (nameAndIcon != null) {
             mAppLabel = nameAndIcon.mName;
             mAppIcon = nameAndIcon.mIcon;
@@ -376,7 +377,7 @@ public class BatteryDiffEntry {
 
     /** Clears app icon and label cache data. */
     public static void clearCache() {
-        sResourceCache.clear();
+        NameAndIconCache.getInstance().clear();
         sValidForRestriction.clear();
     }
 
@@ -42,8 +42,6 @@ import com.android.settingslib.Utils;
 
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Locale;
 
 /**
  * Wraps the power usage data of a BatterySipper with information about package name
@@ -77,13 +75,9 @@ public class BatteryEntry {
     private static final String TAG = "BatteryEntry";
     private static final String PACKAGE_SYSTEM = "android";
 
-    static final HashMap<String, UidToDetail> sUidCache = new HashMap<>();
-
     static final ArrayList<BatteryEntry> sRequestQueue = new ArrayList<BatteryEntry>();
     static Handler sHandler;
 
-    static Locale sCurrentLocale = null;
-
     private static class NameAndIconLoader extends Thread {
         private boolean mAbort = false;
 
@@ -154,7 +148,7 @@ public class BatteryEntry {
 
     /** Clears the UID cache. */
     public static void clearUidCache() {
-        sUidCache.clear();
+        NameAndIconCache.getInstance().clear();
     }
 
     public static final Comparator<BatteryEntry> COMPARATOR =
@@ -179,12 +173,6 @@ public class BatteryEntry {
     private String mDefaultPackageName;
     private double mConsumedPower;
 
-    static class UidToDetail {
-        String mName;
-        String mPackageName;
-        Drawable mIcon;
-    }
-
     public BatteryEntry(Context context, Handler handler, UserManager um,
             BatteryConsumer batteryConsumer, boolean isHidden, int uid, String[] packages,
             String packageName) {
@@ -309,19 +297,13 @@ public class BatteryEntry {
 
     void getQuickNameIconForUid(
             final int uid, final String[] packages, final boolean loadDataInBackground) {
-        // Locale sync to system config in Settings
-        final Locale locale = Locale.getDefault();
-        if (sCurrentLocale != locale) {
-            clearUidCache();
-            sCurrentLocale = locale;
-        }
-
-        final String uidString = Integer.toString(uid);
-        if (sUidCache.containsKey(uidString)) {
-            UidToDetail utd = sUidCache.get(uidString);
-            mDefaultPackageName = utd.mPackageName;
-            mName = utd.mName;
-            mIcon = utd.mIcon;
+        // The cache is cleared when the locale is changed.
+        final NameAndIcon cachedNameAndIcon =
+                NameAndIconCache.getInstance().get(Integer.toString(uid));
+        if (cachedNameAndIcon != null) {
+            mDefaultPackageName = cachedNameAndIcon.mPackageName;
+            mName = cachedNameAndIcon.mName;
+            mIcon = cachedNameAndIcon.mIcon;
             return;
         }
 
@@ -421,21 +403,17 @@ public class BatteryEntry {
             }
         }
 
-        final String uidString = Integer.toString(uid);
         if (icon == null) {
             icon = pm.getDefaultActivityIcon();
         }
 
-        UidToDetail utd = new UidToDetail();
-        utd.mName = name;
-        utd.mIcon = icon;
-        utd.mPackageName = defaultPackageName;
-
-        sUidCache.put(uidString, utd);
+        final NameAndIcon nameAndIcon =
+                new NameAndIcon(name, defaultPackageName, icon, /*iconId=*/ 0);
+        NameAndIconCache.getInstance().put(context, Integer.toString(uid), nameAndIcon);
         if (handler != null) {
             handler.sendMessage(handler.obtainMessage(MSG_UPDATE_NAME_ICON, batteryEntry));
         }
-        return new NameAndIcon(name, defaultPackageName, icon, /*iconId=*/ 0);
+        return nameAndIcon;
     }
 
     /** Returns a string that uniquely identifies this battery consumer. */
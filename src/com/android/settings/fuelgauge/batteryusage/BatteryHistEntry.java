@@ -118,7 +118,7 @@ public class BatteryHistEntry {
         mBatteryHealth = getInteger(cursor, KEY_BATTERY_HEALTH);
     }
 
-    private BatteryHistEntry(
+    BatteryHistEntry(
             BatteryHistEntry fromEntry,
             long bootTimestamp,
             long timestamp,
@@ -344,7 +344,7 @@ public class BatteryHistEntry {
                 (int) Math.round(batteryLevel));
     }
 
-    private static double interpolate(double v1, double v2, double ratio) {
+    static double interpolate(double v1, double v2, double ratio) {
         return v1 + ratio * (v2 - v1);
     }
 }
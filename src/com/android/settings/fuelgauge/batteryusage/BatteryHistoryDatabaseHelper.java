@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Defines the schema for the battery history database. Columns are named after the keys of
+ * {@link BatteryHistEntry} so that rows can be read back as {@link BatteryHistEntry}.
+ */
+public class BatteryHistoryDatabaseHelper extends SQLiteOpenHelper {
+    private static final String TAG = "BatteryHistoryDatabaseHelper";
+    private static final String DATABASE_NAME = "battery_history.db";
+    private static final int DATABASE_VERSION = 1;
+
+    public static final String BATTERY_STATE_TABLE = "battery_state";
+
+    private static final String CREATE_BATTERY_STATE_TABLE =
+            "CREATE TABLE "
+                    + BATTERY_STATE_TABLE
+                    + "("
+                    + BatteryHistEntry.KEY_UID
+                    + " INTEGER, "
+                    + BatteryHistEntry.KEY_USER_ID
+                    + " INTEGER, "
+                    + BatteryHistEntry.KEY_APP_LABEL
+                    + " TEXT, "
+                    + BatteryHistEntry.KEY_PACKAGE_NAME
+                    + " TEXT, "
+                    + BatteryHistEntry.KEY_IS_HIDDEN
+                    + " INTEGER, "
+                    + BatteryHistEntry.KEY_BOOT_TIMESTAMP
+                    + " INTEGER, "
+                    + BatteryHistEntry.KEY_TIMESTAMP
+                    + " INTEGER NOT NULL, "
+                    + BatteryHistEntry.KEY_ZONE_ID
+                    + " TEXT, "
+                    + BatteryHistEntry.KEY_TOTAL_POWER
+                    + " DOUBLE, "
+                    + BatteryHistEntry.KEY_CONSUME_POWER
+                    + " DOUBLE, "
+                    + BatteryHistEntry.KEY_PERCENT_OF_TOTAL
+                    + " DOUBLE, "
+                    + BatteryHistEntry.KEY_FOREGROUND_USAGE_TIME
+                    + " INTEGER, "
+                    + BatteryHistEntry.KEY_BACKGROUND_USAGE_TIME
+                    + " INTEGER, "
+                    + BatteryHistEntry.KEY_DRAIN_TYPE
+                    + " INTEGER, "
+                    + BatteryHistEntry.KEY_CONSUMER_TYPE
+                    + " INTEGER, "
+                    + BatteryHistEntry.KEY_BATTERY_LEVEL
+                    + " INTEGER, "
+                    + BatteryHistEntry.KEY_BATTERY_STATUS
+                    + " INTEGER, "
+                    + BatteryHistEntry.KEY_BATTERY_HEALTH
+                    + " INTEGER"
+                    + ");";
+
+    // Every query and the retention are bounded by the snapshot timestamp.
+    private static final String CREATE_TIMESTAMP_INDEX =
+            "CREATE INDEX battery_state_timestamp_index ON "
+                    + BATTERY_STATE_TABLE
+                    + "("
+                    + BatteryHistEntry.KEY_TIMESTAMP
+                    + ");";
+
+    public BatteryHistoryDatabaseHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL(CREATE_BATTERY_STATE_TABLE);
+        db.execSQL(CREATE_TIMESTAMP_INDEX);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < newVersion) {
+            Log.d(TAG, "Reconstructing DB from " + oldVersion + " to " + newVersion);
+            db.execSQL("DROP TABLE IF EXISTS " + BATTERY_STATE_TABLE);
+            onCreate(db);
+        }
+    }
+
+    @VisibleForTesting
+    static BatteryHistoryDatabaseHelper sBatteryHistoryDatabaseHelper;
+
+    public static synchronized BatteryHistoryDatabaseHelper getInstance(Context context) {
+        if (sBatteryHistoryDatabaseHelper == null) {
+            sBatteryHistoryDatabaseHelper =
+                    new BatteryHistoryDatabaseHelper(context.getApplicationContext());
+        }
+        return sBatteryHistoryDatabaseHelper;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.UriMatcher;
+import android.database.Cursor;
+import android.net.Uri;
+import android.text.TextUtils;
+
+/**
+ * Exposes the battery snapshots of {@link BatteryHistoryStore}, so that pages can observe
+ * {@link BatteryHistoryStore#BATTERY_STATE_URI} for new snapshots.
+ *
+ * <p>The rows at or after the {@link #QUERY_KEY_TIMESTAMP} parameter are returned, all rows
+ * within the retention otherwise.
+ */
+public class BatteryHistoryProvider extends ContentProvider {
+
+    public static final String AUTHORITY = "com.android.settings.battery.history";
+    public static final String QUERY_KEY_TIMESTAMP = "timestamp";
+
+    private static final int MATCH_BATTERY_STATE = 1;
+    private static final UriMatcher URI_MATCHER = new UriMatcher(UriMatcher.NO_MATCH);
+
+    static {
+        URI_MATCHER.addURI(AUTHORITY, BatteryHistoryDatabaseHelper.BATTERY_STATE_TABLE,
+                MATCH_BATTERY_STATE);
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+            String sortOrder) {
+        if (URI_MATCHER.match(uri) != MATCH_BATTERY_STATE) {
+            throw new IllegalArgumentException("Unknown Uri " + uri);
+        }
+        final String timestamp = uri.getQueryParameter(QUERY_KEY_TIMESTAMP);
+        return BatteryHistoryStore.query(getContext(), TextUtils.isEmpty(timestamp)
+                ? System.currentTimeMillis() - BatteryHistoryStore.RETENTION_MS
+                : Long.parseLong(timestamp));
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Insert not supported");
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Delete not supported");
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Update not supported");
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.BatteryStatsManager;
+import android.os.BatteryUsageStats;
+import android.os.BatteryUsageStatsQuery;
+import android.os.SystemClock;
+import android.os.UserHandle;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.android.settings.R;
+import com.android.settings.overlay.FeatureFactory;
+import com.android.settingslib.Utils;
+import com.android.settingslib.utils.ThreadUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** A JobService to record the battery usage snapshots of {@link BatteryHistoryStore}. */
+public class BatteryHistorySnapshotJobService extends JobService {
+    private static final String TAG = "BatteryHistorySnapshot";
+
+    @VisibleForTesting
+    static final long SNAPSHOT_FREQUENCY_MS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Schedules the periodic snapshot unless it is already scheduled. The snapshot is only read by
+     * the battery chart, so the job is cancelled instead while the chart is disabled.
+     */
+    public static void scheduleSnapshot(Context context) {
+        if (UserHandle.myUserId() != UserHandle.USER_SYSTEM) {
+            // Battery usage is device wide, the system user records it for everyone.
+            return;
+        }
+        final JobScheduler jobScheduler = context.getSystemService(JobScheduler.class);
+        if (!FeatureFactory.getFactory(context).getPowerUsageFeatureProvider(context)
+                .isChartGraphEnabled(context)) {
+            jobScheduler.cancel(R.integer.job_battery_history_snapshot);
+            return;
+        }
+
+        final ComponentName component =
+                new ComponentName(context, BatteryHistorySnapshotJobService.class);
+        final JobInfo.Builder jobBuilder =
+                new JobInfo.Builder(R.integer.job_battery_history_snapshot, component)
+                        .setPeriodic(SNAPSHOT_FREQUENCY_MS)
+                        .setPersisted(true);
+        final JobInfo pending =
+                jobScheduler.getPendingJob(R.integer.job_battery_history_snapshot);
+
+        // Don't schedule it if it already exists, to make sure it runs periodically even after
+        // reboot
+        if (pending == null && jobScheduler.schedule(jobBuilder.build())
+                != JobScheduler.RESULT_SUCCESS) {
+            Log.i(TAG, "Battery history snapshot job service schedule failed.");
+        }
+    }
+
+    @Override
+    public boolean onStartJob(JobParameters params) {
+        ThreadUtils.postOnBackgroundThread(() -> {
+            final long start = System.currentTimeMillis();
+            final List<ContentValues> snapshot = takeSnapshot(this);
+            BatteryHistoryStore.insert(this, snapshot);
+            BatteryHistoryStore.deleteBefore(this, start - BatteryHistoryStore.RETENTION_MS);
+            Log.d(TAG, String.format("recorded %d rows in %d/ms", snapshot.size(),
+                    System.currentTimeMillis() - start));
+            jobFinished(params, false /* wantsReschedule */);
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters jobParameters) {
+        return false;
+    }
+
+    /**
+     * Converts the current battery usage into rows of {@link BatteryHistEntry}. Entries without
+     * any usage are skipped, and a single fake row is recorded if there is no usage at all so
+     * that the snapshot timestamp and battery level are still kept.
+     */
+    @VisibleForTesting
+    static List<ContentValues> takeSnapshot(Context context) {
+        final List<ContentValues> snapshot = new ArrayList<>();
+        final Intent batteryIntent = context.registerReceiver(null /* receiver */,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (batteryIntent == null) {
+            Log.w(TAG, "No battery intent");
+            return snapshot;
+        }
+        final int batteryLevel = Utils.getBatteryLevel(batteryIntent);
+        final int batteryStatus = batteryIntent.getIntExtra(BatteryManager.EXTRA_STATUS,
+                BatteryManager.BATTERY_STATUS_UNKNOWN);
+        final int batteryHealth = batteryIntent.getIntExtra(BatteryManager.EXTRA_HEALTH,
+                BatteryManager.BATTERY_HEALTH_UNKNOWN);
+        final long bootTimestamp = SystemClock.elapsedRealtime();
+        final long timestamp = System.currentTimeMillis();
+
+        BatteryUsageStats batteryUsageStats = null;
+        try {
+            List<BatteryEntry> batteryEntryList = null;
+            try {
+                // The power history isn't needed, only the usage of each consumer.
+                batteryUsageStats = context.getSystemService(BatteryStatsManager.class)
+                        .getBatteryUsageStats(new BatteryUsageStatsQuery.Builder().build());
+                if (batteryUsageStats != null) {
+                    batteryEntryList = new BatteryAppListPreferenceController(
+                            context,
+                            /*preferenceKey=*/ null,
+                            /*lifecycle=*/ null,
+                            /*activity*=*/ null,
+                            /*fragment=*/ null)
+                            .getBatteryEntryList(batteryUsageStats, /*showAllApps=*/ true);
+                }
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Failed to load battery usage stats", e);
+            }
+
+            if (batteryEntryList != null) {
+                for (BatteryEntry entry : batteryEntryList) {
+                    if (entry.getConsumedPower() == 0
+                            && entry.getTimeInForegroundMs() == 0
+                            && entry.getTimeInBackgroundMs() == 0) {
+                        continue;
+                    }
+                    snapshot.add(ConvertUtils.convertToContentValues(entry, batteryUsageStats,
+                            batteryLevel, batteryStatus, batteryHealth, bootTimestamp,
+                            timestamp));
+                }
+            }
+        } finally {
+            closeBatteryUsageStats(batteryUsageStats);
+        }
+        if (snapshot.isEmpty()) {
+            snapshot.add(ConvertUtils.convertToContentValues(/*entry=*/ null,
+                    /*batteryUsageStats=*/ null, batteryLevel, batteryStatus, batteryHealth,
+                    bootTimestamp, timestamp));
+        }
+        return snapshot;
+    }
+
+    private static void closeBatteryUsageStats(BatteryUsageStats batteryUsageStats) {
+        if (batteryUsageStats == null) {
+            return;
+        }
+        try {
+            batteryUsageStats.close();
+        } catch (Exception e) {
+            Log.e(TAG, "BatteryUsageStats.close() failed", e);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import static com.android.settings.fuelgauge.batteryusage.BatteryHistoryDatabaseHelper.BATTERY_STATE_TABLE;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.net.Uri;
+import android.os.BatteryManager;
+import android.util.Log;
+
+import androidx.annotation.WorkerThread;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads and writes the periodic battery usage snapshots kept on the device.
+ *
+ * <p>Each snapshot is a set of {@link BatteryHistEntry} rows sharing the same timestamp. Snapshots
+ * older than {@link #RETENTION_MS} are purged.
+ */
+public final class BatteryHistoryStore {
+    private static final String TAG = "BatteryHistoryStore";
+
+    /** How long the snapshots are kept. */
+    public static final long RETENTION_MS = TimeUnit.DAYS.toMillis(7);
+
+    /** The content uri notified when a new snapshot is recorded. */
+    public static final Uri BATTERY_STATE_URI = new Uri.Builder()
+            .scheme("content")
+            .authority(BatteryHistoryProvider.AUTHORITY)
+            .appendPath(BATTERY_STATE_TABLE)
+            .build();
+
+    private BatteryHistoryStore() {
+    }
+
+    /** Records the rows of a snapshot in a single transaction. */
+    @WorkerThread
+    public static void insert(Context context, List<ContentValues> snapshot) {
+        if (snapshot.isEmpty()) {
+            return;
+        }
+        final SQLiteDatabase db =
+                BatteryHistoryDatabaseHelper.getInstance(context).getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (ContentValues values : snapshot) {
+                db.insert(BATTERY_STATE_TABLE, null /* nullColumnHack */, values);
+            }
+            db.setTransactionSuccessful();
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Failed to insert battery snapshot", e);
+            return;
+        } finally {
+            db.endTransaction();
+        }
+        context.getContentResolver().notifyChange(BATTERY_STATE_URI, null /* observer */);
+    }
+
+    /** Deletes the snapshots recorded before the timestamp. */
+    @WorkerThread
+    public static int deleteBefore(Context context, long timestamp) {
+        final SQLiteDatabase db =
+                BatteryHistoryDatabaseHelper.getInstance(context).getWritableDatabase();
+        return db.delete(BATTERY_STATE_TABLE, BatteryHistEntry.KEY_TIMESTAMP + " < ?",
+                new String[]{String.valueOf(timestamp)});
+    }
+
+    /** Queries the rows of the snapshots recorded at or after the timestamp. */
+    @WorkerThread
+    public static Cursor query(Context context, long timestamp) {
+        final SQLiteDatabase db =
+                BatteryHistoryDatabaseHelper.getInstance(context).getReadableDatabase();
+        return db.query(BATTERY_STATE_TABLE, null /* columns */,
+                BatteryHistEntry.KEY_TIMESTAMP + " >= ?",
+                new String[]{String.valueOf(timestamp)}, null /* groupBy */, null /* having */,
+                BatteryHistEntry.KEY_TIMESTAMP /* orderBy */);
+    }
+
+    /** Returns the snapshots within the retention. */
+    @WorkerThread
+    public static Map<Long, Map<String, BatteryHistEntry>> getHistory(Context context) {
+        return getHistorySince(context, System.currentTimeMillis() - RETENTION_MS);
+    }
+
+    /**
+     * Returns the snapshots since the last full charge, or within the retention if the device
+     * was not fully charged since.
+     */
+    @WorkerThread
+    public static Map<Long, Map<String, BatteryHistEntry>> getHistorySinceLastFullCharge(
+            Context context) {
+        return getHistorySince(context, Math.max(getLastFullChargeTimestamp(context),
+                System.currentTimeMillis() - RETENTION_MS));
+    }
+
+    /** Returns the snapshots recorded at or after the timestamp, keyed by snapshot timestamp. */
+    @WorkerThread
+    public static Map<Long, Map<String, BatteryHistEntry>> getHistorySince(
+            Context context, long timestamp) {
+        final Map<Long, Map<String, BatteryHistEntry>> historyMap = new HashMap<>();
+        try (Cursor cursor = query(context, timestamp)) {
+            while (cursor.moveToNext()) {
+                final BatteryHistEntry entry = new BatteryHistEntry(cursor);
+                historyMap.computeIfAbsent(entry.mTimestamp, key -> new HashMap<>())
+                        .put(entry.getKey(), entry);
+            }
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Failed to load battery history", e);
+        }
+        return historyMap;
+    }
+
+    @WorkerThread
+    private static long getLastFullChargeTimestamp(Context context) {
+        final SQLiteDatabase db =
+                BatteryHistoryDatabaseHelper.getInstance(context).getReadableDatabase();
+        try (Cursor cursor = db.query(BATTERY_STATE_TABLE,
+                new String[]{"MAX(" + BatteryHistEntry.KEY_TIMESTAMP + ")"},
+                BatteryHistEntry.KEY_BATTERY_STATUS + " = ?",
+                new String[]{String.valueOf(BatteryManager.BATTERY_STATUS_FULL)},
+                null /* groupBy */, null /* having */, null /* orderBy */)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0L;
+        } catch (SQLiteException e) {
+            Log.e(TAG, "Failed to query the last full charge", e);
+            return 0L;
+        }
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A columnar representation of the battery history used by {@link DataProcessor}.
+ *
+ * <p>The history is a sorted list of slots, each slot holding the rows recorded at its
+ * timestamp. The rows of slot {@code i} are stored in {@code [getRowStart(i), getRowEnd(i))}
+ * and sorted by the index of their interned entry key, so rows of different slots can be
+ * matched with a merge instead of hash lookups. Usage values are kept in primitive columns,
+ * while the recorded {@link BatteryHistEntry} of each row only provides the metadata such as
+ * uid, package and consumer type.
+ */
+final class BatteryHistoryTable {
+    private static final long FINGERPRINT_OFFSET = 0xcbf29ce484222325L;
+    private static final long FINGERPRINT_PRIME = 0x100000001b3L;
+
+    private final long[] mTimestamps;
+    // The rows of the slot i are in [mSlotOffsets[i], mSlotOffsets[i + 1]).
+    private final int[] mSlotOffsets;
+    private final String[] mKeys;
+
+    private final int[] mKeyIndexes;
+    private final long[] mBootTimestamps;
+    private final long[] mForegroundUsageTimeInMs;
+    private final long[] mBackgroundUsageTimeInMs;
+    private final double[] mConsumePower;
+    private final double[] mTotalPower;
+    private final int[] mBatteryLevels;
+    private final BatteryHistEntry[] mEntries;
+    // Whether the values of the row are interpolated, or copied from mEntries otherwise.
+    private final boolean[] mInterpolated;
+
+    // Lazily computed by getSlotFingerprint(), which may be called from several threads.
+    private volatile long[] mSlotFingerprints;
+
+    private BatteryHistoryTable(Builder builder) {
+        final int slotCount = builder.mSlotCount;
+        final int rowCount = builder.mRowCount;
+        mTimestamps = Arrays.copyOf(builder.mTimestamps, slotCount);
+        mSlotOffsets = Arrays.copyOf(builder.mSlotOffsets, slotCount + 1);
+        mSlotOffsets[slotCount] = rowCount;
+        mKeys = builder.mKeys;
+        mKeyIndexes = Arrays.copyOf(builder.mKeyIndexes, rowCount);
+        mBootTimestamps = Arrays.copyOf(builder.mBootTimestamps, rowCount);
+        mForegroundUsageTimeInMs = Arrays.copyOf(builder.mForegroundUsageTimeInMs, rowCount);
+        mBackgroundUsageTimeInMs = Arrays.copyOf(builder.mBackgroundUsageTimeInMs, rowCount);
+        mConsumePower = Arrays.copyOf(builder.mConsumePower, rowCount);
+        mTotalPower = Arrays.copyOf(builder.mTotalPower, rowCount);
+        mBatteryLevels = Arrays.copyOf(builder.mBatteryLevels, rowCount);
+        mEntries = Arrays.copyOf(builder.mEntries, rowCount);
+        mInterpolated = Arrays.copyOf(builder.mInterpolated, rowCount);
+    }
+
+    /** Converts the history map keyed by timestamp and entry key into a table. */
+    static BatteryHistoryTable from(Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap) {
+        final long[] timestamps = new long[batteryHistoryMap.size()];
+        int slotCount = 0;
+        int rowCount = 0;
+        for (Map.Entry<Long, Map<String, BatteryHistEntry>> slot : batteryHistoryMap.entrySet()) {
+            timestamps[slotCount++] = slot.getKey();
+            rowCount += slot.getValue() == null ? 0 : slot.getValue().size();
+        }
+        Arrays.sort(timestamps);
+
+        // Keys are interned in the order they're found, the earliest slot first, which keeps
+        // the rows of the earliest slot in the iteration order of its map.
+        final Map<String, Integer> keyIndexMap = new HashMap<>();
+        final List<String> keys = new ArrayList<>();
+        final Builder builder = new Builder(/*keys=*/ null, timestamps.length, rowCount);
+        long[] sortKeys = new long[0];
+        BatteryHistEntry[] slotEntries = new BatteryHistEntry[0];
+        for (long timestamp : timestamps) {
+            builder.startSlot(timestamp);
+            final Map<String, BatteryHistEntry> entryMap = batteryHistoryMap.get(timestamp);
+            if (entryMap == null || entryMap.isEmpty()) {
+                continue;
+            }
+            final int size = entryMap.size();
+            if (sortKeys.length < size) {
+                sortKeys = new long[size];
+                slotEntries = new BatteryHistEntry[size];
+            }
+            int count = 0;
+            for (Map.Entry<String, BatteryHistEntry> row : entryMap.entrySet()) {
+                Integer keyIndex = keyIndexMap.get(row.getKey());
+                if (keyIndex == null) {
+                    keyIndex = keys.size();
+                    keyIndexMap.put(row.getKey(), keyIndex);
+                    keys.add(row.getKey());
+                }
+                // Packs the key index with the position to sort rows without boxing.
+                sortKeys[count] = ((long) keyIndex << 32) | count;
+                slotEntries[count] = row.getValue();
+                count++;
+            }
+            Arrays.sort(sortKeys, 0, count);
+            for (int index = 0; index < count; index++) {
+                final BatteryHistEntry entry = slotEntries[(int) sortKeys[index]];
+                builder.addRow((int) (sortKeys[index] >>> 32), entry, entry.mBootTimestamp,
+                        entry.mForegroundUsageTimeInMs, entry.mBackgroundUsageTimeInMs,
+                        entry.mConsumePower, entry.mTotalPower, entry.mBatteryLevel,
+                        /*interpolated=*/ false);
+            }
+        }
+        builder.mKeys = keys.toArray(new String[0]);
+        return builder.build();
+    }
+
+    /** Returns a builder of a table sharing the interned keys of this table. */
+    Builder newBuilder(int expectedSlotCount) {
+        return new Builder(mKeys, expectedSlotCount, mKeyIndexes.length);
+    }
+
+    int getSlotCount() {
+        return mTimestamps.length;
+    }
+
+    long getTimestamp(int slot) {
+        return mTimestamps[slot];
+    }
+
+    /** Returns the slot of the timestamp, or -1 if there's no such slot. */
+    int indexOf(long timestamp) {
+        final int index = Arrays.binarySearch(mTimestamps, timestamp);
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * Returns the insertion point of the timestamp, the slot of the first timestamp greater than
+     * or equal to it.
+     */
+    int ceilingIndexOf(long timestamp) {
+        final int index = Arrays.binarySearch(mTimestamps, timestamp);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    int getRowStart(int slot) {
+        return mSlotOffsets[slot];
+    }
+
+    int getRowEnd(int slot) {
+        return mSlotOffsets[slot + 1];
+    }
+
+    boolean isSlotEmpty(int slot) {
+        return mSlotOffsets[slot] == mSlotOffsets[slot + 1];
+    }
+
+    int getKeyIndex(int row) {
+        return mKeyIndexes[row];
+    }
+
+    String getKey(int row) {
+        return mKeys[mKeyIndexes[row]];
+    }
+
+    long getForegroundUsageTimeInMs(int row) {
+        return mForegroundUsageTimeInMs[row];
+    }
+
+    long getBackgroundUsageTimeInMs(int row) {
+        return mBackgroundUsageTimeInMs[row];
+    }
+
+    double getConsumePower(int row) {
+        return mConsumePower[row];
+    }
+
+    double getTotalPower(int row) {
+        return mTotalPower[row];
+    }
+
+    int getBatteryLevel(int row) {
+        return mBatteryLevels[row];
+    }
+
+    /** Returns the recorded entry of the row, which only provides the metadata. */
+    BatteryHistEntry getEntry(int row) {
+        return mEntries[row];
+    }
+
+    /**
+     * Returns a fingerprint of the rows of the slot. Slots holding the same usage of the same
+     * entries have the same fingerprint, even if they are from different tables.
+     */
+    long getSlotFingerprint(int slot) {
+        if (mSlotFingerprints == null) {
+            final long[] fingerprints = new long[mTimestamps.length];
+            for (int index = 0; index < fingerprints.length; index++) {
+                fingerprints[index] = computeSlotFingerprint(index);
+            }
+            mSlotFingerprints = fingerprints;
+        }
+        return mSlotFingerprints[slot];
+    }
+
+    private long computeSlotFingerprint(int slot) {
+        long fingerprint = FINGERPRINT_OFFSET;
+        for (int row = getRowStart(slot); row < getRowEnd(slot); row++) {
+            final BatteryHistEntry entry = mEntries[row];
+            fingerprint = fingerprint(fingerprint, getKey(row).hashCode());
+            fingerprint = fingerprint(fingerprint, mForegroundUsageTimeInMs[row]);
+            fingerprint = fingerprint(fingerprint, mBackgroundUsageTimeInMs[row]);
+            fingerprint = fingerprint(fingerprint, Double.doubleToLongBits(mConsumePower[row]));
+            fingerprint = fingerprint(fingerprint, entry.mUid);
+            fingerprint = fingerprint(fingerprint, entry.mUserId);
+            fingerprint = fingerprint(fingerprint, entry.mConsumerType);
+            fingerprint = fingerprint(fingerprint, entry.mDrainType);
+            fingerprint = fingerprint(fingerprint, entry.mIsHidden ? 1 : 0);
+            fingerprint = fingerprint(fingerprint, Objects.hashCode(entry.mPackageName));
+            fingerprint = fingerprint(fingerprint, Objects.hashCode(entry.mAppLabel));
+        }
+        return fingerprint;
+    }
+
+    /** Folds the value into the fingerprint, in the way of the 64-bit FNV-1a hash. */
+    static long fingerprint(long fingerprint, long value) {
+        return (fingerprint ^ value) * FINGERPRINT_PRIME;
+    }
+
+    /** Converts the table back into the history map keyed by timestamp and entry key. */
+    Map<Long, Map<String, BatteryHistEntry>> toHistoryMap() {
+        final Map<Long, Map<String, BatteryHistEntry>> resultMap = new HashMap<>();
+        for (int slot = 0; slot < mTimestamps.length; slot++) {
+            resultMap.put(mTimestamps[slot], toEntryMap(slot));
+        }
+        return resultMap;
+    }
+
+    /** Converts the rows of the slot into the map keyed by entry key. */
+    Map<String, BatteryHistEntry> toEntryMap(int slot) {
+        final int rowEnd = getRowEnd(slot);
+        if (rowEnd == getRowStart(slot)) {
+            return new HashMap<>();
+        }
+        final Map<String, BatteryHistEntry> entryMap = new HashMap<>();
+        for (int row = getRowStart(slot); row < rowEnd; row++) {
+            entryMap.put(getKey(row), mInterpolated[row]
+                    ? new BatteryHistEntry(
+                            mEntries[row],
+                            mBootTimestamps[row],
+                            mTimestamps[slot],
+                            mTotalPower[row],
+                            mConsumePower[row],
+                            mForegroundUsageTimeInMs[row],
+                            mBackgroundUsageTimeInMs[row],
+                            mBatteryLevels[row])
+                    : mEntries[row]);
+        }
+        return entryMap;
+    }
+
+    /** Builds a table slot by slot, the slots must be started in the ascending order. */
+    static final class Builder {
+        private String[] mKeys;
+
+        private int mSlotCount;
+        private long[] mTimestamps;
+        private int[] mSlotOffsets;
+
+        private int mRowCount;
+        private int[] mKeyIndexes;
+        private long[] mBootTimestamps;
+        private long[] mForegroundUsageTimeInMs;
+        private long[] mBackgroundUsageTimeInMs;
+        private double[] mConsumePower;
+        private double[] mTotalPower;
+        private int[] mBatteryLevels;
+        private BatteryHistEntry[] mEntries;
+        private boolean[] mInterpolated;
+
+        private Builder(String[] keys, int expectedSlotCount, int expectedRowCount) {
+            mKeys = keys;
+            final int slotCapacity = Math.max(expectedSlotCount, 1);
+            final int rowCapacity = Math.max(expectedRowCount, 1);
+            mTimestamps = new long[slotCapacity];
+            mSlotOffsets = new int[slotCapacity + 1];
+            mKeyIndexes = new int[rowCapacity];
+            mBootTimestamps = new long[rowCapacity];
+            mForegroundUsageTimeInMs = new long[rowCapacity];
+            mBackgroundUsageTimeInMs = new long[rowCapacity];
+            mConsumePower = new double[rowCapacity];
+            mTotalPower = new double[rowCapacity];
+            mBatteryLevels = new int[rowCapacity];
+            mEntries = new BatteryHistEntry[rowCapacity];
+            mInterpolated = new boolean[rowCapacity];
+        }
+
+        /** Starts a new slot, the following rows are added into it. */
+        Builder startSlot(long timestamp) {
+            if (mSlotCount == mTimestamps.length) {
+                final int capacity = mSlotCount * 2;
+                mTimestamps = Arrays.copyOf(mTimestamps, capacity);
+                mSlotOffsets = Arrays.copyOf(mSlotOffsets, capacity + 1);
+            }
+            mTimestamps[mSlotCount] = timestamp;
+            mSlotOffsets[mSlotCount] = mRowCount;
+            mSlotCount++;
+            return this;
+        }
+
+        /** Copies all rows of the slot in the source table into the current slot. */
+        Builder copySlot(BatteryHistoryTable source, int slot) {
+            for (int row = source.getRowStart(slot); row < source.getRowEnd(slot); row++) {
+                copyRow(source, row);
+            }
+            return this;
+        }
+
+        /** Copies a row of the source table into the current slot. */
+        Builder copyRow(BatteryHistoryTable source, int row) {
+            return addRow(source.mKeyIndexes[row], source.mEntries[row],
+                    source.mBootTimestamps[row], source.mForegroundUsageTimeInMs[row],
+                    source.mBackgroundUsageTimeInMs[row], source.mConsumePower[row],
+                    source.mTotalPower[row], source.mBatteryLevels[row],
+                    source.mInterpolated[row]);
+        }
+
+        /** Adds a row into the current slot, rows must be added in the order of key index. */
+        Builder addRow(
+                int keyIndex,
+                BatteryHistEntry entry,
+                long bootTimestamp,
+                long foregroundUsageTimeInMs,
+                long backgroundUsageTimeInMs,
+                double consumePower,
+                double totalPower,
+                int batteryLevel,
+                boolean interpolated) {
+            if (mRowCount == mKeyIndexes.length) {
+                growRows();
+            }
+            mKeyIndexes[mRowCount] = keyIndex;
+            mEntries[mRowCount] = entry;
+            mBootTimestamps[mRowCount] = bootTimestamp;
+            mForegroundUsageTimeInMs[mRowCount] = foregroundUsageTimeInMs;
+            mBackgroundUsageTimeInMs[mRowCount] = backgroundUsageTimeInMs;
+            mConsumePower[mRowCount] = consumePower;
+            mTotalPower[mRowCount] = totalPower;
+            mBatteryLevels[mRowCount] = batteryLevel;
+            mInterpolated[mRowCount] = interpolated;
+            mRowCount++;
+            return this;
+        }
+
+        BatteryHistoryTable build() {
+            return new BatteryHistoryTable(this);
+        }
+
+        private void growRows() {
+            final int capacity = mRowCount * 2;
+            mKeyIndexes = Arrays.copyOf(mKeyIndexes, capacity);
+            mBootTimestamps = Arrays.copyOf(mBootTimestamps, capacity);
+            mForegroundUsageTimeInMs = Arrays.copyOf(mForegroundUsageTimeInMs, capacity);
+            mBackgroundUsageTimeInMs = Arrays.copyOf(mBackgroundUsageTimeInMs, capacity);
+            mConsumePower = Arrays.copyOf(mConsumePower, capacity);
+            mTotalPower = Arrays.copyOf(mTotalPower, capacity);
+            mBatteryLevels = Arrays.copyOf(mBatteryLevels, capacity);
+            mEntries = Arrays.copyOf(mEntries, capacity);
+            mInterpolated = Arrays.copyOf(mInterpolated, capacity);
+        }
+    }
+}
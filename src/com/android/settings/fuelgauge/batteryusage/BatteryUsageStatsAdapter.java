@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import android.os.BatteryUsageStats;
+import android.os.UidBatteryConsumer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A read-only view of a {@link BatteryUsageStats}, built in one pass over its UID battery
+ * consumers and shared by all the consumers of the same stats, instead of each of them iterating
+ * and sorting the stats again.
+ */
+public final class BatteryUsageStatsAdapter {
+
+    // Adapters of the stats in use, dropped together with their stats.
+    private static final Map<BatteryUsageStats, BatteryUsageStatsAdapter> sAdapters =
+            new WeakHashMap<>();
+
+    private final List<UidBatteryConsumer> mUidBatteryConsumers;
+    private final double mConsumedPower;
+    private final int mDischargePercentage;
+
+    /** Returns the adapter of {@code batteryUsageStats}, which is built at the first call. */
+    public static BatteryUsageStatsAdapter of(BatteryUsageStats batteryUsageStats) {
+        synchronized (sAdapters) {
+            BatteryUsageStatsAdapter adapter = sAdapters.get(batteryUsageStats);
+            if (adapter == null) {
+                adapter = new BatteryUsageStatsAdapter(batteryUsageStats);
+                sAdapters.put(batteryUsageStats, adapter);
+            }
+            return adapter;
+        }
+    }
+
+    private BatteryUsageStatsAdapter(BatteryUsageStats batteryUsageStats) {
+        // Copies the consumers, the list owned by the stats may be shared by other threads.
+        final List<UidBatteryConsumer> uidBatteryConsumers =
+                new ArrayList<>(batteryUsageStats.getUidBatteryConsumers());
+        uidBatteryConsumers.sort((consumer1, consumer2) ->
+                Double.compare(consumer2.getConsumedPower(), consumer1.getConsumedPower()));
+        mUidBatteryConsumers = Collections.unmodifiableList(uidBatteryConsumers);
+        mConsumedPower = batteryUsageStats.getConsumedPower();
+        mDischargePercentage = batteryUsageStats.getDischargePercentage();
+    }
+
+    /** Returns the UID battery consumers sorted by descending consumed power. */
+    public List<UidBatteryConsumer> getUidBatteryConsumers() {
+        return mUidBatteryConsumers;
+    }
+
+    public double getConsumedPower() {
+        return mConsumedPower;
+    }
+
+    public int getDischargePercentage() {
+        return mDischargePercentage;
+    }
+}
@@ -20,15 +20,34 @@ import android.content.Context;
 import android.os.BatteryStatsManager;
 import android.os.BatteryUsageStats;
 import android.os.BatteryUsageStatsQuery;
+import android.os.SystemClock;
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
 import com.android.settingslib.utils.AsyncLoaderCompat;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 /**
  * Loader to get new {@link BatteryUsageStats} in the background
+ *
+ * <p>The stats loaded without battery history are shared by the loads of the same stats session
+ * in a short window. The loaded stats are reference counted, so the callers must give them back
+ * with {@link #release(BatteryUsageStats)} rather than closing them.
  */
 public class BatteryUsageStatsLoader extends AsyncLoaderCompat<BatteryUsageStats> {
     private static final String TAG = "BatteryUsageStatsLoader";
+    private static final long CACHE_TTL_MS = 10000;
+
+    // The latest stats loaded without battery history, reused by the loads in a short window.
+    private static CachedStats sCachedStats;
+    // The shared stats still referenced by the cache or by a caller, guarded by the class.
+    private static final Map<BatteryUsageStats, CachedStats> sSharedStats =
+            new IdentityHashMap<>();
+
     private final BatteryStatsManager mBatteryStatsManager;
     private final boolean mIncludeBatteryHistory;
 
@@ -40,20 +59,134 @@ public class BatteryUsageStatsLoader extends AsyncLoaderCompat<BatteryUsageStats
 
     @Override
     public BatteryUsageStats loadInBackground() {
+        if (!mIncludeBatteryHistory) {
+            final BatteryUsageStats cachedStats = acquireCachedStats();
+            if (cachedStats != null) {
+                return cachedStats;
+            }
+        }
         final BatteryUsageStatsQuery.Builder builder = new BatteryUsageStatsQuery.Builder();
         if (mIncludeBatteryHistory) {
             builder.includeBatteryHistory();
         }
+        final BatteryUsageStats batteryUsageStats;
         try {
-            return mBatteryStatsManager.getBatteryUsageStats(builder.build());
+            batteryUsageStats = mBatteryStatsManager.getBatteryUsageStats(builder.build());
         } catch (RuntimeException e) {
             Log.e(TAG, "loadInBackground() for getBatteryUsageStats()", e);
             // Use default BatteryUsageStats.
             return new BatteryUsageStats.Builder(new String[0]).build();
         }
+        if (batteryUsageStats != null) {
+            updateCachedStats(batteryUsageStats, mIncludeBatteryHistory);
+        }
+        return batteryUsageStats;
+    }
+
+    @Override
+    public void onCanceled(BatteryUsageStats batteryUsageStats) {
+        super.onCanceled(batteryUsageStats);
+        // The result of a canceled load never reaches the caller, give it back here.
+        release(batteryUsageStats);
     }
 
     @Override
     protected void onDiscardResult(BatteryUsageStats result) {
     }
+
+    /**
+     * Gives back the stats returned by this loader. The stats are closed once neither the cache
+     * nor any other caller uses them anymore.
+     */
+    public static void release(@Nullable BatteryUsageStats batteryUsageStats) {
+        if (batteryUsageStats == null) {
+            return;
+        }
+        synchronized (BatteryUsageStatsLoader.class) {
+            final CachedStats cachedStats = sSharedStats.get(batteryUsageStats);
+            if (cachedStats != null) {
+                releaseLocked(cachedStats);
+                if (sCachedStats != null && sCachedStats.isExpired()) {
+                    evictCachedStatsLocked();
+                }
+                return;
+            }
+        }
+        close(batteryUsageStats);
+    }
+
+    @VisibleForTesting
+    static synchronized void clearCache() {
+        evictCachedStatsLocked();
+    }
+
+    private static synchronized BatteryUsageStats acquireCachedStats() {
+        if (sCachedStats == null) {
+            return null;
+        }
+        if (sCachedStats.isExpired()) {
+            evictCachedStatsLocked();
+            return null;
+        }
+        sCachedStats.mRefCount++;
+        return sCachedStats.mBatteryUsageStats;
+    }
+
+    private static synchronized void updateCachedStats(
+            BatteryUsageStats batteryUsageStats, boolean includeBatteryHistory) {
+        final long statsStartTimestamp = batteryUsageStats.getStatsStartTimestamp();
+        if (!includeBatteryHistory) {
+            evictCachedStatsLocked();
+            sCachedStats = new CachedStats(batteryUsageStats, statsStartTimestamp,
+                    SystemClock.elapsedRealtime());
+            sSharedStats.put(batteryUsageStats, sCachedStats);
+        } else if (sCachedStats != null
+                && sCachedStats.mStatsStartTimestamp != statsStartTimestamp) {
+            // The stats are reset since the cached stats were loaded.
+            evictCachedStatsLocked();
+        }
+    }
+
+    /** Drops the reference of the cache, the stats stay open while callers still use them. */
+    private static void evictCachedStatsLocked() {
+        if (sCachedStats != null) {
+            releaseLocked(sCachedStats);
+            sCachedStats = null;
+        }
+    }
+
+    private static void releaseLocked(CachedStats cachedStats) {
+        if (--cachedStats.mRefCount == 0) {
+            sSharedStats.remove(cachedStats.mBatteryUsageStats);
+            close(cachedStats.mBatteryUsageStats);
+        }
+    }
+
+    private static void close(BatteryUsageStats batteryUsageStats) {
+        try {
+            batteryUsageStats.close();
+        } catch (Exception e) {
+            Log.e(TAG, "BatteryUsageStats.close() failed", e);
+        }
+    }
+
+    /** The stats loaded recently, keyed by the start of their stats session. */
+    private static class CachedStats {
+        private final BatteryUsageStats mBatteryUsageStats;
+        private final long mStatsStartTimestamp;
+        private final long mTimestamp;
+        // Held by the cache and by the caller which loaded the stats.
+        private int mRefCount = 2;
+
+        CachedStats(BatteryUsageStats batteryUsageStats, long statsStartTimestamp,
+                long timestamp) {
+            mBatteryUsageStats = batteryUsageStats;
+            mStatsStartTimestamp = statsStartTimestamp;
+            mTimestamp = timestamp;
+        }
+
+        boolean isExpired() {
+            return SystemClock.elapsedRealtime() - mTimestamp >= CACHE_TTL_MS;
+        }
+    }
 }
@@ -33,6 +33,7 @@ import android.text.TextUtils;
 import android.text.format.DateUtils;
 import android.util.ArraySet;
 import android.util.Log;
+import android.util.LruCache;
 
 import androidx.annotation.Nullable;
 
@@ -53,6 +54,13 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
@@ -68,14 +76,23 @@ public final class DataProcessor {
     // Maximum total time value for each hourly slot cumulative data at most 2 hours.
     private static final float TOTAL_HOURLY_TIME_THRESHOLD = DateUtils.HOUR_IN_MILLIS * 2;
     private static final long MIN_TIME_SLOT = DateUtils.HOUR_IN_MILLIS * 2;
-    private static final Map<String, BatteryHistEntry> EMPTY_BATTERY_MAP = new HashMap<>();
-    private static final BatteryHistEntry EMPTY_BATTERY_HIST_ENTRY =
-            new BatteryHistEntry(new ContentValues());
+    // Enough for the two hours slots of the 7 days battery history.
+    private static final int HOURLY_USAGE_DIFF_CACHE_SIZE = 128;
+    // Bounds the threads used to compute the time slots and to load labels and icons.
+    private static final int MAX_PARALLELISM = 4;
+    private static final long EXECUTOR_KEEP_ALIVE_SECONDS = 30;
 
     @VisibleForTesting
     static final double PERCENTAGE_OF_TOTAL_THRESHOLD = 1f;
     @VisibleForTesting
     static final int SELECTED_INDEX_ALL = BatteryChartViewModel.SELECTED_INDEX_ALL;
+    // Caches the usage diff of each hourly slot, keyed by the slot start timestamp. The history
+    // of a closed slot doesn't change, so only the latest slot is computed again on refresh.
+    @VisibleForTesting
+    static final LruCache<Long, HourlyUsageDiff> sHourlyUsageDiffCache =
+            new LruCache<>(HOURLY_USAGE_DIFF_CACHE_SIZE);
+
+    private static ExecutorService sExecutor;
 
     /** A fake package name to represent no BatteryEntry data. */
     public static final String FAKE_PACKAGE_NAME = "fake_package";
@@ -85,6 +102,15 @@ public final class DataProcessor {
         /** The callback function when batteryUsageMap is loaded. */
         void onBatteryUsageMapLoaded(
                 Map<Integer, Map<Integer, BatteryDiffData>> batteryUsageMap);
+
+        /**
+         * The callback function when batteryUsageMap is computed, but the app labels and icons
+         * are still loading. The map is an unmodifiable copy with its own entries, and
+         * {@link #onBatteryUsageMapLoaded} is called later with the loaded map.
+         */
+        default void onBatteryUsageMapPartiallyLoaded(
+                Map<Integer, Map<Integer, BatteryDiffData>> batteryUsageMap) {
+        }
     }
 
     private DataProcessor() {
@@ -109,11 +135,12 @@ public final class DataProcessor {
         }
         handler = handler != null ? handler : new Handler(Looper.getMainLooper());
         // Process raw history map data into hourly timestamps.
-        final Map<Long, Map<String, BatteryHistEntry>> processedBatteryHistoryMap =
-                getHistoryMapWithExpectedTimestamps(context, batteryHistoryMap);
+        final BatteryHistoryTable processedBatteryHistory =
+                getHistoryTableWithExpectedTimestamps(
+                        context, BatteryHistoryTable.from(batteryHistoryMap));
         // Wrap and processed history map into easy-to-use format for UI rendering.
         final BatteryLevelData batteryLevelData =
-                getLevelDataThroughProcessedHistoryMap(context, processedBatteryHistoryMap);
+                getLevelDataThroughProcessedHistory(context, processedBatteryHistory);
         if (batteryLevelData == null) {
             loadBatteryUsageDataFromBatteryStatsService(
                     context, handler, asyncResponseDelegate);
@@ -127,7 +154,7 @@ public final class DataProcessor {
                 handler,
                 asyncResponseDelegate,
                 batteryLevelData.getHourlyBatteryLevelsPerDay(),
-                processedBatteryHistoryMap).execute();
+                processedBatteryHistory).execute();
 
         return batteryLevelData;
     }
@@ -145,17 +172,18 @@ public final class DataProcessor {
             return null;
         }
         // Process raw history map data into hourly timestamps.
-        final Map<Long, Map<String, BatteryHistEntry>> processedBatteryHistoryMap =
-                getHistoryMapWithExpectedTimestamps(context, batteryHistoryMap);
+        final BatteryHistoryTable processedBatteryHistory =
+                getHistoryTableWithExpectedTimestamps(
+                        context, BatteryHistoryTable.from(batteryHistoryMap));
         // Wrap and processed history map into easy-to-use format for UI rendering.
         final BatteryLevelData batteryLevelData =
-                getLevelDataThroughProcessedHistoryMap(context, processedBatteryHistoryMap);
+                getLevelDataThroughProcessedHistory(context, processedBatteryHistory);
         return batteryLevelData == null
                 ? null
                 : getBatteryUsageMap(
                         context,
                         batteryLevelData.getHourlyBatteryLevelsPerDay(),
-                        processedBatteryHistoryMap);
+                        processedBatteryHistory);
     }
 
     /**
@@ -182,32 +210,56 @@ public final class DataProcessor {
     static Map<Long, Map<String, BatteryHistEntry>> getHistoryMapWithExpectedTimestamps(
             Context context,
             final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap) {
+        return getHistoryTableWithExpectedTimestamps(
+                context, BatteryHistoryTable.from(batteryHistoryMap)).toHistoryMap();
+    }
+
+    @VisibleForTesting
+    @Nullable
+    static BatteryLevelData getLevelDataThroughProcessedHistoryMap(
+            Context context,
+            final Map<Long, Map<String, BatteryHistEntry>> processedBatteryHistoryMap) {
+        return getLevelDataThroughProcessedHistory(
+                context, BatteryHistoryTable.from(processedBatteryHistoryMap));
+    }
+
+    /**
+     * @return Returns the processed history table which has interpolated to every hour data, same
+     * as {@link #getHistoryMapWithExpectedTimestamps(Context, Map)}.
+     */
+    private static BatteryHistoryTable getHistoryTableWithExpectedTimestamps(
+            Context context, final BatteryHistoryTable rawBatteryHistory) {
         final long startTime = System.currentTimeMillis();
-        final List<Long> rawTimestampList = new ArrayList<>(batteryHistoryMap.keySet());
-        final Map<Long, Map<String, BatteryHistEntry>> resultMap = new HashMap();
-        if (rawTimestampList.isEmpty()) {
+        final int rawSlotCount = rawBatteryHistory.getSlotCount();
+        final long[] expectedTimestampSlots = rawSlotCount < MIN_TIMESTAMP_DATA_SIZE
+                ? new long[0]
+                : getTimestampSlots(
+                        rawBatteryHistory.getTimestamp(0),
+                        rawBatteryHistory.getTimestamp(rawSlotCount - 1));
+        final BatteryHistoryTable.Builder resultBuilder =
+                rawBatteryHistory.newBuilder(expectedTimestampSlots.length);
+        if (rawSlotCount == 0) {
             Log.d(TAG, "empty batteryHistoryMap in getHistoryMapWithExpectedTimestamps()");
-            return resultMap;
+            return resultBuilder.build();
         }
-        Collections.sort(rawTimestampList);
-        final List<Long> expectedTimestampList = getTimestampSlots(rawTimestampList);
-        final boolean isFromFullCharge =
-                isFromFullCharge(batteryHistoryMap.get(rawTimestampList.get(0)));
+        final boolean isFromFullCharge = isFromFullCharge(rawBatteryHistory, /*slot=*/ 0);
         interpolateHistory(
-                context, rawTimestampList, expectedTimestampList, isFromFullCharge,
-                batteryHistoryMap, resultMap);
+                context, rawBatteryHistory, expectedTimestampSlots, isFromFullCharge,
+                resultBuilder);
+        final BatteryHistoryTable result = resultBuilder.build();
         Log.d(TAG, String.format("getHistoryMapWithExpectedTimestamps() size=%d in %d/ms",
-                resultMap.size(), (System.currentTimeMillis() - startTime)));
-        return resultMap;
+                result.getSlotCount(), (System.currentTimeMillis() - startTime)));
+        return result;
     }
 
-    @VisibleForTesting
     @Nullable
-    static BatteryLevelData getLevelDataThroughProcessedHistoryMap(
+    private static BatteryLevelData getLevelDataThroughProcessedHistory(
             Context context,
-            final Map<Long, Map<String, BatteryHistEntry>> processedBatteryHistoryMap) {
-        final List<Long> timestampList = new ArrayList<>(processedBatteryHistoryMap.keySet());
-        Collections.sort(timestampList);
+            final BatteryHistoryTable processedBatteryHistory) {
+        final List<Long> timestampList = new ArrayList<>(processedBatteryHistory.getSlotCount());
+        for (int slot = 0; slot < processedBatteryHistory.getSlotCount(); slot++) {
+            timestampList.add(processedBatteryHistory.getTimestamp(slot));
+        }
         final List<Long> dailyTimestamps = getDailyTimestamps(timestampList);
         // There should be at least the start and end timestamps. Otherwise, return null to not show
         // data in usage chart.
@@ -217,10 +269,10 @@ public final class DataProcessor {
 
         final List<List<Long>> hourlyTimestamps = getHourlyTimestamps(dailyTimestamps);
         final BatteryLevelData.PeriodBatteryLevelData dailyLevelData =
-                getPeriodBatteryLevelData(context, processedBatteryHistoryMap, dailyTimestamps);
+                getPeriodBatteryLevelData(context, processedBatteryHistory, dailyTimestamps);
         final List<BatteryLevelData.PeriodBatteryLevelData> hourlyLevelData =
                 getHourlyPeriodBatteryLevelData(
-                        context, processedBatteryHistoryMap, hourlyTimestamps);
+                        context, processedBatteryHistory, hourlyTimestamps);
         return new BatteryLevelData(dailyLevelData, hourlyLevelData);
     }
 
@@ -236,19 +288,27 @@ public final class DataProcessor {
         if (rawTimestampListSize < MIN_TIMESTAMP_DATA_SIZE) {
             return timestampSlots;
         }
-        final long rawStartTimestamp = rawTimestampList.get(0);
-        final long rawEndTimestamp = rawTimestampList.get(rawTimestampListSize - 1);
+        for (long timestamp : getTimestampSlots(
+                rawTimestampList.get(0), rawTimestampList.get(rawTimestampListSize - 1))) {
+            timestampSlots.add(timestamp);
+        }
+        return timestampSlots;
+    }
+
+    private static long[] getTimestampSlots(
+            final long rawStartTimestamp, final long rawEndTimestamp) {
         // No matter the start is from last full charge or 6 days ago, use the nearest even hour.
         final long startTimestamp = getNearestEvenHourTimestamp(rawStartTimestamp);
         // Use the even hour before the raw end timestamp as the end.
         final long endTimestamp = getLastEvenHourBeforeTimestamp(rawEndTimestamp);
         // If the start timestamp is later or equal the end one, return the empty list.
         if (startTimestamp >= endTimestamp) {
-            return timestampSlots;
+            return new long[0];
         }
-        for (long timestamp = startTimestamp; timestamp <= endTimestamp;
-                timestamp += DateUtils.HOUR_IN_MILLIS) {
-            timestampSlots.add(timestamp);
+        final long[] timestampSlots =
+                new long[(int) ((endTimestamp - startTimestamp) / DateUtils.HOUR_IN_MILLIS) + 1];
+        for (int index = 0; index < timestampSlots.length; index++) {
+            timestampSlots[index] = startTimestamp + index * DateUtils.HOUR_IN_MILLIS;
         }
         return timestampSlots;
     }
@@ -316,6 +376,16 @@ public final class DataProcessor {
         return BatteryStatus.isCharged(firstHistEntry.mBatteryStatus, firstHistEntry.mBatteryLevel);
     }
 
+    private static boolean isFromFullCharge(final BatteryHistoryTable history, final int slot) {
+        if (history.isSlotEmpty(slot)) {
+            Log.d(TAG, "empty entryList in isFromFullCharge()");
+            return false;
+        }
+        final int firstRow = history.getRowStart(slot);
+        return BatteryStatus.isCharged(
+                history.getEntry(firstRow).mBatteryStatus, history.getBatteryLevel(firstRow));
+    }
+
     @VisibleForTesting
     static long[] findNearestTimestamp(final List<Long> timestamps, final long target) {
         final long[] results = new long[] {Long.MIN_VALUE, Long.MAX_VALUE};
@@ -377,10 +447,22 @@ public final class DataProcessor {
         if (batteryHistoryMap.isEmpty()) {
             return null;
         }
+        return getBatteryUsageMap(
+                context, hourlyBatteryLevelsPerDay, BatteryHistoryTable.from(batteryHistoryMap));
+    }
+
+    @Nullable
+    private static Map<Integer, Map<Integer, BatteryDiffData>> getBatteryUsageMap(
+            final Context context,
+            final List<BatteryLevelData.PeriodBatteryLevelData> hourlyBatteryLevelsPerDay,
+            final BatteryHistoryTable batteryHistory) {
+        if (batteryHistory.getSlotCount() == 0) {
+            return null;
+        }
         final Map<Integer, Map<Integer, BatteryDiffData>> resultMap = new HashMap<>();
         // Insert diff data from [0][0] to [maxDailyIndex][maxHourlyIndex].
         insertHourlyUsageDiffData(
-                context, hourlyBatteryLevelsPerDay, batteryHistoryMap, resultMap);
+                context, hourlyBatteryLevelsPerDay, batteryHistory, resultMap);
         // Insert diff data from [0][SELECTED_INDEX_ALL] to [maxDailyIndex][SELECTED_INDEX_ALL].
         insertDailyUsageDiffData(hourlyBatteryLevelsPerDay, resultMap);
         // Insert diff data [SELECTED_INDEX_ALL][SELECTED_INDEX_ALL].
@@ -559,16 +641,15 @@ public final class DataProcessor {
      */
     private static void interpolateHistory(
             Context context,
-            final List<Long> rawTimestampList,
-            final List<Long> expectedTimestampSlots,
+            final BatteryHistoryTable rawBatteryHistory,
+            final long[] expectedTimestampSlots,
             final boolean isFromFullCharge,
-            final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap,
-            final Map<Long, Map<String, BatteryHistEntry>> resultMap) {
-        if (rawTimestampList.isEmpty() || expectedTimestampSlots.isEmpty()) {
+            final BatteryHistoryTable.Builder resultBuilder) {
+        if (rawBatteryHistory.getSlotCount() == 0 || expectedTimestampSlots.length == 0) {
             return;
         }
-        final long expectedStartTimestamp = expectedTimestampSlots.get(0);
-        final long rawStartTimestamp = rawTimestampList.get(0);
+        final long expectedStartTimestamp = expectedTimestampSlots[0];
+        final long rawStartTimestamp = rawBatteryHistory.getTimestamp(0);
         int startIndex = 0;
         // If the expected start timestamp is full charge or earlier than what we have, use the
         // first data of what we have directly. This should be OK because the expected start
@@ -576,67 +657,69 @@ public final class DataProcessor {
         // more than 1 hour.
         if (isFromFullCharge || expectedStartTimestamp < rawStartTimestamp) {
             startIndex = 1;
-            resultMap.put(expectedStartTimestamp, batteryHistoryMap.get(rawStartTimestamp));
+            resultBuilder.startSlot(expectedStartTimestamp).copySlot(rawBatteryHistory, 0);
         }
-        final int expectedTimestampSlotsSize = expectedTimestampSlots.size();
+        final int expectedTimestampSlotsSize = expectedTimestampSlots.length;
         for (int index = startIndex; index < expectedTimestampSlotsSize; index++) {
-            final long currentSlot = expectedTimestampSlots.get(index);
+            final long currentSlot = expectedTimestampSlots[index];
             final boolean isStartOrEnd = index == 0 || index == expectedTimestampSlotsSize - 1;
             interpolateHistoryForSlot(
-                    context, currentSlot, rawTimestampList, batteryHistoryMap, resultMap,
-                    isStartOrEnd);
+                    context, currentSlot, rawBatteryHistory, resultBuilder, isStartOrEnd);
         }
     }
 
     private static void interpolateHistoryForSlot(
             Context context,
             final long currentSlot,
-            final List<Long> rawTimestampList,
-            final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap,
-            final Map<Long, Map<String, BatteryHistEntry>> resultMap,
+            final BatteryHistoryTable rawBatteryHistory,
+            final BatteryHistoryTable.Builder resultBuilder,
             final boolean isStartOrEnd) {
-        final long[] nearestTimestamps = findNearestTimestamp(rawTimestampList, currentSlot);
-        final long lowerTimestamp = nearestTimestamps[0];
-        final long upperTimestamp = nearestTimestamps[1];
+        // Searches the nearest lower and upper slots, same as findNearestTimestamp().
+        final int rawSlotCount = rawBatteryHistory.getSlotCount();
+        final int upperSlot = rawBatteryHistory.ceilingIndexOf(currentSlot);
+        final int lowerSlot =
+                upperSlot < rawSlotCount && rawBatteryHistory.getTimestamp(upperSlot) == currentSlot
+                        ? upperSlot : upperSlot - 1;
+        resultBuilder.startSlot(currentSlot);
         // Case 1: upper timestamp is zero since scheduler is delayed!
-        if (upperTimestamp == 0) {
+        if (upperSlot == rawSlotCount) {
             log(context, "job scheduler is delayed", currentSlot, null);
-            resultMap.put(currentSlot, new HashMap<>());
             return;
         }
         // Case 2: upper timestamp is closed to the current timestamp.
+        final long upperTimestamp = rawBatteryHistory.getTimestamp(upperSlot);
         if ((upperTimestamp - currentSlot)
                 < MAX_DIFF_SECONDS_OF_UPPER_TIMESTAMP * DateUtils.SECOND_IN_MILLIS) {
             log(context, "force align into the nearest slot", currentSlot, null);
-            resultMap.put(currentSlot, batteryHistoryMap.get(upperTimestamp));
+            resultBuilder.copySlot(rawBatteryHistory, upperSlot);
             return;
         }
         // Case 3: lower timestamp is zero before starting to collect data.
-        if (lowerTimestamp == 0) {
+        if (lowerSlot < 0) {
             log(context, "no lower timestamp slot data", currentSlot, null);
-            resultMap.put(currentSlot, new HashMap<>());
             return;
         }
         interpolateHistoryForSlot(context,
-                currentSlot, lowerTimestamp, upperTimestamp, batteryHistoryMap, resultMap,
+                currentSlot, lowerSlot, upperSlot, rawBatteryHistory, resultBuilder,
                 isStartOrEnd);
     }
 
     private static void interpolateHistoryForSlot(
             Context context,
             final long currentSlot,
-            final long lowerTimestamp,
-            final long upperTimestamp,
-            final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap,
-            final Map<Long, Map<String, BatteryHistEntry>> resultMap,
+            final int lowerSlot,
+            final int upperSlot,
+            final BatteryHistoryTable rawBatteryHistory,
+            final BatteryHistoryTable.Builder resultBuilder,
             final boolean isStartOrEnd) {
-        final Map<String, BatteryHistEntry> lowerEntryDataMap =
-                batteryHistoryMap.get(lowerTimestamp);
-        final Map<String, BatteryHistEntry> upperEntryDataMap =
-                batteryHistoryMap.get(upperTimestamp);
+        if (rawBatteryHistory.isSlotEmpty(upperSlot)) {
+            return;
+        }
+        final long lowerTimestamp = rawBatteryHistory.getTimestamp(lowerSlot);
+        final long upperTimestamp = rawBatteryHistory.getTimestamp(upperSlot);
         // Verifies whether the lower data is valid to use or not by checking boot time.
         final BatteryHistEntry upperEntryDataFirstEntry =
-                upperEntryDataMap.values().stream().findFirst().get();
+                rawBatteryHistory.getEntry(rawBatteryHistory.getRowStart(upperSlot));
         final long upperEntryDataBootTimestamp =
                 upperEntryDataFirstEntry.mTimestamp - upperEntryDataFirstEntry.mBootTimestamp;
         // Lower data is captured before upper data corresponding device is booting.
@@ -647,47 +730,80 @@ public final class DataProcessor {
             // Provides an opportunity to force align the slot directly.
             if ((upperTimestamp - currentSlot) < 10 * DateUtils.MINUTE_IN_MILLIS) {
                 log(context, "force align into the nearest slot", currentSlot, null);
-                resultMap.put(currentSlot, upperEntryDataMap);
+                resultBuilder.copySlot(rawBatteryHistory, upperSlot);
             } else {
                 log(context, "in the different booting section", currentSlot, null);
-                resultMap.put(currentSlot, new HashMap<>());
             }
             return;
         }
         log(context, "apply interpolation arithmetic", currentSlot, null);
-        final Map<String, BatteryHistEntry> newHistEntryMap = new HashMap<>();
         final double timestampLength = upperTimestamp - lowerTimestamp;
         final double timestampDiff = currentSlot - lowerTimestamp;
-        // Applies interpolation arithmetic for each BatteryHistEntry.
-        for (String entryKey : upperEntryDataMap.keySet()) {
-            final BatteryHistEntry lowerEntry = lowerEntryDataMap.get(entryKey);
-            final BatteryHistEntry upperEntry = upperEntryDataMap.get(entryKey);
+        final double ratio = timestampDiff / timestampLength;
+        // Applies interpolation arithmetic for each row, same as BatteryHistEntry.interpolate().
+        // Rows of both slots are sorted by key, so the lower row is found by merging them.
+        int lowerRow = rawBatteryHistory.getRowStart(lowerSlot);
+        final int lowerRowEnd = rawBatteryHistory.getRowEnd(lowerSlot);
+        final int upperRowEnd = rawBatteryHistory.getRowEnd(upperSlot);
+        for (int upperRow = rawBatteryHistory.getRowStart(upperSlot); upperRow < upperRowEnd;
+                upperRow++) {
+            final int keyIndex = rawBatteryHistory.getKeyIndex(upperRow);
+            while (lowerRow < lowerRowEnd && rawBatteryHistory.getKeyIndex(lowerRow) < keyIndex) {
+                lowerRow++;
+            }
+            final boolean hasLowerRow =
+                    lowerRow < lowerRowEnd && rawBatteryHistory.getKeyIndex(lowerRow) == keyIndex;
+            final long upperForegroundUsageTimeInMs =
+                    rawBatteryHistory.getForegroundUsageTimeInMs(upperRow);
+            final long upperBackgroundUsageTimeInMs =
+                    rawBatteryHistory.getBackgroundUsageTimeInMs(upperRow);
             // Checks whether there is any abnormal battery reset conditions.
-            if (lowerEntry != null) {
+            if (hasLowerRow) {
                 final boolean invalidForegroundUsageTime =
-                        lowerEntry.mForegroundUsageTimeInMs > upperEntry.mForegroundUsageTimeInMs;
+                        rawBatteryHistory.getForegroundUsageTimeInMs(lowerRow)
+                                > upperForegroundUsageTimeInMs;
                 final boolean invalidBackgroundUsageTime =
-                        lowerEntry.mBackgroundUsageTimeInMs > upperEntry.mBackgroundUsageTimeInMs;
+                        rawBatteryHistory.getBackgroundUsageTimeInMs(lowerRow)
+                                > upperBackgroundUsageTimeInMs;
                 if (invalidForegroundUsageTime || invalidBackgroundUsageTime) {
-                    newHistEntryMap.put(entryKey, upperEntry);
-                    log(context, "abnormal reset condition is found", currentSlot, upperEntry);
+                    resultBuilder.copyRow(rawBatteryHistory, upperRow);
+                    log(context, "abnormal reset condition is found", currentSlot,
+                            rawBatteryHistory.getEntry(upperRow));
                     continue;
                 }
             }
-            final BatteryHistEntry newEntry =
+            final BatteryHistEntry upperEntry = rawBatteryHistory.getEntry(upperRow);
+            final long lowerForegroundUsageTimeInMs =
+                    hasLowerRow ? rawBatteryHistory.getForegroundUsageTimeInMs(lowerRow) : 0;
+            final long lowerBackgroundUsageTimeInMs =
+                    hasLowerRow ? rawBatteryHistory.getBackgroundUsageTimeInMs(lowerRow) : 0;
+            resultBuilder.addRow(
+                    keyIndex,
+                    upperEntry,
+                    /*bootTimestamp=*/ upperEntry.mBootTimestamp - (upperTimestamp - currentSlot),
+                    Math.round(BatteryHistEntry.interpolate(
+                            lowerForegroundUsageTimeInMs, upperForegroundUsageTimeInMs, ratio)),
+                    Math.round(BatteryHistEntry.interpolate(
+                            lowerBackgroundUsageTimeInMs, upperBackgroundUsageTimeInMs, ratio)),
+                    BatteryHistEntry.interpolate(
+                            hasLowerRow ? rawBatteryHistory.getConsumePower(lowerRow) : 0,
+                            rawBatteryHistory.getConsumePower(upperRow),
+                            ratio),
                     BatteryHistEntry.interpolate(
-                            currentSlot,
-                            upperTimestamp,
-                            /*ratio=*/ timestampDiff / timestampLength,
-                            lowerEntry,
-                            upperEntry);
-            newHistEntryMap.put(entryKey, newEntry);
-            if (lowerEntry == null) {
+                            hasLowerRow ? rawBatteryHistory.getTotalPower(lowerRow) : 0,
+                            rawBatteryHistory.getTotalPower(upperRow),
+                            ratio),
+                    hasLowerRow
+                            ? (int) Math.round(BatteryHistEntry.interpolate(
+                                    rawBatteryHistory.getBatteryLevel(lowerRow),
+                                    rawBatteryHistory.getBatteryLevel(upperRow),
+                                    ratio))
+                            : rawBatteryHistory.getBatteryLevel(upperRow),
+                    /*interpolated=*/ true);
+            if (!hasLowerRow) {
                 log(context, "cannot find lower entry data", currentSlot, upperEntry);
-                continue;
             }
         }
-        resultMap.put(currentSlot, newHistEntryMap);
     }
 
     /**
@@ -749,77 +865,97 @@ public final class DataProcessor {
 
     private static List<BatteryLevelData.PeriodBatteryLevelData> getHourlyPeriodBatteryLevelData(
             Context context,
-            final Map<Long, Map<String, BatteryHistEntry>> processedBatteryHistoryMap,
+            final BatteryHistoryTable processedBatteryHistory,
             final List<List<Long>> timestamps) {
         final List<BatteryLevelData.PeriodBatteryLevelData> levelData = new ArrayList<>();
         timestamps.forEach(
                 timestampList -> levelData.add(
                         getPeriodBatteryLevelData(
-                                context, processedBatteryHistoryMap, timestampList)));
+                                context, processedBatteryHistory, timestampList)));
         return levelData;
     }
 
     private static BatteryLevelData.PeriodBatteryLevelData getPeriodBatteryLevelData(
             Context context,
-            final Map<Long, Map<String, BatteryHistEntry>> processedBatteryHistoryMap,
+            final BatteryHistoryTable processedBatteryHistory,
             final List<Long> timestamps) {
         final List<Integer> levels = new ArrayList<>();
         timestamps.forEach(
-                timestamp -> levels.add(getLevel(context, processedBatteryHistoryMap, timestamp)));
+                timestamp -> levels.add(getLevel(context, processedBatteryHistory, timestamp)));
         return new BatteryLevelData.PeriodBatteryLevelData(timestamps, levels);
     }
 
     private static Integer getLevel(
             Context context,
-            final Map<Long, Map<String, BatteryHistEntry>> processedBatteryHistoryMap,
+            final BatteryHistoryTable processedBatteryHistory,
             final long timestamp) {
-        final Map<String, BatteryHistEntry> entryMap = processedBatteryHistoryMap.get(timestamp);
-        if (entryMap == null || entryMap.isEmpty()) {
+        final int slot = processedBatteryHistory.indexOf(timestamp);
+        if (slot < 0 || processedBatteryHistory.isSlotEmpty(slot)) {
             Log.e(TAG, "abnormal entry list in the timestamp:"
                     + utcToLocalTime(context, timestamp));
             return null;
         }
         // Averages the battery level in each time slot to avoid corner conditions.
         float batteryLevelCounter = 0;
-        for (BatteryHistEntry entry : entryMap.values()) {
-            batteryLevelCounter += entry.mBatteryLevel;
+        final int rowStart = processedBatteryHistory.getRowStart(slot);
+        final int rowEnd = processedBatteryHistory.getRowEnd(slot);
+        for (int row = rowStart; row < rowEnd; row++) {
+            batteryLevelCounter += processedBatteryHistory.getBatteryLevel(row);
         }
-        return Math.round(batteryLevelCounter / entryMap.size());
+        return Math.round(batteryLevelCounter / (rowEnd - rowStart));
     }
 
     private static void insertHourlyUsageDiffData(
             Context context,
             final List<BatteryLevelData.PeriodBatteryLevelData> hourlyBatteryLevelsPerDay,
-            final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap,
+            final BatteryHistoryTable batteryHistory,
             final Map<Integer, Map<Integer, BatteryDiffData>> resultMap) {
         final int currentUserId = context.getUserId();
         final UserHandle userHandle =
                 Utils.getManagedProfile(context.getSystemService(UserManager.class));
         final int workProfileUserId =
                 userHandle != null ? userHandle.getIdentifier() : Integer.MIN_VALUE;
+        final int hitCountBefore = sHourlyUsageDiffCache.hitCount();
+        final int missCountBefore = sHourlyUsageDiffCache.missCount();
         // Each time slot usage diff data =
         //     Math.abs(timestamp[i+2] data - timestamp[i+1] data) +
         //     Math.abs(timestamp[i+1] data - timestamp[i] data);
         // since we want to aggregate every two hours data into a single time slot.
+        // The time slots don't depend on each other, so they are computed in parallel.
+        final List<Callable<BatteryDiffData>> slotTasks = new ArrayList<>();
         for (int dailyIndex = 0; dailyIndex < hourlyBatteryLevelsPerDay.size(); dailyIndex++) {
-            final Map<Integer, BatteryDiffData> dailyDiffMap = new HashMap<>();
-            resultMap.put(dailyIndex, dailyDiffMap);
             if (hourlyBatteryLevelsPerDay.get(dailyIndex) == null) {
                 continue;
             }
             final List<Long> timestamps = hourlyBatteryLevelsPerDay.get(dailyIndex).getTimestamps();
             for (int hourlyIndex = 0; hourlyIndex < timestamps.size() - 1; hourlyIndex++) {
-                final BatteryDiffData hourlyBatteryDiffData =
-                        insertHourlyUsageDiffDataPerSlot(
-                                context,
-                                currentUserId,
-                                workProfileUserId,
-                                hourlyIndex,
-                                timestamps,
-                                batteryHistoryMap);
-                dailyDiffMap.put(hourlyIndex, hourlyBatteryDiffData);
+                final int currentIndex = hourlyIndex;
+                slotTasks.add(() -> insertHourlyUsageDiffDataPerSlot(
+                        context,
+                        currentUserId,
+                        workProfileUserId,
+                        currentIndex,
+                        timestamps,
+                        batteryHistory));
+            }
+        }
+        final List<BatteryDiffData> slotResults = invokeAll(slotTasks);
+        int slotIndex = 0;
+        for (int dailyIndex = 0; dailyIndex < hourlyBatteryLevelsPerDay.size(); dailyIndex++) {
+            final Map<Integer, BatteryDiffData> dailyDiffMap = new HashMap<>();
+            resultMap.put(dailyIndex, dailyDiffMap);
+            if (hourlyBatteryLevelsPerDay.get(dailyIndex) == null) {
+                continue;
+            }
+            final int hourlySize =
+                    hourlyBatteryLevelsPerDay.get(dailyIndex).getTimestamps().size() - 1;
+            for (int hourlyIndex = 0; hourlyIndex < hourlySize; hourlyIndex++) {
+                dailyDiffMap.put(hourlyIndex, slotResults.get(slotIndex++));
             }
         }
+        Log.d(TAG, String.format("insertHourlyUsageDiffData() reused %d slots, computed %d",
+                sHourlyUsageDiffCache.hitCount() - hitCountBefore,
+                sHourlyUsageDiffCache.missCount() - missCountBefore));
     }
 
     private static void insertDailyUsageDiffData(
@@ -854,72 +990,91 @@ public final class DataProcessor {
             final int workProfileUserId,
             final int currentIndex,
             final List<Long> timestamps,
-            final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap) {
+            final BatteryHistoryTable batteryHistory) {
         final List<BatteryDiffEntry> appEntries = new ArrayList<>();
         final List<BatteryDiffEntry> systemEntries = new ArrayList<>();
 
-        final Long currentTimestamp = timestamps.get(currentIndex);
-        final Long nextTimestamp = currentTimestamp + DateUtils.HOUR_IN_MILLIS;
-        final Long nextTwoTimestamp = nextTimestamp + DateUtils.HOUR_IN_MILLIS;
+        final long currentTimestamp = timestamps.get(currentIndex);
+        final long nextTimestamp = currentTimestamp + DateUtils.HOUR_IN_MILLIS;
+        final long nextTwoTimestamp = nextTimestamp + DateUtils.HOUR_IN_MILLIS;
         // Fetches BatteryHistEntry data from corresponding time slot.
-        final Map<String, BatteryHistEntry> currentBatteryHistMap =
-                batteryHistoryMap.getOrDefault(currentTimestamp, EMPTY_BATTERY_MAP);
-        final Map<String, BatteryHistEntry> nextBatteryHistMap =
-                batteryHistoryMap.getOrDefault(nextTimestamp, EMPTY_BATTERY_MAP);
-        final Map<String, BatteryHistEntry> nextTwoBatteryHistMap =
-                batteryHistoryMap.getOrDefault(nextTwoTimestamp, EMPTY_BATTERY_MAP);
+        final int currentSlot = batteryHistory.indexOf(currentTimestamp);
+        final int nextSlot = batteryHistory.indexOf(nextTimestamp);
+        final int nextTwoSlot = batteryHistory.indexOf(nextTwoTimestamp);
         // We should not get the empty list since we have at least one fake data to record
         // the battery level and status in each time slot, the empty list is used to
         // represent there is no enough data to apply interpolation arithmetic.
-        if (currentBatteryHistMap.isEmpty()
-                || nextBatteryHistMap.isEmpty()
-                || nextTwoBatteryHistMap.isEmpty()) {
+        if (currentSlot < 0 || nextSlot < 0 || nextTwoSlot < 0
+                || batteryHistory.isSlotEmpty(currentSlot)
+                || batteryHistory.isSlotEmpty(nextSlot)
+                || batteryHistory.isSlotEmpty(nextTwoSlot)) {
             return null;
         }
-
-        // Collects all keys in these three time slot records as all populations.
-        final Set<String> allBatteryHistEntryKeys = new ArraySet<>();
-        allBatteryHistEntryKeys.addAll(currentBatteryHistMap.keySet());
-        allBatteryHistEntryKeys.addAll(nextBatteryHistMap.keySet());
-        allBatteryHistEntryKeys.addAll(nextTwoBatteryHistMap.keySet());
+        // Reuses the diff data if the history of these three time slots is unchanged.
+        long fingerprint = batteryHistory.getSlotFingerprint(currentSlot);
+        fingerprint = BatteryHistoryTable.fingerprint(
+                fingerprint, batteryHistory.getSlotFingerprint(nextSlot));
+        fingerprint = BatteryHistoryTable.fingerprint(
+                fingerprint, batteryHistory.getSlotFingerprint(nextTwoSlot));
+        fingerprint = BatteryHistoryTable.fingerprint(fingerprint, currentUserId);
+        fingerprint = BatteryHistoryTable.fingerprint(fingerprint, workProfileUserId);
+        final HourlyUsageDiff cachedUsageDiff = sHourlyUsageDiffCache.get(currentTimestamp);
+        if (cachedUsageDiff != null && cachedUsageDiff.mFingerprint == fingerprint) {
+            return cachedUsageDiff.toBatteryDiffData(context);
+        }
 
         double totalConsumePower = 0.0;
         double consumePowerFromOtherUsers = 0f;
-        // Calculates all packages diff usage data in a specific time slot.
-        for (String key : allBatteryHistEntryKeys) {
-            final BatteryHistEntry currentEntry =
-                    currentBatteryHistMap.getOrDefault(key, EMPTY_BATTERY_HIST_ENTRY);
-            final BatteryHistEntry nextEntry =
-                    nextBatteryHistMap.getOrDefault(key, EMPTY_BATTERY_HIST_ENTRY);
-            final BatteryHistEntry nextTwoEntry =
-                    nextTwoBatteryHistMap.getOrDefault(key, EMPTY_BATTERY_HIST_ENTRY);
+        int currentRow = batteryHistory.getRowStart(currentSlot);
+        int nextRow = batteryHistory.getRowStart(nextSlot);
+        int nextTwoRow = batteryHistory.getRowStart(nextTwoSlot);
+        final int currentRowEnd = batteryHistory.getRowEnd(currentSlot);
+        final int nextRowEnd = batteryHistory.getRowEnd(nextSlot);
+        final int nextTwoRowEnd = batteryHistory.getRowEnd(nextTwoSlot);
+        // Calculates all packages diff usage data in a specific time slot. The rows of these
+        // three time slots are sorted by key, so all populations are visited by merging them.
+        while (currentRow < currentRowEnd || nextRow < nextRowEnd || nextTwoRow < nextTwoRowEnd) {
+            final int keyIndex = Math.min(
+                    getKeyIndex(batteryHistory, currentRow, currentRowEnd),
+                    Math.min(
+                            getKeyIndex(batteryHistory, nextRow, nextRowEnd),
+                            getKeyIndex(batteryHistory, nextTwoRow, nextTwoRowEnd)));
+            final int currentEntryRow =
+                    getRowOfKey(batteryHistory, currentRow, currentRowEnd, keyIndex);
+            final int nextEntryRow = getRowOfKey(batteryHistory, nextRow, nextRowEnd, keyIndex);
+            final int nextTwoEntryRow =
+                    getRowOfKey(batteryHistory, nextTwoRow, nextTwoRowEnd, keyIndex);
+            currentRow += currentEntryRow >= 0 ? 1 : 0;
+            nextRow += nextEntryRow >= 0 ? 1 : 0;
+            nextTwoRow += nextTwoEntryRow >= 0 ? 1 : 0;
+
             // Cumulative values is a specific time slot for a specific app.
             long foregroundUsageTimeInMs =
                     getDiffValue(
-                            currentEntry.mForegroundUsageTimeInMs,
-                            nextEntry.mForegroundUsageTimeInMs,
-                            nextTwoEntry.mForegroundUsageTimeInMs);
+                            getForegroundUsageTimeInMs(batteryHistory, currentEntryRow),
+                            getForegroundUsageTimeInMs(batteryHistory, nextEntryRow),
+                            getForegroundUsageTimeInMs(batteryHistory, nextTwoEntryRow));
             long backgroundUsageTimeInMs =
                     getDiffValue(
-                            currentEntry.mBackgroundUsageTimeInMs,
-                            nextEntry.mBackgroundUsageTimeInMs,
-                            nextTwoEntry.mBackgroundUsageTimeInMs);
+                            getBackgroundUsageTimeInMs(batteryHistory, currentEntryRow),
+                            getBackgroundUsageTimeInMs(batteryHistory, nextEntryRow),
+                            getBackgroundUsageTimeInMs(batteryHistory, nextTwoEntryRow));
             double consumePower =
                     getDiffValue(
-                            currentEntry.mConsumePower,
-                            nextEntry.mConsumePower,
-                            nextTwoEntry.mConsumePower);
+                            getConsumePower(batteryHistory, currentEntryRow),
+                            getConsumePower(batteryHistory, nextEntryRow),
+                            getConsumePower(batteryHistory, nextTwoEntryRow));
             // Excludes entry since we don't have enough data to calculate.
             if (foregroundUsageTimeInMs == 0
                     && backgroundUsageTimeInMs == 0
                     && consumePower == 0) {
                 continue;
             }
-            final BatteryHistEntry selectedBatteryEntry =
-                    selectBatteryHistEntry(currentEntry, nextEntry, nextTwoEntry);
-            if (selectedBatteryEntry == null) {
-                continue;
-            }
+            // The first recorded row provides the metadata of the diff entry.
+            final BatteryHistEntry selectedBatteryEntry = batteryHistory.getEntry(
+                    currentEntryRow >= 0
+                            ? currentEntryRow
+                            : nextEntryRow >= 0 ? nextEntryRow : nextTwoEntryRow);
             // Forces refine the cumulative value since it may introduce deviation error since we
             // will apply the interpolation arithmetic.
             final float totalUsageTimeInMs =
@@ -930,7 +1085,7 @@ public final class DataProcessor {
                     Log.w(TAG, String.format("abnormal usage time %d|%d for:\n%s",
                             Duration.ofMillis(foregroundUsageTimeInMs).getSeconds(),
                             Duration.ofMillis(backgroundUsageTimeInMs).getSeconds(),
-                            currentEntry));
+                            selectedBatteryEntry));
                 }
                 foregroundUsageTimeInMs =
                         Math.round(foregroundUsageTimeInMs * ratio);
@@ -961,6 +1116,9 @@ public final class DataProcessor {
         if (consumePowerFromOtherUsers != 0) {
             systemEntries.add(createOtherUsersEntry(context, consumePowerFromOtherUsers));
         }
+        // Keeps a copy since the returned entries are modified while purging.
+        sHourlyUsageDiffCache.put(currentTimestamp, new HourlyUsageDiff(
+                fingerprint, appEntries, systemEntries, totalConsumePower));
 
         // If there is no data, return null instead of empty item.
         if (appEntries.isEmpty() && systemEntries.isEmpty()) {
@@ -1123,12 +1281,104 @@ public final class DataProcessor {
         // Pre-loads each BatteryDiffEntry relative icon and label for all slots.
         final BatteryDiffData batteryUsageMapForAll =
                 batteryUsageMap.get(SELECTED_INDEX_ALL).get(SELECTED_INDEX_ALL);
-        if (batteryUsageMapForAll != null) {
-            batteryUsageMapForAll.getAppDiffEntryList().forEach(
-                    entry -> entry.loadLabelAndIcon());
-            batteryUsageMapForAll.getSystemDiffEntryList().forEach(
-                    entry -> entry.loadLabelAndIcon());
+        if (batteryUsageMapForAll == null) {
+            return;
+        }
+        final List<BatteryDiffEntry> entries =
+                new ArrayList<>(batteryUsageMapForAll.getAppDiffEntryList());
+        entries.addAll(batteryUsageMapForAll.getSystemDiffEntryList());
+        // Loads each key only once, in the displayed order. Other entries of the same key are
+        // loaded from NameAndIconCache afterwards.
+        final Set<String> loadingKeys = new ArraySet<>();
+        final List<Callable<BatteryDiffEntry>> loadTasks = new ArrayList<>();
+        for (BatteryDiffEntry entry : entries) {
+            if (loadingKeys.add(entry.getKey())) {
+                loadTasks.add(() -> {
+                    entry.loadLabelAndIcon();
+                    return entry;
+                });
+            }
+        }
+        invokeAll(loadTasks);
+        entries.forEach(entry -> entry.loadLabelAndIcon());
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            Log.d(TAG, String.format("loadLabelAndIcon() for %d keys, cache size=%d bytes",
+                    loadTasks.size(), NameAndIconCache.getInstance().getSizeInBytes()));
+        }
+    }
+
+    // The tasks block on binder calls, which the ForkJoinPool doesn't compensate for, so they
+    // run on a fixed thread pool. The tasks must not run other tasks on the same pool.
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            final int threads = Math.max(1,
+                    Math.min(MAX_PARALLELISM, Runtime.getRuntime().availableProcessors()));
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                    EXECUTOR_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+            executor.allowCoreThreadTimeOut(true);
+            sExecutor = executor;
+        }
+        return sExecutor;
+    }
+
+    // Runs the tasks in the shared pool and returns their results in the same order. The result
+    // of a failed task is null.
+    private static <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        final List<T> results = new ArrayList<>(tasks.size());
+        if (tasks.isEmpty()) {
+            return results;
+        }
+        try {
+            for (Future<T> future : getExecutor().invokeAll(tasks)) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    Log.e(TAG, "failed to run the task", e.getCause());
+                    results.add(null);
+                }
+            }
+        } catch (InterruptedException e) {
+            Log.e(TAG, "interrupted while running the tasks", e);
+            Thread.currentThread().interrupt();
+            while (results.size() < tasks.size()) {
+                results.add(null);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Copies the usage map into unmodifiable maps of new entries, which aren't touched by the
+     * label and icon loading of the original entries.
+     */
+    @VisibleForTesting
+    static Map<Integer, Map<Integer, BatteryDiffData>> copyBatteryUsageMap(
+            final Map<Integer, Map<Integer, BatteryDiffData>> batteryUsageMap) {
+        final Map<Integer, Map<Integer, BatteryDiffData>> resultMap = new HashMap<>();
+        for (Map.Entry<Integer, Map<Integer, BatteryDiffData>> dailyEntry
+                : batteryUsageMap.entrySet()) {
+            final Map<Integer, BatteryDiffData> dailyDiffMap = new HashMap<>();
+            for (Map.Entry<Integer, BatteryDiffData> hourlyEntry
+                    : dailyEntry.getValue().entrySet()) {
+                final BatteryDiffData diffData = hourlyEntry.getValue();
+                dailyDiffMap.put(hourlyEntry.getKey(), diffData == null ? null
+                        : new BatteryDiffData(
+                                copyDiffEntries(diffData.getAppDiffEntryList()),
+                                copyDiffEntries(diffData.getSystemDiffEntryList())));
+            }
+            resultMap.put(dailyEntry.getKey(), Collections.unmodifiableMap(dailyDiffMap));
         }
+        return Collections.unmodifiableMap(resultMap);
+    }
+
+    private static List<BatteryDiffEntry> copyDiffEntries(final List<BatteryDiffEntry> entries) {
+        final List<BatteryDiffEntry> copies = new ArrayList<>(entries.size());
+        for (BatteryDiffEntry entry : entries) {
+            final BatteryDiffEntry copy = entry.clone();
+            copy.setTotalConsumePower(entry.getTotalConsumePower());
+            copies.add(copy);
+        }
+        return copies;
     }
 
     private static long getTimestampWithDayDiff(final long timestamp, final int dayDiff) {
@@ -1169,15 +1419,31 @@ public final class DataProcessor {
         return (v2 > v1 ? v2 - v1 : 0) + (v3 > v2 ? v3 - v2 : 0);
     }
 
-    @Nullable
-    private static BatteryHistEntry selectBatteryHistEntry(
-            final BatteryHistEntry... batteryHistEntries) {
-        for (BatteryHistEntry entry : batteryHistEntries) {
-            if (entry != null && entry != EMPTY_BATTERY_HIST_ENTRY) {
-                return entry;
-            }
-        }
-        return null;
+    // Returns the key index of the row, or Integer.MAX_VALUE if there's no more rows.
+    private static int getKeyIndex(
+            final BatteryHistoryTable batteryHistory, final int row, final int rowEnd) {
+        return row < rowEnd ? batteryHistory.getKeyIndex(row) : Integer.MAX_VALUE;
+    }
+
+    // Returns the row if it's recorded for the key, or -1 otherwise.
+    private static int getRowOfKey(final BatteryHistoryTable batteryHistory,
+            final int row, final int rowEnd, final int keyIndex) {
+        return row < rowEnd && batteryHistory.getKeyIndex(row) == keyIndex ? row : -1;
+    }
+
+    private static long getForegroundUsageTimeInMs(
+            final BatteryHistoryTable batteryHistory, final int row) {
+        return row >= 0 ? batteryHistory.getForegroundUsageTimeInMs(row) : 0;
+    }
+
+    private static long getBackgroundUsageTimeInMs(
+            final BatteryHistoryTable batteryHistory, final int row) {
+        return row >= 0 ? batteryHistory.getBackgroundUsageTimeInMs(row) : 0;
+    }
+
+    private static double getConsumePower(
+            final BatteryHistoryTable batteryHistory, final int row) {
+        return row >= 0 ? batteryHistory.getConsumePower(row) : 0;
     }
 
     private static BatteryDiffEntry createOtherUsersEntry(
@@ -1220,6 +1486,62 @@ public final class DataProcessor {
         }
     }
 
+    /** The usage diff data of an hourly slot, kept in columns of the diff entries. */
+    @VisibleForTesting
+    static final class HourlyUsageDiff {
+        final long mFingerprint;
+        private final int mAppEntryCount;
+        private final BatteryHistEntry[] mBatteryHistEntries;
+        private final long[] mForegroundUsageTimeInMs;
+        private final long[] mBackgroundUsageTimeInMs;
+        private final double[] mConsumePower;
+        private final double mTotalConsumePower;
+
+        HourlyUsageDiff(
+                long fingerprint,
+                List<BatteryDiffEntry> appEntries,
+                List<BatteryDiffEntry> systemEntries,
+                double totalConsumePower) {
+            mFingerprint = fingerprint;
+            mAppEntryCount = appEntries.size();
+            mTotalConsumePower = totalConsumePower;
+            final int size = appEntries.size() + systemEntries.size();
+            mBatteryHistEntries = new BatteryHistEntry[size];
+            mForegroundUsageTimeInMs = new long[size];
+            mBackgroundUsageTimeInMs = new long[size];
+            mConsumePower = new double[size];
+            for (int index = 0; index < size; index++) {
+                final BatteryDiffEntry entry = index < mAppEntryCount
+                        ? appEntries.get(index)
+                        : systemEntries.get(index - mAppEntryCount);
+                mBatteryHistEntries[index] = entry.mBatteryHistEntry;
+                mForegroundUsageTimeInMs[index] = entry.mForegroundUsageTimeInMs;
+                mBackgroundUsageTimeInMs[index] = entry.mBackgroundUsageTimeInMs;
+                mConsumePower[index] = entry.mConsumePower;
+            }
+        }
+
+        @Nullable
+        BatteryDiffData toBatteryDiffData(Context context) {
+            final int size = mBatteryHistEntries.length;
+            if (size == 0) {
+                return null;
+            }
+            final List<BatteryDiffEntry> appEntries = new ArrayList<>(mAppEntryCount);
+            final List<BatteryDiffEntry> systemEntries = new ArrayList<>(size - mAppEntryCount);
+            for (int index = 0; index < size; index++) {
+                final BatteryDiffEntry entry = new BatteryDiffEntry(
+                        context,
+                        mForegroundUsageTimeInMs[index],
+                        mBackgroundUsageTimeInMs[index],
+                        mConsumePower[index],
+                        mBatteryHistEntries[index]);
+                (index < mAppEntryCount ? appEntries : systemEntries).add(entry);
+            }
+            return new BatteryDiffData(appEntries, systemEntries, mTotalConsumePower);
+        }
+    }
+
     // Compute diff map and loads all items (icon and label) in the background.
     private static class ComputeUsageMapAndLoadItemsTask
             extends AsyncTask<Void, Void, Map<Integer, Map<Integer, BatteryDiffData>>> {
@@ -1228,19 +1550,19 @@ public final class DataProcessor {
         final Handler mHandler;
         final UsageMapAsyncResponse mAsyncResponseDelegate;
         private List<BatteryLevelData.PeriodBatteryLevelData> mHourlyBatteryLevelsPerDay;
-        private Map<Long, Map<String, BatteryHistEntry>> mBatteryHistoryMap;
+        private BatteryHistoryTable mBatteryHistory;
 
         private ComputeUsageMapAndLoadItemsTask(
                 Context context,
                 Handler handler,
                 final UsageMapAsyncResponse asyncResponseDelegate,
                 final List<BatteryLevelData.PeriodBatteryLevelData> hourlyBatteryLevelsPerDay,
-                final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap) {
+                final BatteryHistoryTable batteryHistory) {
             mApplicationContext = context.getApplicationContext();
             mHandler = handler;
             mAsyncResponseDelegate = asyncResponseDelegate;
             mHourlyBatteryLevelsPerDay = hourlyBatteryLevelsPerDay;
-            mBatteryHistoryMap = batteryHistoryMap;
+            mBatteryHistory = batteryHistory;
         }
 
         @Override
@@ -1248,7 +1570,7 @@ public final class DataProcessor {
             if (mApplicationContext == null
                     || mHandler == null
                     || mAsyncResponseDelegate == null
-                    || mBatteryHistoryMap == null
+                    || mBatteryHistory == null
                     || mHourlyBatteryLevelsPerDay == null) {
                 Log.e(TAG, "invalid input for ComputeUsageMapAndLoadItemsTask()");
                 return null;
@@ -1256,19 +1578,35 @@ public final class DataProcessor {
             final long startTime = System.currentTimeMillis();
             final Map<Integer, Map<Integer, BatteryDiffData>> batteryUsageMap =
                     getBatteryUsageMap(
-                            mApplicationContext, mHourlyBatteryLevelsPerDay, mBatteryHistoryMap);
+                            mApplicationContext, mHourlyBatteryLevelsPerDay, mBatteryHistory);
+            postPartialResult(batteryUsageMap);
             loadLabelAndIcon(batteryUsageMap);
             Log.d(TAG, String.format("execute ComputeUsageMapAndLoadItemsTask in %d/ms",
                     (System.currentTimeMillis() - startTime)));
             return batteryUsageMap;
         }
 
+        // Posts the computed usage data to show the chart before the labels and icons are loaded.
+        void postPartialResult(
+                @Nullable final Map<Integer, Map<Integer, BatteryDiffData>> batteryUsageMap) {
+            if (batteryUsageMap == null) {
+                return;
+            }
+            // The labels and icons of the entries are loaded right after, so the main thread
+            // gets a copy of the entries instead.
+            final Map<Integer, Map<Integer, BatteryDiffData>> batteryUsageMapCopy =
+                    copyBatteryUsageMap(batteryUsageMap);
+            mHandler.post(() -> {
+                mAsyncResponseDelegate.onBatteryUsageMapPartiallyLoaded(batteryUsageMapCopy);
+            });
+        }
+
         @Override
         protected void onPostExecute(
                 final Map<Integer, Map<Integer, BatteryDiffData>> batteryUsageMap) {
             mApplicationContext = null;
             mHourlyBatteryLevelsPerDay = null;
-            mBatteryHistoryMap = null;
+            mBatteryHistory = null;
             // Post results back to main thread to refresh UI.
             if (mHandler != null && mAsyncResponseDelegate != null) {
                 mHandler.post(() -> {
@@ -1288,7 +1626,7 @@ public final class DataProcessor {
                 Handler handler,
                 final UsageMapAsyncResponse asyncResponseDelegate) {
             super(context, handler, asyncResponseDelegate, /*hourlyBatteryLevelsPerDay=*/ null,
-                    /*batteryHistoryMap=*/ null);
+                    /*batteryHistory=*/ null);
         }
 
         @Override
@@ -1302,6 +1640,7 @@ public final class DataProcessor {
             final long startTime = System.currentTimeMillis();
             final Map<Integer, Map<Integer, BatteryDiffData>> batteryUsageMap =
                     getBatteryUsageMapFromStatsService(mApplicationContext);
+            postPartialResult(batteryUsageMap);
             loadLabelAndIcon(batteryUsageMap);
             Log.d(TAG, String.format("execute LoadUsageMapFromBatteryStatsServiceTask in %d/ms",
                     (System.currentTimeMillis() - startTime)));
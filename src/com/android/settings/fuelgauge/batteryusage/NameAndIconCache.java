@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A size-bounded LRU cache of the app labels and icons in the battery usage pages, shared by
+ * {@link BatteryEntry} and {@link BatteryDiffEntry} so an app icon is loaded only once. The size
+ * is measured in bytes of the icon bitmaps. The cache is thread-safe, it is cleared when the
+ * locale is changed and drops the data of a UID when its packages are changed.
+ */
+final class NameAndIconCache {
+    private static final String TAG = "NameAndIconCache";
+
+    @VisibleForTesting
+    static final int MAX_SIZE_IN_BYTES = 4 * 1024 * 1024;
+    // Bytes per pixel of an icon drawn into an ARGB_8888 bitmap.
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private static final NameAndIconCache sInstance = new NameAndIconCache(MAX_SIZE_IN_BYTES);
+
+    private final LruCache<String, BatteryEntry.NameAndIcon> mCache;
+    private final BroadcastReceiver mPackageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            final int uid = intent.getIntExtra(Intent.EXTRA_UID, Process.INVALID_UID);
+            if (uid == Process.INVALID_UID) {
+                clear();
+                return;
+            }
+            remove(Integer.toString(uid));
+        }
+    };
+
+    private volatile Locale mLocale;
+    private boolean mIsPackageReceiverRegistered;
+
+    /** Returns the cache shared by the battery usage pages. */
+    static NameAndIconCache getInstance() {
+        return sInstance;
+    }
+
+    @VisibleForTesting
+    NameAndIconCache(int maxSizeInBytes) {
+        mCache = new LruCache<String, BatteryEntry.NameAndIcon>(maxSizeInBytes) {
+            @Override
+            protected int sizeOf(String key, BatteryEntry.NameAndIcon nameAndIcon) {
+                return getSizeInBytes(nameAndIcon);
+            }
+        };
+    }
+
+    /** Returns the cached label and icon of the key, or null if it isn't cached. */
+    @Nullable
+    BatteryEntry.NameAndIcon get(String key) {
+        checkLocale();
+        return mCache.get(key);
+    }
+
+    /** Caches the label and icon of the key. */
+    void put(Context context, String key, BatteryEntry.NameAndIcon nameAndIcon) {
+        checkLocale();
+        registerPackageReceiverIfNeeded(context);
+        mCache.put(key, nameAndIcon);
+    }
+
+    /** Removes the cached label and icon of the key. */
+    void remove(String key) {
+        mCache.remove(key);
+    }
+
+    /** Removes all the cached labels and icons. */
+    void clear() {
+        mCache.evictAll();
+    }
+
+    /** Returns the total size of the cached labels and icons in bytes. */
+    int getSizeInBytes() {
+        return mCache.size();
+    }
+
+    @VisibleForTesting
+    Map<String, BatteryEntry.NameAndIcon> snapshot() {
+        return mCache.snapshot();
+    }
+
+    @VisibleForTesting
+    static int getSizeInBytes(BatteryEntry.NameAndIcon nameAndIcon) {
+        int sizeInBytes = nameAndIcon.mName == null ? 0 : nameAndIcon.mName.length() * 2;
+        final Drawable icon = nameAndIcon.mIcon;
+        if (icon instanceof BitmapDrawable && ((BitmapDrawable) icon).getBitmap() != null) {
+            final Bitmap bitmap = ((BitmapDrawable) icon).getBitmap();
+            sizeInBytes += bitmap.getAllocationByteCount();
+        } else if (icon != null && icon.getIntrinsicWidth() > 0 && icon.getIntrinsicHeight() > 0) {
+            sizeInBytes += icon.getIntrinsicWidth() * icon.getIntrinsicHeight() * BYTES_PER_PIXEL;
+        }
+        // Each entry takes some space even without label and icon.
+        return Math.max(sizeInBytes, 1);
+    }
+
+    private void checkLocale() {
+        final Locale locale = Locale.getDefault();
+        if (mLocale == locale) {
+            return;
+        }
+        synchronized (this) {
+            if (mLocale != locale) {
+                Log.d(TAG, String.format("clear() locale is changed from %s to %s",
+                        mLocale, locale));
+                mLocale = locale;
+                clear();
+            }
+        }
+    }
+
+    private synchronized void registerPackageReceiverIfNeeded(Context context) {
+        if (mIsPackageReceiverRegistered) {
+            return;
+        }
+        final IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        // The cache outlives the pages, so the receiver is kept for the whole process.
+        context.getApplicationContext().registerReceiver(mPackageReceiver, filter);
+        mIsPackageReceiverRegistered = true;
+    }
+}
@@ -22,7 +22,6 @@ import android.content.Context;
 import android.os.BatteryUsageStats;
 import android.os.Bundle;
 import android.os.UserManager;
-import android.util.Log;
 
 import androidx.annotation.IntDef;
 import androidx.annotation.NonNull;
@@ -173,12 +172,8 @@ public abstract class PowerUsageBase extends DashboardFragment {
         if (mBatteryUsageStats == null) {
             return;
         }
-        try {
-            mBatteryUsageStats.close();
-        } catch (Exception e) {
-            Log.e(TAG, "BatteryUsageStats.close() failed", e);
-        } finally {
-            mBatteryUsageStats = null;
-        }
+        // The stats may be shared with other pages, so give them back to the loader.
+        BatteryUsageStatsLoader.release(mBatteryUsageStats);
+        mBatteryUsageStats = null;
     }
 }
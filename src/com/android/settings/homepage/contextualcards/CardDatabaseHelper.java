@@ -29,9 +29,10 @@ import androidx.annotation.VisibleForTesting;
 public class CardDatabaseHelper extends SQLiteOpenHelper {
     private static final String TAG = "CardDatabaseHelper";
     private static final String DATABASE_NAME = "homepage_cards.db";
-    private static final int DATABASE_VERSION = 7;
+    private static final int DATABASE_VERSION = 8;
 
     public static final String CARD_TABLE = "cards";
+    public static final String DISPLAYED_CARD_TABLE = "displayed_cards";
 
     public interface CardColumns {
         /**
@@ -75,6 +76,27 @@ public class CardDatabaseHelper extends SQLiteOpenHelper {
         String DISMISSED_TIMESTAMP = "dismissed_timestamp";
     }
 
+    /**
+     * Columns of the cards last displayed on the homepage, in addition to the {@link CardColumns}
+     * except {@link CardColumns#DISMISSED_TIMESTAMP}.
+     */
+    public interface DisplayedCardColumns {
+        /**
+         * Position of the card on the homepage.
+         */
+        String POSITION = "position";
+
+        /**
+         * Whether the card is shown as a large card.
+         */
+        String IS_LARGE_CARD = "is_large_card";
+
+        /**
+         * Whether the slice of the card has an inline action.
+         */
+        String HAS_INLINE_ACTION = "has_inline_action";
+    }
+
     private static final String CREATE_CARD_TABLE =
             "CREATE TABLE "
                     + CARD_TABLE
@@ -97,6 +119,32 @@ public class CardDatabaseHelper extends SQLiteOpenHelper {
                     + " INTEGER"
                     + ");";
 
+    private static final String CREATE_DISPLAYED_CARD_TABLE =
+            "CREATE TABLE IF NOT EXISTS "
+                    + DISPLAYED_CARD_TABLE
+                    + "("
+                    + CardColumns.NAME
+                    + " TEXT NOT NULL PRIMARY KEY, "
+                    + CardColumns.TYPE
+                    + " INTEGER NOT NULL, "
+                    + CardColumns.SCORE
+                    + " DOUBLE NOT NULL, "
+                    + CardColumns.SLICE_URI
+                    + " TEXT, "
+                    + CardColumns.CATEGORY
+                    + " INTEGER DEFAULT 0, "
+                    + CardColumns.PACKAGE_NAME
+                    + " TEXT NOT NULL, "
+                    + CardColumns.APP_VERSION
+                    + " INTEGER NOT NULL, "
+                    + DisplayedCardColumns.POSITION
+                    + " INTEGER NOT NULL, "
+                    + DisplayedCardColumns.IS_LARGE_CARD
+                    + " INTEGER DEFAULT 0, "
+                    + DisplayedCardColumns.HAS_INLINE_ACTION
+                    + " INTEGER DEFAULT 0"
+                    + ");";
+
     public CardDatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
@@ -104,14 +152,21 @@ public class CardDatabaseHelper extends SQLiteOpenHelper {
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(CREATE_CARD_TABLE);
+        db.execSQL(CREATE_DISPLAYED_CARD_TABLE);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        if (oldVersion < newVersion) {
+        if (oldVersion < 7) {
             Log.d(TAG, "Reconstructing DB from " + oldVersion + " to " + newVersion);
             db.execSQL("DROP TABLE IF EXISTS " + CARD_TABLE);
+            db.execSQL("DROP TABLE IF EXISTS " + DISPLAYED_CARD_TABLE);
             onCreate(db);
+            return;
+        }
+        if (oldVersion < 8) {
+            // Version 8 only adds the displayed cards, so keep the cards and their dismissals.
+            db.execSQL(CREATE_DISPLAYED_CARD_TABLE);
         }
     }
 
@@ -62,6 +62,7 @@ public class ContextualCardFeatureProviderImpl implements ContextualCardFeatureP
         final String selection = CardDatabaseHelper.CardColumns.NAME + "=?";
         final String[] selectionArgs = {cardName};
         final int rowsUpdated = db.update(CARD_TABLE, values, selection, selectionArgs);
+        ContextualCardSnapshot.remove(mContext, cardName);
         context.getContentResolver().notifyChange(CardContentProvider.DELETE_CARD_URI, null);
         return rowsUpdated;
     }
@@ -27,7 +27,9 @@ import android.database.Cursor;
 import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.provider.Settings;
+import android.util.ArrayMap;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -41,11 +43,14 @@ import com.android.settingslib.utils.AsyncLoaderCompat;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeoutException;
 
 public class ContextualCardLoader extends AsyncLoaderCompat<List<ContextualCard>> {
 
@@ -57,6 +62,15 @@ public class ContextualCardLoader extends AsyncLoaderCompat<List<ContextualCard>
 
     private static final String TAG = "ContextualCardLoader";
     private static final long ELIGIBILITY_CHECKER_TIMEOUT_MS = 400;
+    private static final long ELIGIBILITY_CACHE_TTL_MS = 10000;
+    private static final int ELIGIBILITY_CHECKER_THREADS = 8;
+    private static final long EXECUTOR_KEEP_ALIVE_SECONDS = 30;
+
+    // Shared by all loads so that resuming the homepage doesn't spin up new threads every time.
+    private static ExecutorService sEligibilityExecutor;
+    private static final Map<Uri, CachedEligibility> sEligibilityCache = new ArrayMap<>();
+
+    private final List<Future<ContextualCard>> mPendingChecks = new ArrayList<>();
 
     private final ContentObserver mObserver = new ContentObserver(
             new Handler(Looper.getMainLooper())) {
@@ -95,6 +109,14 @@ public class ContextualCardLoader extends AsyncLoaderCompat<List<ContextualCard>
         mContext.getContentResolver().unregisterContentObserver(mObserver);
     }
 
+    @Override
+    protected void onReset() {
+        super.onReset();
+        synchronized (mPendingChecks) {
+            cancelPendingChecksLocked();
+        }
+    }
+
     @Override
     protected void onDiscardResult(List<ContextualCard> result) {
 
@@ -187,48 +209,144 @@ public class ContextualCardLoader extends AsyncLoaderCompat<List<ContextualCard>
         if (candidates.isEmpty()) {
             return candidates;
         }
+        if (mNotifyUri != null && mNotifyUri.equals(CardContentProvider.REFRESH_CARD_URI)) {
+            // A card failed to render, don't trust the cached eligible states.
+            clearEligibilityCache();
+        }
 
-        final ExecutorService executor = Executors.newFixedThreadPool(candidates.size());
-        final List<ContextualCard> cards = new ArrayList<>();
-        List<Future<ContextualCard>> eligibleCards = new ArrayList<>();
-
-        final List<EligibleCardChecker> checkers = candidates.stream()
-                .map(card -> new EligibleCardChecker(mContext, card))
-                .collect(Collectors.toList());
-        try {
-            eligibleCards = executor.invokeAll(checkers, ELIGIBILITY_CHECKER_TIMEOUT_MS,
-                    TimeUnit.MILLISECONDS);
-        } catch (InterruptedException e) {
-            Log.w(TAG, "Failed to get eligible states for all cards", e);
+        final ContextualCard[] eligibleCards = new ContextualCard[candidates.size()];
+        final List<Integer> pendingIndexes = new ArrayList<>();
+        final long now = SystemClock.elapsedRealtime();
+        synchronized (sEligibilityCache) {
+            for (int i = 0; i < candidates.size(); i++) {
+                final ContextualCard candidate = candidates.get(i);
+                final CachedEligibility cached = sEligibilityCache.get(candidate.getSliceUri());
+                // The cache only holds the state of the slice. A negative ranking score makes the
+                // card ineligible whatever its slice is, which EligibleCardChecker decides without
+                // binding the slice, so such candidates always go through the checker.
+                if (candidate.getRankingScore() >= 0 && cached != null
+                        && now - cached.mTimestamp < ELIGIBILITY_CACHE_TTL_MS) {
+                    eligibleCards[i] = cached.apply(candidate);
+                } else {
+                    pendingIndexes.add(i);
+                }
+            }
         }
-        executor.shutdown();
 
-        // Collect future and eligible cards
-        for (int i = 0; i < eligibleCards.size(); i++) {
-            final Future<ContextualCard> cardFuture = eligibleCards.get(i);
-            if (cardFuture.isCancelled()) {
-                Log.w(TAG, "Timeout getting eligible state for card: "
-                        + candidates.get(i).getSliceUri());
-                continue;
+        // Bind the highest ranked cards first as they are the most likely to be displayed.
+        pendingIndexes.sort((i1, i2) -> Double.compare(
+                candidates.get(i2).getRankingScore(), candidates.get(i1).getRankingScore()));
+        final List<Future<ContextualCard>> futures = new ArrayList<>();
+        synchronized (mPendingChecks) {
+            // Checks of a previous load are stale now, stop binding their slices.
+            cancelPendingChecksLocked();
+            for (int index : pendingIndexes) {
+                final Future<ContextualCard> future = getEligibilityExecutor().submit(
+                        new EligibleCardChecker(mContext, candidates.get(index)));
+                futures.add(future);
+                mPendingChecks.add(future);
             }
+        }
 
+        // Collect future and eligible cards
+        final long deadline = SystemClock.elapsedRealtime() + ELIGIBILITY_CHECKER_TIMEOUT_MS;
+        for (int i = 0; i < futures.size(); i++) {
+            final Future<ContextualCard> cardFuture = futures.get(i);
+            final ContextualCard candidate = candidates.get(pendingIndexes.get(i));
             try {
-                final ContextualCard card = cardFuture.get();
-                if (card != null) {
-                    cards.add(card);
+                final ContextualCard card = cardFuture.get(
+                        Math.max(0, deadline - SystemClock.elapsedRealtime()),
+                        TimeUnit.MILLISECONDS);
+                eligibleCards[pendingIndexes.get(i)] = card;
+                if (candidate.getRankingScore() >= 0) {
+                    // Don't let the ranking of this candidate reject the slice for later ones.
+                    putEligibilityCache(candidate, card);
                 }
+            } catch (TimeoutException e) {
+                Log.w(TAG, "Timeout getting eligible state for card: "
+                        + candidate.getSliceUri());
+                cardFuture.cancel(true /* mayInterruptIfRunning */);
+            } catch (CancellationException e) {
+                Log.w(TAG, "Eligibility check is cancelled for card: "
+                        + candidate.getSliceUri());
             } catch (Exception e) {
                 Log.w(TAG, "Failed to get eligible state for card", e);
             }
         }
+        synchronized (mPendingChecks) {
+            mPendingChecks.removeAll(futures);
+        }
+
+        final List<ContextualCard> cards = new ArrayList<>();
+        for (ContextualCard card : eligibleCards) {
+            if (card != null) {
+                cards.add(card);
+            }
+        }
         return cards;
     }
 
+    @VisibleForTesting
+    static void clearEligibilityCache() {
+        synchronized (sEligibilityCache) {
+            sEligibilityCache.clear();
+        }
+    }
+
+    private static void putEligibilityCache(ContextualCard candidate, ContextualCard result) {
+        synchronized (sEligibilityCache) {
+            sEligibilityCache.put(candidate.getSliceUri(),
+                    new CachedEligibility(result, SystemClock.elapsedRealtime()));
+        }
+    }
+
+    private void cancelPendingChecksLocked() {
+        for (Future<ContextualCard> future : mPendingChecks) {
+            future.cancel(true /* mayInterruptIfRunning */);
+        }
+        mPendingChecks.clear();
+    }
+
+    private static synchronized ExecutorService getEligibilityExecutor() {
+        if (sEligibilityExecutor == null) {
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                    ELIGIBILITY_CHECKER_THREADS, ELIGIBILITY_CHECKER_THREADS,
+                    EXECUTOR_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+            executor.allowCoreThreadTimeOut(true);
+            sEligibilityExecutor = executor;
+        }
+        return sEligibilityExecutor;
+    }
+
     private boolean isLargeCard(ContextualCard card) {
         return card.getSliceUri().equals(CONTEXTUAL_WIFI_SLICE_URI)
                 || card.getSliceUri().equals(BLUETOOTH_DEVICES_SLICE_URI);
     }
 
+    /**
+     * The eligible state of a card checked recently, a null card means it was not eligible.
+     */
+    private static class CachedEligibility {
+        private final ContextualCard mCard;
+        private final long mTimestamp;
+
+        CachedEligibility(ContextualCard card, long timestamp) {
+            mCard = card;
+            mTimestamp = timestamp;
+        }
+
+        ContextualCard apply(ContextualCard candidate) {
+            if (mCard == null) {
+                return null;
+            }
+            // Keep the latest ranking of the candidate with the slice bound before.
+            return candidate.mutate()
+                    .setSlice(mCard.getSlice())
+                    .setHasInlineAction(mCard.hasInlineAction())
+                    .build();
+        }
+    }
+
     public interface CardContentLoaderListener {
         void onFinishCardLoading(List<ContextualCard> contextualCards);
     }
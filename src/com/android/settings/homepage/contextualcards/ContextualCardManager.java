@@ -50,6 +50,7 @@ import com.android.settingslib.core.lifecycle.LifecycleObserver;
 import com.android.settingslib.core.lifecycle.events.OnSaveInstanceState;
 import com.android.settingslib.core.lifecycle.events.OnStart;
 import com.android.settingslib.core.lifecycle.events.OnStop;
+import com.android.settingslib.utils.ThreadUtils;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -81,6 +82,11 @@ public class ContextualCardManager implements ContextualCardLoader.CardContentLo
     static final String KEY_CONTEXTUAL_CARDS = "key_contextual_cards";
 
     private static final String TAG = "ContextualCardManager";
+    private static final Set<Integer> CONDITIONAL_CARD_TYPES = new TreeSet<Integer>() {{
+        add(ContextualCard.CardType.CONDITIONAL);
+        add(ContextualCard.CardType.CONDITIONAL_HEADER);
+        add(ContextualCard.CardType.CONDITIONAL_FOOTER);
+    }};
 
     private final Context mContext;
     private final Lifecycle mLifecycle;
@@ -97,6 +103,8 @@ public class ContextualCardManager implements ContextualCardLoader.CardContentLo
     boolean mIsFirstLaunch;
     @VisibleForTesting
     List<String> mSavedCards;
+    @VisibleForTesting
+    boolean mIsShowingSnapshot;
 
     public ContextualCardManager(Context context, Lifecycle lifecycle, Bundle savedInstanceState) {
         mContext = context;
@@ -137,6 +145,38 @@ public class ContextualCardManager implements ContextualCardLoader.CardContentLo
             loaderManager.restartLoader(CARD_CONTENT_LOADER_ID, null /* bundle */,
                     cardContentLoaderCallbacks);
         }
+        if (mIsFirstLaunch && mSavedCards == null) {
+            showCardSnapshot();
+        }
+    }
+
+    /**
+     * Shows the cards last displayed while the loader is refreshing them. The refreshed cards are
+     * diffed in through {@link ContextualCardsAdapter} once loaded.
+     */
+    @VisibleForTesting
+    void showCardSnapshot() {
+        final List<ContextualCard> cachedCards = ContextualCardSnapshot.getCachedCards();
+        if (cachedCards != null) {
+            onCardSnapshotLoaded(cachedCards);
+            return;
+        }
+        ThreadUtils.postOnBackgroundThread(() -> {
+            final List<ContextualCard> cards = ContextualCardSnapshot.load(mContext);
+            ThreadUtils.postOnMainThread(() -> onCardSnapshotLoaded(cards));
+        });
+    }
+
+    @VisibleForTesting
+    void onCardSnapshotLoaded(List<ContextualCard> cards) {
+        // Skip if the loader has finished first or loaded cards are already displayed.
+        if (!mIsFirstLaunch || cards.isEmpty() || mContextualCards.stream()
+                .anyMatch(card -> !CONDITIONAL_CARD_TYPES.contains(card.getCardType()))) {
+            return;
+        }
+        Log.d(TAG, "Showing card snapshot, time = " + (System.currentTimeMillis() - mStartTime));
+        mIsShowingSnapshot = true;
+        onContextualCardUpdated(cards.stream().collect(groupingBy(ContextualCard::getCardType)));
     }
 
     private void loadCardControllers() {
@@ -196,13 +236,8 @@ public class ContextualCardManager implements ContextualCardLoader.CardContentLo
         // except Conditional cards, all other cards are from the database. So when the map sent
         // here is empty, we only keep Conditional cards.
         if (cardTypes.isEmpty()) {
-            final Set<Integer> conditionalCardTypes = new TreeSet<Integer>() {{
-                add(ContextualCard.CardType.CONDITIONAL);
-                add(ContextualCard.CardType.CONDITIONAL_HEADER);
-                add(ContextualCard.CardType.CONDITIONAL_FOOTER);
-            }};
             cardsToKeep = mContextualCards.stream()
-                    .filter(card -> conditionalCardTypes.contains(card.getCardType()))
+                    .filter(card -> CONDITIONAL_CARD_TYPES.contains(card.getCardType()))
                     .collect(Collectors.toList());
         } else {
             cardsToKeep = mContextualCards.stream()
@@ -243,6 +278,7 @@ public class ContextualCardManager implements ContextualCardLoader.CardContentLo
         if (!mIsFirstLaunch) {
             onContextualCardUpdated(cardsToKeep.stream()
                     .collect(groupingBy(ContextualCard::getCardType)));
+            ContextualCardSnapshot.save(mContext, cardsToKeep);
             metricsFeatureProvider.action(mContext,
                     SettingsEnums.ACTION_CONTEXTUAL_CARD_SHOW,
                     ContextualCardLogUtils.buildCardListLog(cardsToKeep));
@@ -250,9 +286,12 @@ public class ContextualCardManager implements ContextualCardLoader.CardContentLo
         }
 
         final long timeoutLimit = getCardLoaderTimeout();
-        if (loadTime <= timeoutLimit) {
+        // Cards of the snapshot are on screen already, so replacing them doesn't move the page
+        // even if the load is slow.
+        if (loadTime <= timeoutLimit || mIsShowingSnapshot) {
             onContextualCardUpdated(cards.stream()
                     .collect(groupingBy(ContextualCard::getCardType)));
+            ContextualCardSnapshot.save(mContext, cards);
             metricsFeatureProvider.action(mContext,
                     SettingsEnums.ACTION_CONTEXTUAL_CARD_SHOW,
                     ContextualCardLogUtils.buildCardListLog(cards));
@@ -269,6 +308,7 @@ public class ContextualCardManager implements ContextualCardLoader.CardContentLo
                 SettingsEnums.ACTION_CONTEXTUAL_HOME_SHOW, (int) totalTime);
 
         mIsFirstLaunch = false;
+        mIsShowingSnapshot = false;
     }
 
     @Override
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.homepage.contextualcards;
+
+import static com.android.settings.homepage.contextualcards.CardDatabaseHelper.DISPLAYED_CARD_TABLE;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import com.android.settings.homepage.contextualcards.CardDatabaseHelper.CardColumns;
+import com.android.settings.homepage.contextualcards.CardDatabaseHelper.DisplayedCardColumns;
+import com.android.settingslib.utils.ThreadUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps the contextual cards last displayed on the homepage, so that they can be shown right away
+ * while {@link ContextualCardLoader} refreshes them.
+ *
+ * <p>The slices of the cards hold actions that can't outlive the process, so they are only kept
+ * in memory. The card list itself is persisted in {@link CardDatabaseHelper} and shown without
+ * slice content after a process restart, until the renderers bind the slices.
+ */
+class ContextualCardSnapshot {
+
+    private static final String TAG = "ContextualCardSnapshot";
+
+    // Serializes the database writes, which always persist the latest published cards.
+    private static final Object sWriteLock = new Object();
+
+    // Never modified once published, so that the database writes don't hold the class lock.
+    private static List<ContextualCard> sCards;
+
+    private ContextualCardSnapshot() {
+    }
+
+    /**
+     * Returns the cards kept in memory including their slices, or null if there are none.
+     */
+    @Nullable
+    static List<ContextualCard> getCachedCards() {
+        final List<ContextualCard> cards = getPublishedCards();
+        return cards == null ? null : new ArrayList<>(cards);
+    }
+
+    /**
+     * Returns the cards last displayed, reading them from the database if they are not in memory.
+     */
+    @WorkerThread
+    static List<ContextualCard> load(Context context) {
+        final List<ContextualCard> cachedCards = getCachedCards();
+        if (cachedCards != null) {
+            return cachedCards;
+        }
+        final List<ContextualCard> cards = new ArrayList<>();
+        try (Cursor cursor = CardDatabaseHelper.getInstance(context).getReadableDatabase().query(
+                DISPLAYED_CARD_TABLE, null /* columns */, null /* selection */,
+                null /* selectionArgs */, null /* groupBy */, null /* having */,
+                DisplayedCardColumns.POSITION /* orderBy */)) {
+            final int largeCardIndex = cursor.getColumnIndex(DisplayedCardColumns.IS_LARGE_CARD);
+            final int inlineActionIndex =
+                    cursor.getColumnIndex(DisplayedCardColumns.HAS_INLINE_ACTION);
+            while (cursor.moveToNext()) {
+                cards.add(new ContextualCard(cursor).mutate()
+                        .setIsLargeCard(cursor.getInt(largeCardIndex) != 0)
+                        .setHasInlineAction(cursor.getInt(inlineActionIndex) != 0)
+                        .build());
+            }
+        } catch (SQLiteException e) {
+            Log.w(TAG, "Failed to load displayed cards", e);
+        }
+        return cards;
+    }
+
+    /**
+     * Records the cards displayed on the homepage and persists them in the background.
+     */
+    static void save(Context context, List<ContextualCard> cards) {
+        publish(Collections.unmodifiableList(new ArrayList<>(cards)));
+        ThreadUtils.postOnBackgroundThread(() -> write(context));
+    }
+
+    /**
+     * Removes a dismissed card from the snapshot and persists it in the background.
+     */
+    static void remove(Context context, String cardName) {
+        synchronized (ContextualCardSnapshot.class) {
+            if (sCards != null) {
+                final List<ContextualCard> cards = new ArrayList<>(sCards);
+                cards.removeIf(card -> card.getName().equals(cardName));
+                sCards = Collections.unmodifiableList(cards);
+            }
+        }
+        ThreadUtils.postOnBackgroundThread(() -> {
+            if (getPublishedCards() != null) {
+                write(context);
+                return;
+            }
+            // Nothing was displayed in this process, so only the persisted card is removed.
+            CardDatabaseHelper.getInstance(context).getWritableDatabase().delete(
+                    DISPLAYED_CARD_TABLE, CardColumns.NAME + "=?", new String[]{cardName});
+        });
+    }
+
+    @VisibleForTesting
+    static synchronized void clearCache() {
+        sCards = null;
+    }
+
+    private static synchronized List<ContextualCard> getPublishedCards() {
+        return sCards;
+    }
+
+    private static synchronized void publish(List<ContextualCard> cards) {
+        sCards = cards;
+    }
+
+    @WorkerThread
+    private static void write(Context context) {
+        synchronized (sWriteLock) {
+            final List<ContextualCard> cards = getPublishedCards();
+            if (cards != null) {
+                writeCards(context, cards);
+            }
+        }
+    }
+
+    @WorkerThread
+    private static void writeCards(Context context, List<ContextualCard> cards) {
+        final SQLiteDatabase db = CardDatabaseHelper.getInstance(context).getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(DISPLAYED_CARD_TABLE, null /* whereClause */, null /* whereArgs */);
+            for (int i = 0; i < cards.size(); i++) {
+                final ContextualCard card = cards.get(i);
+                final ContentValues values = new ContentValues();
+                values.put(CardColumns.NAME, card.getName());
+                values.put(CardColumns.TYPE, card.getCardType());
+                values.put(CardColumns.SCORE, card.getRankingScore());
+                values.put(CardColumns.SLICE_URI, card.getTextSliceUri());
+                values.put(CardColumns.CATEGORY, card.getCategory());
+                values.put(CardColumns.PACKAGE_NAME,
+                        card.getPackageName() == null ? "" : card.getPackageName());
+                values.put(CardColumns.APP_VERSION, card.getAppVersion());
+                values.put(DisplayedCardColumns.POSITION, i);
+                values.put(DisplayedCardColumns.IS_LARGE_CARD, card.isLargeCard() ? 1 : 0);
+                values.put(DisplayedCardColumns.HAS_INLINE_ACTION, card.hasInlineAction() ? 1 : 0);
+                db.insertWithOnConflict(DISPLAYED_CARD_TABLE, null /* nullColumnHack */, values,
+                        SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        } catch (SQLiteException e) {
+            Log.w(TAG, "Failed to save displayed cards", e);
+        } finally {
+            db.endTransaction();
+        }
+    }
+}
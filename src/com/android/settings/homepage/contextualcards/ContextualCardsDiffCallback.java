@@ -63,6 +63,13 @@ public class ContextualCardsDiffCallback extends DiffUtil.Callback {
                 || newCard.hasInlineAction()) {
             return false;
         }
-        return mOldCards.get(oldCardPosition).equals(newCard);
+        final ContextualCard oldCard = mOldCards.get(oldCardPosition);
+        // Cards restored from the snapshot may have no slice yet or a different view type, they
+        // need to be rebound with the refreshed card.
+        if (oldCard.getViewType() != newCard.getViewType()
+                || (oldCard.getSlice() == null && newCard.getSlice() != null)) {
+            return false;
+        }
+        return oldCard.equals(newCard);
     }
 }
\ No newline at end of file
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.search;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.text.TextUtils;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps the fingerprints of the search indexable data last returned to each indexer for each
+ * provider, so that providers whose data didn't change can be skipped in delta queries.
+ *
+ * <p>The fingerprints are kept per calling package, as each indexer only knows the data it was
+ * given itself. All fingerprints are dropped when the build or the locales change.
+ */
+public class SearchIndexableFingerprints {
+
+    /** Fingerprint type of the xml resources. */
+    public static final String TYPE_XML_RESOURCES = "xml";
+    /** Fingerprint type of the raw data. */
+    public static final String TYPE_RAW_DATA = "raw";
+    /** Fingerprint type of the non-indexable keys. */
+    public static final String TYPE_NON_INDEXABLE_KEYS = "nik";
+
+    private static final String PREFS_NAME = "search_indexable_fingerprints";
+    private static final String KEY_STATE = "state";
+
+    private final Context mContext;
+    private final SharedPreferences mPrefs;
+
+    public SearchIndexableFingerprints(Context context) {
+        mContext = context;
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Returns whether a fingerprint was recorded for the provider and the caller since the
+     * build and the locales last changed.
+     */
+    public synchronized boolean contains(String caller, String type, String className) {
+        checkState();
+        return mPrefs.contains(getKey(caller, type, className));
+    }
+
+    /**
+     * Records the fingerprint of the rows emitted by a provider to the caller.
+     *
+     * @return true if the rows differ from the ones last recorded for the provider and the caller
+     */
+    public synchronized boolean update(String caller, String type, String className,
+            List<Object[]> rows) {
+        checkState();
+        final String key = getKey(caller, type, className);
+        final int fingerprint = Arrays.deepHashCode(rows.toArray());
+        if (mPrefs.contains(key) && mPrefs.getInt(key, 0) == fingerprint) {
+            return false;
+        }
+        mPrefs.edit().putInt(key, fingerprint).apply();
+        return true;
+    }
+
+    private static String getKey(String caller, String type, String className) {
+        return caller + "|" + type + ":" + className;
+    }
+
+    private void checkState() {
+        final String state = Build.FINGERPRINT + "/"
+                + mContext.getResources().getConfiguration().getLocales().toLanguageTags();
+        if (!TextUtils.equals(mPrefs.getString(KEY_STATE, null), state)) {
+            mPrefs.edit().clear().putString(KEY_STATE, state).apply();
+        }
+    }
+}
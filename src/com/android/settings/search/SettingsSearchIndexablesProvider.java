@@ -50,6 +50,8 @@ import android.content.Context;
 import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
 import android.provider.SearchIndexableResource;
 import android.provider.SearchIndexablesContract;
 import android.provider.SearchIndexablesProvider;
@@ -79,8 +81,17 @@ import com.android.settingslib.search.SearchIndexableRaw;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
 
@@ -93,13 +104,39 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
     public static final String SYSPROP_CRASH_ON_ERROR =
             "debug.com.android.settings.search.crash_on_error";
 
+    /**
+     * Boolean query parameter requesting a delta query, which skips the providers whose data is
+     * unchanged since the last delta query of the same caller.
+     */
+    public static final String QUERY_PARAMETER_DELTA = "delta";
+
+    /**
+     * Cursor extra listing the class names of the providers skipped by a delta query.
+     */
+    public static final String EXTRA_UNCHANGED_CLASSES = "unchanged_classes";
+
     private static final String TAG = "SettingsSearchProvider";
 
     private static final Collection<String> INVALID_KEYS;
 
+    private static final long PROVIDER_TIMEOUT_MS = 5000L;
+    private static final long EXECUTOR_KEEP_ALIVE_SECONDS = 10L;
+    private static final int SLOWEST_PROVIDERS_TO_LOG = 5;
+
+    // Shared by all non-indexable key queries, idle threads are released after a while.
+    private static ExecutorService sNonIndexableKeysExecutor;
+
     // Search enabled states for injection (key: category key, value: search enabled)
     private Map<String, Boolean> mSearchEnabledByCategoryKeyMap;
 
+    // Whether the provider methods whose data only depends on the build are inherited from
+    // BaseSearchIndexProvider, keyed by the provider class and the method name.
+    private static final Map<String, Boolean> sInheritedMethods = new ConcurrentHashMap<>();
+
+    private final ThreadLocal<Boolean> mDeltaQuery = ThreadLocal.withInitial(() -> false);
+    private final ThreadLocal<String> mCaller = new ThreadLocal<>();
+    private SearchIndexableFingerprints mFingerprints;
+
     static {
         INVALID_KEYS = new ArraySet<>();
         INVALID_KEYS.add(null);
@@ -112,24 +149,52 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
         return true;
     }
 
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+            String sortOrder) {
+        mDeltaQuery.set(uri.getBooleanQueryParameter(QUERY_PARAMETER_DELTA, false));
+        mCaller.set(getCaller());
+        try {
+            return super.query(uri, projection, selection, selectionArgs, sortOrder);
+        } finally {
+            mDeltaQuery.remove();
+            mCaller.remove();
+        }
+    }
+
+    @VisibleForTesting
+    String getCaller() {
+        final String callingPackage = getCallingPackage();
+        return callingPackage != null ? callingPackage : "";
+    }
+
     @Override
     public Cursor queryXmlResources(String[] projection) {
-        final MatrixCursor cursor = new MatrixCursor(INDEXABLES_XML_RES_COLUMNS);
-        final List<SearchIndexableResource> resources =
+        final Map<String, List<Object[]>> rowsByClass = new LinkedHashMap<>();
+        final Map<String, List<SearchIndexableResource>> resources =
                 getSearchIndexableResourcesFromProvider(getContext());
-        for (SearchIndexableResource val : resources) {
-            final Object[] ref = new Object[INDEXABLES_XML_RES_COLUMNS.length];
-            ref[COLUMN_INDEX_XML_RES_RANK] = val.rank;
-            ref[COLUMN_INDEX_XML_RES_RESID] = val.xmlResId;
-            ref[COLUMN_INDEX_XML_RES_CLASS_NAME] = val.className;
-            ref[COLUMN_INDEX_XML_RES_ICON_RESID] = val.iconResId;
-            ref[COLUMN_INDEX_XML_RES_INTENT_ACTION] = val.intentAction;
-            ref[COLUMN_INDEX_XML_RES_INTENT_TARGET_PACKAGE] = val.intentTargetPackage;
-            ref[COLUMN_INDEX_XML_RES_INTENT_TARGET_CLASS] = null; // intent target class
-            cursor.addRow(ref);
+        for (Map.Entry<String, List<SearchIndexableResource>> entry : resources.entrySet()) {
+            if (entry.getValue() == null) {
+                rowsByClass.put(entry.getKey(), null);
+                continue;
+            }
+            final List<Object[]> rows = new ArrayList<>();
+            for (SearchIndexableResource val : entry.getValue()) {
+                final Object[] ref = new Object[INDEXABLES_XML_RES_COLUMNS.length];
+                ref[COLUMN_INDEX_XML_RES_RANK] = val.rank;
+                ref[COLUMN_INDEX_XML_RES_RESID] = val.xmlResId;
+                ref[COLUMN_INDEX_XML_RES_CLASS_NAME] = val.className;
+                ref[COLUMN_INDEX_XML_RES_ICON_RESID] = val.iconResId;
+                ref[COLUMN_INDEX_XML_RES_INTENT_ACTION] = val.intentAction;
+                ref[COLUMN_INDEX_XML_RES_INTENT_TARGET_PACKAGE] = val.intentTargetPackage;
+                ref[COLUMN_INDEX_XML_RES_INTENT_TARGET_CLASS] = null; // intent target class
+                rows.add(ref);
+            }
+            rowsByClass.put(entry.getKey(), rows);
         }
 
-        return cursor;
+        return createCursor(INDEXABLES_XML_RES_COLUMNS,
+                SearchIndexableFingerprints.TYPE_XML_RESOURCES, rowsByClass);
     }
 
     /**
@@ -137,13 +202,23 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
      */
     @Override
     public Cursor queryRawData(String[] projection) {
-        final MatrixCursor cursor = new MatrixCursor(INDEXABLES_RAW_COLUMNS);
-        final List<SearchIndexableRaw> raws = getSearchIndexableRawFromProvider(getContext());
-        for (SearchIndexableRaw val : raws) {
-            cursor.addRow(createIndexableRawColumnObjects(val));
+        final Map<String, List<Object[]>> rowsByClass = new LinkedHashMap<>();
+        final Map<String, List<SearchIndexableRaw>> raws =
+                getSearchIndexableRawFromProvider(getContext());
+        for (Map.Entry<String, List<SearchIndexableRaw>> entry : raws.entrySet()) {
+            if (entry.getValue() == null) {
+                rowsByClass.put(entry.getKey(), null);
+                continue;
+            }
+            final List<Object[]> rows = new ArrayList<>();
+            for (SearchIndexableRaw val : entry.getValue()) {
+                rows.add(createIndexableRawColumnObjects(val));
+            }
+            rowsByClass.put(entry.getKey(), rows);
         }
 
-        return cursor;
+        return createCursor(INDEXABLES_RAW_COLUMNS, SearchIndexableFingerprints.TYPE_RAW_DATA,
+                rowsByClass);
     }
 
     /**
@@ -153,17 +228,67 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
      */
     @Override
     public Cursor queryNonIndexableKeys(String[] projection) {
-        final MatrixCursor cursor = new MatrixCursor(NON_INDEXABLES_KEYS_COLUMNS);
-        final List<String> nonIndexableKeys = getNonIndexableKeysFromProvider(getContext());
-        for (String nik : nonIndexableKeys) {
-            final Object[] ref = new Object[NON_INDEXABLES_KEYS_COLUMNS.length];
-            ref[COLUMN_INDEX_NON_INDEXABLE_KEYS_KEY_VALUE] = nik;
-            cursor.addRow(ref);
+        final Map<String, List<Object[]>> rowsByClass = new LinkedHashMap<>();
+        final Map<String, List<String>> nonIndexableKeys =
+                getNonIndexableKeysFromProvider(getContext());
+        for (Map.Entry<String, List<String>> entry : nonIndexableKeys.entrySet()) {
+            final List<Object[]> rows = new ArrayList<>();
+            for (String nik : entry.getValue()) {
+                final Object[] ref = new Object[NON_INDEXABLES_KEYS_COLUMNS.length];
+                ref[COLUMN_INDEX_NON_INDEXABLE_KEYS_KEY_VALUE] = nik;
+                rows.add(ref);
+            }
+            rowsByClass.put(entry.getKey(), rows);
+        }
+
+        return createCursor(NON_INDEXABLES_KEYS_COLUMNS,
+                SearchIndexableFingerprints.TYPE_NON_INDEXABLE_KEYS, rowsByClass);
+    }
+
+    /**
+     * Creates a cursor of the rows emitted by each provider. For a delta query, the fingerprints
+     * of the rows are recorded for the caller, the rows of the providers whose fingerprint is
+     * unchanged since the last delta query of the caller are skipped, and the class names of
+     * those providers are listed in the {@link #EXTRA_UNCHANGED_CLASSES} extra of the cursor.
+     * The rows of a provider are null when the provider was skipped without being queried.
+     */
+    private Cursor createCursor(String[] columns, String type,
+            Map<String, List<Object[]>> rowsByClass) {
+        final MatrixCursor cursor = new MatrixCursor(columns);
+        final boolean deltaQuery = mDeltaQuery.get();
+        final ArrayList<String> unchangedClasses = new ArrayList<>();
+        final SearchIndexableFingerprints fingerprints = getFingerprints();
+        for (Map.Entry<String, List<Object[]>> entry : rowsByClass.entrySet()) {
+            final List<Object[]> rows = entry.getValue();
+            if (deltaQuery && (rows == null
+                    || !fingerprints.update(mCaller.get(), type, entry.getKey(), rows))) {
+                unchangedClasses.add(entry.getKey());
+                continue;
+            }
+            for (Object[] row : rows) {
+                cursor.addRow(row);
+            }
+        }
+        if (deltaQuery) {
+            if (DEBUG) {
+                Log.d(TAG, "Delta query " + type + ", unchanged providers "
+                        + unchangedClasses.size() + "/" + rowsByClass.size());
+            }
+            final Bundle extras = new Bundle();
+            extras.putStringArrayList(EXTRA_UNCHANGED_CLASSES, unchangedClasses);
+            cursor.setExtras(extras);
         }
 
         return cursor;
     }
 
+    private synchronized SearchIndexableFingerprints getFingerprints() {
+        if (mFingerprints == null) {
+            mFingerprints = new SearchIndexableFingerprints(getContext());
+        }
+        return mFingerprints;
+    }
+
     /**
      * Gets a Cursor of dynamic Raw data similar to queryRawData. We use those data in search query
      * time
@@ -270,68 +395,134 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
         return cursor;
     }
 
-    private List<String> getNonIndexableKeysFromProvider(Context context) {
+    /**
+     * Gets the non-indexable keys of every provider. The providers are queried concurrently, as
+     * each of them instantiates its controllers and checks their availability, which often
+     * involves binder calls. A provider that fails or times out doesn't affect the others.
+     */
+    private Map<String, List<String>> getNonIndexableKeysFromProvider(Context context) {
         final Collection<SearchIndexableData> bundles = FeatureFactory.getFactory(context)
                 .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
 
-        final List<String> nonIndexableKeys = new ArrayList<>();
-
+        final Map<SearchIndexableData, Future<List<String>>> futures = new LinkedHashMap<>();
+        final Map<String, Long> latencies = new ConcurrentHashMap<>();
         for (SearchIndexableData bundle : bundles) {
-            final long startTime = System.currentTimeMillis();
-            Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
+            final String className = bundle.getTargetClass().getName();
+            futures.put(bundle, getNonIndexableKeysExecutor().submit(() -> {
+                final long startTime = System.currentTimeMillis();
+                try {
+                    return bundle.getSearchIndexProvider().getNonIndexableKeys(context);
+                } finally {
+                    latencies.put(className, System.currentTimeMillis() - startTime);
+                }
+            }));
+        }
+
+        // A single deadline for all the providers, as the later ones may have been queued
+        // behind the slow ones.
+        final long deadline = SystemClock.elapsedRealtime() + PROVIDER_TIMEOUT_MS;
+        final Map<String, List<String>> nonIndexableKeys = new LinkedHashMap<>();
+        for (Map.Entry<SearchIndexableData, Future<List<String>>> entry : futures.entrySet()) {
+            final Indexable.SearchIndexProvider provider = entry.getKey().getSearchIndexProvider();
+            final String className = entry.getKey().getTargetClass().getName();
             List<String> providerNonIndexableKeys;
             try {
-                providerNonIndexableKeys = provider.getNonIndexableKeys(context);
-            } catch (Exception e) {
-                // Catch a generic crash. In the absence of the catch, the background thread will
-                // silently fail anyway, so we aren't losing information by catching the exception.
-                // We crash when the system property exists so that we can test if crashes need to
-                // be fixed.
-                // The gain is that if there is a crash in a specific controller, we don't lose all
-                // non-indexable keys, but we can still find specific crashes in development.
-                if (System.getProperty(SYSPROP_CRASH_ON_ERROR) != null) {
-                    throw new RuntimeException(e);
-                }
-                Log.e(TAG, "Error trying to get non-indexable keys from: "
-                        + bundle.getTargetClass().getName(), e);
+                providerNonIndexableKeys = entry.getValue().get(
+                        Math.max(0, deadline - SystemClock.elapsedRealtime()),
+                        TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                onNonIndexableKeysError(className, e.getCause());
                 continue;
+            } catch (TimeoutException e) {
+                // Don't drop the keys of the provider, or its preferences would show up in
+                // search. Get them on the calling thread instead, which doesn't wait for the
+                // queued providers.
+                Log.w(TAG, "Timed out getting non-indexable keys from: " + className
+                        + ", getting them on the calling thread");
+                entry.getValue().cancel(true /* mayInterruptIfRunning */);
+                try {
+                    providerNonIndexableKeys = provider.getNonIndexableKeys(context);
+                } catch (Exception providerException) {
+                    onNonIndexableKeysError(className, providerException);
+                    continue;
+                }
+            } catch (InterruptedException e) {
+                Log.w(TAG, "Interrupted getting non-indexable keys from: " + className);
+                Thread.currentThread().interrupt();
+                break;
             }
 
             if (providerNonIndexableKeys == null || providerNonIndexableKeys.isEmpty()) {
-                if (DEBUG) {
-                    final long totalTime = System.currentTimeMillis() - startTime;
-                    Log.d(TAG, "No indexable, total time " + totalTime);
-                }
+                addAll(nonIndexableKeys, className, new ArrayList<>());
                 continue;
             }
 
             if (providerNonIndexableKeys.removeAll(INVALID_KEYS)) {
-                Log.v(TAG, provider + " tried to add an empty non-indexable key");
-            }
-
-            if (DEBUG) {
-                final long totalTime = System.currentTimeMillis() - startTime;
-                Log.d(TAG, "Non-indexables " + providerNonIndexableKeys.size() + ", total time "
-                        + totalTime);
+                Log.v(TAG, className + " tried to add an empty non-indexable key");
             }
 
-            nonIndexableKeys.addAll(providerNonIndexableKeys);
+            addAll(nonIndexableKeys, className, providerNonIndexableKeys);
+        }
+        if (Log.isLoggable(TAG, Log.DEBUG)) {
+            logSlowestProviders(latencies);
         }
 
         return nonIndexableKeys;
     }
 
-    private List<SearchIndexableResource> getSearchIndexableResourcesFromProvider(Context context) {
+    private static void onNonIndexableKeysError(String className, Throwable cause) {
+        // Catch a generic crash. In the absence of the catch, the background thread will
+        // silently fail anyway, so we aren't losing information by catching the exception.
+        // We crash when the system property exists so that we can test if crashes need to
+        // be fixed.
+        // The gain is that if there is a crash in a specific controller, we don't lose all
+        // non-indexable keys, but we can still find specific crashes in development.
+        if (System.getProperty(SYSPROP_CRASH_ON_ERROR) != null) {
+            throw new RuntimeException(cause);
+        }
+        Log.e(TAG, "Error trying to get non-indexable keys from: " + className, cause);
+    }
+
+    private static void logSlowestProviders(Map<String, Long> latencies) {
+        final List<Map.Entry<String, Long>> entries = new ArrayList<>(latencies.entrySet());
+        entries.sort((e1, e2) -> Long.compare(e2.getValue(), e1.getValue()));
+        final StringBuilder builder = new StringBuilder("Slowest non-indexable key providers:");
+        for (int i = 0; i < Math.min(SLOWEST_PROVIDERS_TO_LOG, entries.size()); i++) {
+            builder.append("\n  ").append(entries.get(i).getKey())
+                    .append(": ").append(entries.get(i).getValue()).append("ms");
+        }
+        Log.d(TAG, builder.toString());
+    }
+
+    private static synchronized ExecutorService getNonIndexableKeysExecutor() {
+        if (sNonIndexableKeysExecutor == null) {
+            final int threads = Runtime.getRuntime().availableProcessors();
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                    EXECUTOR_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+            executor.allowCoreThreadTimeOut(true);
+            sNonIndexableKeysExecutor = executor;
+        }
+        return sNonIndexableKeysExecutor;
+    }
+
+    private Map<String, List<SearchIndexableResource>> getSearchIndexableResourcesFromProvider(
+            Context context) {
         final Collection<SearchIndexableData> bundles = FeatureFactory.getFactory(context)
                 .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
-        List<SearchIndexableResource> resourceList = new ArrayList<>();
+        final Map<String, List<SearchIndexableResource>> resourceList = new LinkedHashMap<>();
 
         for (SearchIndexableData bundle : bundles) {
             Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
+            if (isUnchangedSinceLastDeltaQuery(provider, "getXmlResourcesToIndex",
+                    SearchIndexableFingerprints.TYPE_XML_RESOURCES, bundle.getTargetClass())) {
+                resourceList.putIfAbsent(bundle.getTargetClass().getName(), null);
+                continue;
+            }
             final List<SearchIndexableResource> resList =
                     provider.getXmlResourcesToIndex(context, true);
 
             if (resList == null) {
+                addAll(resourceList, bundle.getTargetClass().getName(), new ArrayList<>());
                 continue;
             }
 
@@ -341,23 +532,30 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
                         : item.className;
             }
 
-            resourceList.addAll(resList);
+            addAll(resourceList, bundle.getTargetClass().getName(), resList);
         }
 
         return resourceList;
     }
 
-    private List<SearchIndexableRaw> getSearchIndexableRawFromProvider(Context context) {
+    private Map<String, List<SearchIndexableRaw>> getSearchIndexableRawFromProvider(
+            Context context) {
         final Collection<SearchIndexableData> bundles = FeatureFactory.getFactory(context)
                 .getSearchFeatureProvider().getSearchIndexableResources().getProviderValues();
-        final List<SearchIndexableRaw> rawList = new ArrayList<>();
+        final Map<String, List<SearchIndexableRaw>> rawList = new LinkedHashMap<>();
 
         for (SearchIndexableData bundle : bundles) {
             Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
+            if (isUnchangedSinceLastDeltaQuery(provider, "getRawDataToIndex",
+                    SearchIndexableFingerprints.TYPE_RAW_DATA, bundle.getTargetClass())) {
+                rawList.putIfAbsent(bundle.getTargetClass().getName(), null);
+                continue;
+            }
             final List<SearchIndexableRaw> providerRaws = provider.getRawDataToIndex(context,
                     true /* enabled */);
 
             if (providerRaws == null) {
+                addAll(rawList, bundle.getTargetClass().getName(), new ArrayList<>());
                 continue;
             }
 
@@ -366,12 +564,46 @@ public class SettingsSearchIndexablesProvider extends SearchIndexablesProvider {
                 // This will be more clear when provider conversion is done at PreIndex time.
                 raw.className = bundle.getTargetClass().getName();
             }
-            rawList.addAll(providerRaws);
+            addAll(rawList, bundle.getTargetClass().getName(), providerRaws);
         }
 
         return rawList;
     }
 
+    /**
+     * Returns whether the data of the provider doesn't need to be computed for the current delta
+     * query. This is the case when the provider inherits the method from
+     * {@link BaseSearchIndexProvider}, so that its data only depends on the build and the locales,
+     * and the caller was already given the data since those last changed.
+     */
+    private boolean isUnchangedSinceLastDeltaQuery(Indexable.SearchIndexProvider provider,
+            String methodName, String type, Class<?> targetClass) {
+        if (!mDeltaQuery.get() || !(provider instanceof BaseSearchIndexProvider)) {
+            return false;
+        }
+        final Class<?> providerClass = provider.getClass();
+        final boolean inherited = sInheritedMethods.computeIfAbsent(
+                providerClass.getName() + "#" + methodName, key -> {
+                    try {
+                        return providerClass.getMethod(methodName, Context.class, boolean.class)
+                                .getDeclaringClass() == BaseSearchIndexProvider.class;
+                    } catch (NoSuchMethodException e) {
+                        return false;
+                    }
+                });
+        return inherited
+                && getFingerprints().contains(mCaller.get(), type, targetClass.getName());
+    }
+
+    private static <T> void addAll(Map<String, List<T>> map, String className, List<T> values) {
+        List<T> list = map.get(className);
+        if (list == null) {
+            list = new ArrayList<>();
+            map.put(className, list);
+        }
+        list.addAll(values);
+    }
+
     private List<SearchIndexableRaw> getDynamicSearchIndexableRawData(Context context,
             SearchIndexableData bundle) {
         final Indexable.SearchIndexProvider provider = bundle.getSearchIndexProvider();
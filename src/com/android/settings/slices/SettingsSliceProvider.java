@@ -212,6 +212,7 @@ public class SettingsSliceProvider extends SliceProvider {
                 Log.e(TAG, "Requested blocked slice with Uri: " + sliceUri);
                 return null;
             }
+            SliceBackgroundWorker.onSliceBound(sliceUri);
 
             final boolean nightMode = Utils.isNightMode(getContext());
             if (mNightMode == null) {
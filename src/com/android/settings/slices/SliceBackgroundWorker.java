@@ -27,15 +27,21 @@ import android.os.Message;
 import android.os.Process;
 import android.os.SystemClock;
 import android.util.ArrayMap;
+import android.util.ArraySet;
 import android.util.Log;
 
+import androidx.annotation.VisibleForTesting;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
 import java.io.Closeable;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * The Slice background worker is used to make Settings Slices be able to work with data that is
@@ -185,16 +191,122 @@ public abstract class SliceBackgroundWorker<E> implements Closeable {
         NotifySliceChangeHandler.getInstance().cancelSliceUpdate(this);
     }
 
+    /**
+     * Called when the Slice is bound, used to adapt the update throttling to the bind rate of the
+     * pinning client.
+     */
+    static void onSliceBound(Uri uri) {
+        if (getInstance(uri) != null) {
+            NotifySliceChangeHandler.getInstance().onSliceBound(uri);
+        }
+    }
+
+    /**
+     * Dumps the counts of queued, coalesced and dropped Slice updates of all workers.
+     */
+    public static JSONObject dumpUpdateStats() throws JSONException {
+        return NotifySliceChangeHandler.getInstance().dumpStats();
+    }
+
+    /**
+     * Throttles the updates of each {@link Uri} to the rate at which the pinning client binds the
+     * Slice on its own. A client binding slower than the default throttle interval won't pick up
+     * more frequent updates anyway. Not thread safe, and the times are in uptime millis.
+     */
+    @VisibleForTesting
+    static class UpdateThrottle {
+
+        @VisibleForTesting
+        static final long MAX_THROTTLE_INTERVAL = 1000L;
+
+        private final Map<Uri, Long> mLastUpdateTimeLookup = new ArrayMap<>();
+        private final Map<Uri, Long> mLastBindTimeLookup = new ArrayMap<>();
+        // Smoothed interval between two binds of the client which weren't caused by an update
+        private final Map<Uri, Long> mBindIntervalLookup = new ArrayMap<>();
+        // The Uris notified since their last bind, whose next bind is caused by the update
+        private final Set<Uri> mNotifiedUris = new ArraySet<>();
+
+        /** Returns the time at which an update of the {@link Uri} requested now is due. */
+        long getDueTime(Uri uri, long now) {
+            final Long lastUpdateTime = mLastUpdateTimeLookup.get(uri);
+            if (lastUpdateTime == null) {
+                // Postpone the first update triggering by onSlicePinned() to avoid being too close
+                // to the first Slice bind.
+                return now + getThrottleInterval(uri);
+            }
+            return Math.max(now, lastUpdateTime + getThrottleInterval(uri));
+        }
+
+        /** Called when the {@link Uri} is notified of an update. */
+        void onUpdateNotified(Uri uri, long now) {
+            mLastUpdateTimeLookup.put(uri, now);
+            mNotifiedUris.add(uri);
+        }
+
+        /** Called when the Slice of the {@link Uri} is bound. */
+        void onSliceBound(Uri uri, long now) {
+            if (mNotifiedUris.remove(uri)) {
+                // The client rebinds because of our update, which tells nothing of its own rate.
+                return;
+            }
+            final Long lastBindTime = mLastBindTimeLookup.put(uri, now);
+            if (lastBindTime == null) {
+                return;
+            }
+            final long interval = now - lastBindTime;
+            if (interval > MAX_THROTTLE_INTERVAL) {
+                // The client was idle rather than binding slowly.
+                return;
+            }
+            final long sample = Math.max(interval, SLICE_UPDATE_THROTTLE_INTERVAL);
+            final Long bindInterval = mBindIntervalLookup.get(uri);
+            mBindIntervalLookup.put(uri,
+                    bindInterval == null ? sample : (bindInterval * 3 + sample) / 4);
+        }
+
+        /** Returns the min interval between two updates of the {@link Uri}. */
+        long getThrottleInterval(Uri uri) {
+            final Long bindInterval = mBindIntervalLookup.get(uri);
+            if (bindInterval == null) {
+                return SLICE_UPDATE_THROTTLE_INTERVAL;
+            }
+            return Math.min(Math.max(bindInterval, SLICE_UPDATE_THROTTLE_INTERVAL),
+                    MAX_THROTTLE_INTERVAL);
+        }
+
+        /** Forgets the {@link Uri}, as it is unpinned. */
+        void remove(Uri uri) {
+            mLastUpdateTimeLookup.remove(uri);
+            mLastBindTimeLookup.remove(uri);
+            mBindIntervalLookup.remove(uri);
+            mNotifiedUris.remove(uri);
+        }
+    }
+
+    /**
+     * Notifies the Slice changes of all live workers. Updates are throttled per {@link Uri} and
+     * the updates that are due within a short window of each other are flushed together.
+     */
     private static class NotifySliceChangeHandler extends Handler {
 
-        private static final int MSG_UPDATE_SLICE = 1000;
+        private static final int MSG_FLUSH_UPDATES = 1000;
+
+        // Updates due within this window of the earliest one are flushed in the same batch.
+        private static final long BATCH_WINDOW = 16L;
 
         private static NotifySliceChangeHandler sHandler;
 
-        private final Map<Uri, Long> mLastUpdateTimeLookup = Collections.synchronizedMap(
-                new ArrayMap<>());
+        // Workers waiting to notify (key: worker, value: due time in uptime millis)
+        private final ArrayMap<SliceBackgroundWorker, Long> mPendingUpdates = new ArrayMap<>();
+        private final UpdateThrottle mThrottle = new UpdateThrottle();
 
-        private static NotifySliceChangeHandler getInstance() {
+        private long mScheduledFlushTime;
+        private long mQueuedCount;
+        private long mCoalescedCount;
+        private long mDroppedCount;
+        private long mFlushCount;
+
+        private static synchronized NotifySliceChangeHandler getInstance() {
             if (sHandler == null) {
                 final HandlerThread workerThread = new HandlerThread("NotifySliceChangeHandler",
                         Process.THREAD_PRIORITY_BACKGROUND);
@@ -210,39 +322,82 @@ public abstract class SliceBackgroundWorker<E> implements Closeable {
 
         @Override
         public void handleMessage(Message msg) {
-            if (msg.what != MSG_UPDATE_SLICE) {
+            if (msg.what != MSG_FLUSH_UPDATES) {
                 return;
             }
 
-            final SliceBackgroundWorker worker = (SliceBackgroundWorker) msg.obj;
-            final Uri uri = worker.getUri();
-            final Context context = worker.getContext();
-            mLastUpdateTimeLookup.put(uri, SystemClock.uptimeMillis());
-            context.getContentResolver().notifyChange(uri, null);
+            final long now = SystemClock.uptimeMillis();
+            final List<SliceBackgroundWorker> dueWorkers = new ArrayList<>();
+            synchronized (this) {
+                mScheduledFlushTime = 0L;
+                for (int i = mPendingUpdates.size() - 1; i >= 0; i--) {
+                    // Also take the updates due shortly after into this batch.
+                    if (mPendingUpdates.valueAt(i) <= now + BATCH_WINDOW) {
+                        final SliceBackgroundWorker worker = mPendingUpdates.keyAt(i);
+                        mPendingUpdates.removeAt(i);
+                        mThrottle.onUpdateNotified(worker.getUri(), now);
+                        dueWorkers.add(worker);
+                    }
+                }
+                mFlushCount++;
+                scheduleFlushLocked();
+            }
+
+            for (SliceBackgroundWorker worker : dueWorkers) {
+                worker.getContext().getContentResolver().notifyChange(worker.getUri(), null);
+            }
         }
 
-        private void updateSlice(SliceBackgroundWorker worker) {
-            if (hasMessages(MSG_UPDATE_SLICE, worker)) {
+        private synchronized void updateSlice(SliceBackgroundWorker worker) {
+            if (mPendingUpdates.containsKey(worker)) {
+                mCoalescedCount++;
                 return;
             }
 
-            final Message message = obtainMessage(MSG_UPDATE_SLICE, worker);
-            final long lastUpdateTime = mLastUpdateTimeLookup.getOrDefault(worker.getUri(), 0L);
-            if (lastUpdateTime == 0L) {
-                // Postpone the first update triggering by onSlicePinned() to avoid being too close
-                // to the first Slice bind.
-                sendMessageDelayed(message, SLICE_UPDATE_THROTTLE_INTERVAL);
-            } else if (SystemClock.uptimeMillis() - lastUpdateTime
-                    > SLICE_UPDATE_THROTTLE_INTERVAL) {
-                sendMessage(message);
-            } else {
-                sendMessageAtTime(message, lastUpdateTime + SLICE_UPDATE_THROTTLE_INTERVAL);
+            mPendingUpdates.put(worker,
+                    mThrottle.getDueTime(worker.getUri(), SystemClock.uptimeMillis()));
+            mQueuedCount++;
+            scheduleFlushLocked();
+        }
+
+        private synchronized void cancelSliceUpdate(SliceBackgroundWorker worker) {
+            if (mPendingUpdates.remove(worker) != null) {
+                mDroppedCount++;
+                scheduleFlushLocked();
             }
+            mThrottle.remove(worker.getUri());
         }
 
-        private void cancelSliceUpdate(SliceBackgroundWorker worker) {
-            removeMessages(MSG_UPDATE_SLICE, worker);
-            mLastUpdateTimeLookup.remove(worker.getUri());
+        private synchronized void onSliceBound(Uri uri) {
+            mThrottle.onSliceBound(uri, SystemClock.uptimeMillis());
         }
-    };
+
+        private synchronized JSONObject dumpStats() throws JSONException {
+            final JSONObject obj = new JSONObject();
+            obj.put("pending", mPendingUpdates.size());
+            obj.put("queued", mQueuedCount);
+            obj.put("coalesced", mCoalescedCount);
+            obj.put("dropped", mDroppedCount);
+            obj.put("flushes", mFlushCount);
+            return obj;
+        }
+
+        private void scheduleFlushLocked() {
+            if (mPendingUpdates.isEmpty()) {
+                removeMessages(MSG_FLUSH_UPDATES);
+                mScheduledFlushTime = 0L;
+                return;
+            }
+            long flushTime = Long.MAX_VALUE;
+            for (int i = 0; i < mPendingUpdates.size(); i++) {
+                flushTime = Math.min(flushTime, mPendingUpdates.valueAt(i));
+            }
+            if (mScheduledFlushTime != 0L && mScheduledFlushTime <= flushTime) {
+                return;
+            }
+            removeMessages(MSG_FLUSH_UPDATES);
+            sendEmptyMessageAtTime(MSG_FLUSH_UPDATES, flushTime);
+            mScheduledFlushTime = flushTime;
+        }
+    }
 }
@@ -24,15 +24,22 @@ import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Binder;
 import android.text.TextUtils;
+import android.util.LruCache;
 import android.util.Pair;
 
+import androidx.annotation.VisibleForTesting;
 import androidx.slice.Slice;
 
 import com.android.settings.overlay.FeatureFactory;
 import com.android.settings.slices.SlicesDatabaseHelper.IndexColumns;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Class used to map a {@link Uri} from {@link SettingsSliceProvider} to a Slice.
@@ -53,6 +60,15 @@ public class SlicesDatabaseAccessor {
             IndexColumns.HIGHLIGHT_MENU_RESOURCE,
     };
 
+    // Max number of SliceData kept in memory, slices are re-bound by a handful of hosts.
+    private static final int CACHE_SIZE = 64;
+
+    // SliceData looked up from the database (key: uri or key, value: SliceData)
+    private static final LruCache<String, SliceData> sSliceDataCache = new LruCache<>(CACHE_SIZE);
+    private static final AtomicInteger sCacheGeneration = new AtomicInteger();
+    private static final AtomicLong sCacheHits = new AtomicLong();
+    private static final AtomicLong sCacheMisses = new AtomicLong();
+
     private final Context mContext;
     private final SlicesDatabaseHelper mHelper;
 
@@ -72,9 +88,18 @@ public class SlicesDatabaseAccessor {
         if (pathData == null) {
             throw new IllegalStateException("Invalid Slices uri: " + uri);
         }
+        verifyIndexing();
+        final String cacheKey = "uri:" + uri;
+        SliceData sliceData = getCachedSliceData(cacheKey);
+        if (sliceData != null) {
+            return sliceData;
+        }
+        final int generation = getCacheGeneration();
         try (Cursor cursor = getIndexedSliceData(pathData.second /* key */)) {
-            return buildSliceData(cursor, uri, pathData.first /* isIntentOnly */);
+            sliceData = buildSliceData(cursor, uri, pathData.first /* isIntentOnly */);
         }
+        putCachedSliceData(cacheKey, sliceData, generation);
+        return sliceData;
     }
 
     /**
@@ -83,8 +108,64 @@ public class SlicesDatabaseAccessor {
      * Used when handling the action of the {@link Slice}.
      */
     public SliceData getSliceDataFromKey(String key) {
+        verifyIndexing();
+        final String cacheKey = "key:" + key;
+        SliceData sliceData = getCachedSliceData(cacheKey);
+        if (sliceData != null) {
+            return sliceData;
+        }
+        final int generation = getCacheGeneration();
         try (Cursor cursor = getIndexedSliceData(key)) {
-            return buildSliceData(cursor, null /* uri */, false /* isIntentOnly */);
+            sliceData = buildSliceData(cursor, null /* uri */, false /* isIntentOnly */);
+        }
+        putCachedSliceData(cacheKey, sliceData, generation);
+        return sliceData;
+    }
+
+    /**
+     * Drops all cached {@link SliceData}. Must be called whenever the slices database changes.
+     */
+    public static void clearCache() {
+        synchronized (sSliceDataCache) {
+            sCacheGeneration.incrementAndGet();
+            sSliceDataCache.evictAll();
+        }
+    }
+
+    /**
+     * Dumps the hit and miss counts of the {@link SliceData} cache.
+     */
+    public static JSONObject dumpCacheStats() throws JSONException {
+        final JSONObject obj = new JSONObject();
+        obj.put("size", sSliceDataCache.size());
+        obj.put("hits", sCacheHits.get());
+        obj.put("misses", sCacheMisses.get());
+        return obj;
+    }
+
+    @VisibleForTesting
+    static int getCacheGeneration() {
+        return sCacheGeneration.get();
+    }
+
+    @VisibleForTesting
+    static SliceData getCachedSliceData(String cacheKey) {
+        final SliceData sliceData = sSliceDataCache.get(cacheKey);
+        if (sliceData != null) {
+            sCacheHits.incrementAndGet();
+        } else {
+            sCacheMisses.incrementAndGet();
+        }
+        return sliceData;
+    }
+
+    @VisibleForTesting
+    static void putCachedSliceData(String cacheKey, SliceData sliceData, int generation) {
+        synchronized (sSliceDataCache) {
+            // Skip data read before the database changed.
+            if (generation == sCacheGeneration.get()) {
+                sSliceDataCache.put(cacheKey, sliceData);
+            }
         }
     }
 
@@ -117,8 +198,6 @@ public class SlicesDatabaseAccessor {
     }
 
     private Cursor getIndexedSliceData(String path) {
-        verifyIndexing();
-
         final String whereClause = buildKeyMatchWhereClause();
         final SQLiteDatabase database = mHelper.getReadableDatabase();
         final String[] selection = new String[]{path};
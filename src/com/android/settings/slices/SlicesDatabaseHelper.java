@@ -17,6 +17,7 @@
 package com.android.settings.slices;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.os.Build;
@@ -24,6 +25,9 @@ import android.util.Log;
 
 import androidx.annotation.VisibleForTesting;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
 import java.util.Locale;
 
 /**
@@ -38,6 +42,11 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
 
     private static final int DATABASE_VERSION = 9;
 
+    private static final String PREF_KEY_INDEXING_TIME = "indexing_time_ms";
+    private static final String PREF_KEY_INDEXING_INSERTED = "indexing_inserted";
+    private static final String PREF_KEY_INDEXING_DELETED = "indexing_deleted";
+    private static final String PREF_KEY_INDEXING_UNCHANGED = "indexing_unchanged";
+
     public interface Tables {
         String TABLE_SLICES_INDEX = "slices_index";
     }
@@ -182,6 +191,7 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
                 .apply();
         dropTables(db);
         createDatabases(db);
+        SlicesDatabaseAccessor.clearCache();
     }
 
     /**
@@ -189,10 +199,51 @@ public class SlicesDatabaseHelper extends SQLiteOpenHelper {
      * a full index of the TABLE_SLICES_INDEX.
      */
     public void setIndexedState() {
+        // Drop the state of previous builds and locales, the data only reflects the current one.
+        mContext.getSharedPreferences(SHARED_PREFS_TAG, Context.MODE_PRIVATE)
+                .edit()
+                .clear()
+                .apply();
         setBuildIndexed();
         setLocaleIndexed();
     }
 
+    /**
+     * Records the stats of the last indexing of the TABLE_SLICES_INDEX.
+     */
+    public void setIndexingStats(long indexingTimeMs, int inserted, int deleted, int unchanged) {
+        mContext.getSharedPreferences(SHARED_PREFS_TAG, Context.MODE_PRIVATE)
+                .edit()
+                .putLong(PREF_KEY_INDEXING_TIME, indexingTimeMs)
+                .putInt(PREF_KEY_INDEXING_INSERTED, inserted)
+                .putInt(PREF_KEY_INDEXING_DELETED, deleted)
+                .putInt(PREF_KEY_INDEXING_UNCHANGED, unchanged)
+                .apply();
+    }
+
+    /**
+     * Returns the time in milliseconds the last indexing took, or -1 if unknown.
+     */
+    public long getIndexingTimeMs() {
+        return mContext.getSharedPreferences(SHARED_PREFS_TAG, Context.MODE_PRIVATE)
+                .getLong(PREF_KEY_INDEXING_TIME, -1L);
+    }
+
+    /**
+     * Dumps the stats of the last indexing.
+     */
+    public JSONObject dumpIndexingStats() throws JSONException {
+        final SharedPreferences prefs =
+                mContext.getSharedPreferences(SHARED_PREFS_TAG, Context.MODE_PRIVATE);
+        final JSONObject obj = new JSONObject();
+        obj.put("indexed", isSliceDataIndexed());
+        obj.put("time_ms", prefs.getLong(PREF_KEY_INDEXING_TIME, -1L));
+        obj.put("inserted", prefs.getInt(PREF_KEY_INDEXING_INSERTED, 0));
+        obj.put("deleted", prefs.getInt(PREF_KEY_INDEXING_DELETED, 0));
+        obj.put("unchanged", prefs.getInt(PREF_KEY_INDEXING_UNCHANGED, 0));
+        return obj;
+    }
+
     /**
      * Indicates if the indexed slice data reflects the current state of the phone.
      *
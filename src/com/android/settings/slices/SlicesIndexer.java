@@ -16,9 +16,12 @@
 
 package com.android.settings.slices;
 
-import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
+import android.util.ArrayMap;
 import android.util.Log;
 
 import androidx.annotation.VisibleForTesting;
@@ -29,7 +32,11 @@ import com.android.settings.overlay.FeatureFactory;
 import com.android.settings.slices.SlicesDatabaseHelper.IndexColumns;
 import com.android.settings.slices.SlicesDatabaseHelper.Tables;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Manages the conversion of {@link DashboardFragment} and {@link BasePreferenceController} to
@@ -39,6 +46,25 @@ class SlicesIndexer implements Runnable {
 
     private static final String TAG = "SlicesIndexer";
 
+    private static final String[] COLUMNS = {
+            IndexColumns.KEY,
+            IndexColumns.SLICE_URI,
+            IndexColumns.TITLE,
+            IndexColumns.SUMMARY,
+            IndexColumns.SCREENTITLE,
+            IndexColumns.KEYWORDS,
+            IndexColumns.ICON_RESOURCE,
+            IndexColumns.FRAGMENT,
+            IndexColumns.CONTROLLER,
+            IndexColumns.SLICE_TYPE,
+            IndexColumns.UNAVAILABLE_SLICE_SUBTITLE,
+            IndexColumns.PUBLIC_SLICE,
+            IndexColumns.HIGHLIGHT_MENU_RESOURCE};
+
+    private static final String INSERT_SQL = "INSERT INTO " + Tables.TABLE_SLICES_INDEX + " ("
+            + TextUtils.join(", ", COLUMNS) + ") VALUES ("
+            + TextUtils.join(", ", Collections.nCopies(COLUMNS.length, "?")) + ")";
+
     private Context mContext;
 
     private SlicesDatabaseHelper mHelper;
@@ -58,7 +84,8 @@ class SlicesIndexer implements Runnable {
 
     /**
      * Synchronously takes data obtained from {@link SliceDataConverter} and indexes it into a
-     * SQLite database
+     * SQLite database. Only the rows whose {@link SliceData} changed since the last indexing are
+     * rewritten.
      */
     protected void indexSliceData() {
         if (mHelper.isSliceDataIndexed()) {
@@ -71,18 +98,21 @@ class SlicesIndexer implements Runnable {
         long startTime = System.currentTimeMillis();
         database.beginTransaction();
         try {
-            mHelper.reconstruct(database);
             List<SliceData> indexData = getSliceData();
-            insertSliceData(database, indexData);
+            final IndexingStats stats = updateSliceData(database, indexData);
 
             mHelper.setIndexedState();
 
-            // TODO (b/71503044) Log indexing time.
-            Log.d(TAG,
-                    "Indexing slices database took: " + (System.currentTimeMillis() - startTime));
+            final long indexingTime = System.currentTimeMillis() - startTime;
+            mHelper.setIndexingStats(indexingTime, stats.mInserted, stats.mDeleted,
+                    stats.mUnchanged);
+            Log.d(TAG, "Indexing slices database took: " + indexingTime + ", inserted: "
+                    + stats.mInserted + ", deleted: " + stats.mDeleted + ", unchanged: "
+                    + stats.mUnchanged);
             database.setTransactionSuccessful();
         } finally {
             database.endTransaction();
+            SlicesDatabaseAccessor.clearCache();
         }
     }
 
@@ -94,32 +124,140 @@ class SlicesIndexer implements Runnable {
                 .getSliceData();
     }
 
+    /**
+     * Diffs the slice data against the rows in the database. Rows of removed or changed
+     * slices are deleted, and rows of new or changed slices are inserted.
+     */
+    @VisibleForTesting
+    IndexingStats updateSliceData(SQLiteDatabase database, List<SliceData> indexData) {
+        final IndexingStats stats = new IndexingStats();
+        final Map<String, List<IndexedRow>> indexedRows = queryIndexedRows(database);
+        final List<SliceData> changedData = new ArrayList<>();
+        final SQLiteStatement deleteStatement = database.compileStatement(
+                "DELETE FROM " + Tables.TABLE_SLICES_INDEX + " WHERE rowid = ?");
+        try {
+            for (SliceData dataRow : indexData) {
+                final List<IndexedRow> rows = indexedRows.remove(dataRow.getKey());
+                final String[] values = toStrings(getColumnValues(dataRow));
+                if (rows != null && rows.size() == 1
+                        && Arrays.equals(rows.get(0).mValues, values)) {
+                    stats.mUnchanged++;
+                    continue;
+                }
+                if (rows != null) {
+                    stats.mDeleted += deleteRows(deleteStatement, rows);
+                }
+                changedData.add(dataRow);
+            }
+            for (List<IndexedRow> rows : indexedRows.values()) {
+                stats.mDeleted += deleteRows(deleteStatement, rows);
+            }
+        } finally {
+            deleteStatement.close();
+        }
+        insertSliceData(database, changedData);
+        stats.mInserted = changedData.size();
+        return stats;
+    }
+
     @VisibleForTesting
     void insertSliceData(SQLiteDatabase database, List<SliceData> indexData) {
-        ContentValues values;
-
-        for (SliceData dataRow : indexData) {
-            values = new ContentValues();
-            values.put(IndexColumns.KEY, dataRow.getKey());
-            values.put(IndexColumns.SLICE_URI, dataRow.getUri().toString());
-            values.put(IndexColumns.TITLE, dataRow.getTitle());
-            values.put(IndexColumns.SUMMARY, dataRow.getSummary());
-            final CharSequence screenTitle = dataRow.getScreenTitle();
-            if (screenTitle != null) {
-                values.put(IndexColumns.SCREENTITLE, screenTitle.toString());
+        final SQLiteStatement insertStatement = database.compileStatement(INSERT_SQL);
+        try {
+            for (SliceData dataRow : indexData) {
+                final Object[] values = getColumnValues(dataRow);
+                for (int i = 0; i < values.length; i++) {
+                    final Object value = values[i];
+                    if (value == null) {
+                        insertStatement.bindNull(i + 1);
+                    } else if (value instanceof Long) {
+                        insertStatement.bindLong(i + 1, (Long) value);
+                    } else {
+                        insertStatement.bindString(i + 1, (String) value);
+                    }
+                }
+                insertStatement.executeInsert();
+                insertStatement.clearBindings();
+            }
+        } finally {
+            insertStatement.close();
+        }
+    }
+
+    private static Map<String, List<IndexedRow>> queryIndexedRows(SQLiteDatabase database) {
+        final Map<String, List<IndexedRow>> indexedRows = new ArrayMap<>();
+        final String sql = "SELECT rowid, " + TextUtils.join(", ", COLUMNS) + " FROM "
+                + Tables.TABLE_SLICES_INDEX;
+        try (Cursor cursor = database.rawQuery(sql, null /* selectionArgs */)) {
+            while (cursor.moveToNext()) {
+                final String[] values = new String[COLUMNS.length];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = cursor.getString(i + 1);
+                }
+                final String key = values[0];
+                List<IndexedRow> rows = indexedRows.get(key);
+                if (rows == null) {
+                    rows = new ArrayList<>(1);
+                    indexedRows.put(key, rows);
+                }
+                rows.add(new IndexedRow(cursor.getLong(0), values));
             }
-            values.put(IndexColumns.KEYWORDS, dataRow.getKeywords());
-            values.put(IndexColumns.ICON_RESOURCE, dataRow.getIconResource());
-            values.put(IndexColumns.FRAGMENT, dataRow.getFragmentClassName());
-            values.put(IndexColumns.CONTROLLER, dataRow.getPreferenceController());
-            values.put(IndexColumns.SLICE_TYPE, dataRow.getSliceType());
-            values.put(IndexColumns.UNAVAILABLE_SLICE_SUBTITLE,
-                    dataRow.getUnavailableSliceSubtitle());
-            values.put(IndexColumns.PUBLIC_SLICE, dataRow.isPublicSlice());
-            values.put(IndexColumns.HIGHLIGHT_MENU_RESOURCE, dataRow.getHighlightMenuRes());
-
-            database.replaceOrThrow(Tables.TABLE_SLICES_INDEX, null /* nullColumnHack */,
-                    values);
         }
+        return indexedRows;
+    }
+
+    private static int deleteRows(SQLiteStatement deleteStatement, List<IndexedRow> rows) {
+        for (IndexedRow row : rows) {
+            deleteStatement.bindLong(1, row.mRowId);
+            deleteStatement.executeUpdateDelete();
+        }
+        return rows.size();
+    }
+
+    /**
+     * Returns the values of the slice data in the order of {@link #COLUMNS}, as either a
+     * {@link String}, a {@link Long} or null.
+     */
+    private static Object[] getColumnValues(SliceData dataRow) {
+        final CharSequence screenTitle = dataRow.getScreenTitle();
+        return new Object[]{
+                dataRow.getKey(),
+                dataRow.getUri().toString(),
+                dataRow.getTitle(),
+                dataRow.getSummary(),
+                screenTitle != null ? screenTitle.toString() : null,
+                dataRow.getKeywords(),
+                (long) dataRow.getIconResource(),
+                dataRow.getFragmentClassName(),
+                dataRow.getPreferenceController(),
+                (long) dataRow.getSliceType(),
+                dataRow.getUnavailableSliceSubtitle(),
+                dataRow.isPublicSlice() ? 1L : 0L,
+                (long) dataRow.getHighlightMenuRes()};
+    }
+
+    private static String[] toStrings(Object[] values) {
+        final String[] strings = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            strings[i] = values[i] == null ? null : values[i].toString();
+        }
+        return strings;
+    }
+
+    private static class IndexedRow {
+        final long mRowId;
+        final String[] mValues;
+
+        IndexedRow(long rowId, String[] values) {
+            mRowId = rowId;
+            mValues = values;
+        }
+    }
+
+    @VisibleForTesting
+    static class IndexingStats {
+        int mInserted;
+        int mDeleted;
+        int mUnchanged;
     }
 }
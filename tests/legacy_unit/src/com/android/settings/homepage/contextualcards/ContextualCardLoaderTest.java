@@ -48,6 +48,7 @@ public class ContextualCardLoaderTest {
         mContext = InstrumentationRegistry.getTargetContext();
         mContextualCardLoader = new ContextualCardLoader(mContext);
         mEligibleCardChecker = new EligibleCardChecker(mContext, getContextualCard(TEST_URI));
+        ContextualCardLoader.clearEligibilityCache();
     }
 
     @Test
@@ -66,6 +67,34 @@ public class ContextualCardLoaderTest {
         assertThat(result).hasSize(1);
     }
 
+    @Test
+    public void filterEligibleCards_cachedEligibleCard_shouldKeepLatestRanking() {
+        final Uri sliceUri = CustomSliceRegistry.FLASHLIGHT_SLICE_URI;
+        final List<ContextualCard> cards = new ArrayList<>();
+        cards.add(getContextualCard(sliceUri));
+        mContextualCardLoader.filterEligibleCards(cards);
+
+        cards.set(0, getContextualCard(sliceUri).mutate().setRankingScore(0.9f).build());
+        final List<ContextualCard> result = mContextualCardLoader.filterEligibleCards(cards);
+
+        assertThat(result).hasSize(1);
+        assertThat(result.get(0).getRankingScore()).isWithin(0.001).of(0.9);
+        assertThat(result.get(0).getSlice()).isNotNull();
+    }
+
+    @Test
+    public void filterEligibleCards_negativeRankingCard_shouldNotCacheIneligibleSlice() {
+        final Uri sliceUri = CustomSliceRegistry.FLASHLIGHT_SLICE_URI;
+        final List<ContextualCard> cards = new ArrayList<>();
+        cards.add(getContextualCard(sliceUri).mutate().setRankingScore(-1).build());
+        assertThat(mContextualCardLoader.filterEligibleCards(cards)).isEmpty();
+
+        cards.set(0, getContextualCard(sliceUri));
+        final List<ContextualCard> result = mContextualCardLoader.filterEligibleCards(cards);
+
+        assertThat(result).hasSize(1);
+    }
+
     @Test
     public void bindSlice_flashlightUri_shouldReturnFlashlightSlice() {
         final Slice loadedSlice =
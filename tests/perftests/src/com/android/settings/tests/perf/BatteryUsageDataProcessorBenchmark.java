@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.tests.perf;
+
+import static androidx.test.platform.app.InstrumentationRegistry.getInstrumentation;
+
+import static org.junit.Assert.assertNotNull;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.os.BatteryManager;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.text.format.DateUtils;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.settings.fuelgauge.batteryusage.BatteryHistEntry;
+import com.android.settings.fuelgauge.batteryusage.ConvertUtils;
+import com.android.settings.fuelgauge.batteryusage.DataProcessor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the latency and the allocations of processing a week of hourly battery history with
+ * {@link DataProcessor}, in the style of a JMH benchmark: warm up first, then report the
+ * statistics of the measured iterations.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BatteryUsageDataProcessorBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASURED_ITERATIONS = 20;
+    private static final int HOURS = 7 * 24;
+    private static final int ENTRY_COUNT = 300;
+
+    private Context mContext;
+    private Bundle mBundle;
+    private Map<Long, Map<String, BatteryHistEntry>> mBatteryHistoryMap;
+
+    @Before
+    public void setUp() {
+        mContext = getInstrumentation().getTargetContext();
+        mBundle = new Bundle();
+        mBatteryHistoryMap = createWeeklyHistoryMap();
+    }
+
+    @After
+    public void tearDown() {
+        getInstrumentation().sendStatus(0, mBundle);
+    }
+
+    @Test
+    public void getBatteryUsageData_weeklyHistory() {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            assertNotNull(DataProcessor.getBatteryUsageData(mContext, mBatteryHistoryMap));
+        }
+
+        final List<Long> latencies = new ArrayList<>();
+        final List<Long> allocations = new ArrayList<>();
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            Debug.resetThreadAllocSize();
+            Debug.startAllocCounting();
+            final long start = SystemClock.elapsedRealtimeNanos();
+            DataProcessor.getBatteryUsageData(mContext, mBatteryHistoryMap);
+            latencies.add(SystemClock.elapsedRealtimeNanos() - start);
+            Debug.stopAllocCounting();
+            allocations.add((long) Debug.getThreadAllocSize());
+        }
+        putResult("latency_ns", latencies);
+        putResult("allocated_bytes", allocations);
+    }
+
+    private void putResult(String name, List<Long> results) {
+        Collections.sort(results);
+        final long avg = (long) results.stream().mapToLong(i -> i).average().orElse(0);
+        mBundle.putString(String.format("BatteryUsageDataProcessorBenchmark_%s_avg", name),
+                String.valueOf(avg));
+        mBundle.putString(String.format("BatteryUsageDataProcessorBenchmark_%s_median", name),
+                String.valueOf(results.get(results.size() / 2)));
+        mBundle.putString(String.format("BatteryUsageDataProcessorBenchmark_%s_all_results", name),
+                results.toString());
+    }
+
+    // Creates hourly snapshots of a week, recorded a few minutes after each hour.
+    private static Map<Long, Map<String, BatteryHistEntry>> createWeeklyHistoryMap() {
+        final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap = new HashMap<>();
+        final long endTimestamp = System.currentTimeMillis();
+        final long startTimestamp = endTimestamp - HOURS * DateUtils.HOUR_IN_MILLIS;
+        for (int hour = 0; hour <= HOURS; hour++) {
+            final long timestamp = startTimestamp + hour * DateUtils.HOUR_IN_MILLIS
+                    + (hour % 5) * DateUtils.MINUTE_IN_MILLIS;
+            final Map<String, BatteryHistEntry> entryMap = new HashMap<>();
+            for (int uid = 0; uid < ENTRY_COUNT; uid++) {
+                final BatteryHistEntry entry = createBatteryHistEntry(
+                        10000 + uid, timestamp, startTimestamp, hour, 100 - hour * 90 / HOURS);
+                entryMap.put(entry.getKey(), entry);
+            }
+            batteryHistoryMap.put(timestamp, entryMap);
+        }
+        return batteryHistoryMap;
+    }
+
+    private static BatteryHistEntry createBatteryHistEntry(
+            long uid, long timestamp, long bootTimestamp, int hour, int batteryLevel) {
+        final ContentValues values = new ContentValues();
+        values.put(BatteryHistEntry.KEY_UID, uid);
+        values.put(BatteryHistEntry.KEY_USER_ID, 0L);
+        values.put(BatteryHistEntry.KEY_APP_LABEL, "app" + uid);
+        values.put(BatteryHistEntry.KEY_PACKAGE_NAME, "com.android.app" + uid);
+        values.put(BatteryHistEntry.KEY_IS_HIDDEN, false);
+        values.put(BatteryHistEntry.KEY_BOOT_TIMESTAMP, timestamp - bootTimestamp);
+        values.put(BatteryHistEntry.KEY_TIMESTAMP, timestamp);
+        values.put(BatteryHistEntry.KEY_ZONE_ID, "UTC");
+        values.put(BatteryHistEntry.KEY_TOTAL_POWER, 1000.0 * hour);
+        values.put(BatteryHistEntry.KEY_CONSUME_POWER, (uid % 7 + 1) * 0.5 * hour);
+        values.put(BatteryHistEntry.KEY_PERCENT_OF_TOTAL, 0.0);
+        values.put(BatteryHistEntry.KEY_FOREGROUND_USAGE_TIME, (uid % 3) * 1000L * hour);
+        values.put(BatteryHistEntry.KEY_BACKGROUND_USAGE_TIME, (uid % 5) * 1000L * hour);
+        values.put(BatteryHistEntry.KEY_DRAIN_TYPE, 0);
+        values.put(BatteryHistEntry.KEY_CONSUMER_TYPE, ConvertUtils.CONSUMER_TYPE_UID_BATTERY);
+        values.put(BatteryHistEntry.KEY_BATTERY_LEVEL, batteryLevel);
+        values.put(BatteryHistEntry.KEY_BATTERY_STATUS,
+                BatteryManager.BATTERY_STATUS_DISCHARGING);
+        values.put(BatteryHistEntry.KEY_BATTERY_HEALTH, BatteryManager.BATTERY_HEALTH_GOOD);
+        return new BatteryHistEntry(values);
+    }
+}
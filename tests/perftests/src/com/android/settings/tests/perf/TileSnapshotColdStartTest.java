@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.settings.tests.perf;
+
+import static androidx.test.platform.app.InstrumentationRegistry.getInstrumentation;
+
+import static junit.framework.TestCase.fail;
+
+import android.os.Bundle;
+import android.support.test.uiautomator.UiDevice;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the cold start time of the Settings homepage with and without the dashboard tile
+ * snapshot.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TileSnapshotColdStartTest {
+
+    private static final String PROPERTY_TILE_SNAPSHOT = "debug.settings.tile_snapshot";
+    private static final String HOMEPAGE_ACTION = "android.settings.SETTINGS";
+    private static final int TIME_OUT = 5000;
+    private static final int TEST_TIME = 10;
+    private static final Pattern PATTERN = Pattern.compile("TotalTime:\\s[0-9]*");
+
+    private UiDevice mDevice;
+    private Bundle mBundle;
+
+    @Before
+    public void setUp() throws Exception {
+        mDevice = UiDevice.getInstance(getInstrumentation());
+        mBundle = new Bundle();
+        mDevice.pressHome();
+        mDevice.waitForIdle(TIME_OUT);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        getInstrumentation().sendStatus(0, mBundle);
+        mDevice.executeShellCommand("setprop " + PROPERTY_TILE_SNAPSHOT + " true");
+        closeApp();
+    }
+
+    @Test
+    public void coldStart_withAndWithoutTileSnapshot() throws Exception {
+        putResult("without_snapshot", measureColdStart(false /* snapshotEnabled */));
+        putResult("with_snapshot", measureColdStart(true /* snapshotEnabled */));
+    }
+
+    private List<Integer> measureColdStart(boolean snapshotEnabled) throws Exception {
+        mDevice.executeShellCommand(
+                "setprop " + PROPERTY_TILE_SNAPSHOT + " " + snapshotEnabled);
+        // Warm up once so that the snapshot is written before measuring.
+        launchHomepage();
+
+        final List<Integer> results = new ArrayList<>();
+        for (int i = 0; i < TEST_TIME; i++) {
+            results.add(launchHomepage());
+        }
+        return results;
+    }
+
+    private int launchHomepage() throws Exception {
+        closeApp();
+        mDevice.waitForIdle(TIME_OUT);
+        final String result = mDevice.executeShellCommand("am start -W -a " + HOMEPAGE_ACTION);
+        final Matcher matcher = PATTERN.matcher(result);
+        if (!matcher.find()) {
+            fail(String.format("Not found TotalTime.\n %s", result));
+        }
+        return Integer.valueOf(matcher.group().split("\\s")[1]);
+    }
+
+    private void putResult(String name, List<Integer> results) {
+        final int avg = (int) results.stream().mapToInt(i -> i).average().orElse(0);
+        mBundle.putString(String.format("TileSnapshotColdStartTest_%s_avg", name),
+                String.valueOf(avg));
+        mBundle.putString(String.format("TileSnapshotColdStartTest_%s_all_results", name),
+                results.toString());
+    }
+
+    private void closeApp() throws Exception {
+        mDevice.executeShellCommand("am force-stop com.android.settings");
+        Thread.sleep(1000);
+    }
+}
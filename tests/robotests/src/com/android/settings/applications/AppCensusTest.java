@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.UserInfo;
+import android.net.Uri;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class AppCensusTest {
+
+    private static final int USER_ID = 0;
+    private static final int APP_COUNT = AppCensus.MIN_APPS_PER_THREAD * 4;
+
+    @Mock
+    private PackageManager mPackageManager;
+
+    private Context mContext;
+    private AppCensus mAppCensus;
+    private List<UserInfo> mUsers;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mContext = RuntimeEnvironment.application;
+        mAppCensus = new AppCensus(mPackageManager);
+        mUsers = Collections.singletonList(new UserInfo(USER_ID, "main", UserInfo.FLAG_ADMIN));
+        final List<ApplicationInfo> apps = new ArrayList<>();
+        for (int i = 0; i < APP_COUNT; i++) {
+            final ApplicationInfo info = new ApplicationInfo();
+            info.packageName = "com.android.app" + i;
+            info.uid = i;
+            apps.add(info);
+        }
+        when(mPackageManager.getInstalledApplicationsAsUser(anyInt(), eq(USER_ID)))
+                .thenReturn(apps);
+    }
+
+    @Test
+    public void getApps_packageReceiverRegistered_scanOnce() {
+        mAppCensus.registerPackageReceiver(mContext);
+
+        mAppCensus.countApps(mUsers, info -> true);
+        final List<UserAppInfo> apps = mAppCensus.getApps(mUsers, info -> info.uid < 2);
+
+        verify(mPackageManager).getInstalledApplicationsAsUser(anyInt(), eq(USER_ID));
+        assertThat(apps).hasSize(2);
+        assertThat(apps.get(0).appInfo.packageName).isEqualTo("com.android.app0");
+        assertThat(apps.get(1).appInfo.packageName).isEqualTo("com.android.app1");
+    }
+
+    @Test
+    public void getApps_packageReceiverNotRegistered_scanEachTime() {
+        mAppCensus.countApps(mUsers, info -> true);
+        mAppCensus.countApps(mUsers, info -> true);
+
+        verify(mPackageManager, times(2)).getInstalledApplicationsAsUser(anyInt(), eq(USER_ID));
+    }
+
+    @Test
+    public void onReceive_packageAdded_scanAgain() {
+        mAppCensus.registerPackageReceiver(mContext);
+        mAppCensus.countApps(mUsers, info -> true);
+
+        mContext.sendBroadcast(new Intent(Intent.ACTION_PACKAGE_ADDED,
+                Uri.fromParts("package", "com.android.app", /*fragment=*/ null)));
+        ShadowLooper.idleMainLooper();
+        mAppCensus.countApps(mUsers, info -> true);
+
+        verify(mPackageManager, times(2)).getInstalledApplicationsAsUser(anyInt(), eq(USER_ID));
+    }
+
+    @Test
+    public void getInstance_differentContexts_sameCensus() {
+        try {
+            final Context activityContext = Robolectric.setupActivity(Activity.class);
+
+            assertThat(AppCensus.getInstance(activityContext))
+                    .isSameInstanceAs(AppCensus.getInstance(mContext));
+        } finally {
+            AppCensus.setInstance(null);
+        }
+    }
+
+    @Test
+    public void countApps_evaluationFailsOnExecutor_countAllMatches() {
+        final Thread callingThread = Thread.currentThread();
+
+        final int count = mAppCensus.countApps(mUsers, info -> {
+            if (Thread.currentThread() != callingThread) {
+                throw new IllegalStateException();
+            }
+            return true;
+        });
+
+        assertThat(count).isEqualTo(APP_COUNT);
+    }
+
+    @Test
+    public void countApps_largeList_evaluateAllApps() {
+        assertThat(mAppCensus.countApps(mUsers, info -> info.uid % 2 == 0))
+                .isEqualTo(APP_COUNT / 2);
+    }
+}
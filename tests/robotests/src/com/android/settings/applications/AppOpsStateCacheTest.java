@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.Manifest;
+import android.app.AppOpsManager;
+import android.app.AppOpsManager.OpEntry;
+import android.app.AppOpsManager.PackageOps;
+import android.content.Context;
+import android.content.pm.IPackageManager;
+import android.content.pm.PackageManager;
+import android.content.pm.ParceledListSlice;
+import android.os.RemoteException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class AppOpsStateCacheTest {
+
+    private static final int OP = AppOpsManager.OP_SYSTEM_ALERT_WINDOW;
+    private static final int[] OPS = new int[]{OP};
+    private static final String PACKAGE_NAME = "com.android.app";
+    private static final String[] PERMISSIONS =
+            new String[]{Manifest.permission.SYSTEM_ALERT_WINDOW};
+
+    @Mock
+    private Context mContext;
+    @Mock
+    private AppOpsManager mAppOpsManager;
+    @Mock
+    private IPackageManager mIPackageManager;
+    @Mock
+    private PackageManager mPackageManager;
+
+    private AppOpsStateCache mCache;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(mContext.getSystemService(Context.APP_OPS_SERVICE)).thenReturn(mAppOpsManager);
+        when(mContext.getPackageManager()).thenReturn(mPackageManager);
+        when(mAppOpsManager.getPackagesForOps(any(int[].class))).thenReturn(createPackageOps());
+        mCache = new AppOpsStateCache(mContext, mIPackageManager);
+    }
+
+    @Test
+    public void getMode_loadedOp_readModesOnce() {
+        assertThat(mCache.getMode(OPS, 0 /* userId */, PACKAGE_NAME))
+                .isEqualTo(AppOpsManager.MODE_ALLOWED);
+        assertThat(mCache.getMode(OPS, 0 /* userId */, "com.android.other"))
+                .isEqualTo(AppOpsManager.MODE_DEFAULT);
+
+        verify(mAppOpsManager).getPackagesForOps(any(int[].class));
+        verify(mAppOpsManager).startWatchingMode(
+                anyInt(), any(), any(AppOpsManager.OnOpChangedListener.class));
+    }
+
+    @Test
+    public void getMode_afterInvalidate_readModesAgain() {
+        mCache.getMode(OPS, 0 /* userId */, PACKAGE_NAME);
+
+        mCache.invalidate();
+        mCache.getMode(OPS, 0 /* userId */, PACKAGE_NAME);
+
+        verify(mAppOpsManager, times(2)).getPackagesForOps(any(int[].class));
+        verify(mAppOpsManager).startWatchingMode(
+                anyInt(), any(), any(AppOpsManager.OnOpChangedListener.class));
+    }
+
+    @Test
+    public void getMode_opChangedDuringLoad_loadModesAgain() {
+        when(mAppOpsManager.getPackagesForOps(any(int[].class)))
+                .thenAnswer(invocation -> {
+                    // The change may or may not be in this load.
+                    mCache.updateMode(OP, PACKAGE_NAME);
+                    return createPackageOps();
+                })
+                .thenReturn(createPackageOps());
+
+        assertThat(mCache.getMode(OPS, 0 /* userId */, PACKAGE_NAME))
+                .isEqualTo(AppOpsManager.MODE_ALLOWED);
+        mCache.getMode(OPS, 0 /* userId */, PACKAGE_NAME);
+
+        verify(mAppOpsManager, times(2)).getPackagesForOps(any(int[].class));
+    }
+
+    @Test
+    public void getPermissionStates_permissionsChanged_loadStatesAgain() throws RemoteException {
+        when(mIPackageManager.getAppOpPermissionPackages(anyString()))
+                .thenReturn(new String[]{PACKAGE_NAME});
+        when(mIPackageManager.isPackageAvailable(eq(PACKAGE_NAME), anyInt())).thenReturn(true);
+        when(mIPackageManager.getPackagesHoldingPermissions(any(String[].class), anyInt(),
+                anyInt())).thenReturn(new ParceledListSlice<>(Collections.emptyList()));
+        final ArgumentCaptor<PackageManager.OnPermissionsChangedListener> captor =
+                ArgumentCaptor.forClass(PackageManager.OnPermissionsChangedListener.class);
+        verify(mPackageManager).addOnPermissionsChangeListener(captor.capture());
+
+        mCache.getPermissionStates(PERMISSIONS, 0 /* userId */);
+        mCache.getPermissionStates(PERMISSIONS, 0 /* userId */);
+        captor.getValue().onPermissionsChanged(0 /* uid */);
+        mCache.getPermissionStates(PERMISSIONS, 0 /* userId */);
+
+        verify(mIPackageManager, times(2)).getAppOpPermissionPackages(anyString());
+    }
+
+    private static List<PackageOps> createPackageOps() {
+        return Collections.singletonList(new PackageOps(PACKAGE_NAME, 0 /* uid */,
+                Collections.singletonList(
+                        new OpEntry(OP, AppOpsManager.MODE_ALLOWED, Collections.emptyMap()))));
+    }
+}
@@ -39,6 +39,7 @@ import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -65,6 +66,7 @@ import com.android.settingslib.applications.ApplicationsState.AppEntry;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.robolectric.RobolectricTestRunner;
@@ -203,6 +205,35 @@ public class AppStateNotificationBridgeTest {
         assertThat(map.get(AppStateNotificationBridge.getKey(0, PKG2)).lastSent).isEqualTo(1);
     }
 
+    @Test
+    public void testGetAggregatedUsageEvents_secondLoad_onlyQueryNewEvents() throws Exception {
+        final long timestamp = System.currentTimeMillis() - DAY_IN_MILLIS;
+        List<Event> events = new ArrayList<>();
+        Event good = new Event();
+        good.mEventType = Event.NOTIFICATION_INTERRUPTION;
+        good.mPackage = PKG1;
+        good.mTimeStamp = timestamp;
+        events.add(good);
+        when(mUsageStats.queryEventsForUser(anyLong(), anyLong(), anyInt(), anyString()))
+                .thenReturn(getUsageEvents(events));
+        mBridge.getAggregatedUsageEvents();
+
+        good.mTimeStamp = timestamp + 1;
+        when(mUsageStats.queryEventsForUser(anyLong(), anyLong(), anyInt(), anyString()))
+                .thenReturn(getUsageEvents(events));
+        Map<String, NotificationsSentState> map = mBridge.getAggregatedUsageEvents();
+
+        ArgumentCaptor<Long> startTimes = ArgumentCaptor.forClass(Long.class);
+        ArgumentCaptor<Long> endTimes = ArgumentCaptor.forClass(Long.class);
+        verify(mUsageStats, times(2)).queryEventsForUser(
+                startTimes.capture(), endTimes.capture(), anyInt(), anyString());
+        assertThat(startTimes.getAllValues().get(0)).isLessThan(timestamp);
+        assertThat(startTimes.getAllValues().get(1)).isEqualTo(endTimes.getAllValues().get(0));
+        assertThat(map.get(AppStateNotificationBridge.getKey(0, PKG1)).sentCount).isEqualTo(2);
+        assertThat(map.get(AppStateNotificationBridge.getKey(0, PKG1)).lastSent)
+                .isEqualTo(timestamp + 1);
+    }
+
     @Test
     public void testLoadAllExtraInfo_noEvents() throws RemoteException {
         when(mUsageStats.queryEventsForUser(anyLong(), anyLong(), anyInt(), anyString()))
@@ -36,6 +36,7 @@ import android.os.Build;
 import android.os.UserHandle;
 import android.os.UserManager;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -87,6 +88,12 @@ public final class AppWithAdminGrantedPermissionsListerTest {
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        AppCensus.setInstance(new AppCensus(mPackageManager));
+    }
+
+    @After
+    public void tearDown() {
+        AppCensus.setInstance(null);
     }
 
     @Test
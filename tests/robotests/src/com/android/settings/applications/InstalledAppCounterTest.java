@@ -38,6 +38,7 @@ import android.content.pm.UserInfo;
 import android.os.UserHandle;
 import android.os.UserManager;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -87,6 +88,7 @@ public final class InstalledAppCounterTest {
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        AppCensus.setInstance(new AppCensus(mPackageManager));
         when(mContext.getSystemService(Context.USER_SERVICE)).thenReturn(mUserManager);
 
         mApp1 = buildInfo(MAIN_USER_APP_UID, APP_1,
@@ -103,6 +105,11 @@ public final class InstalledAppCounterTest {
                 0 /* targetSdkVersion */);
     }
 
+    @After
+    public void tearDown() {
+        AppCensus.setInstance(null);
+    }
+
     private void expectQueryIntentActivities(int userId, String packageName, boolean launchable) {
         when(mPackageManager.queryIntentActivitiesAsUser(
                 argThat(isLaunchIntentFor(packageName)),
@@ -36,6 +36,7 @@ import android.content.pm.UserInfo;
 import android.os.UserHandle;
 import android.os.UserManager;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -78,6 +79,12 @@ public final class InstalledAppListerTest {
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
+        AppCensus.setInstance(new AppCensus(mPackageManager));
+    }
+
+    @After
+    public void tearDown() {
+        AppCensus.setInstance(null);
     }
 
     private void expectQueryIntentActivities(int userId, String packageName, boolean launchable) {
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.text.format.DateUtils;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.android.settings.applications.AppStateNotificationBridge.NotificationsSentState;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+@RunWith(RobolectricTestRunner.class)
+public class NotificationsSentHistoryTest {
+
+    private static final int USER_ID = 0;
+    private static final String PACKAGE = "com.example.app";
+    private static final long NOW = 100 * DateUtils.DAY_IN_MILLIS;
+    private static final long START_TIME = NOW - DateUtils.WEEK_IN_MILLIS;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        new File(mContext.getCacheDir(), "notifications_sent_" + USER_ID).delete();
+    }
+
+    @Test
+    public void load_afterSave_restoreHistory() {
+        final NotificationsSentHistory history = new NotificationsSentHistory(mContext, USER_ID);
+        history.load(START_TIME, NOW);
+        history.addNotificationSent(PACKAGE, NOW - 2 * DateUtils.HOUR_IN_MILLIS);
+        history.addNotificationSent(PACKAGE, NOW - DateUtils.HOUR_IN_MILLIS);
+        history.setHighWaterMark(NOW);
+        history.save();
+
+        final NotificationsSentHistory loadedHistory =
+                new NotificationsSentHistory(mContext, USER_ID);
+        loadedHistory.load(START_TIME, NOW);
+
+        final NotificationsSentState state = getSentState(loadedHistory);
+        assertThat(loadedHistory.getHighWaterMark()).isEqualTo(NOW);
+        assertThat(state.sentCount).isEqualTo(2);
+        assertThat(state.lastSent).isEqualTo(NOW - DateUtils.HOUR_IN_MILLIS);
+    }
+
+    @Test
+    public void load_bucketBeforeStartTime_dropBucket() {
+        final NotificationsSentHistory history = new NotificationsSentHistory(mContext, USER_ID);
+        history.load(START_TIME, NOW);
+        history.addNotificationSent(PACKAGE, START_TIME - DateUtils.HOUR_IN_MILLIS);
+        history.addNotificationSent(PACKAGE, NOW - DateUtils.HOUR_IN_MILLIS);
+        history.setHighWaterMark(NOW);
+        history.save();
+
+        final NotificationsSentHistory loadedHistory =
+                new NotificationsSentHistory(mContext, USER_ID);
+        loadedHistory.load(START_TIME, NOW);
+
+        assertThat(getSentState(loadedHistory).sentCount).isEqualTo(1);
+    }
+
+    @Test
+    public void load_corruptedFile_resetHistory() throws Exception {
+        try (FileOutputStream out = new FileOutputStream(
+                new File(mContext.getCacheDir(), "notifications_sent_" + USER_ID))) {
+            out.write(new byte[] {0, 0, 0, 2, 1});
+        }
+
+        final NotificationsSentHistory history = new NotificationsSentHistory(mContext, USER_ID);
+        history.load(START_TIME, NOW);
+
+        final Map<String, NotificationsSentState> states = new HashMap<>();
+        history.putSentStates(USER_ID, states);
+        assertThat(states).isEmpty();
+        assertThat(history.getHighWaterMark()).isEqualTo(START_TIME);
+    }
+
+    private static NotificationsSentState getSentState(NotificationsSentHistory history) {
+        final Map<String, NotificationsSentState> states = new HashMap<>();
+        history.putSentStates(USER_ID, states);
+        return states.get(AppStateNotificationBridge.getKey(USER_ID, PACKAGE));
+    }
+}
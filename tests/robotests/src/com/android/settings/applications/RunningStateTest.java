@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ComponentName;
+import android.content.Context;
+
+import com.android.settings.applications.RunningState.MergedItem;
+import com.android.settings.applications.RunningState.ProcessItem;
+import com.android.settings.applications.RunningState.ServiceItem;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class RunningStateTest {
+
+    private static final int UID = 10001;
+
+    private Context mContext;
+    private ProcessItem mProcess;
+    private List<ProcessItem> mProcessItems;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mProcess = new ProcessItem(mContext, UID, "com.android.app");
+        addService(mProcess, "Service1");
+        mProcessItems = new ArrayList<>();
+        mProcessItems.add(new ProcessItem(mContext, UID + 1, "com.android.dependent"));
+        mProcessItems.add(mProcess);
+    }
+
+    @Test
+    public void obtainServiceMergedItem_unchangedProcess_reuseItem() {
+        final MergedItem mergedItem = obtainServiceMergedItem();
+
+        assertThat(obtainServiceMergedItem()).isSameInstanceAs(mergedItem);
+    }
+
+    @Test
+    public void obtainServiceMergedItem_serviceAdded_buildNewItem() {
+        final MergedItem mergedItem = obtainServiceMergedItem();
+
+        addService(mProcess, "Service2");
+        final MergedItem newMergedItem = obtainServiceMergedItem();
+
+        assertThat(newMergedItem).isNotSameInstanceAs(mergedItem);
+        assertThat(newMergedItem.mServices).hasSize(2);
+        // The published item isn't modified.
+        assertThat(mergedItem.mServices).hasSize(1);
+    }
+
+    @Test
+    public void obtainServiceMergedItem_dependentProcessChanged_buildNewItem() {
+        final MergedItem mergedItem = obtainServiceMergedItem();
+
+        mProcessItems.set(0, new ProcessItem(mContext, UID + 2, "com.android.other"));
+        final MergedItem newMergedItem = obtainServiceMergedItem();
+
+        assertThat(newMergedItem).isNotSameInstanceAs(mergedItem);
+        assertThat(newMergedItem.mOtherProcesses).containsExactly(mProcessItems.get(0));
+        assertThat(mergedItem.mOtherProcesses).doesNotContain(mProcessItems.get(0));
+    }
+
+    @Test
+    public void obtainBackgroundItem_wasBackgroundItem_reuseItem() {
+        final MergedItem mergedItem =
+                RunningState.obtainBackgroundItem(mProcess, Collections.emptyList());
+
+        assertThat(RunningState.obtainBackgroundItem(mProcess,
+                Collections.singletonList(mergedItem))).isSameInstanceAs(mergedItem);
+    }
+
+    @Test
+    public void obtainBackgroundItem_wasOtherItem_buildNewItem() {
+        final MergedItem mergedItem = new MergedItem(mProcess.mUserId);
+        mergedItem.mProcess = mProcess;
+        mProcess.mMergedItem = mergedItem;
+
+        final MergedItem backgroundItem =
+                RunningState.obtainBackgroundItem(mProcess, Collections.emptyList());
+
+        assertThat(backgroundItem).isNotSameInstanceAs(mergedItem);
+        assertThat(backgroundItem.mProcess).isSameInstanceAs(mProcess);
+    }
+
+    private MergedItem obtainServiceMergedItem() {
+        return RunningState.obtainServiceMergedItem(mProcess, mProcessItems, 0 /* start */,
+                mProcessItems.size() - 1 /* end */);
+    }
+
+    private static void addService(ProcessItem process, String className) {
+        process.mServices.put(new ComponentName("com.android.app", className),
+                new ServiceItem(process.mUserId));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications.manageapplications;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class AppEntryDiffCallbackTest {
+
+    private Context mContext;
+    private AppEntry mEntry;
+    private List<AppEntry> mEntries;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        final ApplicationInfo info = new ApplicationInfo();
+        info.packageName = "com.android.app";
+        info.sourceDir = "abc";
+        info.enabled = true;
+        mEntry = new AppEntry(mContext, info, 1 /* id */);
+        mEntry.label = "App";
+        mEntry.sizeStr = "1 MB";
+        mEntries = List.of(mEntry);
+    }
+
+    @Test
+    public void areContentsTheSame_unchangedEntry_returnTrue() {
+        final AppEntryDiffCallback callback = new AppEntryDiffCallback(mEntries, mEntries,
+                AppEntryDiffCallback.getContents(mEntries));
+
+        assertThat(callback.areContentsTheSame(0, 0)).isTrue();
+    }
+
+    @Test
+    public void areContentsTheSame_labelChanged_returnFalse() {
+        final AppEntryDiffCallback callback = new AppEntryDiffCallback(mEntries, mEntries,
+                AppEntryDiffCallback.getContents(mEntries));
+
+        mEntry.label = "Renamed app";
+
+        assertThat(callback.areContentsTheSame(0, 0)).isFalse();
+    }
+
+    @Test
+    public void areContentsTheSame_sizeChanged_returnFalse() {
+        final AppEntryDiffCallback callback = new AppEntryDiffCallback(mEntries, mEntries,
+                AppEntryDiffCallback.getContents(mEntries));
+
+        mEntry.sizeStr = "2 MB";
+
+        assertThat(callback.areContentsTheSame(0, 0)).isFalse();
+    }
+
+    @Test
+    public void areContentsTheSame_extraInfoReplaced_returnFalse() {
+        mEntry.extraInfo = new Object();
+        final AppEntryDiffCallback callback = new AppEntryDiffCallback(mEntries, mEntries,
+                AppEntryDiffCallback.getContents(mEntries));
+
+        mEntry.extraInfo = new Object();
+
+        assertThat(callback.areContentsTheSame(0, 0)).isFalse();
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.applications.manageapplications;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.graphics.Color;
+import android.graphics.drawable.ColorDrawable;
+import android.widget.FrameLayout;
+
+import com.android.settings.testutils.shadow.ShadowAppUtils;
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = ShadowAppUtils.class)
+public class AppIconLoaderTest {
+
+    @Mock
+    private ExecutorService mExecutor;
+    @Mock
+    private Future mFuture;
+
+    private Context mContext;
+    private AppIconLoader mIconLoader;
+    private AppEntry mEntry;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        mContext = RuntimeEnvironment.application;
+        doReturn(mFuture).when(mExecutor).submit(any(Runnable.class));
+        mIconLoader = new AppIconLoader(mContext, mExecutor);
+        mEntry = createAppEntry("com.android.app", 1 /* id */);
+    }
+
+    @Test
+    public void loadIcon_sameEntryForTwoHolders_loadOnce() {
+        mIconLoader.loadIcon(createHolder(), mEntry);
+        mIconLoader.loadIcon(createHolder(), mEntry);
+
+        verify(mExecutor).submit(any(Runnable.class));
+    }
+
+    @Test
+    public void cancel_lastWaitingHolder_cancelLoad() {
+        final ApplicationViewHolder holder1 = createHolder();
+        final ApplicationViewHolder holder2 = createHolder();
+        mIconLoader.loadIcon(holder1, mEntry);
+        mIconLoader.loadIcon(holder2, mEntry);
+
+        mIconLoader.cancel(holder1);
+        verify(mFuture, never()).cancel(anyBoolean());
+
+        mIconLoader.cancel(holder2);
+        verify(mFuture).cancel(false /* mayInterruptIfRunning */);
+    }
+
+    @Test
+    public void prefetch_thenLoadIcon_reuseLoad() {
+        final ApplicationViewHolder holder = createHolder();
+        // The first bind tells the loader the size of the icons.
+        mIconLoader.loadIcon(createHolder(), createAppEntry("com.android.app0", 0 /* id */));
+
+        mIconLoader.prefetch(Collections.singletonList(mEntry));
+        mIconLoader.loadIcon(holder, mEntry);
+
+        verify(mExecutor, times(2)).submit(any(Runnable.class));
+    }
+
+    @Test
+    public void loadIcon_iconInAppIconCache_noLoad() {
+        mEntry.mounted = true;
+        ShadowAppUtils.setIconFromCache(mEntry.info.packageName, new ColorDrawable(Color.RED));
+
+        mIconLoader.loadIcon(createHolder(), mEntry);
+
+        verify(mExecutor, never()).submit(any(Runnable.class));
+    }
+
+    @Test
+    public void loadIcon_iconLoaded_noLoad() {
+        mEntry.mounted = true;
+        ShadowAppUtils.setIcon(mEntry.info.packageName, new ColorDrawable(Color.RED));
+        mIconLoader.loadIcon(createHolder(), mEntry);
+        runLoad();
+
+        mIconLoader.loadIcon(createHolder(), mEntry);
+
+        verify(mExecutor).submit(any(Runnable.class));
+    }
+
+    @Test
+    public void loadIcon_packageUpdatedSinceLoad_reloadIcon() {
+        mEntry.mounted = true;
+        ShadowAppUtils.setIcon(mEntry.info.packageName, new ColorDrawable(Color.RED));
+        mIconLoader.loadIcon(createHolder(), mEntry);
+        runLoad();
+
+        mEntry.info.sourceDir = "def";
+        mIconLoader.loadIcon(createHolder(), mEntry);
+
+        verify(mExecutor, times(2)).submit(any(Runnable.class));
+    }
+
+    private void runLoad() {
+        final ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(mExecutor).submit(captor.capture());
+        captor.getValue().run();
+        ShadowLooper.idleMainLooper();
+    }
+
+    private ApplicationViewHolder createHolder() {
+        return new ApplicationViewHolder(ApplicationViewHolder.newView(new FrameLayout(mContext)));
+    }
+
+    private AppEntry createAppEntry(String packageName, long id) {
+        final ApplicationInfo info = new ApplicationInfo();
+        info.packageName = packageName;
+        info.sourceDir = "abc";
+        return new AppEntry(mContext, info, id);
+    }
+}
@@ -43,6 +43,7 @@ import android.content.res.Resources;
 import android.os.Bundle;
 import android.os.Looper;
 import android.os.UserManager;
+import android.util.LongSparseArray;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -73,6 +74,7 @@ import org.robolectric.fakes.RoboMenuItem;
 import org.robolectric.util.ReflectionHelpers;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 @RunWith(RobolectricTestRunner.class)
 @Config(shadows = {ShadowUserManager.class, ShadowAppUtils.class})
@@ -307,6 +309,60 @@ public class ManageApplicationsTest {
         verify(adapter).filterSearch(query);
     }
 
+    @Test
+    public void onRebuildComplete_entryRemoved_shouldNotifyItemRemoved() {
+        ReflectionHelpers.setField(mFragment, "mRecyclerView", mock(RecyclerView.class));
+        ReflectionHelpers.setField(mFragment, "mEmptyView", mock(View.class));
+        ReflectionHelpers.setField(mFragment, "mLoadingContainer", mock(View.class));
+        ReflectionHelpers.setField(
+                mFragment, "mFilterAdapter", mock(ManageApplications.FilterSpinnerAdapter.class));
+        final ManageApplications.ApplicationsAdapter adapter =
+                spy(new ManageApplications.ApplicationsAdapter(mState, mFragment,
+                        AppFilterRegistry.getInstance().get(FILTER_APPS_ALL),
+                        null /* savedInstanceState */));
+        ReflectionHelpers.setField(adapter, "mLoadingViewController",
+                mock(LoadingViewController.class));
+        final AppEntry entryA = createAppEntry("a", 1, 300);
+        final AppEntry entryB = createAppEntry("b", 2, 200);
+        final AppEntry entryC = createAppEntry("c", 3, 100);
+
+        adapter.onRebuildComplete(new ArrayList<>(Arrays.asList(entryA, entryB, entryC)));
+        adapter.onRebuildComplete(new ArrayList<>(Arrays.asList(entryA, entryC)));
+
+        verify(adapter).notifyDataSetChanged();
+        verify(adapter).notifyItemRangeRemoved(1, 1);
+        assertThat(adapter.getApplicationCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void onPackageSizeChanged_sortedBySize_shouldMoveEntryWithoutRebuild() {
+        final ManageApplications.ApplicationsAdapter adapter =
+                spy(new ManageApplications.ApplicationsAdapter(mState, mFragment,
+                        AppFilterRegistry.getInstance().get(FILTER_APPS_ALL), new Bundle()));
+        final AppEntry entryA = createAppEntry("a", 1, 300);
+        final AppEntry entryB = createAppEntry("b", 2, 200);
+        final AppEntry entryC = createAppEntry("c", 3, 100);
+        final ArrayList<AppEntry> entries = new ArrayList<>(
+                Arrays.asList(entryA, entryB, entryC));
+        ReflectionHelpers.setField(adapter, "mEntries", entries);
+        ReflectionHelpers.setField(adapter, "mOriginalEntries", entries);
+        ReflectionHelpers.setField(adapter, "mEntriesFilter", ApplicationsState.FILTER_EVERYTHING);
+        ReflectionHelpers.setField(adapter, "mEntriesComparator",
+                ApplicationsState.SIZE_COMPARATOR);
+        ReflectionHelpers.setField(adapter, "mEntryContents", new LongSparseArray<Integer>());
+        ReflectionHelpers.setField(adapter, "mLastSortMode", R.id.sort_order_size);
+        ReflectionHelpers.setField(mFragment, "mCurrentPkgName", "c");
+
+        entryC.size = 400;
+        adapter.onPackageSizeChanged("c");
+
+        assertThat(adapter.getAppEntry(0)).isSameInstanceAs(entryC);
+        assertThat(adapter.getAppEntry(1)).isSameInstanceAs(entryA);
+        assertThat(adapter.getAppEntry(2)).isSameInstanceAs(entryB);
+        verify(adapter).notifyItemMoved(2, 0);
+        verify(adapter, never()).rebuild();
+    }
+
     @Test
     public void notifyItemChange_recyclerViewIdle_shouldNotify() {
         final RecyclerView recyclerView = mock(RecyclerView.class);
@@ -627,6 +683,15 @@ public class ManageApplicationsTest {
         return appList;
     }
 
+    private AppEntry createAppEntry(String packageName, long id, long size) {
+        final ApplicationInfo info = new ApplicationInfo();
+        info.packageName = packageName;
+        info.sourceDir = "abc";
+        final AppEntry entry = new AppEntry(mContext, info, id);
+        entry.size = size;
+        return entry;
+    }
+
     private AppEntry createPowerAllowListApp(boolean isPowerAllowListed) {
         final ApplicationInfo info = new ApplicationInfo();
         info.sourceDir = "abc";
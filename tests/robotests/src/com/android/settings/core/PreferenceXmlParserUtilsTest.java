@@ -27,6 +27,7 @@ import static com.android.settings.core.PreferenceXmlParserUtils.METADATA_UNAVAI
 import static com.google.common.truth.Truth.assertThat;
 
 import android.content.Context;
+import android.content.res.Configuration;
 import android.content.res.XmlResourceParser;
 import android.os.Bundle;
 import android.text.TextUtils;
@@ -63,6 +64,7 @@ public class PreferenceXmlParserUtilsTest {
     @Before
     public void setUp() {
         mContext = getApplicationContext();
+        PreferenceXmlParserUtils.clearMetadataCache();
     }
 
     @Test
@@ -207,6 +209,26 @@ public class PreferenceXmlParserUtilsTest {
         }
     }
 
+    @Test
+    @Config(qualifiers = "mcc999")
+    public void extractMetadata_calledTwice_shouldReturnEqualCopies()
+            throws IOException, XmlPullParserException {
+        final List<Bundle> metadata = PreferenceXmlParserUtils.extractMetadata(mContext,
+                R.xml.location_settings, MetadataFlag.FLAG_NEED_KEY);
+        metadata.get(0).putString(METADATA_KEY, "modified");
+
+        final List<Bundle> cachedMetadata = PreferenceXmlParserUtils.extractMetadata(mContext,
+                R.xml.location_settings, MetadataFlag.FLAG_NEED_KEY);
+
+        assertThat(cachedMetadata).hasSize(metadata.size());
+        assertThat(cachedMetadata.get(0)).isNotSameInstanceAs(metadata.get(0));
+        assertThat(cachedMetadata.get(0).getString(METADATA_KEY)).isNotEqualTo("modified");
+        for (int i = 1; i < metadata.size(); i++) {
+            assertThat(cachedMetadata.get(i).getString(METADATA_KEY))
+                    .isEqualTo(metadata.get(i).getString(METADATA_KEY));
+        }
+    }
+
     @Test
     @Config(qualifiers = "mcc999")
     public void extractMetadata_requestTitle_shouldContainTitle()
@@ -378,6 +400,30 @@ public class PreferenceXmlParserUtilsTest {
         assertThat(bundleWithKey2Found).isTrue();
     }
 
+    @Test
+    @Config(qualifiers = "mcc999")
+    public void extractMetadata_differentConfigurations_shouldCacheEachConfiguration()
+            throws Exception {
+        final Configuration config = new Configuration(
+                mContext.getResources().getConfiguration());
+        config.mcc = 998;
+        final Context otherContext = mContext.createConfigurationContext(config);
+
+        final List<Bundle> metadata = PreferenceXmlParserUtils.extractMetadata(mContext,
+                R.xml.location_settings, MetadataFlag.FLAG_NEED_KEY);
+        final List<Bundle> otherMetadata = PreferenceXmlParserUtils.extractMetadata(
+                otherContext, R.xml.location_settings, MetadataFlag.FLAG_NEED_KEY);
+        final List<Bundle> cachedMetadata = PreferenceXmlParserUtils.extractMetadata(mContext,
+                R.xml.location_settings, MetadataFlag.FLAG_NEED_KEY);
+
+        assertThat(metadata).hasSize(1);
+        assertThat(metadata.get(0).getString(METADATA_KEY)).isEqualTo("key");
+        assertThat(otherMetadata).hasSize(2);
+        assertThat(otherMetadata.get(0).getString(METADATA_KEY)).isEqualTo("key1");
+        assertThat(cachedMetadata).hasSize(1);
+        assertThat(cachedMetadata.get(0).getString(METADATA_KEY)).isEqualTo("key");
+    }
+
     /**
      * @param resId the ID for the XML preference
      * @return an XML resource parser that points to the start tag
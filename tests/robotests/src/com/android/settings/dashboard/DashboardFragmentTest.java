@@ -237,6 +237,27 @@ public class DashboardFragmentTest {
         verify(mTestFragment.getContentResolver()).unregisterContentObserver(observer);
     }
 
+    @Test
+    public void awaitObserverLatches_resolvedObserver_shouldRecordLatency() {
+        final DynamicDataObserver observer = new TestDynamicDataObserver();
+        observer.post(() -> {});
+
+        mTestFragment.awaitObserverLatches("tag", Arrays.asList(observer));
+
+        assertThat(observer.getCountDownLatch().getCount()).isEqualTo(0);
+        assertThat(observer.getResolvedLatencyMillis()).isAtLeast(0L);
+    }
+
+    @Test
+    public void awaitObserverLatches_pendingObserver_shouldNotResolve() {
+        final DynamicDataObserver observer = new TestDynamicDataObserver();
+
+        mTestFragment.awaitObserverLatches("tag", Arrays.asList(observer));
+
+        assertThat(observer.getCountDownLatch().getCount()).isEqualTo(1);
+        assertThat(observer.getResolvedLatencyMillis()).isEqualTo(-1L);
+    }
+
     @Test
     public void updateState_skipUnavailablePrefs() {
         final List<AbstractPreferenceController> preferenceControllers = mTestFragment.mControllers;
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batterytip;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteException;
+
+import com.android.settings.testutils.DatabaseTestUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class BatteryDatabaseManagerTest {
+
+    private static final int UID = 10001;
+    private static final String PACKAGE_NAME = "com.android.app";
+    private static final int ANOMALY_TYPE = 1;
+    private static final long TIMESTAMP = 1000L;
+
+    private Context mContext;
+    private BatteryDatabaseManager mBatteryDatabaseManager;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mBatteryDatabaseManager = BatteryDatabaseManager.getInstance(mContext);
+    }
+
+    @After
+    public void tearDown() {
+        DatabaseTestUtils.clearDb(mContext);
+    }
+
+    @Test
+    public void insertAnomaly_fromConcurrentThreads_insertAll() throws Exception {
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final int uid = UID + i;
+            threads.add(new Thread(() -> mBatteryDatabaseManager.insertAnomaly(uid,
+                    PACKAGE_NAME + uid, ANOMALY_TYPE, AnomalyDatabaseHelper.State.NEW,
+                    TIMESTAMP)));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(mBatteryDatabaseManager.queryAllAnomalies(
+                TIMESTAMP - 1, AnomalyDatabaseHelper.State.NEW)).hasSize(4);
+    }
+
+    @Test
+    public void runInBatch_insertAnomalies_queryByStateAndTimestamp() {
+        mBatteryDatabaseManager.runInBatch(() -> {
+            assertThat(mBatteryDatabaseManager.insertAnomaly(UID, PACKAGE_NAME, ANOMALY_TYPE,
+                    AnomalyDatabaseHelper.State.NEW, TIMESTAMP)).isTrue();
+            mBatteryDatabaseManager.insertAnomaly(UID, PACKAGE_NAME, ANOMALY_TYPE,
+                    AnomalyDatabaseHelper.State.HANDLED, TIMESTAMP);
+            mBatteryDatabaseManager.insertAnomaly(UID + 1, PACKAGE_NAME, ANOMALY_TYPE,
+                    AnomalyDatabaseHelper.State.NEW, TIMESTAMP - 1);
+        });
+
+        assertThat(mBatteryDatabaseManager.queryAllAnomalies(
+                TIMESTAMP - 1, AnomalyDatabaseHelper.State.NEW)).containsExactly(
+                new AppInfo.Builder()
+                        .setUid(UID)
+                        .setPackageName(PACKAGE_NAME)
+                        .addAnomalyType(ANOMALY_TYPE)
+                        .build());
+    }
+
+    @Test
+    public void runInBatch_writesCommittedAfterRunnable() {
+        mBatteryDatabaseManager.runInBatch(() -> {
+            mBatteryDatabaseManager.insertAnomaly(UID, PACKAGE_NAME, ANOMALY_TYPE,
+                    AnomalyDatabaseHelper.State.NEW, TIMESTAMP);
+
+            assertThat(mBatteryDatabaseManager.queryAllAnomalies(
+                    TIMESTAMP - 1, AnomalyDatabaseHelper.State.NEW)).isEmpty();
+        });
+
+        assertThat(mBatteryDatabaseManager.queryAllAnomalies(
+                TIMESTAMP - 1, AnomalyDatabaseHelper.State.NEW)).hasSize(1);
+    }
+
+    @Test
+    public void runInBatch_oneWriteFails_commitOtherWrites() {
+        dropActionTable();
+
+        mBatteryDatabaseManager.runInBatch(() -> {
+            mBatteryDatabaseManager.insertAction(AnomalyDatabaseHelper.ActionType.RESTRICTION,
+                    UID, PACKAGE_NAME, TIMESTAMP);
+            mBatteryDatabaseManager.insertAnomaly(UID, PACKAGE_NAME, ANOMALY_TYPE,
+                    AnomalyDatabaseHelper.State.NEW, TIMESTAMP);
+        });
+
+        assertThat(mBatteryDatabaseManager.queryAllAnomalies(
+                TIMESTAMP - 1, AnomalyDatabaseHelper.State.NEW)).hasSize(1);
+    }
+
+    @Test(expected = SQLiteException.class)
+    public void insertAction_writeFails_throwToCaller() {
+        dropActionTable();
+
+        mBatteryDatabaseManager.insertAction(AnomalyDatabaseHelper.ActionType.RESTRICTION,
+                UID, PACKAGE_NAME, TIMESTAMP);
+    }
+
+    private void dropActionTable() {
+        AnomalyDatabaseHelper.getInstance(mContext).getWritableDatabase().execSQL(
+                "DROP TABLE " + AnomalyDatabaseHelper.Tables.TABLE_ACTION);
+    }
+}
@@ -18,6 +18,7 @@ package com.android.settings.fuelgauge.batterytip;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.spy;
@@ -29,9 +30,11 @@ import android.os.PowerManager;
 
 import com.android.settings.fuelgauge.BatteryInfo;
 import com.android.settings.fuelgauge.BatteryUtils;
+import com.android.settings.fuelgauge.batterytip.detectors.BatteryTipDetector;
 import com.android.settings.fuelgauge.batterytip.tips.AppLabelPredicate;
 import com.android.settings.fuelgauge.batterytip.tips.AppRestrictionPredicate;
 import com.android.settings.fuelgauge.batterytip.tips.BatteryTip;
+import com.android.settings.fuelgauge.batterytip.tips.LowBatteryTip;
 
 import org.junit.After;
 import org.junit.Before;
@@ -44,7 +47,9 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.RuntimeEnvironment;
 import org.robolectric.util.ReflectionHelpers;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @RunWith(RobolectricTestRunner.class)
 public class BatteryTipLoaderTest {
@@ -84,6 +89,7 @@ public class BatteryTipLoaderTest {
 
     @After
     public void tearDown() {
+        BatteryTipLoader.clearTipCache();
         ReflectionHelpers.setStaticField(AppLabelPredicate.class, "sInstance", null);
         ReflectionHelpers.setStaticField(AppRestrictionPredicate.class, "sInstance", null);
     }
@@ -97,4 +103,126 @@ public class BatteryTipLoaderTest {
             assertThat(batteryTips.get(i).getType()).isEqualTo(TIP_ORDER[i]);
         }
     }
+
+    @Test
+    public void runDetectors_timeoutWithCachedTip_returnCachedTip() {
+        final BatteryTip cachedTip = new LowBatteryTip(
+                BatteryTip.StateType.NEW, false /* powerSaveModeOn */);
+        BatteryTipLoader.runDetectors(List.of(new BatteryTipLoader.DetectorTask(
+                new FakeDetector(cachedTip), /* timeoutMs= */ 1000)), Runnable::run);
+        final List<Runnable> pendingTasks = new ArrayList<>();
+
+        // The detector never runs, so it always misses its deadline.
+        final List<BatteryTip> batteryTips = BatteryTipLoader.runDetectors(List.of(
+                new BatteryTipLoader.DetectorTask(new FakeDetector(
+                        new LowBatteryTip(BatteryTip.StateType.INVISIBLE, false)),
+                        /* timeoutMs= */ 10)), pendingTasks::add);
+
+        assertThat(pendingTasks).hasSize(1);
+        assertThat(batteryTips).hasSize(1);
+        assertThat(batteryTips.get(0).getType()).isEqualTo(BatteryTip.TipType.LOW_BATTERY);
+        assertThat(batteryTips.get(0).getState()).isEqualTo(BatteryTip.StateType.NEW);
+    }
+
+    @Test
+    public void runDetectors_cachedTip_returnCopyOfCachedTip() {
+        final BatteryTip tip = new LowBatteryTip(
+                BatteryTip.StateType.NEW, false /* powerSaveModeOn */);
+        BatteryTipLoader.runDetectors(List.of(new BatteryTipLoader.DetectorTask(
+                new FakeDetector(tip), /* timeoutMs= */ 1000)), Runnable::run);
+
+        final List<BatteryTip> batteryTips = BatteryTipLoader.runDetectors(List.of(
+                new BatteryTipLoader.DetectorTask(new FakeDetector(tip), /* timeoutMs= */ 0)),
+                runnable -> { });
+
+        assertThat(batteryTips.get(0)).isNotSameInstanceAs(tip);
+    }
+
+    @Test
+    public void runDetectors_timeoutWithoutCachedTip_waitForTip() {
+        final BatteryTip tip = new LowBatteryTip(
+                BatteryTip.StateType.NEW, false /* powerSaveModeOn */);
+
+        final List<BatteryTip> batteryTips = BatteryTipLoader.runDetectors(List.of(
+                new BatteryTipLoader.DetectorTask(new FakeDetector(tip) {
+                    @Override
+                    public BatteryTip detect() {
+                        try {
+                            Thread.sleep(50);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return super.detect();
+                    }
+                }, /* timeoutMs= */ 1)), runnable -> new Thread(runnable).start());
+
+        assertThat(batteryTips).containsExactly(tip);
+    }
+
+    @Test
+    public void runDetectors_noTimeoutWithCachedTip_waitForTip() {
+        final BatteryTip cachedTip = new LowBatteryTip(
+                BatteryTip.StateType.NEW, false /* powerSaveModeOn */);
+        final BatteryTip tip = new LowBatteryTip(
+                BatteryTip.StateType.INVISIBLE, false /* powerSaveModeOn */);
+        final FakeDetector detector = new FakeDetector(tip) {
+            private boolean mDetected;
+
+            @Override
+            public BatteryTip detect() {
+                if (!mDetected) {
+                    mDetected = true;
+                    return cachedTip;
+                }
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.detect();
+            }
+        };
+        BatteryTipLoader.runDetectors(List.of(new BatteryTipLoader.DetectorTask(detector)),
+                Runnable::run);
+
+        final List<BatteryTip> batteryTips = BatteryTipLoader.runDetectors(
+                List.of(new BatteryTipLoader.DetectorTask(detector)),
+                runnable -> new Thread(runnable).start());
+
+        assertThat(batteryTips).containsExactly(tip);
+    }
+
+    @Test
+    public void runDetectors_failureWithoutCachedTip_rethrowWithoutRerun() {
+        final AtomicInteger detectCount = new AtomicInteger();
+        final IllegalStateException failure = new IllegalStateException();
+
+        try {
+            BatteryTipLoader.runDetectors(List.of(
+                    new BatteryTipLoader.DetectorTask(new FakeDetector(null) {
+                        @Override
+                        public BatteryTip detect() {
+                            detectCount.incrementAndGet();
+                            throw failure;
+                        }
+                    }, /* timeoutMs= */ 1000)), Runnable::run);
+            fail("The detector failure should be rethrown");
+        } catch (IllegalStateException e) {
+            assertThat(e).isSameInstanceAs(failure);
+        }
+        assertThat(detectCount.get()).isEqualTo(1);
+    }
+
+    private static class FakeDetector implements BatteryTipDetector {
+        private final BatteryTip mTip;
+
+        FakeDetector(BatteryTip tip) {
+            mTip = tip;
+        }
+
+        @Override
+        public BatteryTip detect() {
+            return mTip;
+        }
+    }
 }
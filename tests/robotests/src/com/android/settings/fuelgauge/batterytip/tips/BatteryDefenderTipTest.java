@@ -29,6 +29,7 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.BatteryManager;
+import android.os.Parcel;
 import android.util.Log;
 
 import androidx.preference.Preference;
@@ -90,6 +91,20 @@ public class BatteryDefenderTipTest {
                 .isEqualTo(R.drawable.ic_battery_status_good_24dp);
     }
 
+    @Test
+    public void testParcelable() {
+        final Parcel parcel = Parcel.obtain();
+        mBatteryDefenderTip.writeToParcel(parcel, mBatteryDefenderTip.describeContents());
+        parcel.setDataPosition(0);
+
+        final BatteryTip parcelTip =
+                (BatteryTip) BatteryDefenderTip.CREATOR.createFromParcel(parcel);
+
+        assertThat(parcelTip).isInstanceOf(BatteryDefenderTip.class);
+        assertThat(parcelTip.getType()).isEqualTo(BatteryTip.TipType.BATTERY_DEFENDER);
+        assertThat(parcelTip.getState()).isEqualTo(BatteryTip.StateType.NEW);
+    }
+
     @Test
     public void testLog_logMetric() {
         mBatteryDefenderTip.updateState(mBatteryTip);
@@ -25,6 +25,7 @@ import static org.mockito.Mockito.verify;
 
 import android.app.settings.SettingsEnums;
 import android.content.Context;
+import android.os.Parcel;
 import android.util.Log;
 
 import androidx.preference.Preference;
@@ -129,6 +130,22 @@ public class DockDefenderTipTest {
                 BatteryUtils.DockDefenderMode.DISABLED);
     }
 
+    @Test
+    public void testParcelable() {
+        final Parcel parcel = Parcel.obtain();
+        mDockDefenderTipActive.writeToParcel(parcel, mDockDefenderTipActive.describeContents());
+        parcel.setDataPosition(0);
+
+        final DockDefenderTip parcelTip =
+                (DockDefenderTip) DockDefenderTip.CREATOR.createFromParcel(parcel);
+
+        assertThat(parcelTip.getType()).isEqualTo(BatteryTip.TipType.DOCK_DEFENDER);
+        assertThat(parcelTip.getState()).isEqualTo(BatteryTip.StateType.NEW);
+        assertThat(parcelTip.getMode()).isEqualTo(BatteryUtils.DockDefenderMode.ACTIVE);
+        assertThat(parcelTip.getTitle(mContext).toString()).isEqualTo(
+                mContext.getString(R.string.battery_tip_dock_defender_active_title));
+    }
+
     @Test
     public void testLog() {
         mDockDefenderTipActive.log(mContext, mMetricsFeatureProvider);
@@ -15,9 +15,12 @@
  */
 package com.android.settings.fuelgauge.batterytip.tips;
 
+import static com.google.common.truth.Truth.assertThat;
+
 import static org.mockito.Mockito.verify;
 
 import android.content.Context;
+import android.os.Parcel;
 
 import com.android.internal.logging.nano.MetricsProto;
 import com.android.settingslib.core.instrumentation.MetricsFeatureProvider;
@@ -46,6 +49,19 @@ public class SmartBatteryTipTest {
         mSmartBatteryTip = new SmartBatteryTip(BatteryTip.StateType.NEW);
     }
 
+    @Test
+    public void testParcelable() {
+        final Parcel parcel = Parcel.obtain();
+        mSmartBatteryTip.writeToParcel(parcel, mSmartBatteryTip.describeContents());
+        parcel.setDataPosition(0);
+
+        final BatteryTip parcelTip = (BatteryTip) SmartBatteryTip.CREATOR.createFromParcel(parcel);
+
+        assertThat(parcelTip).isInstanceOf(SmartBatteryTip.class);
+        assertThat(parcelTip.getType()).isEqualTo(BatteryTip.TipType.SMART_BATTERY_MANAGER);
+        assertThat(parcelTip.getState()).isEqualTo(BatteryTip.StateType.NEW);
+    }
+
     @Test
     public void testLog() {
         mSmartBatteryTip.log(mContext, mMetricsFeatureProvider);
@@ -135,7 +135,8 @@ public final class BatteryChartPreferenceControllerTest {
                 mBatteryHistEntry);
         mBatteryDiffEntry = spy(mBatteryDiffEntry);
         // Adds fake testing data.
-        BatteryDiffEntry.sResourceCache.put(
+        NameAndIconCache.getInstance().put(
+                mContext,
                 "fakeBatteryDiffEntryKey",
                 new BatteryEntry.NameAndIcon("fakeName", /*icon=*/ null, /*iconId=*/ 1));
     }
@@ -144,20 +145,20 @@ public final class BatteryChartPreferenceControllerTest {
     public void onDestroy_activityIsChanging_clearBatteryEntryCache() {
         doReturn(true).when(mSettingsActivity).isChangingConfigurations();
         // Ensures the testing environment is correct.
-        assertThat(BatteryDiffEntry.sResourceCache).hasSize(1);
+        assertThat(NameAndIconCache.getInstance().snapshot()).hasSize(1);
 
         mBatteryChartPreferenceController.onDestroy();
-        assertThat(BatteryDiffEntry.sResourceCache).isEmpty();
+        assertThat(NameAndIconCache.getInstance().snapshot()).isEmpty();
     }
 
     @Test
     public void onDestroy_activityIsNotChanging_notClearBatteryEntryCache() {
         doReturn(false).when(mSettingsActivity).isChangingConfigurations();
         // Ensures the testing environment is correct.
-        assertThat(BatteryDiffEntry.sResourceCache).hasSize(1);
+        assertThat(NameAndIconCache.getInstance().snapshot()).hasSize(1);
 
         mBatteryChartPreferenceController.onDestroy();
-        assertThat(BatteryDiffEntry.sResourceCache).isNotEmpty();
+        assertThat(NameAndIconCache.getInstance().snapshot()).isNotEmpty();
     }
 
     @Test
@@ -358,6 +359,18 @@ public final class BatteryChartPreferenceControllerTest {
         verify(mAppListGroup).removeAll();
     }
 
+    @Test
+    public void refreshUi_appListNotLoaded_keepAppList() {
+        mBatteryChartPreferenceController.setBatteryHistoryMap(createBatteryHistoryMap(6));
+        mBatteryChartPreferenceController.mBatteryUsageMap = createBatteryUsageMap();
+        mBatteryChartPreferenceController.mIsAppListLoaded = false;
+        doReturn(1).when(mAppListGroup).getPreferenceCount();
+
+        assertThat(mBatteryChartPreferenceController.refreshUi()).isTrue();
+        verify(mAppListGroup, never()).removeAll();
+        verify(mAppListGroup, never()).addPreference(any());
+    }
+
     @Test
     public void addPreferenceToScreen_emptyContent_ignoreAddPreference() {
         mBatteryChartPreferenceController.addPreferenceToScreen(
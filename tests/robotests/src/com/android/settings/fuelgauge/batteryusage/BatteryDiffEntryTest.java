@@ -146,10 +146,10 @@ public final class BatteryDiffEntryTest {
 
         assertThat(entry.getAppLabel()).isEqualTo(expectedName);
         assertThat(entry.getAppIconId()).isEqualTo(R.drawable.ic_settings_aod);
-        assertThat(BatteryDiffEntry.sResourceCache).hasSize(1);
+        assertThat(NameAndIconCache.getInstance().snapshot()).hasSize(1);
         // Verifies the app label in the cache.
         final BatteryEntry.NameAndIcon nameAndIcon =
-                BatteryDiffEntry.sResourceCache.get(entry.getKey());
+                NameAndIconCache.getInstance().get(entry.getKey());
         assertThat(nameAndIcon.mName).isEqualTo(expectedName);
         assertThat(nameAndIcon.mIconId).isEqualTo(R.drawable.ic_settings_aod);
         // Verifies the restrictable flag in the cache.
@@ -172,10 +172,10 @@ public final class BatteryDiffEntryTest {
         assertThat(entry.getAppLabel()).isEqualTo(expectedName);
         assertThat(entry.getAppIcon()).isNull();
         assertThat(entry.getAppIconId()).isEqualTo(0);
-        assertThat(BatteryDiffEntry.sResourceCache).hasSize(1);
+        assertThat(NameAndIconCache.getInstance().snapshot()).hasSize(1);
         // Verifies the app label in the cache.
         final BatteryEntry.NameAndIcon nameAndIcon =
-                BatteryDiffEntry.sResourceCache.get(entry.getKey());
+                NameAndIconCache.getInstance().get(entry.getKey());
         assertThat(nameAndIcon.mName).isEqualTo(expectedName);
         assertThat(nameAndIcon.mIconId).isEqualTo(0);
         // Verifies the restrictable flag in the cache.
@@ -201,10 +201,10 @@ public final class BatteryDiffEntryTest {
 
         assertThat(entry.getAppLabel()).isEqualTo(expectedAppLabel);
         assertThat(entry.getAppIconId()).isEqualTo(0);
-        assertThat(BatteryDiffEntry.sResourceCache).hasSize(1);
+        assertThat(NameAndIconCache.getInstance().snapshot()).hasSize(1);
         // Verifies the app label in the cache.
         final BatteryEntry.NameAndIcon nameAndIcon =
-                BatteryDiffEntry.sResourceCache.get(entry.getKey());
+                NameAndIconCache.getInstance().get(entry.getKey());
         assertThat(nameAndIcon.mName).isEqualTo(expectedAppLabel);
         // Verifies the restrictable flag in the cache.
         assertThat(entry.mValidForRestriction).isFalse();
@@ -221,10 +221,10 @@ public final class BatteryDiffEntryTest {
         final BatteryDiffEntry entry = createBatteryDiffEntry(10, batteryHistEntry);
 
         assertThat(entry.getAppLabel()).isEqualTo(expectedAppLabel);
-        assertThat(BatteryDiffEntry.sResourceCache).hasSize(1);
+        assertThat(NameAndIconCache.getInstance().snapshot()).hasSize(1);
         // Verifies the app label in the cache.
         final BatteryEntry.NameAndIcon nameAndIcon =
-                BatteryDiffEntry.sResourceCache.get(entry.getKey());
+                NameAndIconCache.getInstance().get(entry.getKey());
         assertThat(nameAndIcon.mName).isEqualTo(expectedAppLabel);
     }
 
@@ -240,7 +240,7 @@ public final class BatteryDiffEntryTest {
 
         entry.mIsLoaded = true;
         assertThat(entry.getAppLabel()).isEqualTo(expectedAppLabel);
-        assertThat(BatteryDiffEntry.sResourceCache).isEmpty();
+        assertThat(NameAndIconCache.getInstance().snapshot()).isEmpty();
     }
 
     @Test
@@ -255,7 +255,7 @@ public final class BatteryDiffEntryTest {
         entry.mIsLoaded = true;
         entry.mAppIcon = mMockDrawable;
         assertThat(entry.getAppIcon()).isEqualTo(mMockDrawable);
-        assertThat(BatteryDiffEntry.sResourceCache).isEmpty();
+        assertThat(NameAndIconCache.getInstance().snapshot()).isEmpty();
     }
 
     @Test
@@ -280,16 +280,17 @@ public final class BatteryDiffEntryTest {
 
         entry.mAppIcon = null;
         assertThat(entry.getAppIcon()).isEqualTo(mMockDrawable);
-        assertThat(BatteryDiffEntry.sResourceCache).hasSize(1);
+        assertThat(NameAndIconCache.getInstance().snapshot()).hasSize(1);
         // Verifies the app label in the cache.
         final BatteryEntry.NameAndIcon nameAndIcon =
-                BatteryDiffEntry.sResourceCache.get(entry.getKey());
+                NameAndIconCache.getInstance().get(entry.getKey());
         assertThat(nameAndIcon.mIcon).isEqualTo(mMockDrawable);
     }
 
     @Test
     public void testClearCache_clearDataForResourcesAndFlags() {
-        BatteryDiffEntry.sResourceCache.put(
+        NameAndIconCache.getInstance().put(
+                mContext,
                 "fake application key",
                 new BatteryEntry.NameAndIcon("app label", null, /*iconId=*/ 0));
         BatteryDiffEntry.sValidForRestriction.put(
@@ -297,7 +298,7 @@ public final class BatteryDiffEntryTest {
 
         BatteryDiffEntry.clearCache();
 
-        assertThat(BatteryDiffEntry.sResourceCache).isEmpty();
+        assertThat(NameAndIconCache.getInstance().snapshot()).isEmpty();
         assertThat(BatteryDiffEntry.sValidForRestriction).isEmpty();
     }
 
@@ -318,7 +319,7 @@ public final class BatteryDiffEntryTest {
         assertThat(entry2.getAppIcon()).isEqualTo(mMockDrawable2);
         // Verifies the cache is updated into the new drawable.
         final BatteryEntry.NameAndIcon nameAndIcon =
-                BatteryDiffEntry.sResourceCache.get(entry2.getKey());
+                NameAndIconCache.getInstance().get(entry2.getKey());
         assertThat(nameAndIcon.mIcon).isEqualTo(mMockDrawable2);
     }
 
@@ -220,12 +220,15 @@ public class BatteryEntryTest {
         BatteryEntry.stopRequestQueue();
 
         Locale.setDefault(new Locale("en_US"));
-        BatteryEntry.sUidCache.put(Integer.toString(APP_UID), null);
-        assertThat(BatteryEntry.sUidCache).isNotEmpty();
+        NameAndIconCache.getInstance().put(RuntimeEnvironment.application,
+                Integer.toString(APP_UID),
+                new BatteryEntry.NameAndIcon("label", /*icon=*/ null, /*iconId=*/ 0));
+        assertThat(NameAndIconCache.getInstance().snapshot()).isNotEmpty();
 
         Locale.setDefault(new Locale("zh_TW"));
         createBatteryEntryForApp(null, null, HIGH_DRAIN_PACKAGE);
-        assertThat(BatteryEntry.sUidCache).isEmpty(); // check if cache is clear
+        // check if cache is clear
+        assertThat(NameAndIconCache.getInstance().get(Integer.toString(APP_UID))).isNull();
     }
 
     @Test
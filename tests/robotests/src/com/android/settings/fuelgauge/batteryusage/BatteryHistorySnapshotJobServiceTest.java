@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+import android.app.JobSchedulerImpl;
+import android.app.job.IJobScheduler;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.Context;
+import android.os.Binder;
+
+import com.android.settings.R;
+import com.android.settings.testutils.FakeFeatureFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public class BatteryHistorySnapshotJobServiceTest {
+
+    private Context mContext;
+    private JobScheduler mJobScheduler;
+    private FakeFeatureFactory mFeatureFactory;
+
+    @Before
+    public void setUp() {
+        mContext = spy(RuntimeEnvironment.application);
+        mJobScheduler = spy(new JobSchedulerImpl(IJobScheduler.Stub.asInterface(new Binder())));
+        when(mContext.getSystemService(JobScheduler.class)).thenReturn(mJobScheduler);
+        mFeatureFactory = FakeFeatureFactory.setupForTest();
+    }
+
+    @Test
+    public void scheduleSnapshot_chartGraphEnabled_schedulePeriodicJob() {
+        when(mFeatureFactory.powerUsageFeatureProvider.isChartGraphEnabled(any()))
+                .thenReturn(true);
+
+        BatteryHistorySnapshotJobService.scheduleSnapshot(mContext);
+
+        final List<JobInfo> pendingJobs = mJobScheduler.getAllPendingJobs();
+        assertThat(pendingJobs).hasSize(1);
+        assertThat(pendingJobs.get(0).getId()).isEqualTo(R.integer.job_battery_history_snapshot);
+        assertThat(pendingJobs.get(0).getIntervalMillis())
+                .isEqualTo(BatteryHistorySnapshotJobService.SNAPSHOT_FREQUENCY_MS);
+        assertThat(pendingJobs.get(0).isPersisted()).isTrue();
+    }
+
+    @Test
+    public void scheduleSnapshot_chartGraphDisabled_cancelScheduledJob() {
+        when(mFeatureFactory.powerUsageFeatureProvider.isChartGraphEnabled(any()))
+                .thenReturn(true);
+        BatteryHistorySnapshotJobService.scheduleSnapshot(mContext);
+        when(mFeatureFactory.powerUsageFeatureProvider.isChartGraphEnabled(any()))
+                .thenReturn(false);
+
+        BatteryHistorySnapshotJobService.scheduleSnapshot(mContext);
+
+        assertThat(mJobScheduler.getAllPendingJobs()).isEmpty();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.os.BatteryManager;
+
+import com.android.settings.testutils.DatabaseTestUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+@RunWith(RobolectricTestRunner.class)
+public final class BatteryHistoryStoreTest {
+
+    private static final long HOUR_MS = 60 * 60 * 1000L;
+
+    private Context mContext;
+    private long mNow;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mNow = System.currentTimeMillis();
+    }
+
+    @After
+    public void cleanUp() {
+        DatabaseTestUtils.clearDb(mContext);
+    }
+
+    @Test
+    public void getHistory_twoSnapshots_returnsEntriesByTimestamp() {
+        final long timestamp1 = mNow - 2 * HOUR_MS;
+        final long timestamp2 = mNow - HOUR_MS;
+        BatteryHistoryStore.insert(mContext, Arrays.asList(
+                createValues(1001, timestamp1, BatteryManager.BATTERY_STATUS_DISCHARGING),
+                createValues(1002, timestamp1, BatteryManager.BATTERY_STATUS_DISCHARGING)));
+        BatteryHistoryStore.insert(mContext, Collections.singletonList(
+                createValues(1001, timestamp2, BatteryManager.BATTERY_STATUS_DISCHARGING)));
+
+        final Map<Long, Map<String, BatteryHistEntry>> history =
+                BatteryHistoryStore.getHistory(mContext);
+
+        assertThat(history.keySet()).containsExactly(timestamp1, timestamp2);
+        assertThat(history.get(timestamp1).keySet()).containsExactly("1001", "1002");
+        assertThat(history.get(timestamp2).get("1001").mConsumePower).isEqualTo(1.5);
+    }
+
+    @Test
+    public void getHistorySinceLastFullCharge_hasFullCharge_skipsEarlierSnapshots() {
+        final long timestamp1 = mNow - 3 * HOUR_MS;
+        final long timestamp2 = mNow - 2 * HOUR_MS;
+        final long timestamp3 = mNow - HOUR_MS;
+        BatteryHistoryStore.insert(mContext, Collections.singletonList(
+                createValues(1001, timestamp1, BatteryManager.BATTERY_STATUS_CHARGING)));
+        BatteryHistoryStore.insert(mContext, Collections.singletonList(
+                createValues(1001, timestamp2, BatteryManager.BATTERY_STATUS_FULL)));
+        BatteryHistoryStore.insert(mContext, Collections.singletonList(
+                createValues(1001, timestamp3, BatteryManager.BATTERY_STATUS_DISCHARGING)));
+
+        assertThat(BatteryHistoryStore.getHistorySinceLastFullCharge(mContext).keySet())
+                .containsExactly(timestamp2, timestamp3);
+    }
+
+    @Test
+    public void deleteBefore_removesOlderSnapshots() {
+        final long timestamp1 = mNow - 2 * HOUR_MS;
+        final long timestamp2 = mNow - HOUR_MS;
+        BatteryHistoryStore.insert(mContext, Arrays.asList(
+                createValues(1001, timestamp1, BatteryManager.BATTERY_STATUS_DISCHARGING),
+                createValues(1001, timestamp2, BatteryManager.BATTERY_STATUS_DISCHARGING)));
+
+        assertThat(BatteryHistoryStore.deleteBefore(mContext, timestamp2)).isEqualTo(1);
+        assertThat(BatteryHistoryStore.getHistory(mContext).keySet()).containsExactly(timestamp2);
+    }
+
+    private static ContentValues createValues(long uid, long timestamp, int batteryStatus) {
+        final ContentValues values = new ContentValues();
+        values.put(BatteryHistEntry.KEY_UID, uid);
+        values.put(BatteryHistEntry.KEY_USER_ID, 0L);
+        values.put(BatteryHistEntry.KEY_APP_LABEL, "app");
+        values.put(BatteryHistEntry.KEY_PACKAGE_NAME, "com.android.app");
+        values.put(BatteryHistEntry.KEY_IS_HIDDEN, false);
+        values.put(BatteryHistEntry.KEY_BOOT_TIMESTAMP, 0L);
+        values.put(BatteryHistEntry.KEY_TIMESTAMP, timestamp);
+        values.put(BatteryHistEntry.KEY_ZONE_ID, "UTC");
+        values.put(BatteryHistEntry.KEY_TOTAL_POWER, 10.0);
+        values.put(BatteryHistEntry.KEY_CONSUME_POWER, 1.5);
+        values.put(BatteryHistEntry.KEY_PERCENT_OF_TOTAL, 15.0);
+        values.put(BatteryHistEntry.KEY_FOREGROUND_USAGE_TIME, 1000L);
+        values.put(BatteryHistEntry.KEY_BACKGROUND_USAGE_TIME, 2000L);
+        values.put(BatteryHistEntry.KEY_DRAIN_TYPE, 1);
+        values.put(BatteryHistEntry.KEY_CONSUMER_TYPE, ConvertUtils.CONSUMER_TYPE_UID_BATTERY);
+        values.put(BatteryHistEntry.KEY_BATTERY_LEVEL, 50);
+        values.put(BatteryHistEntry.KEY_BATTERY_STATUS, batteryStatus);
+        values.put(BatteryHistEntry.KEY_BATTERY_HEALTH, BatteryManager.BATTERY_HEALTH_GOOD);
+        return values;
+    }
+}
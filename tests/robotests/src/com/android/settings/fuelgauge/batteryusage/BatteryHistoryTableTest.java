@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.ContentValues;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RunWith(RobolectricTestRunner.class)
+public final class BatteryHistoryTableTest {
+
+    @Test
+    public void from_sortsSlotsByTimestamp() {
+        final Map<Long, Map<String, BatteryHistEntry>> historyMap = new HashMap<>();
+        historyMap.put(3000L, createEntryMap(3000L, "uid1"));
+        historyMap.put(1000L, createEntryMap(1000L, "uid1"));
+        historyMap.put(2000L, new HashMap<>());
+
+        final BatteryHistoryTable table = BatteryHistoryTable.from(historyMap);
+
+        assertThat(table.getSlotCount()).isEqualTo(3);
+        assertThat(table.getTimestamp(0)).isEqualTo(1000L);
+        assertThat(table.getTimestamp(2)).isEqualTo(3000L);
+        assertThat(table.isSlotEmpty(1)).isTrue();
+        assertThat(table.indexOf(2000L)).isEqualTo(1);
+        assertThat(table.indexOf(2500L)).isEqualTo(-1);
+        assertThat(table.ceilingIndexOf(2500L)).isEqualTo(2);
+    }
+
+    @Test
+    public void from_sortsRowsOfEachSlotByInternedKey() {
+        final Map<Long, Map<String, BatteryHistEntry>> historyMap = new HashMap<>();
+        historyMap.put(1000L, createEntryMap(1000L, "uid1", "uid2"));
+        historyMap.put(2000L, createEntryMap(2000L, "uid3", "uid2", "uid1"));
+
+        final BatteryHistoryTable table = BatteryHistoryTable.from(historyMap);
+
+        int previousKeyIndex = -1;
+        for (int row = table.getRowStart(1); row < table.getRowEnd(1); row++) {
+            assertThat(table.getKeyIndex(row)).isGreaterThan(previousKeyIndex);
+            previousKeyIndex = table.getKeyIndex(row);
+        }
+        // The same key shares the same index in different slots.
+        assertThat(table.getKey(table.getRowStart(1))).isEqualTo(table.getKey(0));
+        assertThat(table.getKeyIndex(table.getRowStart(1))).isEqualTo(table.getKeyIndex(0));
+    }
+
+    @Test
+    public void toHistoryMap_returnsRecordedEntries() {
+        final Map<Long, Map<String, BatteryHistEntry>> historyMap = new HashMap<>();
+        historyMap.put(1000L, createEntryMap(1000L, "uid1", "uid2"));
+        historyMap.put(2000L, new HashMap<>());
+
+        final Map<Long, Map<String, BatteryHistEntry>> resultMap =
+                BatteryHistoryTable.from(historyMap).toHistoryMap();
+
+        assertThat(resultMap.keySet()).containsExactly(1000L, 2000L);
+        assertThat(resultMap.get(1000L)).isEqualTo(historyMap.get(1000L));
+        assertThat(resultMap.get(2000L)).isEmpty();
+    }
+
+    @Test
+    public void toHistoryMap_interpolatedRow_returnsNewEntry() {
+        final Map<Long, Map<String, BatteryHistEntry>> historyMap = new HashMap<>();
+        historyMap.put(1000L, createEntryMap(1000L, "uid1"));
+        final BatteryHistoryTable source = BatteryHistoryTable.from(historyMap);
+        final BatteryHistEntry entry = source.getEntry(0);
+
+        final BatteryHistoryTable table = source.newBuilder(/*expectedSlotCount=*/ 1)
+                .startSlot(900L)
+                .addRow(source.getKeyIndex(0), entry, /*bootTimestamp=*/ 400L,
+                        /*foregroundUsageTimeInMs=*/ 10L, /*backgroundUsageTimeInMs=*/ 20L,
+                        /*consumePower=*/ 1.5, /*totalPower=*/ 9.0, /*batteryLevel=*/ 60,
+                        /*interpolated=*/ true)
+                .build();
+        final BatteryHistEntry resultEntry = table.toHistoryMap().get(900L).get("uid1");
+
+        assertThat(resultEntry).isNotSameInstanceAs(entry);
+        assertThat(resultEntry.mUid).isEqualTo(entry.mUid);
+        assertThat(resultEntry.mTimestamp).isEqualTo(900L);
+        assertThat(resultEntry.mBootTimestamp).isEqualTo(400L);
+        assertThat(resultEntry.mForegroundUsageTimeInMs).isEqualTo(10L);
+        assertThat(resultEntry.mBackgroundUsageTimeInMs).isEqualTo(20L);
+        assertThat(resultEntry.mConsumePower).isEqualTo(1.5);
+        assertThat(resultEntry.mBatteryLevel).isEqualTo(60);
+    }
+
+    private static Map<String, BatteryHistEntry> createEntryMap(long timestamp, String... keys) {
+        final Map<String, BatteryHistEntry> entryMap = new HashMap<>();
+        for (String key : keys) {
+            final ContentValues values = new ContentValues();
+            values.put(BatteryHistEntry.KEY_UID, Long.parseLong(key.substring(3)));
+            values.put(BatteryHistEntry.KEY_TIMESTAMP, timestamp);
+            values.put(BatteryHistEntry.KEY_FOREGROUND_USAGE_TIME, 100L);
+            values.put(BatteryHistEntry.KEY_BATTERY_LEVEL, 80);
+            entryMap.put(key, new BatteryHistEntry(values));
+        }
+        return entryMap;
+    }
+}
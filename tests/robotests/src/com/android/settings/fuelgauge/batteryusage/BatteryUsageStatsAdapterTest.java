@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.when;
+
+import android.os.BatteryUsageStats;
+import android.os.UidBatteryConsumer;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(RobolectricTestRunner.class)
+public final class BatteryUsageStatsAdapterTest {
+
+    @Mock
+    private BatteryUsageStats mBatteryUsageStats;
+    @Mock
+    private UidBatteryConsumer mLowConsumer;
+    @Mock
+    private UidBatteryConsumer mHighConsumer;
+
+    private List<UidBatteryConsumer> mUidBatteryConsumers;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+        when(mLowConsumer.getConsumedPower()).thenReturn(10.0);
+        when(mHighConsumer.getConsumedPower()).thenReturn(20.0);
+        mUidBatteryConsumers = new ArrayList<>(List.of(mLowConsumer, mHighConsumer));
+        when(mBatteryUsageStats.getUidBatteryConsumers()).thenReturn(mUidBatteryConsumers);
+        when(mBatteryUsageStats.getConsumedPower()).thenReturn(30.0);
+        when(mBatteryUsageStats.getDischargePercentage()).thenReturn(5);
+    }
+
+    @Test
+    public void of_sortConsumersByPowerWithoutChangingStats() {
+        final BatteryUsageStatsAdapter adapter = BatteryUsageStatsAdapter.of(mBatteryUsageStats);
+
+        assertThat(adapter.getUidBatteryConsumers())
+                .containsExactly(mHighConsumer, mLowConsumer).inOrder();
+        assertThat(mUidBatteryConsumers).containsExactly(mLowConsumer, mHighConsumer).inOrder();
+        assertThat(adapter.getConsumedPower()).isEqualTo(30.0);
+        assertThat(adapter.getDischargePercentage()).isEqualTo(5);
+    }
+
+    @Test
+    public void of_sameStats_returnSameAdapter() {
+        assertThat(BatteryUsageStatsAdapter.of(mBatteryUsageStats))
+                .isSameInstanceAs(BatteryUsageStatsAdapter.of(mBatteryUsageStats));
+    }
+}
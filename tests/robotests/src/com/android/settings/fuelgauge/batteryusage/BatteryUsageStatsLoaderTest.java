@@ -17,8 +17,12 @@ package com.android.settings.fuelgauge.batteryusage;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import android.content.Context;
@@ -26,6 +30,7 @@ import android.os.BatteryStatsManager;
 import android.os.BatteryUsageStats;
 import android.os.BatteryUsageStatsQuery;
 
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -54,6 +59,11 @@ public class BatteryUsageStatsLoaderTest {
                 Context.BATTERY_STATS_SERVICE);
     }
 
+    @After
+    public void tearDown() {
+        BatteryUsageStatsLoader.clearCache();
+    }
+
     @Test
     public void testLoadInBackground_loadWithoutHistory() {
         BatteryUsageStatsLoader loader = new BatteryUsageStatsLoader(
@@ -83,4 +93,90 @@ public class BatteryUsageStatsLoaderTest {
         assertThat(queryFlags
                 & BatteryUsageStatsQuery.FLAG_BATTERY_USAGE_STATS_INCLUDE_HISTORY).isNotEqualTo(0);
     }
+
+    @Test
+    public void testLoadInBackground_loadWithoutHistoryTwice_reuseCachedStats() {
+        when(mBatteryStatsManager.getBatteryUsageStats(any())).thenReturn(mBatteryUsageStats);
+
+        new BatteryUsageStatsLoader(mContext, /* includeBatteryHistory */ false)
+                .loadInBackground();
+        final BatteryUsageStats batteryUsageStats =
+                new BatteryUsageStatsLoader(mContext, /* includeBatteryHistory */ false)
+                        .loadInBackground();
+
+        assertThat(batteryUsageStats).isSameInstanceAs(mBatteryUsageStats);
+        verify(mBatteryStatsManager, times(1)).getBatteryUsageStats(any());
+    }
+
+    @Test
+    public void testLoadInBackground_loadWithHistory_notUseCachedStats() {
+        when(mBatteryStatsManager.getBatteryUsageStats(any())).thenReturn(mBatteryUsageStats);
+
+        new BatteryUsageStatsLoader(mContext, /* includeBatteryHistory */ false)
+                .loadInBackground();
+        new BatteryUsageStatsLoader(mContext, /* includeBatteryHistory */ true)
+                .loadInBackground();
+
+        verify(mBatteryStatsManager, times(2)).getBatteryUsageStats(any());
+    }
+
+    @Test
+    public void testLoadInBackground_statsReset_notUseCachedStats() {
+        when(mBatteryStatsManager.getBatteryUsageStats(any())).thenReturn(mBatteryUsageStats);
+        when(mBatteryUsageStats.getStatsStartTimestamp()).thenReturn(1000L);
+        new BatteryUsageStatsLoader(mContext, /* includeBatteryHistory */ false)
+                .loadInBackground();
+
+        when(mBatteryUsageStats.getStatsStartTimestamp()).thenReturn(2000L);
+        new BatteryUsageStatsLoader(mContext, /* includeBatteryHistory */ true)
+                .loadInBackground();
+        new BatteryUsageStatsLoader(mContext, /* includeBatteryHistory */ false)
+                .loadInBackground();
+
+        verify(mBatteryStatsManager, times(3)).getBatteryUsageStats(any());
+    }
+
+    @Test
+    public void release_sharedStatsReleasedByOneCaller_notClosed() throws Exception {
+        when(mBatteryStatsManager.getBatteryUsageStats(any())).thenReturn(mBatteryUsageStats);
+        final BatteryUsageStats firstStats =
+                new BatteryUsageStatsLoader(mContext, /* includeBatteryHistory */ false)
+                        .loadInBackground();
+        new BatteryUsageStatsLoader(mContext, /* includeBatteryHistory */ false)
+                .loadInBackground();
+
+        BatteryUsageStatsLoader.release(firstStats);
+        BatteryUsageStatsLoader.clearCache();
+
+        verify(mBatteryUsageStats, never()).close();
+    }
+
+    @Test
+    public void release_sharedStatsReleasedByAllCallers_closed() throws Exception {
+        when(mBatteryStatsManager.getBatteryUsageStats(any())).thenReturn(mBatteryUsageStats);
+        final BatteryUsageStats firstStats =
+                new BatteryUsageStatsLoader(mContext, /* includeBatteryHistory */ false)
+                        .loadInBackground();
+        final BatteryUsageStats secondStats =
+                new BatteryUsageStatsLoader(mContext, /* includeBatteryHistory */ false)
+                        .loadInBackground();
+
+        BatteryUsageStatsLoader.release(firstStats);
+        BatteryUsageStatsLoader.release(secondStats);
+        BatteryUsageStatsLoader.clearCache();
+
+        verify(mBatteryUsageStats, times(1)).close();
+    }
+
+    @Test
+    public void release_statsWithHistory_closed() throws Exception {
+        when(mBatteryStatsManager.getBatteryUsageStats(any())).thenReturn(mBatteryUsageStats);
+        final BatteryUsageStats batteryUsageStats =
+                new BatteryUsageStatsLoader(mContext, /* includeBatteryHistory */ true)
+                        .loadInBackground();
+
+        BatteryUsageStatsLoader.release(batteryUsageStats);
+
+        verify(mBatteryUsageStats).close();
+    }
 }
@@ -79,6 +79,7 @@ public class DataProcessorTest {
         mFeatureFactory = FakeFeatureFactory.setupForTest();
         mMetricsFeatureProvider = mFeatureFactory.metricsFeatureProvider;
         mPowerUsageFeatureProvider = mFeatureFactory.powerUsageFeatureProvider;
+        DataProcessor.sHourlyUsageDiffCache.evictAll();
     }
 
     @Test
@@ -466,6 +467,42 @@ public class DataProcessorTest {
         assertThat(DataProcessor.isFromFullCharge(entryMap)).isTrue();
     }
 
+    @Test
+    public void copyBatteryUsageMap_returnCopiedEntries() {
+        final BatteryDiffEntry entry = new BatteryDiffEntry(
+                mContext,
+                /*foregroundUsageTimeInMs=*/ 10,
+                /*backgroundUsageTimeInMs=*/ 20,
+                /*consumePower=*/ 5,
+                createBatteryHistEntry(
+                        "package1", "label1", /*consumePower=*/ 5, /*uid=*/ 1L,
+                        /*userId=*/ 0L, ConvertUtils.CONSUMER_TYPE_UID_BATTERY,
+                        /*foregroundUsageTimeInMs=*/ 10, /*backgroundUsageTimeInMs=*/ 20));
+        final List<BatteryDiffEntry> appEntries = new ArrayList<>();
+        appEntries.add(entry);
+        final Map<Integer, BatteryDiffData> dailyDiffMap = new HashMap<>();
+        dailyDiffMap.put(DataProcessor.SELECTED_INDEX_ALL,
+                new BatteryDiffData(appEntries, new ArrayList<>(), /*totalConsumePower=*/ 20));
+        dailyDiffMap.put(0, null);
+        final Map<Integer, Map<Integer, BatteryDiffData>> batteryUsageMap = new HashMap<>();
+        batteryUsageMap.put(DataProcessor.SELECTED_INDEX_ALL, dailyDiffMap);
+
+        final Map<Integer, Map<Integer, BatteryDiffData>> resultMap =
+                DataProcessor.copyBatteryUsageMap(batteryUsageMap);
+
+        final Map<Integer, BatteryDiffData> resultDailyDiffMap =
+                resultMap.get(DataProcessor.SELECTED_INDEX_ALL);
+        assertThat(resultDailyDiffMap.get(0)).isNull();
+        final List<BatteryDiffEntry> resultAppEntries =
+                resultDailyDiffMap.get(DataProcessor.SELECTED_INDEX_ALL).getAppDiffEntryList();
+        assertThat(resultAppEntries).hasSize(1);
+        assertThat(resultAppEntries.get(0)).isNotSameInstanceAs(entry);
+        assertBatteryDiffEntry(
+                resultAppEntries.get(0), /*userId=*/ 0, /*uid=*/ 1,
+                ConvertUtils.CONSUMER_TYPE_UID_BATTERY, /*consumePercentage=*/ 25.0,
+                /*foregroundUsageTimeInMs=*/ 10, /*backgroundUsageTimeInMs=*/ 20);
+    }
+
     @Test
     public void findNearestTimestamp_returnExpectedResult() {
         long[] results = DataProcessor.findNearestTimestamp(
@@ -825,6 +862,63 @@ public class DataProcessorTest {
                         0);
     }
 
+    @Test
+    public void getBatteryUsageMap_unchangedSlot_reusesCachedDiffData() {
+        final long[] batteryHistoryKeys = new long[]{
+                1641052800000L, // 2022-01-02 00:00:00
+                1641056400000L, // 2022-01-02 01:00:00
+                1641060000000L  // 2022-01-02 02:00:00
+        };
+        final Map<Long, Map<String, BatteryHistEntry>> batteryHistoryMap = new HashMap<>();
+        final int currentUserId = mContext.getUserId();
+        for (int index = 0; index < batteryHistoryKeys.length; index++) {
+            final Map<String, BatteryHistEntry> entryMap = new HashMap<>();
+            final BatteryHistEntry entry = createBatteryHistEntry(
+                    "package1", "label1", /*consumePower=*/ 10.0 * index, /*uid=*/ 1L,
+                    currentUserId, ConvertUtils.CONSUMER_TYPE_UID_BATTERY,
+                    /*foregroundUsageTimeInMs=*/ 1000L * index,
+                    /*backgroundUsageTimeInMs=*/ 2000L * index);
+            entryMap.put(entry.getKey(), entry);
+            batteryHistoryMap.put(batteryHistoryKeys[index], entryMap);
+        }
+        final List<BatteryLevelData.PeriodBatteryLevelData> hourlyBatteryLevelsPerDay =
+                new ArrayList<>();
+        hourlyBatteryLevelsPerDay.add(new BatteryLevelData.PeriodBatteryLevelData(
+                List.of(batteryHistoryKeys[0], batteryHistoryKeys[2]), List.of(100, 100)));
+
+        DataProcessor.getBatteryUsageMap(mContext, hourlyBatteryLevelsPerDay, batteryHistoryMap);
+        final int hitCount = DataProcessor.sHourlyUsageDiffCache.hitCount();
+        final Map<Integer, Map<Integer, BatteryDiffData>> resultMap =
+                DataProcessor.getBatteryUsageMap(
+                        mContext, hourlyBatteryLevelsPerDay, batteryHistoryMap);
+
+        assertThat(DataProcessor.sHourlyUsageDiffCache.hitCount()).isEqualTo(hitCount + 1);
+        assertBatteryDiffEntry(
+                resultMap.get(0).get(0).getAppDiffEntryList().get(0), currentUserId,
+                /*uid=*/ 1L, ConvertUtils.CONSUMER_TYPE_UID_BATTERY,
+                /*consumePercentage=*/ 100.0, /*foregroundUsageTimeInMs=*/ 2000L,
+                /*backgroundUsageTimeInMs=*/ 4000L);
+
+        // Changes the usage of the slot, which shouldn't use the cached data.
+        final Map<String, BatteryHistEntry> entryMap = new HashMap<>();
+        final BatteryHistEntry entry = createBatteryHistEntry(
+                "package1", "label1", /*consumePower=*/ 30.0, /*uid=*/ 1L, currentUserId,
+                ConvertUtils.CONSUMER_TYPE_UID_BATTERY, /*foregroundUsageTimeInMs=*/ 3000L,
+                /*backgroundUsageTimeInMs=*/ 6000L);
+        entryMap.put(entry.getKey(), entry);
+        batteryHistoryMap.put(batteryHistoryKeys[2], entryMap);
+        final Map<Integer, Map<Integer, BatteryDiffData>> updatedResultMap =
+                DataProcessor.getBatteryUsageMap(
+                        mContext, hourlyBatteryLevelsPerDay, batteryHistoryMap);
+
+        assertThat(DataProcessor.sHourlyUsageDiffCache.hitCount()).isEqualTo(hitCount + 1);
+        assertBatteryDiffEntry(
+                updatedResultMap.get(0).get(0).getAppDiffEntryList().get(0), currentUserId,
+                /*uid=*/ 1L, ConvertUtils.CONSUMER_TYPE_UID_BATTERY,
+                /*consumePercentage=*/ 100.0, /*foregroundUsageTimeInMs=*/ 3000L,
+                /*backgroundUsageTimeInMs=*/ 6000L);
+    }
+
     @Test
     public void getBatteryUsageMap_hideApplicationEntries_returnsExpectedResult() {
         final long[] batteryHistoryKeys = new long[]{
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.net.Uri;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+@RunWith(RobolectricTestRunner.class)
+public final class NameAndIconCacheTest {
+
+    private static final int ICON_SIZE_IN_BYTES = 10 * 10 * 4;
+
+    private Context mContext;
+    private NameAndIconCache mCache;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mCache = new NameAndIconCache(/*maxSizeInBytes=*/ 2 * ICON_SIZE_IN_BYTES);
+    }
+
+    @Test
+    public void getSizeInBytes_bitmapIcon_returnBitmapSize() {
+        final BatteryEntry.NameAndIcon nameAndIcon = createNameAndIcon("ab");
+
+        assertThat(NameAndIconCache.getSizeInBytes(nameAndIcon))
+                .isEqualTo(ICON_SIZE_IN_BYTES + 4);
+    }
+
+    @Test
+    public void put_exceedMaxSize_evictLeastRecentlyUsed() {
+        mCache.put(mContext, "1001", createNameAndIcon(/*name=*/ null));
+        mCache.put(mContext, "1002", createNameAndIcon(/*name=*/ null));
+        mCache.get("1001");
+
+        mCache.put(mContext, "1003", createNameAndIcon(/*name=*/ null));
+
+        assertThat(mCache.snapshot().keySet()).containsExactly("1001", "1003");
+        assertThat(mCache.getSizeInBytes()).isEqualTo(2 * ICON_SIZE_IN_BYTES);
+    }
+
+    @Test
+    public void onReceive_packageRemoved_removeDataOfUid() {
+        mCache.put(mContext, "1001", createNameAndIcon("app1"));
+        mCache.put(mContext, "S|1", createNameAndIcon(/*name=*/ null));
+
+        final Intent intent = new Intent(Intent.ACTION_PACKAGE_REMOVED,
+                Uri.fromParts("package", "com.android.app1", /*fragment=*/ null));
+        intent.putExtra(Intent.EXTRA_UID, 1001);
+        mContext.sendBroadcast(intent);
+        ShadowLooper.idleMainLooper();
+
+        assertThat(mCache.get("1001")).isNull();
+        assertThat(mCache.get("S|1")).isNotNull();
+    }
+
+    private BatteryEntry.NameAndIcon createNameAndIcon(String name) {
+        final Bitmap bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        return new BatteryEntry.NameAndIcon(name,
+                new BitmapDrawable(mContext.getResources(), bitmap), /*iconId=*/ 0);
+    }
+}
@@ -105,6 +105,23 @@ public class ContextualCardFeatureProviderImplTest {
         assertThat(rowsUpdated).isEqualTo(0);
     }
 
+    @Test
+    public void onUpgrade_fromVersion7_shouldKeepCardsAndAddDisplayedCards() {
+        insertFakeCard(mDatabase, "card1", 1, "uri1", 1000L);
+        mDatabase.execSQL("DROP TABLE " + CardDatabaseHelper.DISPLAYED_CARD_TABLE);
+
+        mCardDatabaseHelper.onUpgrade(mDatabase, 7 /* oldVersion */, 8 /* newVersion */);
+
+        try (Cursor cursor = mDatabase.query(CardDatabaseHelper.CARD_TABLE, null, null, null,
+                null, null, null)) {
+            assertThat(cursor.getCount()).isEqualTo(1);
+        }
+        try (Cursor cursor = mDatabase.query(CardDatabaseHelper.DISPLAYED_CARD_TABLE, null, null,
+                null, null, null, null)) {
+            assertThat(cursor.getCount()).isEqualTo(0);
+        }
+    }
+
     private static void insertFakeCard(
             SQLiteDatabase db, String name, double score, String uri, @Nullable Long time) {
         final ContentValues value = new ContentValues();
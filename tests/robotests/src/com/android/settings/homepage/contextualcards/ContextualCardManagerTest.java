@@ -111,6 +111,7 @@ public class ContextualCardManagerTest {
         mShadowTelephonyManager.setTelephonyManagerForSubscriptionId(SUB_ID, telephonyManager);
 
         mManager = new ContextualCardManager(mContext, mLifecycle, null /* bundle */);
+        ContextualCardSnapshot.clearCache();
     }
 
     @Test
@@ -328,6 +329,56 @@ public class ContextualCardManagerTest {
         verify(manager, never()).onContextualCardUpdated(anyMap());
     }
 
+    @Test
+    public void onFinishCardLoading_slowLoadWithSnapshot_shouldCallOnContextualCardUpdated() {
+        mManager.mStartTime = 0;
+        mManager.mIsShowingSnapshot = true;
+        final ContextualCardManager manager = spy(mManager);
+        doNothing().when(manager).onContextualCardUpdated(anyMap());
+
+        manager.onFinishCardLoading(new ArrayList<>());
+
+        verify(manager).onContextualCardUpdated(anyMap());
+        assertThat(manager.mIsShowingSnapshot).isFalse();
+    }
+
+    @Test
+    public void onCardSnapshotLoaded_firstLaunch_shouldShowSnapshotCards() {
+        mManager.setListener(mListener);
+        final List<ContextualCard> cards = new ArrayList<>();
+        cards.add(buildContextualCard(TEST_SLICE_URI));
+
+        mManager.onCardSnapshotLoaded(cards);
+
+        assertThat(mManager.mIsShowingSnapshot).isTrue();
+        assertThat(mManager.mContextualCards).hasSize(1);
+    }
+
+    @Test
+    public void onCardSnapshotLoaded_loaderFinished_shouldNotShowSnapshotCards() {
+        mManager.setListener(mListener);
+        mManager.onFinishCardLoading(new ArrayList<>());
+        final List<ContextualCard> cards = new ArrayList<>();
+        cards.add(buildContextualCard(TEST_SLICE_URI));
+
+        mManager.onCardSnapshotLoaded(cards);
+
+        assertThat(mManager.mIsShowingSnapshot).isFalse();
+        assertThat(mManager.mContextualCards).isEmpty();
+    }
+
+    @Test
+    public void showCardSnapshot_hasCachedCards_shouldShowCachedCards() {
+        mManager.setListener(mListener);
+        final List<ContextualCard> cards = new ArrayList<>();
+        cards.add(buildContextualCard(TEST_SLICE_URI));
+        ContextualCardSnapshot.save(mContext, cards);
+
+        mManager.showCardSnapshot();
+
+        assertThat(mManager.mContextualCards).hasSize(1);
+    }
+
     @Test
     public void onFinishCardLoading_newLaunch_twoLoadedCards_shouldShowTwoCards() {
         mManager.mStartTime = System.currentTimeMillis();
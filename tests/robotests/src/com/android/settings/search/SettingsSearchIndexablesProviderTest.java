@@ -4,6 +4,7 @@ import static com.android.settingslib.drawer.TileUtils.META_DATA_PREFERENCE_TITL
 
 import static com.google.common.truth.Truth.assertThat;
 
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.when;
@@ -149,6 +150,121 @@ public class SettingsSearchIndexablesProviderTest {
         assertThat(keys).containsAtLeast("pref_key_1", "pref_key_3", "pref_key_5");
     }
 
+    @Test
+    @Config(qualifiers = "mcc999")
+    public void nonIndexableKeys_providerThrows_shouldKeepOtherProviderKeys() {
+        mFakeFeatureFactory.searchFeatureProvider.getSearchIndexableResources().getProviderValues()
+                .add(new SearchIndexableData(ManagedProfileSettings.class,
+                        new BaseSearchIndexProvider() {
+                            @Override
+                            public List<String> getNonIndexableKeys(Context context) {
+                                throw new IllegalStateException();
+                            }
+                        }));
+        final Uri rawUri = Uri.parse(
+                BASE_AUTHORITY + SearchIndexablesContract.NON_INDEXABLES_KEYS_PATH);
+
+        final List<String> keys = new ArrayList<>();
+        try (Cursor cursor = mProvider.query(rawUri,
+                SearchIndexablesContract.NON_INDEXABLES_KEYS_COLUMNS, null, null, null)) {
+            while (cursor.moveToNext()) {
+                keys.add(cursor.getString(0));
+            }
+        }
+
+        assertThat(keys).containsExactly("pref_key_1", "pref_key_3", "pref_key_5");
+    }
+
+    @Test
+    public void deltaQuery_unchangedProvider_shouldSkipRows() {
+        final Uri deltaUri = Uri.parse(
+                BASE_AUTHORITY + SearchIndexablesContract.INDEXABLES_XML_RES_PATH).buildUpon()
+                .appendQueryParameter(SettingsSearchIndexablesProvider.QUERY_PARAMETER_DELTA,
+                        "true")
+                .build();
+
+        final Cursor firstCursor = mProvider.query(deltaUri,
+                SearchIndexablesContract.INDEXABLES_XML_RES_COLUMNS, null, null, null);
+        final Cursor secondCursor = mProvider.query(deltaUri,
+                SearchIndexablesContract.INDEXABLES_XML_RES_COLUMNS, null, null, null);
+
+        assertThat(firstCursor.getCount()).isEqualTo(1);
+        assertThat(secondCursor.getCount()).isEqualTo(0);
+        assertThat(secondCursor.getExtras().getStringArrayList(
+                SettingsSearchIndexablesProvider.EXTRA_UNCHANGED_CLASSES))
+                .containsExactly(FakeSettingsFragment.class.getName());
+    }
+
+    @Test
+    public void deltaQuery_afterFullQuery_shouldReturnAllRows() {
+        final Uri uri = Uri.parse(
+                BASE_AUTHORITY + SearchIndexablesContract.INDEXABLES_XML_RES_PATH);
+        final Uri deltaUri = uri.buildUpon()
+                .appendQueryParameter(SettingsSearchIndexablesProvider.QUERY_PARAMETER_DELTA,
+                        "true")
+                .build();
+
+        mProvider.query(uri, SearchIndexablesContract.INDEXABLES_XML_RES_COLUMNS, null, null, null);
+        final Cursor cursor = mProvider.query(deltaUri,
+                SearchIndexablesContract.INDEXABLES_XML_RES_COLUMNS, null, null, null);
+
+        assertThat(cursor.getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void deltaQuery_otherCaller_shouldReturnAllRows() {
+        final Uri deltaUri = Uri.parse(
+                BASE_AUTHORITY + SearchIndexablesContract.INDEXABLES_XML_RES_PATH).buildUpon()
+                .appendQueryParameter(SettingsSearchIndexablesProvider.QUERY_PARAMETER_DELTA,
+                        "true")
+                .build();
+
+        doReturn("caller1").when(mProvider).getCaller();
+        mProvider.query(deltaUri, SearchIndexablesContract.INDEXABLES_XML_RES_COLUMNS, null, null,
+                null);
+        doReturn("caller2").when(mProvider).getCaller();
+        final Cursor cursor = mProvider.query(deltaUri,
+                SearchIndexablesContract.INDEXABLES_XML_RES_COLUMNS, null, null, null);
+
+        assertThat(cursor.getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void deltaQuery_inheritedXmlResources_shouldSkipProvider() {
+        mFakeFeatureFactory.searchFeatureProvider.getSearchIndexableResources().getProviderValues()
+                .add(new SearchIndexableData(TopLevelSettings.class,
+                        new BaseSearchIndexProvider(R.xml.top_level_settings)));
+        final Uri deltaUri = Uri.parse(
+                BASE_AUTHORITY + SearchIndexablesContract.INDEXABLES_XML_RES_PATH).buildUpon()
+                .appendQueryParameter(SettingsSearchIndexablesProvider.QUERY_PARAMETER_DELTA,
+                        "true")
+                .build();
+
+        final Cursor firstCursor = mProvider.query(deltaUri,
+                SearchIndexablesContract.INDEXABLES_XML_RES_COLUMNS, null, null, null);
+        final Cursor secondCursor = mProvider.query(deltaUri,
+                SearchIndexablesContract.INDEXABLES_XML_RES_COLUMNS, null, null, null);
+
+        assertThat(firstCursor.getCount()).isEqualTo(2);
+        assertThat(secondCursor.getCount()).isEqualTo(0);
+        assertThat(secondCursor.getExtras().getStringArrayList(
+                SettingsSearchIndexablesProvider.EXTRA_UNCHANGED_CLASSES))
+                .containsExactly(FakeSettingsFragment.class.getName(),
+                        TopLevelSettings.class.getName());
+    }
+
+    @Test
+    public void fullQuery_unchangedProvider_shouldReturnAllRows() {
+        final Uri uri = Uri.parse(
+                BASE_AUTHORITY + SearchIndexablesContract.INDEXABLES_XML_RES_PATH);
+
+        mProvider.query(uri, SearchIndexablesContract.INDEXABLES_XML_RES_COLUMNS, null, null, null);
+        final Cursor cursor = mProvider.query(uri,
+                SearchIndexablesContract.INDEXABLES_XML_RES_COLUMNS, null, null, null);
+
+        assertThat(cursor.getCount()).isEqualTo(1);
+    }
+
     @Test
     public void refreshSearchEnabledState_classNotFoundInCategoryMap_hasInjectionRawData() {
         mProvider.refreshSearchEnabledState(mContext,
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.slices;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class SliceBackgroundWorkerTest {
+
+    private static final Uri URI = Uri.parse("content://com.android.settings.slices/test");
+    private static final long DEFAULT_INTERVAL = 300L;
+
+    private SliceBackgroundWorker.UpdateThrottle mThrottle;
+
+    @Before
+    public void setUp() {
+        mThrottle = new SliceBackgroundWorker.UpdateThrottle();
+    }
+
+    @Test
+    public void getThrottleInterval_noBind_defaultInterval() {
+        assertThat(mThrottle.getThrottleInterval(URI)).isEqualTo(DEFAULT_INTERVAL);
+    }
+
+    @Test
+    public void getThrottleInterval_slowBinds_followBindInterval() {
+        mThrottle.onSliceBound(URI, 1000L);
+        mThrottle.onSliceBound(URI, 1600L);
+
+        assertThat(mThrottle.getThrottleInterval(URI)).isEqualTo(600L);
+    }
+
+    @Test
+    public void getThrottleInterval_fastBinds_defaultInterval() {
+        mThrottle.onSliceBound(URI, 1000L);
+        mThrottle.onSliceBound(URI, 1010L);
+
+        assertThat(mThrottle.getThrottleInterval(URI)).isEqualTo(DEFAULT_INTERVAL);
+    }
+
+    @Test
+    public void getThrottleInterval_idleGapBetweenBinds_ignoreGap() {
+        mThrottle.onSliceBound(URI, 1000L);
+        mThrottle.onSliceBound(URI, 60000L);
+
+        assertThat(mThrottle.getThrottleInterval(URI)).isEqualTo(DEFAULT_INTERVAL);
+    }
+
+    @Test
+    public void getThrottleInterval_rebindAfterUpdate_ignoreRebind() {
+        mThrottle.onSliceBound(URI, 1000L);
+        mThrottle.onUpdateNotified(URI, 1100L);
+        mThrottle.onSliceBound(URI, 1110L);
+        mThrottle.onSliceBound(URI, 1500L);
+
+        // Only the interval between the two binds of the client itself is measured.
+        assertThat(mThrottle.getThrottleInterval(URI)).isEqualTo(500L);
+    }
+
+    @Test
+    public void getThrottleInterval_repeatedUpdates_notStuckAtMaxInterval() {
+        long now = 1000L;
+        mThrottle.onSliceBound(URI, now);
+        for (int i = 0; i < 20; i++) {
+            now = mThrottle.getDueTime(URI, now);
+            mThrottle.onUpdateNotified(URI, now);
+            mThrottle.onSliceBound(URI, now + 10L);
+        }
+
+        assertThat(mThrottle.getThrottleInterval(URI)).isEqualTo(DEFAULT_INTERVAL);
+    }
+
+    @Test
+    public void getDueTime_firstUpdate_postponedByInterval() {
+        assertThat(mThrottle.getDueTime(URI, 1000L)).isEqualTo(1000L + DEFAULT_INTERVAL);
+    }
+
+    @Test
+    public void getDueTime_recentUpdate_throttled() {
+        mThrottle.onUpdateNotified(URI, 1000L);
+
+        assertThat(mThrottle.getDueTime(URI, 1100L)).isEqualTo(1000L + DEFAULT_INTERVAL);
+        assertThat(mThrottle.getDueTime(URI, 2000L)).isEqualTo(2000L);
+    }
+
+    @Test
+    public void remove_forgetBindInterval() {
+        mThrottle.onSliceBound(URI, 1000L);
+        mThrottle.onSliceBound(URI, 1600L);
+
+        mThrottle.remove(URI);
+
+        assertThat(mThrottle.getThrottleInterval(URI)).isEqualTo(DEFAULT_INTERVAL);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.slices;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import static org.mockito.Mockito.mock;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+@RunWith(RobolectricTestRunner.class)
+public class SlicesDatabaseAccessorCacheTest {
+
+    private static final String CACHE_KEY = "key:key";
+
+    @After
+    public void tearDown() {
+        SlicesDatabaseAccessor.clearCache();
+    }
+
+    @Test
+    public void getCachedSliceData_afterPut_returnsCachedSlice() {
+        final SliceData data = mock(SliceData.class);
+
+        SlicesDatabaseAccessor.putCachedSliceData(CACHE_KEY, data,
+                SlicesDatabaseAccessor.getCacheGeneration());
+
+        assertThat(SlicesDatabaseAccessor.getCachedSliceData(CACHE_KEY)).isSameInstanceAs(data);
+    }
+
+    @Test
+    public void getCachedSliceData_cacheCleared_returnsNull() {
+        SlicesDatabaseAccessor.putCachedSliceData(CACHE_KEY, mock(SliceData.class),
+                SlicesDatabaseAccessor.getCacheGeneration());
+
+        SlicesDatabaseAccessor.clearCache();
+
+        assertThat(SlicesDatabaseAccessor.getCachedSliceData(CACHE_KEY)).isNull();
+    }
+
+    @Test
+    public void putCachedSliceData_readBeforeCacheCleared_notCached() {
+        final int generation = SlicesDatabaseAccessor.getCacheGeneration();
+        SlicesDatabaseAccessor.clearCache();
+
+        SlicesDatabaseAccessor.putCachedSliceData(CACHE_KEY, mock(SliceData.class), generation);
+
+        assertThat(SlicesDatabaseAccessor.getCachedSliceData(CACHE_KEY)).isNull();
+    }
+}
@@ -205,6 +205,31 @@ public class SlicesIndexerTest {
         }
     }
 
+    @Test
+    public void updateSliceData_unchangedData_shouldOnlyRewriteChangedRows() {
+        final List<SliceData> sliceData = getMockIndexableData(false);
+        final SQLiteDatabase db = SlicesDatabaseHelper.getInstance(mContext).getWritableDatabase();
+        mManager.updateSliceData(db, sliceData);
+        sliceData.set(0, new SliceData.Builder()
+                .setKey(KEYS[0])
+                .setTitle("new title")
+                .setUri(URI)
+                .setPreferenceControllerClassName(PREF_CONTROLLER)
+                .build());
+        sliceData.remove(2);
+
+        final SlicesIndexer.IndexingStats stats = mManager.updateSliceData(db, sliceData);
+
+        assertThat(stats.mUnchanged).isEqualTo(1);
+        assertThat(stats.mInserted).isEqualTo(1);
+        assertThat(stats.mDeleted).isEqualTo(2);
+        try (Cursor cursor = db.rawQuery("SELECT * FROM slices_index", null)) {
+            assertThat(cursor.getCount()).isEqualTo(2);
+        } finally {
+            db.close();
+        }
+    }
+
     private void insertSpecialCase(String key, String title) {
         final ContentValues values = new ContentValues();
         values.put(IndexColumns.KEY, key);
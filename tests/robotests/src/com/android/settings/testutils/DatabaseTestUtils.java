@@ -20,6 +20,8 @@ import android.content.Context;
 
 import com.android.settings.fuelgauge.batterytip.AnomalyDatabaseHelper;
 import com.android.settings.fuelgauge.batterytip.BatteryDatabaseManager;
+import com.android.settings.fuelgauge.batteryusage.BatteryHistoryDatabaseHelper;
+import com.android.settings.slices.SlicesDatabaseAccessor;
 import com.android.settings.slices.SlicesDatabaseHelper;
 
 import org.robolectric.util.ReflectionHelpers;
@@ -30,6 +32,7 @@ public class DatabaseTestUtils {
         clearSlicesDb(context);
         clearAnomalyDb(context);
         clearAnomalyDbManager();
+        clearBatteryHistoryDb(context);
     }
 
     private static void clearSlicesDb(Context context) {
@@ -37,6 +40,7 @@ public class DatabaseTestUtils {
         helper.close();
 
         ReflectionHelpers.setStaticField(SlicesDatabaseHelper.class, "sSingleton", null);
+        SlicesDatabaseAccessor.clearCache();
     }
 
     private static void clearAnomalyDb(Context context) {
@@ -46,6 +50,14 @@ public class DatabaseTestUtils {
         ReflectionHelpers.setStaticField(AnomalyDatabaseHelper.class, "sSingleton", null);
     }
 
+    private static void clearBatteryHistoryDb(Context context) {
+        BatteryHistoryDatabaseHelper helper = BatteryHistoryDatabaseHelper.getInstance(context);
+        helper.close();
+
+        ReflectionHelpers.setStaticField(BatteryHistoryDatabaseHelper.class,
+                "sBatteryHistoryDatabaseHelper", null);
+    }
+
     private static void clearAnomalyDbManager() {
         ReflectionHelpers.setStaticField(BatteryDatabaseManager.class, "sSingleton", null);
     }
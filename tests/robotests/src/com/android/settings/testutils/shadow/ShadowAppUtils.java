@@ -16,12 +16,18 @@
 
 package com.android.settings.testutils.shadow;
 
+import static org.robolectric.shadow.api.Shadow.directlyOn;
+
 import android.content.Context;
+import android.graphics.drawable.Drawable;
 
 import com.android.settingslib.applications.AppUtils;
+import com.android.settingslib.applications.ApplicationsState.AppEntry;
 
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.Resetter;
+import org.robolectric.util.ReflectionHelpers.ClassParameter;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -30,6 +36,16 @@ import java.util.Map;
 public class ShadowAppUtils {
 
     private static Map<String, String> sAppContentDesMap;
+    // Icons set by the tests, the real implementation is used for the other packages.
+    private static Map<String, Drawable> sIcons = new HashMap<>();
+    private static Map<String, Drawable> sCachedIcons = new HashMap<>();
+
+    @Resetter
+    public static void reset() {
+        sAppContentDesMap = null;
+        sIcons.clear();
+        sCachedIcons.clear();
+    }
 
     @Implementation
     protected static CharSequence getAppContentDescription(Context context, String packageName,
@@ -46,4 +62,33 @@ public class ShadowAppUtils {
         }
         sAppContentDesMap.put(packageName, appContentDes);
     }
+
+    @Implementation
+    protected static Drawable getIcon(Context context, AppEntry appEntry) {
+        final Drawable icon = sIcons.get(appEntry.info.packageName);
+        if (icon != null) {
+            return icon;
+        }
+        return directlyOn(AppUtils.class, "getIcon",
+                ClassParameter.from(Context.class, context),
+                ClassParameter.from(AppEntry.class, appEntry));
+    }
+
+    @Implementation
+    protected static Drawable getIconFromCache(AppEntry appEntry) {
+        final Drawable icon = sCachedIcons.get(appEntry.info.packageName);
+        if (icon != null) {
+            return icon;
+        }
+        return directlyOn(AppUtils.class, "getIconFromCache",
+                ClassParameter.from(AppEntry.class, appEntry));
+    }
+
+    public static void setIcon(String packageName, Drawable icon) {
+        sIcons.put(packageName, icon);
+    }
+
+    public static void setIconFromCache(String packageName, Drawable icon) {
+        sCachedIcons.put(packageName, icon);
+    }
 }
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.dashboard;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.content.pm.ChangedPackages;
+import android.util.ArrayMap;
+import android.util.ArraySet;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+@RunWith(AndroidJUnit4.class)
+public class TileSnapshotStoreTest {
+
+    private static final String TILE_PACKAGE = "com.example.tile";
+    private static final String INJECTING_PACKAGE = "com.example.injecting";
+    private static final int BOOT_COUNT = 5;
+    private static final int SEQUENCE_NUMBER = 3;
+    private static final String PROFILES = "0,10";
+
+    private Context mContext;
+    private TestTileSnapshotStore mStore;
+    private Set<String> mTilePackages;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mStore = new TestTileSnapshotStore(mContext);
+        mStore.clear();
+        mTilePackages = new ArraySet<>(Arrays.asList(TILE_PACKAGE));
+    }
+
+    @Test
+    public void load_noSnapshot_shouldReturnNull() {
+        assertThat(mStore.load()).isNull();
+    }
+
+    @Test
+    public void hasChangedSession_sameSession_shouldReturnFalse() {
+        assertThat(mStore.hasChangedSession(BOOT_COUNT, SEQUENCE_NUMBER, PROFILES,
+                SEQUENCE_NUMBER)).isFalse();
+    }
+
+    @Test
+    public void hasChangedSession_rebooted_shouldReturnTrue() {
+        assertThat(mStore.hasChangedSession(BOOT_COUNT - 1, SEQUENCE_NUMBER, PROFILES,
+                SEQUENCE_NUMBER)).isTrue();
+    }
+
+    @Test
+    public void hasChangedSession_packagesChanged_shouldReturnTrue() {
+        assertThat(mStore.hasChangedSession(BOOT_COUNT, SEQUENCE_NUMBER, PROFILES,
+                SEQUENCE_NUMBER + 1)).isTrue();
+    }
+
+    @Test
+    public void hasChangedSession_profileRemoved_shouldReturnTrue() {
+        assertThat(mStore.hasChangedSession(BOOT_COUNT, SEQUENCE_NUMBER, "0",
+                SEQUENCE_NUMBER)).isTrue();
+    }
+
+    @Test
+    public void hasRelevantPackageChanges_noChanges_shouldReturnFalse() {
+        mStore.mChangedPackages = null;
+
+        assertThat(mStore.hasRelevantPackageChanges(1, mTilePackages)).isFalse();
+    }
+
+    @Test
+    public void hasRelevantPackageChanges_tilePackageChanged_shouldReturnTrue() {
+        mStore.mChangedPackages = new ChangedPackages(2, Arrays.asList(TILE_PACKAGE));
+
+        assertThat(mStore.hasRelevantPackageChanges(1, mTilePackages)).isTrue();
+    }
+
+    @Test
+    public void hasRelevantPackageChanges_unrelatedPackageChanged_shouldReturnFalse() {
+        mStore.mChangedPackages = new ChangedPackages(2, Arrays.asList("com.example.unrelated"));
+
+        assertThat(mStore.hasRelevantPackageChanges(1, mTilePackages)).isFalse();
+    }
+
+    @Test
+    public void hasRelevantPackageChanges_injectingPackageChanged_shouldReturnTrue() {
+        mStore.mInjectingPackages.add(INJECTING_PACKAGE);
+        mStore.mChangedPackages = new ChangedPackages(2, Arrays.asList(INJECTING_PACKAGE));
+
+        assertThat(mStore.hasRelevantPackageChanges(1, mTilePackages)).isTrue();
+    }
+
+    @Test
+    public void hasChangedPackageVersions_sameVersions_shouldReturnFalse() {
+        mStore.mPackageVersions.put(TILE_PACKAGE, "1:100");
+
+        assertThat(mStore.hasChangedPackageVersions(versions(TILE_PACKAGE, "1:100"))).isFalse();
+    }
+
+    @Test
+    public void hasChangedPackageVersions_packageUpdated_shouldReturnTrue() {
+        mStore.mPackageVersions.put(TILE_PACKAGE, "2:200");
+
+        assertThat(mStore.hasChangedPackageVersions(versions(TILE_PACKAGE, "1:100"))).isTrue();
+    }
+
+    @Test
+    public void hasChangedPackageVersions_packageRemoved_shouldReturnTrue() {
+        assertThat(mStore.hasChangedPackageVersions(versions(TILE_PACKAGE, "1:100"))).isTrue();
+    }
+
+    @Test
+    public void hasChangedPackageVersions_newInjectingPackage_shouldReturnTrue() {
+        mStore.mPackageVersions.put(TILE_PACKAGE, "1:100");
+        mStore.mPackageVersions.put(INJECTING_PACKAGE, "1:100");
+        mStore.mInjectingPackages.add(INJECTING_PACKAGE);
+
+        assertThat(mStore.hasChangedPackageVersions(versions(TILE_PACKAGE, "1:100"))).isTrue();
+    }
+
+    private static Map<String, String> versions(String packageName, String version) {
+        final Map<String, String> versions = new ArrayMap<>();
+        versions.put(packageName, version);
+        return versions;
+    }
+
+    private static class TestTileSnapshotStore extends TileSnapshotStore {
+        final Set<String> mInjectingPackages = new ArraySet<>();
+        final Map<String, String> mPackageVersions = new ArrayMap<>();
+        ChangedPackages mChangedPackages;
+
+        TestTileSnapshotStore(Context context) {
+            super(context);
+        }
+
+        @Override
+        ChangedPackages getChangedPackages(int sequenceNumber) {
+            return mChangedPackages;
+        }
+
+        @Override
+        int getBootCount() {
+            return BOOT_COUNT;
+        }
+
+        @Override
+        String getProfiles() {
+            return PROFILES;
+        }
+
+        @Override
+        Set<String> getInjectingPackages() {
+            return mInjectingPackages;
+        }
+
+        @Override
+        String getPackageVersion(String packageName) {
+            final String version = mPackageVersions.get(packageName);
+            return version == null ? "" : version;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2022 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.settings.fuelgauge.batteryusage;
+
+import static androidx.test.platform.app.InstrumentationRegistry.getInstrumentation;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.graphics.RecordingCanvas;
+import android.graphics.RenderNode;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.text.format.DateUtils;
+import android.view.View;
+import android.widget.TextView;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Measures the time and the allocations to redraw a {@link BatteryChartView} of a week of hourly
+ * slots when the selected slot is changed.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BatteryChartViewFrameTimeTest {
+
+    private static final int SLOT_COUNT = 7 * 24;
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 600;
+    private static final int WARMUP_FRAMES = 20;
+    private static final int MEASURED_FRAMES = 200;
+
+    private Context mContext;
+    private Bundle mBundle;
+    private BatteryChartView mBatteryChartView;
+    private BatteryChartViewModel mViewModel;
+    private RenderNode mRenderNode;
+
+    @Before
+    public void setUp() {
+        mContext = getInstrumentation().getTargetContext();
+        mBundle = new Bundle();
+        getInstrumentation().runOnMainSync(() -> {
+            mBatteryChartView = new BatteryChartView(mContext);
+            mBatteryChartView.setCompanionTextView(new TextView(mContext));
+            mViewModel = createViewModel();
+            mBatteryChartView.setViewModel(mViewModel);
+            mBatteryChartView.measure(
+                    View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                    View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+            mBatteryChartView.layout(0, 0, WIDTH, HEIGHT);
+        });
+        mRenderNode = new RenderNode("BatteryChartViewFrameTimeTest");
+        mRenderNode.setPosition(0, 0, WIDTH, HEIGHT);
+    }
+
+    @After
+    public void tearDown() {
+        getInstrumentation().sendStatus(0, mBundle);
+    }
+
+    @Test
+    public void draw_selectEachSlot_measureFrameTime() {
+        getInstrumentation().runOnMainSync(() -> {
+            for (int i = 0; i < WARMUP_FRAMES; i++) {
+                drawFrame(i % SLOT_COUNT);
+            }
+
+            final List<Long> latencies = new ArrayList<>();
+            final List<Long> allocations = new ArrayList<>();
+            for (int i = 0; i < MEASURED_FRAMES; i++) {
+                Debug.resetThreadAllocSize();
+                Debug.startAllocCounting();
+                final long start = SystemClock.elapsedRealtimeNanos();
+                drawFrame(i % SLOT_COUNT);
+                latencies.add(SystemClock.elapsedRealtimeNanos() - start);
+                Debug.stopAllocCounting();
+                allocations.add((long) Debug.getThreadAllocSize());
+            }
+            putResult("latency_ns", latencies);
+            putResult("allocated_bytes", allocations);
+        });
+
+        assertThat(mRenderNode.hasDisplayList()).isTrue();
+    }
+
+    private void drawFrame(int selectedIndex) {
+        mViewModel.setSelectedIndex(selectedIndex);
+        mBatteryChartView.setViewModel(mViewModel);
+        final RecordingCanvas canvas = mRenderNode.beginRecording();
+        mBatteryChartView.draw(canvas);
+        mRenderNode.endRecording();
+    }
+
+    private void putResult(String name, List<Long> results) {
+        Collections.sort(results);
+        final long avg = (long) results.stream().mapToLong(i -> i).average().orElse(0);
+        mBundle.putString(String.format("BatteryChartViewFrameTimeTest_%s_avg", name),
+                String.valueOf(avg));
+        mBundle.putString(String.format("BatteryChartViewFrameTimeTest_%s_median", name),
+                String.valueOf(results.get(results.size() / 2)));
+        mBundle.putString(String.format("BatteryChartViewFrameTimeTest_%s_p90", name),
+                String.valueOf(results.get(results.size() * 9 / 10)));
+    }
+
+    private static BatteryChartViewModel createViewModel() {
+        final List<Integer> levels = new ArrayList<>();
+        final List<Long> timestamps = new ArrayList<>();
+        final long startTimestamp =
+                System.currentTimeMillis() - SLOT_COUNT * DateUtils.HOUR_IN_MILLIS;
+        for (int index = 0; index <= SLOT_COUNT; index++) {
+            levels.add(100 - index * 90 / SLOT_COUNT);
+            timestamps.add(startTimestamp + index * DateUtils.HOUR_IN_MILLIS);
+        }
+        return new BatteryChartViewModel(levels, timestamps,
+                BatteryChartViewModel.AxisLabelPosition.BETWEEN_TRAPEZOIDS,
+                new BatteryChartViewModel.LabelTextGenerator() {
+                    @Override
+                    public String generateText(List<Long> timestamps, int index) {
+                        return Integer.toString(index % 24);
+                    }
+
+                    @Override
+                    public String generateFullText(List<Long> timestamps, int index) {
+                        return generateText(timestamps, index);
+                    }
+                });
+    }
+}